@@ -32,6 +32,10 @@ dependencies {
     implementation("io.micronaut:micronaut-runtime")
     implementation("io.micronaut:micronaut-jackson-databind")
     
+    // Metrics
+    implementation("io.micronaut.micrometer:micronaut-micrometer-core")
+    implementation("io.micronaut.micrometer:micronaut-micrometer-registry-prometheus")
+    
     // Logging
     runtimeOnly("ch.qos.logback:logback-classic")
     
@@ -46,4 +50,89 @@ dependencies {
 tasks.test {
     useJUnitPlatform()
     jvmArgs("-Dnet.bytebuddy.experimental=true")
-}
\ No newline at end of file
+}
+
+// Lists the application's .properties files so PropertiesLoader can load them directly
+// instead of scanning the whole classpath (which, in a fat JAR, means every dependency)
+val generateConfigIndex by tasks.registering {
+    val propertiesFiles = fileTree("src/main/resources") { include("**/*.properties") }
+    val outputDir = layout.buildDirectory.dir("generated/config-index")
+    inputs.files(propertiesFiles)
+    outputs.dir(outputDir)
+    doLast {
+        val index = outputDir.get().file("META-INF/websocket-chat/config.index").asFile
+        index.parentFile.mkdirs()
+        val root = file("src/main/resources")
+        index.writeText(propertiesFiles.files
+            .map { it.relativeTo(root).invariantSeparatorsPath }
+            .sorted()
+            .joinToString("\n", postfix = "\n"))
+    }
+}
+
+sourceSets.main {
+    resources.srcDir(generateConfigIndex)
+}
+
+// Optional AppCDS archive. `./gradlew cdsArchive` boots the application once with
+// -Dapp.exitAfterStartup=true and records every class loaded until the WebSocket server
+// accepts connections; `./gradlew runWithCds` then starts from the archive.
+val cdsArchiveFile = layout.buildDirectory.file("cds/websocket-chat.jsa")
+
+val cdsArchive by tasks.registering(JavaExec::class) {
+    group = "application"
+    description = "Records an AppCDS archive of the classes loaded during startup."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set(application.mainClass)
+    outputs.file(cdsArchiveFile)
+    doFirst {
+        cdsArchiveFile.get().asFile.parentFile.mkdirs()
+    }
+    jvmArgs(
+        "-XX:ArchiveClassesAtExit=${cdsArchiveFile.get().asFile.absolutePath}",
+        "-Dapp.exitAfterStartup=true"
+    )
+}
+
+tasks.register<JavaExec>("runWithCds") {
+    group = "application"
+    description = "Runs the application using the AppCDS archive built by cdsArchive."
+    dependsOn(cdsArchive)
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set(application.mainClass)
+    jvmArgs("-XX:SharedArchiveFile=${cdsArchiveFile.get().asFile.absolutePath}", "-Xshare:auto")
+}
+
+// Benchmarks and load harnesses under src/test, run with `./gradlew <task> --args="..."`.
+// Each main class documents its options and prints what it measured.
+fun registerBenchmark(name: String, mainClassName: String, what: String, configure: JavaExec.() -> Unit = {}) =
+    tasks.register<JavaExec>(name) {
+        group = "verification"
+        description = what
+        classpath = sourceSets.test.get().runtimeClasspath
+        mainClass.set("ca.lajtha.websocketchat.$mainClassName")
+        configure()
+    }
+
+registerBenchmark("connectionFootprint", "server.websocket.IdleConnectionHarness",
+    "Measures the server heap used per idle WebSocket connection.") {
+    standardInput = System.`in`
+}
+registerBenchmark("reconnectStorm", "server.websocket.ReconnectStormHarness",
+    "Measures the reconnect load a draining server causes on another server.")
+registerBenchmark("gameCreationBenchmark", "game.GameCreationBenchmark",
+    "Measures games created and stopped per second.")
+registerBenchmark("clusterFanoutBenchmark", "cluster.ClusterFanoutBenchmark",
+    "Measures cross-node fan-out latency over the TCP cluster bus.")
+registerBenchmark("roomMigrationBenchmark", "cluster.RoomMigrationBenchmark",
+    "Measures the pause a busy room sees while moving between cluster nodes.")
+registerBenchmark("clusterRelayBenchmark", "cluster.ClusterRelayBenchmark",
+    "Measures cross-node relay throughput with and without per-node send batching.")
+registerBenchmark("presenceStormBenchmark", "game.PresenceStormBenchmark",
+    "Counts join/leave notification frames during a simulated mass reconnect.")
+registerBenchmark("roomRateBenchmark", "game.RoomRateBenchmark",
+    "Measures room throughput and latency across message rates with and without batching.")
+registerBenchmark("eventLoopWakeupBenchmark", "server.websocket.EventLoopWakeupBenchmark",
+    "Measures event loop wake-ups per broadcast with and without per-loop write grouping.")
+registerBenchmark("gameExecutionBenchmark", "game.GameExecutionBenchmark",
+    "Compares small-room chat latency with games on their own threads and on event loops.")
@@ -1,5 +1,7 @@
 package ca.lajtha.websocketchat;
 
+import ca.lajtha.websocketchat.game.GameManager;
+import ca.lajtha.websocketchat.server.PropertiesServerConfig;
 import ca.lajtha.websocketchat.server.ServerConfig;
 import ca.lajtha.websocketchat.server.websocket.WebSocketServer;
 import io.micronaut.context.ApplicationContext;
@@ -7,25 +9,34 @@ import io.micronaut.runtime.Micronaut;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.management.ManagementFactory;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class Application {
     private static final Logger logger = LoggerFactory.getLogger(Application.class);
+
+    /**
+     * System property that makes the application exit as soon as the WebSocket server accepts
+     * connections. Used by the Gradle cdsArchive task to record a class-data sharing archive
+     * of everything loaded during startup.
+     */
+    private static final String EXIT_AFTER_STARTUP_PROPERTY = "app.exitAfterStartup";
     
     private static ApplicationContext micronautContext;
     
     public static void main(String[] args) {
-        // Start Micronaut application context (this will create all beans)
-        // First, create a context to get ServerConfig for HTTP port
-        ApplicationContext tempContext = Micronaut.build(args).start();
-        ServerConfig config = tempContext.getBean(ServerConfig.class);
-        tempContext.close();
+        // Resolve the HTTP port before the context starts. The loader is handed to the context,
+        // so the configuration files are only read once and every bean is only created once.
+        PropertiesLoader propertiesLoader = new PropertiesLoader();
+        ServerConfig config = new PropertiesServerConfig(propertiesLoader);
         
-        // Now start the full Micronaut HTTP server with the correct port
+        // Start the Micronaut HTTP server with the correct port (this will create all beans)
         micronautContext = Micronaut.build(args)
                 .properties(Map.of(
                     "micronaut.server.port", String.valueOf(config.getHttpPort())
                 ))
+                .singletons(propertiesLoader)
                 .start();
         
         // Get WebSocket server from Micronaut context
@@ -34,14 +45,38 @@ public class Application {
         
         // Keep the application running
         try {
-            // Add shutdown hook
+            // Add shutdown hook; connections and games are drained before the beans are destroyed
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 logger.info("Shutting down...");
                 if (micronautContext != null) {
+                    micronautContext.getBean(GracefulShutdown.class).drain();
                     micronautContext.close();
                 }
             }));
             
+            boolean started;
+            try {
+                started = webSocketServer.awaitStarted(1, TimeUnit.MINUTES);
+            } catch (IllegalStateException e) {
+                logger.error("Exiting: {}", e.getMessage(), e.getCause());
+                System.exit(1);
+                return;
+            }
+            if (started) {
+                logger.info("Accepting WebSocket connections {} ms after JVM start",
+                        ManagementFactory.getRuntimeMXBean().getUptime());
+                if (config.isGameRunOnEventLoop()) {
+                    // Games are spread over the connections' event loops from here on
+                    micronautContext.getBean(GameManager.class).runGamesOn(webSocketServer.getWorkerGroup());
+                }
+            } else {
+                logger.warn("WebSocket server has not started after 1 minute");
+            }
+            if (Boolean.getBoolean(EXIT_AFTER_STARTUP_PROPERTY)) {
+                logger.info("{} is set, exiting", EXIT_AFTER_STARTUP_PROPERTY);
+                System.exit(0);
+            }
+            
             // Wait indefinitely
             Thread.currentThread().join();
         } catch (InterruptedException e) {
@@ -64,4 +99,3 @@ public class Application {
         webSocketThread.start();
     }
 }
-
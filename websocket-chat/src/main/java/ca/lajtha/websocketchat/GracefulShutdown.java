@@ -0,0 +1,57 @@
+package ca.lajtha.websocketchat;
+
+import ca.lajtha.websocketchat.game.GameManager;
+import ca.lajtha.websocketchat.server.ServerConfig;
+import ca.lajtha.websocketchat.server.websocket.WebSocketServer;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the server before the application context closes, so a restart or rolling deploy
+ * neither drops what games still have queued nor sends every client back at the same moment.
+ *
+ * The WebSocket server stops accepting and closes its connections with jittered reconnect
+ * hints, then the games finish their mailboxes (or, in a cluster, move to the remaining nodes),
+ * all within {@link ServerConfig#getShutdownDrainTimeoutMs()}. Nothing else needs flushing:
+ * users and games are only kept in memory.
+ */
+@Singleton
+public class GracefulShutdown {
+    private static final Logger logger = LoggerFactory.getLogger(GracefulShutdown.class);
+
+    private final WebSocketServer webSocketServer;
+    private final GameManager gameManager;
+    private final ServerConfig config;
+
+    public GracefulShutdown(WebSocketServer webSocketServer, GameManager gameManager, ServerConfig config) {
+        this.webSocketServer = webSocketServer;
+        this.gameManager = gameManager;
+        this.config = config;
+    }
+
+    /**
+     * Drains connections, then games. Returns once both are done or the drain timeout has passed.
+     */
+    public void drain() {
+        long start = System.nanoTime();
+        long timeoutMs = config.getShutdownDrainTimeoutMs();
+        int connections = webSocketServer.drain(config.getShutdownReconnectJitterMs(), timeoutMs);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        try {
+            if (!gameManager.drain(Math.max(0, timeoutMs - elapsedMs))) {
+                logger.warn("Games did not drain within {} ms, stopped the rest", timeoutMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while draining games");
+        } finally {
+            // Games pinned to the worker event loops run on them until they have drained
+            webSocketServer.releaseEventLoops();
+        }
+        logger.info("Drain of {} connections and their games finished in {} ms", connections,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
@@ -4,26 +4,57 @@ import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Service for loading properties from configuration files.
  * Automatically discovers and loads all .properties files from the resources directory.
+ *
+ * The files are read once and kept as a cached snapshot that every caller shares. When the
+ * build has written a config index ({@value #CONFIG_INDEX}), only the files it lists are
+ * loaded and the classpath is not scanned at all. {@link #reload()} re-reads the files and
+ * notifies registered listeners.
+ *
+ * A file outside the classpath, such as one of the tuning profiles in {@code config/profiles},
+ * can be layered on top with {@code -D}{@value #CONFIG_FILE_PROPERTY}{@code =<path>}; its
+ * values override the bundled ones.
  */
 @Singleton
 public class PropertiesLoader {
     private static final Logger logger = LoggerFactory.getLogger(PropertiesLoader.class);
+
+    /**
+     * Classpath resource listing the application's .properties files, one per line.
+     */
+    public static final String CONFIG_INDEX = "META-INF/websocket-chat/config.index";
+
+    /**
+     * System property naming an external .properties file loaded after the bundled ones.
+     */
+    public static final String CONFIG_FILE_PROPERTY = "config.file";
+
+    private final List<Consumer<Properties>> reloadListeners = new CopyOnWriteArrayList<>();
+    private volatile Properties snapshot;
+    private volatile List<String> configFiles = List.of();
     
     /**
      * Creates a PropertiesLoader that loads all .properties files from resources.
@@ -33,58 +64,159 @@ public class PropertiesLoader {
     }
     
     /**
-     * Loads properties from all .properties files found in the resources directory.
+     * Returns the properties from all .properties files found in the resources directory.
      * Files are loaded in the order they are discovered, with later files overriding
      * properties from earlier files if there are duplicate keys.
+     *
+     * The files are only read on the first call. Each call returns a new Properties object
+     * whose defaults are the cached snapshot, so lookups through
+     * {@link Properties#getProperty(String)} see every loaded value, and changes a caller
+     * makes to the returned object stay local to it.
      * 
      * @return Properties object containing merged properties from all .properties files
      */
     public Properties loadProperties() {
+        Properties current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = readAll();
+                    snapshot = current;
+                }
+            }
+        }
+        return new Properties(current);
+    }
+
+    /**
+     * Re-reads all configuration files, replaces the cached snapshot and notifies the
+     * reload listeners. Components that copied values at construction keep their values
+     * unless they listen for reloads.
+     *
+     * @return the reloaded properties
+     */
+    public Properties reload() {
+        Properties current;
+        synchronized (this) {
+            current = readAll();
+            snapshot = current;
+        }
+        for (Consumer<Properties> listener : reloadListeners) {
+            try {
+                listener.accept(new Properties(current));
+            } catch (Exception e) {
+                logger.error("Error notifying configuration reload listener", e);
+            }
+        }
+        return new Properties(current);
+    }
+
+    /**
+     * Registers a callback that receives the new properties after every {@link #reload()}.
+     */
+    public void addReloadListener(Consumer<Properties> listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * Returns the configuration files the current snapshot was built from, in load order.
+     */
+    public List<String> getConfigFiles() {
+        loadProperties();
+        return configFiles;
+    }
+
+    private Properties readAll() {
+        long start = System.nanoTime();
         Properties props = new Properties();
+        List<String> loadedFiles = new ArrayList<>();
         ClassLoader classLoader = PropertiesLoader.class.getClassLoader();
-        
-        // Scan for all .properties files
-        scanResourcesForProperties(classLoader, props);
+
+        if (!loadFromIndex(classLoader, props, loadedFiles)) {
+            // Scan for all .properties files
+            scanResourcesForProperties(classLoader, props, loadedFiles);
+        }
         
         // Fallback: try to load known common properties file if nothing was found
         if (props.isEmpty()) {
-            loadPropertiesFile(classLoader, props, "server.properties");
+            loadPropertiesFile(classLoader, props, "server.properties", loadedFiles);
         }
-        
+
+        String overrideFile = System.getProperty(CONFIG_FILE_PROPERTY);
+        if (overrideFile != null && !overrideFile.isBlank()) {
+            Path path = Paths.get(overrideFile);
+            if (Files.isRegularFile(path)) {
+                loadPropertiesFromPath(path, props, loadedFiles);
+            } else {
+                logger.warn("Warning: {} {} does not exist", CONFIG_FILE_PROPERTY, overrideFile);
+            }
+        }
+
+        configFiles = List.copyOf(loadedFiles);
+        logger.info("Loaded {} properties from {} files in {} ms", props.size(), loadedFiles.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
         return props;
     }
+
+    /**
+     * Loads the files listed in the config index, if the build wrote one.
+     *
+     * @return true if an index was found
+     */
+    private boolean loadFromIndex(ClassLoader classLoader, Properties props, List<String> loadedFiles) {
+        try (InputStream input = classLoader.getResourceAsStream(CONFIG_INDEX)) {
+            if (input == null) {
+                return false;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String fileName = line.trim();
+                    if (!fileName.isEmpty() && !fileName.startsWith("#")) {
+                        loadPropertiesFile(classLoader, props, fileName, loadedFiles);
+                    }
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warn("Warning: Error reading config index {}: {}", CONFIG_INDEX, e.getMessage());
+            return false;
+        }
+    }
     
     /**
      * Scans the resources directory for all .properties files and loads them.
      * 
      * @param classLoader the class loader to use for resource access
      * @param props the Properties object to merge loaded properties into
+     * @param loadedFiles collects the files that were loaded
      */
-    private void scanResourcesForProperties(ClassLoader classLoader, Properties props) {
+    private void scanResourcesForProperties(ClassLoader classLoader, Properties props, List<String> loadedFiles) {
         try {
             // Try to get the classpath root
             URL rootUrl = classLoader.getResource("");
             if (rootUrl != null) {
-                scanUrlForProperties(rootUrl, props, classLoader);
+                scanUrlForProperties(rootUrl, props, loadedFiles);
             }
             
             // Also try scanning from the package root
             Enumeration<URL> rootResources = classLoader.getResources("");
             while (rootResources.hasMoreElements()) {
                 URL resourceUrl = rootResources.nextElement();
-                scanUrlForProperties(resourceUrl, props, classLoader);
+                scanUrlForProperties(resourceUrl, props, loadedFiles);
             }
             
         } catch (IOException e) {
             // If scanning fails, try alternative approach
-            scanUsingFileSystem(classLoader, props);
+            scanUsingFileSystem(classLoader, props, loadedFiles);
         }
     }
     
     /**
      * Scans a URL for .properties files.
      */
-    private void scanUrlForProperties(URL url, Properties props, ClassLoader classLoader) {
+    private void scanUrlForProperties(URL url, Properties props, List<String> loadedFiles) {
         try {
             String protocol = url.getProtocol();
             
@@ -94,7 +226,7 @@ public class PropertiesLoader {
                 if (Files.isDirectory(path)) {
                     Files.walk(path)
                         .filter(p -> p.toString().endsWith(".properties"))
-                        .forEach(p -> loadPropertiesFromPath(p, props));
+                        .forEach(p -> loadPropertiesFromPath(p, props, loadedFiles));
                 }
             } else if ("jar".equals(protocol)) {
                 // JAR file - need to use FileSystem
@@ -109,7 +241,7 @@ public class PropertiesLoader {
                         if (Files.exists(root)) {
                             Files.walk(root)
                                 .filter(p -> p.toString().endsWith(".properties"))
-                                .forEach(p -> loadPropertiesFromPath(p, props));
+                                .forEach(p -> loadPropertiesFromPath(p, props, loadedFiles));
                         }
                     }
                 }
@@ -123,7 +255,7 @@ public class PropertiesLoader {
      * Alternative scanning method that tries to find .properties files by name.
      * This is a fallback when directory scanning isn't possible (e.g., in some JAR scenarios).
      */
-    private void scanUsingFileSystem(ClassLoader classLoader, Properties props) {
+    private void scanUsingFileSystem(ClassLoader classLoader, Properties props, List<String> loadedFiles) {
         // Try to find .properties files by attempting to load them directly
         // This works when we know the file names or can guess common patterns
         // For a more complete solution, you might want to use a library like Spring's ResourcePatternResolver
@@ -132,18 +264,19 @@ public class PropertiesLoader {
         // Try common property file names
         String[] commonNames = {"server.properties", "application.properties", "config.properties"};
         for (String fileName : commonNames) {
-            loadPropertiesFile(classLoader, props, fileName);
+            loadPropertiesFile(classLoader, props, fileName, loadedFiles);
         }
     }
     
     /**
      * Loads properties from a file path.
      */
-    private void loadPropertiesFromPath(Path path, Properties props) {
+    private void loadPropertiesFromPath(Path path, Properties props, List<String> loadedFiles) {
         try (InputStream input = Files.newInputStream(path)) {
             Properties fileProps = new Properties();
             fileProps.load(input);
             props.putAll(fileProps);
+            loadedFiles.add(path.toString());
             logger.info("Loaded properties from: {}", path);
         } catch (IOException e) {
             logger.warn("Warning: Error loading properties from {}: {}", path, e.getMessage());
@@ -156,13 +289,15 @@ public class PropertiesLoader {
      * @param classLoader the class loader to use
      * @param props the Properties object to merge into
      * @param fileName the name of the properties file
+     * @param loadedFiles collects the files that were loaded
      */
-    private void loadPropertiesFile(ClassLoader classLoader, Properties props, String fileName) {
+    private void loadPropertiesFile(ClassLoader classLoader, Properties props, String fileName, List<String> loadedFiles) {
         try (InputStream input = classLoader.getResourceAsStream(fileName)) {
             if (input != null) {
                 Properties fileProps = new Properties();
                 fileProps.load(input);
                 props.putAll(fileProps);
+                loadedFiles.add(fileName);
                 logger.info("Loaded properties from: {}", fileName);
             }
         } catch (IOException e) {
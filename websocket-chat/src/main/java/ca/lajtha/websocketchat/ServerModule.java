@@ -1,13 +1,23 @@
 package ca.lajtha.websocketchat;
 
+import ca.lajtha.websocketchat.cluster.PresenceDirectory;
+import ca.lajtha.websocketchat.cluster.TcpClusterBus;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
 import ca.lajtha.websocketchat.server.websocket.*;
 import ca.lajtha.websocketchat.user.InMemoryUserDatabase;
 import ca.lajtha.websocketchat.user.UserDatabase;
 import ca.lajtha.websocketchat.game.GameManager;
+import ca.lajtha.websocketchat.game.MailboxConfig;
+import ca.lajtha.websocketchat.game.chat.BroadcastConfig;
+import ca.lajtha.websocketchat.ids.IdInterner;
+import ca.lajtha.websocketchat.server.ServerConfig;
 import io.micronaut.context.annotation.Bean;
 import io.micronaut.context.annotation.Factory;
 import jakarta.inject.Singleton;
 
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Factory for creating WebSocket server components as Micronaut beans.
  * Only creates beans that need special setup (interfaces, circular dependencies, etc.).
@@ -22,18 +32,44 @@ public class ServerModule {
         return new InMemoryUserDatabase();
     }
     
+    /**
+     * Interns player ids to the int keys the connection and game routing tables share.
+     */
+    @Bean
+    @Singleton
+    public IdInterner playerIds() {
+        return new IdInterner();
+    }
+    
     @Bean
     @Singleton
-    public WebsocketManagerImpl websocketManagerImpl() {
-        return new WebsocketManagerImpl();
+    public WebsocketManagerImpl websocketManagerImpl(ServerMetrics metrics, IdInterner playerIds, ServerConfig config) {
+        return new WebsocketManagerImpl(metrics, playerIds, config.getResumeGracePeriodMs(), config.getResumeBufferSize(),
+                config.isGroupWritesByEventLoop());
     }
     
     @Bean
     @Singleton
-    public GameManager gameManager(WebsocketManagerImpl websocketManagerImpl) {
-        GameManager gameManager = new GameManager(websocketManagerImpl);
+    public GameManager gameManager(WebsocketManagerImpl websocketManagerImpl, ServerMetrics metrics, ServerConfig config,
+                                   IdInterner playerIds) {
+        MailboxConfig mailboxConfig = new MailboxConfig(config.getGameMailboxCapacity(), config.getGameMailboxOverflowPolicy());
+        BroadcastConfig broadcastConfig = new BroadcastConfig(config.getGamePresenceWindowMs(),
+                config.getGameBatchRateThreshold(), config.getGameBatchMaxDelayMs());
+        GameManager gameManager = new GameManager(websocketManagerImpl, metrics, mailboxConfig, playerIds, broadcastConfig);
         // Wire up the circular dependency: ConnectionManager needs GameManager
         websocketManagerImpl.setGame(gameManager);
+        if (config.isClusterEnabled()) {
+            TcpClusterBus bus = TcpClusterBus.fromConfig(config, metrics);
+            PresenceDirectory presence = new PresenceDirectory(bus, websocketManagerImpl::sendLocalMessage, metrics,
+                    config.getClusterPresenceGossipIntervalMs());
+            websocketManagerImpl.setPresence(presence);
+            List<String> ringNodes = Arrays.stream(config.getClusterRingNodes().split(","))
+                    .map(String::trim)
+                    .filter(nodeId -> !nodeId.isEmpty())
+                    .toList();
+            gameManager.attachCluster(bus, ringNodes.isEmpty() ? bus.nodeIds() : ringNodes);
+            presence.start();
+        }
         return gameManager;
     }
 }
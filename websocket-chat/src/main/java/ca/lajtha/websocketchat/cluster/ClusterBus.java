@@ -0,0 +1,45 @@
+package ca.lajtha.websocketchat.cluster;
+
+import java.util.Set;
+
+/**
+ * Carries {@link ClusterMessage}s between the nodes of a cluster.
+ *
+ * Messages from one node to another arrive in the order they were sent. Delivery is
+ * best-effort: a message to a node that cannot be reached is dropped and logged.
+ */
+public interface ClusterBus extends AutoCloseable {
+
+    /**
+     * Receives the messages sent to this node.
+     */
+    @FunctionalInterface
+    interface Handler {
+        void onMessage(String fromNodeId, ClusterMessage message);
+    }
+
+    /**
+     * Returns the id of the node this bus belongs to.
+     */
+    String localNodeId();
+
+    /**
+     * Returns the ids of every node this bus can reach, including this one.
+     */
+    Set<String> nodeIds();
+
+    /**
+     * Adds a handler for the messages sent to this node, and starts accepting them on the first
+     * call. Every handler is passed every message, on a bus thread, and ignores those it does
+     * not handle.
+     */
+    void start(Handler handler);
+
+    /**
+     * Sends a message to a node. Sending to the local node hands it straight to the handler.
+     */
+    void send(String nodeId, ClusterMessage message);
+
+    @Override
+    void close();
+}
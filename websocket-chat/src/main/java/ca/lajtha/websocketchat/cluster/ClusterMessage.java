@@ -0,0 +1,130 @@
+package ca.lajtha.websocketchat.cluster;
+
+import java.util.List;
+
+/**
+ * The messages nodes exchange over a {@link ClusterBus}.
+ *
+ * A player's home node is the node holding the player's WebSocket; a game's owner is the node
+ * running its {@code SerializedGame}. Home nodes forward what their players do to the owner, and
+ * the owner sends back what the game sends to them. Owners are placed by a {@link HashRing}; when
+ * its membership changes, games move to their new owners with {@link MigrateGame}.
+ *
+ * Separately, every node tells the others which users are connected to it with
+ * {@link Presence} messages, so a message for a user on another node can be relayed there.
+ */
+public sealed interface ClusterMessage {
+
+    /**
+     * First message on a TCP connection, identifying the node that opened it. The signature is
+     * an HMAC of the other fields under the cluster's shared secret, empty if it has none; the
+     * timestamp and nonce keep a recorded Hello from being replayed.
+     */
+    record Hello(String nodeId, long timestamp, String nonce, String signature) implements ClusterMessage {
+    }
+
+    /**
+     * Any node to owner: host a game created on another node.
+     */
+    record CreateGame(String gameId, String name, String creatorId) implements ClusterMessage {
+    }
+
+    /**
+     * Owner to the node that created the game: it is hosted and can be joined.
+     */
+    record GameCreated(String gameId) implements ClusterMessage {
+    }
+
+    /**
+     * Home to owner: a player joined the game. The home node is named because an old owner
+     * forwards joins it receives during a migration to the new one.
+     */
+    record JoinGame(String gameId, String playerId, String homeNodeId) implements ClusterMessage {
+    }
+
+    /**
+     * Home to owner: a player left the game or disconnected.
+     */
+    record LeaveGame(String gameId, String playerId) implements ClusterMessage {
+    }
+
+    /**
+     * Home to owner: a message a player sent to the game.
+     */
+    record PlayerMessage(String gameId, String playerId, String message) implements ClusterMessage {
+    }
+
+    /**
+     * Owner to home: a message the game sent to a player.
+     */
+    record Deliver(String playerId, String message) implements ClusterMessage {
+    }
+
+    /**
+     * Any node to owner: stop the game.
+     */
+    record StopGame(String gameId) implements ClusterMessage {
+    }
+
+    /**
+     * Owner to home: the player is no longer in the game, because it stopped or does not exist.
+     */
+    record RemovedFromGame(String gameId, String playerId) implements ClusterMessage {
+    }
+
+    /**
+     * Any node to all others: the nodes games are now placed on.
+     */
+    record Membership(List<String> nodeIds) implements ClusterMessage {
+    }
+
+    /**
+     * Old owner to new owner: the game's state and members, taken after its mailbox drained.
+     * Followed by the operations the old owner received meanwhile, then {@link MigrationComplete}.
+     */
+    record MigrateGame(String gameId, String snapshot) implements ClusterMessage {
+    }
+
+    /**
+     * Old owner to new owner: everything the old owner had for the game has been sent.
+     */
+    record MigrationComplete(String gameId) implements ClusterMessage {
+    }
+
+    /**
+     * New owner to old owner: the game was restored and everything sent with it applied, or it
+     * could not be restored. Until it arrives the old owner keeps what it sent, and hosts the
+     * game again if it was not restored.
+     */
+    record MigrationAck(String gameId, boolean restored) implements ClusterMessage {
+    }
+
+    /**
+     * The messages of the presence directory, which games do not see.
+     */
+    sealed interface Presence extends ClusterMessage {
+    }
+
+    /**
+     * Node to all others: users that connected to or disconnected from it since its last delta.
+     * Deltas from one node are numbered from 1 within each incarnation, the time it started,
+     * so a receiver can tell when it missed one. A snapshot lists every user connected to the
+     * node as of the numbered delta, and replaces what the receiver knew about the node.
+     */
+    record PresenceDelta(long incarnation, long sequence, boolean snapshot,
+                         List<String> connected, List<String> disconnected) implements Presence {
+    }
+
+    /**
+     * Node to node: send me a snapshot of the users connected to you.
+     */
+    record PresenceRequest() implements Presence {
+    }
+
+    /**
+     * Node to home: a message for a user connected to the receiving node, to deliver there and
+     * never relay on.
+     */
+    record Relay(String playerId, String message) implements Presence {
+    }
+}
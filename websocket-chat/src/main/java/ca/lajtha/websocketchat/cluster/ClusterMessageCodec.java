@@ -0,0 +1,154 @@
+package ca.lajtha.websocketchat.cluster;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes {@link ClusterMessage}s as a type byte followed by their String fields, each written
+ * as a length and UTF-8 bytes. Framing is left to the handlers around it.
+ *
+ * A presence delta writes its numbers first, then each user list as a count and the ids.
+ * Lengths and counts are checked against the bytes left in the frame before anything is read,
+ * so a corrupt or hostile frame fails with a {@link CorruptedFrameException}.
+ */
+@ChannelHandler.Sharable
+final class ClusterMessageCodec extends MessageToMessageCodec<ByteBuf, ClusterMessage> {
+    static final ClusterMessageCodec INSTANCE = new ClusterMessageCodec();
+
+    private static final byte HELLO = 1;
+    private static final byte JOIN_GAME = 2;
+    private static final byte LEAVE_GAME = 3;
+    private static final byte PLAYER_MESSAGE = 4;
+    private static final byte DELIVER = 5;
+    private static final byte STOP_GAME = 6;
+    private static final byte REMOVED_FROM_GAME = 7;
+    private static final byte CREATE_GAME = 8;
+    private static final byte MEMBERSHIP = 9;
+    private static final byte MIGRATE_GAME = 10;
+    private static final byte MIGRATION_COMPLETE = 11;
+    private static final byte PRESENCE_DELTA = 12;
+    private static final byte PRESENCE_REQUEST = 13;
+    private static final byte RELAY = 14;
+    private static final byte MIGRATION_ACK = 15;
+    private static final byte GAME_CREATED = 16;
+
+    private ClusterMessageCodec() {
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ClusterMessage message, List<Object> out) {
+        ByteBuf buf = ctx.alloc().buffer();
+        switch (message) {
+            case ClusterMessage.Hello m -> {
+                write(buf, HELLO, m.nodeId());
+                buf.writeLong(m.timestamp());
+                writeString(buf, m.nonce());
+                writeString(buf, m.signature());
+            }
+            case ClusterMessage.CreateGame m -> write(buf, CREATE_GAME, m.gameId(), m.name(), m.creatorId());
+            case ClusterMessage.JoinGame m -> write(buf, JOIN_GAME, m.gameId(), m.playerId(), m.homeNodeId());
+            case ClusterMessage.LeaveGame m -> write(buf, LEAVE_GAME, m.gameId(), m.playerId());
+            case ClusterMessage.PlayerMessage m -> write(buf, PLAYER_MESSAGE, m.gameId(), m.playerId(), m.message());
+            case ClusterMessage.Deliver m -> write(buf, DELIVER, m.playerId(), m.message());
+            case ClusterMessage.StopGame m -> write(buf, STOP_GAME, m.gameId());
+            case ClusterMessage.RemovedFromGame m -> write(buf, REMOVED_FROM_GAME, m.gameId(), m.playerId());
+            // Node ids cannot contain commas, the node list in the configuration is split on them
+            case ClusterMessage.Membership m -> write(buf, MEMBERSHIP, String.join(",", m.nodeIds()));
+            case ClusterMessage.MigrateGame m -> write(buf, MIGRATE_GAME, m.gameId(), m.snapshot());
+            case ClusterMessage.MigrationComplete m -> write(buf, MIGRATION_COMPLETE, m.gameId());
+            case ClusterMessage.MigrationAck m -> {
+                write(buf, MIGRATION_ACK, m.gameId());
+                buf.writeBoolean(m.restored());
+            }
+            case ClusterMessage.GameCreated m -> write(buf, GAME_CREATED, m.gameId());
+            case ClusterMessage.PresenceDelta m -> {
+                buf.writeByte(PRESENCE_DELTA);
+                buf.writeLong(m.incarnation());
+                buf.writeLong(m.sequence());
+                buf.writeBoolean(m.snapshot());
+                writeList(buf, m.connected());
+                writeList(buf, m.disconnected());
+            }
+            case ClusterMessage.PresenceRequest m -> write(buf, PRESENCE_REQUEST);
+            case ClusterMessage.Relay m -> write(buf, RELAY, m.playerId(), m.message());
+        }
+        out.add(buf);
+    }
+
+    private static void write(ByteBuf buf, byte type, String... fields) {
+        buf.writeByte(type);
+        for (String field : fields) {
+            writeString(buf, field);
+        }
+    }
+
+    private static void writeList(ByteBuf buf, List<String> values) {
+        buf.writeInt(values.size());
+        for (String value : values) {
+            writeString(buf, value);
+        }
+    }
+
+    private static void writeString(ByteBuf buf, String value) {
+        int lengthIndex = buf.writerIndex();
+        buf.writeInt(0);
+        int length = ByteBufUtil.writeUtf8(buf, value);
+        buf.setInt(lengthIndex, length);
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) {
+        byte type = buf.readByte();
+        out.add(switch (type) {
+            case HELLO -> new ClusterMessage.Hello(read(buf), buf.readLong(), read(buf), read(buf));
+            case CREATE_GAME -> new ClusterMessage.CreateGame(read(buf), read(buf), read(buf));
+            case JOIN_GAME -> new ClusterMessage.JoinGame(read(buf), read(buf), read(buf));
+            case LEAVE_GAME -> new ClusterMessage.LeaveGame(read(buf), read(buf));
+            case PLAYER_MESSAGE -> new ClusterMessage.PlayerMessage(read(buf), read(buf), read(buf));
+            case DELIVER -> new ClusterMessage.Deliver(read(buf), read(buf));
+            case STOP_GAME -> new ClusterMessage.StopGame(read(buf));
+            case REMOVED_FROM_GAME -> new ClusterMessage.RemovedFromGame(read(buf), read(buf));
+            case MEMBERSHIP -> new ClusterMessage.Membership(Arrays.asList(read(buf).split(",")));
+            case MIGRATE_GAME -> new ClusterMessage.MigrateGame(read(buf), read(buf));
+            case MIGRATION_COMPLETE -> new ClusterMessage.MigrationComplete(read(buf));
+            case MIGRATION_ACK -> new ClusterMessage.MigrationAck(read(buf), buf.readBoolean());
+            case GAME_CREATED -> new ClusterMessage.GameCreated(read(buf));
+            case PRESENCE_DELTA -> new ClusterMessage.PresenceDelta(buf.readLong(), buf.readLong(), buf.readBoolean(),
+                    readList(buf), readList(buf));
+            case PRESENCE_REQUEST -> new ClusterMessage.PresenceRequest();
+            case RELAY -> new ClusterMessage.Relay(read(buf), read(buf));
+            default -> throw new CorruptedFrameException("Unknown cluster message type " + type);
+        });
+    }
+
+    private static List<String> readList(ByteBuf buf) {
+        int size = buf.readInt();
+        if (size < 0 || size > buf.readableBytes() / 4) {
+            throw new CorruptedFrameException("Invalid list size " + size);
+        }
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(read(buf));
+        }
+        return values;
+    }
+
+    private static String read(ByteBuf buf) {
+        int length = buf.readInt();
+        if (length < 0 || length > buf.readableBytes()) {
+            throw new CorruptedFrameException("Invalid string length " + length);
+        }
+        String value = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+        buf.skipBytes(length);
+        return value;
+    }
+}
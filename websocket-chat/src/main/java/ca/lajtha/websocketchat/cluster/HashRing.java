@@ -0,0 +1,88 @@
+package ca.lajtha.websocketchat.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A consistent hash ring placing games on nodes.
+ *
+ * Each node is hashed onto the ring at {@link #VIRTUAL_NODES} points, and a key belongs to the
+ * node owning the first point at or after the key's hash. Every node builds the same ring from
+ * the same node set, so all nodes agree on where a game lives without asking each other, and
+ * adding or removing a node only moves the keys next to its points, about 1/n of them.
+ * Rings are immutable; a membership change builds a new one.
+ */
+public final class HashRing {
+    static final int VIRTUAL_NODES = 160;
+
+    private final Set<String> nodeIds;
+    private final long[] points;
+    private final String[] owners;
+
+    public HashRing(Collection<String> nodeIds) {
+        if (nodeIds.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        this.nodeIds = Collections.unmodifiableSet(new LinkedHashSet<>(nodeIds));
+        int size = this.nodeIds.size() * VIRTUAL_NODES;
+        long[] hashes = new long[size];
+        String[] nodes = new String[size];
+        int i = 0;
+        for (String nodeId : this.nodeIds) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                hashes[i] = hash(nodeId + '#' + v);
+                nodes[i] = nodeId;
+                i++;
+            }
+        }
+        // Sort the points, carrying their owners along
+        Integer[] order = new Integer[size];
+        Arrays.setAll(order, index -> index);
+        Arrays.sort(order, (a, b) -> hashes[a] != hashes[b]
+                ? Long.compare(hashes[a], hashes[b])
+                : nodes[a].compareTo(nodes[b]));
+        this.points = new long[size];
+        this.owners = new String[size];
+        for (int j = 0; j < size; j++) {
+            points[j] = hashes[order[j]];
+            owners[j] = nodes[order[j]];
+        }
+    }
+
+    public Set<String> getNodeIds() {
+        return nodeIds;
+    }
+
+    /**
+     * Returns the node a key is placed on.
+     */
+    public String ownerOf(String key) {
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 mixer so that keys
+     * differing only in their last characters spread over the whole ring.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
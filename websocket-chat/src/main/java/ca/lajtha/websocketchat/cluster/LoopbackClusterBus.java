@@ -0,0 +1,105 @@
+package ca.lajtha.websocketchat.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A {@link ClusterBus} connecting nodes that run in the same JVM, for tests and local tools.
+ *
+ * Each node handles its messages on its own thread, in the order they were sent, just as a
+ * node reached over the network would.
+ */
+public final class LoopbackClusterBus implements ClusterBus {
+    private static final Logger logger = LoggerFactory.getLogger(LoopbackClusterBus.class);
+
+    /**
+     * The nodes that can reach each other.
+     */
+    public static final class Network {
+        private final Map<String, LoopbackClusterBus> nodes = new ConcurrentHashMap<>();
+
+        public LoopbackClusterBus join(String nodeId) {
+            LoopbackClusterBus bus = new LoopbackClusterBus(this, nodeId);
+            if (nodes.putIfAbsent(nodeId, bus) != null) {
+                bus.executor.shutdown();
+                throw new IllegalArgumentException("Node " + nodeId + " is already on the network");
+            }
+            return bus;
+        }
+    }
+
+    private final Network network;
+    private final String nodeId;
+    private final ExecutorService executor;
+    private final List<Handler> handlers = new CopyOnWriteArrayList<>();
+
+    private LoopbackClusterBus(Network network, String nodeId) {
+        this.network = network;
+        this.nodeId = nodeId;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-loopback-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String localNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public Set<String> nodeIds() {
+        return Set.copyOf(network.nodes.keySet());
+    }
+
+    @Override
+    public void start(Handler handler) {
+        handlers.add(handler);
+    }
+
+    @Override
+    public void send(String targetNodeId, ClusterMessage message) {
+        LoopbackClusterBus target = network.nodes.get(targetNodeId);
+        if (target == null) {
+            logger.warn("Dropping {} for unknown node {}", message.getClass().getSimpleName(), targetNodeId);
+            return;
+        }
+        target.deliver(nodeId, message);
+    }
+
+    private void deliver(String fromNodeId, ClusterMessage message) {
+        try {
+            executor.execute(() -> {
+                if (handlers.isEmpty()) {
+                    logger.warn("Node {} dropped {}: not started", nodeId, message.getClass().getSimpleName());
+                    return;
+                }
+                for (Handler handler : handlers) {
+                    try {
+                        handler.onMessage(fromNodeId, message);
+                    } catch (Exception e) {
+                        logger.error("Error handling {} from {} on node {}", message.getClass().getSimpleName(), fromNodeId, nodeId, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Node {} is closed, dropping {}", nodeId, message.getClass().getSimpleName());
+        }
+    }
+
+    @Override
+    public void close() {
+        network.nodes.remove(nodeId, this);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,234 @@
+package ca.lajtha.websocketchat.cluster;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import ca.lajtha.websocketchat.server.websocket.MessageSender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Knows which node each user is connected to, so a message for a user connected elsewhere can
+ * be relayed to that node instead of dropped.
+ *
+ * Each node owns the entries for its own users and gossips changes to every other node as
+ * numbered deltas: connects and disconnects are collected and coalesced, then sent together
+ * every gossip interval. A node that misses a delta, hears from a restarted node, or starts
+ * after the others asks for a snapshot instead. Entries are only as fresh as the last delta,
+ * so a message can still be relayed to a node the user just left, where it is dropped just as
+ * it would be for a local user who disconnected.
+ *
+ * Relayed messages are delivered locally on arrival and never relayed again, so nodes whose
+ * views briefly disagree cannot pass a message back and forth.
+ */
+public final class PresenceDirectory implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PresenceDirectory.class);
+
+    private final ClusterBus bus;
+    private final MessageSender localSender;
+    private final ServerMetrics metrics;
+    private final long gossipIntervalMs;
+    private final long incarnation = System.currentTimeMillis();
+    private final ScheduledExecutorService gossip;
+    // Users connected to other nodes, to their node
+    private final Map<String, String> remoteUsers = new ConcurrentHashMap<>();
+    private final Map<String, RemoteNode> remoteNodes = new ConcurrentHashMap<>();
+
+    // Guarded by this: the local users, the changes not yet gossiped, and the last delta's number
+    private final Set<String> localUsers = new HashSet<>();
+    private final Map<String, Boolean> pendingChanges = new LinkedHashMap<>();
+    private long sequence;
+
+    /**
+     * @param bus the bus to the other nodes
+     * @param localSender delivers a relayed message to a user connected to this node
+     * @param metrics the metrics relays are counted in
+     * @param gossipIntervalMs how often changes to the local users are sent to the other nodes
+     */
+    public PresenceDirectory(ClusterBus bus, MessageSender localSender, ServerMetrics metrics, long gossipIntervalMs) {
+        this.bus = bus;
+        this.localSender = localSender;
+        this.metrics = metrics;
+        this.gossipIntervalMs = gossipIntervalMs;
+        this.gossip = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "presence-gossip");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts handling presence messages, asks the other nodes who is connected to them, and
+     * starts gossiping local changes.
+     */
+    public void start() {
+        bus.start(this::handleClusterMessage);
+        for (String nodeId : bus.nodeIds()) {
+            if (!nodeId.equals(bus.localNodeId())) {
+                bus.send(nodeId, new ClusterMessage.PresenceRequest());
+            }
+        }
+        gossip.scheduleWithFixedDelay(this::flush, gossipIntervalMs, gossipIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void localUserConnected(String userId) {
+        localUsers.add(userId);
+        pendingChanges.put(userId, Boolean.TRUE);
+    }
+
+    public synchronized void localUserDisconnected(String userId) {
+        localUsers.remove(userId);
+        pendingChanges.put(userId, Boolean.FALSE);
+    }
+
+    /**
+     * Returns the node a user is connected to, or null if it is not connected to another node.
+     */
+    public String nodeOf(String userId) {
+        return remoteUsers.get(userId);
+    }
+
+    /**
+     * Relays a message to the node the user is connected to.
+     *
+     * @return false if the user is not known to be connected to another node
+     */
+    public boolean relay(String userId, String message) {
+        String nodeId = remoteUsers.get(userId);
+        if (nodeId == null) {
+            return false;
+        }
+        bus.send(nodeId, new ClusterMessage.Relay(userId, message));
+        metrics.presenceRelayed();
+        return true;
+    }
+
+    /**
+     * Sends the changes collected since the last delta to every other node. Called from the
+     * gossip thread only.
+     */
+    void flush() {
+        try {
+            // Sent while holding the lock, so deltas and snapshots reach each node in number order
+            synchronized (this) {
+                if (pendingChanges.isEmpty()) {
+                    return;
+                }
+                List<String> connected = new ArrayList<>();
+                List<String> disconnected = new ArrayList<>();
+                pendingChanges.forEach((userId, isConnected) -> (isConnected ? connected : disconnected).add(userId));
+                pendingChanges.clear();
+                ClusterMessage.PresenceDelta delta =
+                        new ClusterMessage.PresenceDelta(incarnation, ++sequence, false, connected, disconnected);
+                for (String nodeId : bus.nodeIds()) {
+                    if (!nodeId.equals(bus.localNodeId())) {
+                        bus.send(nodeId, delta);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error gossiping presence", e);
+        }
+    }
+
+    private void handleClusterMessage(String fromNodeId, ClusterMessage message) {
+        if (!(message instanceof ClusterMessage.Presence presence)) {
+            return;
+        }
+        switch (presence) {
+            case ClusterMessage.PresenceDelta delta -> applyDelta(fromNodeId, delta);
+            case ClusterMessage.PresenceRequest request -> sendSnapshot(fromNodeId);
+            case ClusterMessage.Relay relay -> localSender.sendMessage(relay.playerId(), relay.message());
+        }
+    }
+
+    private synchronized void sendSnapshot(String nodeId) {
+        bus.send(nodeId, new ClusterMessage.PresenceDelta(incarnation, sequence, true, List.copyOf(localUsers), List.of()));
+    }
+
+    private void applyDelta(String nodeId, ClusterMessage.PresenceDelta delta) {
+        RemoteNode node = remoteNodes.computeIfAbsent(nodeId, id -> new RemoteNode());
+        synchronized (node) {
+            if (delta.incarnation() < node.incarnation) {
+                // Sent before the node restarted
+                return;
+            }
+            if (delta.incarnation() > node.incarnation) {
+                // First contact, or the node restarted and its users with it
+                forgetUsers(nodeId, node);
+                node.incarnation = delta.incarnation();
+                node.sequence = 0;
+                node.awaitingSnapshot = false;
+            }
+            if (delta.snapshot()) {
+                if (delta.sequence() < node.sequence) {
+                    return;
+                }
+                forgetUsers(nodeId, node);
+                node.sequence = delta.sequence();
+                node.awaitingSnapshot = false;
+                for (String userId : delta.connected()) {
+                    addUser(nodeId, node, userId);
+                }
+                return;
+            }
+            if (delta.sequence() <= node.sequence || node.awaitingSnapshot) {
+                // Already covered by a snapshot, or one is on its way
+                return;
+            }
+            if (delta.sequence() != node.sequence + 1) {
+                logger.info("Missed presence deltas {}-{} from node {}, requesting a snapshot",
+                        node.sequence + 1, delta.sequence() - 1, nodeId);
+                node.awaitingSnapshot = true;
+                bus.send(nodeId, new ClusterMessage.PresenceRequest());
+                return;
+            }
+            node.sequence = delta.sequence();
+            for (String userId : delta.connected()) {
+                addUser(nodeId, node, userId);
+            }
+            for (String userId : delta.disconnected()) {
+                node.users.remove(userId);
+                remoteUsers.remove(userId, nodeId);
+            }
+        }
+    }
+
+    private void addUser(String nodeId, RemoteNode node, String userId) {
+        node.users.add(userId);
+        // A user who moved is listed by the node it moved to, whichever delta arrives last
+        remoteUsers.put(userId, nodeId);
+    }
+
+    private void forgetUsers(String nodeId, RemoteNode node) {
+        for (String userId : node.users) {
+            remoteUsers.remove(userId, nodeId);
+        }
+        node.users.clear();
+    }
+
+    @Override
+    public void close() {
+        gossip.shutdownNow();
+    }
+
+    /**
+     * What this node knows about another: the users it listed, and the last delta applied.
+     * Guarded by its own monitor.
+     */
+    private static final class RemoteNode {
+        private final Set<String> users = new HashSet<>();
+        private long incarnation;
+        private long sequence;
+        private boolean awaitingSnapshot;
+    }
+}
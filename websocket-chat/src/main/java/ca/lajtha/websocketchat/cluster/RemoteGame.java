@@ -0,0 +1,49 @@
+package ca.lajtha.websocketchat.cluster;
+
+import ca.lajtha.websocketchat.game.Game;
+
+import java.util.function.Function;
+
+/**
+ * Stands in for a game hosted by the node the hash ring places it on. What a local player does
+ * in the game is forwarded to that node over the bus; what the game sends back arrives as
+ * {@link ClusterMessage.Deliver} messages. The owner is looked up on every call, so once the
+ * ring changes the player's next message goes to the game's new owner.
+ */
+public final class RemoteGame implements Game {
+    private final ClusterBus bus;
+    private final Function<String, String> placement;
+    private final String gameId;
+
+    /**
+     * @param placement maps a game id to the node currently owning it
+     */
+    public RemoteGame(ClusterBus bus, Function<String, String> placement, String gameId) {
+        this.bus = bus;
+        this.placement = placement;
+        this.gameId = gameId;
+    }
+
+    public String getGameId() {
+        return gameId;
+    }
+
+    public String getOwnerNodeId() {
+        return placement.apply(gameId);
+    }
+
+    @Override
+    public void handlePlayerMessage(String playerId, String message) {
+        bus.send(getOwnerNodeId(), new ClusterMessage.PlayerMessage(gameId, playerId, message));
+    }
+
+    @Override
+    public void handlePlayerConnected(String playerId) {
+        bus.send(getOwnerNodeId(), new ClusterMessage.JoinGame(gameId, playerId, bus.localNodeId()));
+    }
+
+    @Override
+    public void handlePlayerDisconnected(String playerId) {
+        bus.send(getOwnerNodeId(), new ClusterMessage.LeaveGame(gameId, playerId));
+    }
+}
@@ -0,0 +1,420 @@
+package ca.lajtha.websocketchat.cluster;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import ca.lajtha.websocketchat.server.ServerConfig;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link ClusterBus} over TCP. Every node listens on its own address from the cluster's node
+ * list and opens one connection to each peer it sends to, on first use; a connection that
+ * closes is reopened by the next send. Messages are length-prefixed frames encoded by
+ * {@link ClusterMessageCodec}; the first frame on each connection names the sending node.
+ *
+ * Each node listens on its configured address only, and accepts a connection only once its
+ * {@link ClusterMessage.Hello} names another node in the list and is signed with the cluster's
+ * shared secret. Without a secret, which only tests and benchmarks use, any listed node is trusted.
+ * Messages a node sends itself are handled on one fixed event loop, in the order they were sent.
+ *
+ * With batching on, messages sent to a peer are queued and written by one task on the
+ * connection's event loop, which drains the queue and flushes once, so a burst of sends to the
+ * same node leaves in a few large TCP segments rather than one segment and one system call per
+ * message. Order is unchanged, since every message to a peer still goes through its queue.
+ */
+public final class TcpClusterBus implements ClusterBus {
+    private static final Logger logger = LoggerFactory.getLogger(TcpClusterBus.class);
+    private static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final long HELLO_MAX_AGE_MS = 30_000;
+
+    private final String localNodeId;
+    private final Map<String, InetSocketAddress> nodes;
+    private final ServerMetrics metrics;
+    private final boolean batchSends;
+    private final byte[] secret;
+    private final EventLoopGroup group;
+    private final EventExecutor localExecutor;
+    private final Map<String, Long> seenNonces = new ConcurrentHashMap<>();
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    private final List<Handler> handlers = new CopyOnWriteArrayList<>();
+    private Channel serverChannel;
+    private volatile boolean closed;
+
+    /**
+     * @param localNodeId the id of this node; must be one of {@code nodes}
+     * @param nodes the address of every node in the cluster, by node id
+     * @param metrics the metrics sent and received messages are counted in
+     */
+    public TcpClusterBus(String localNodeId, Map<String, InetSocketAddress> nodes, ServerMetrics metrics) {
+        this(localNodeId, nodes, metrics, true);
+    }
+
+    /**
+     * @param localNodeId the id of this node; must be one of {@code nodes}
+     * @param nodes the address of every node in the cluster, by node id
+     * @param metrics the metrics sent and received messages are counted in
+     * @param batchSends whether to coalesce the messages sent to a peer into one flush
+     */
+    public TcpClusterBus(String localNodeId, Map<String, InetSocketAddress> nodes, ServerMetrics metrics,
+                         boolean batchSends) {
+        this(localNodeId, nodes, metrics, batchSends, null);
+    }
+
+    /**
+     * @param localNodeId the id of this node; must be one of {@code nodes}
+     * @param nodes the address of every node in the cluster, by node id
+     * @param metrics the metrics sent and received messages are counted in
+     * @param batchSends whether to coalesce the messages sent to a peer into one flush
+     * @param secret the secret every node signs its Hello with, or null to trust any listed node
+     */
+    public TcpClusterBus(String localNodeId, Map<String, InetSocketAddress> nodes, ServerMetrics metrics,
+                         boolean batchSends, String secret) {
+        if (!nodes.containsKey(localNodeId)) {
+            throw new IllegalArgumentException("Node " + localNodeId + " is not in the cluster node list " + nodes.keySet());
+        }
+        this.localNodeId = localNodeId;
+        this.nodes = Collections.unmodifiableMap(new LinkedHashMap<>(nodes));
+        this.metrics = metrics;
+        this.batchSends = batchSends;
+        this.secret = secret == null || secret.isEmpty() ? null : secret.getBytes(StandardCharsets.UTF_8);
+        this.group = new NioEventLoopGroup(Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                new DefaultThreadFactory("cluster-bus", true));
+        this.localExecutor = group.next();
+    }
+
+    /**
+     * @throws IllegalStateException if no cluster secret is configured
+     */
+    public static TcpClusterBus fromConfig(ServerConfig config, ServerMetrics metrics) {
+        if (config.getClusterSecret().isBlank()) {
+            throw new IllegalStateException("cluster.secret must be set when cluster.enabled is true");
+        }
+        return new TcpClusterBus(config.getClusterNodeId(), parseNodes(config.getClusterNodes()), metrics,
+                config.isClusterBatchSends(), config.getClusterSecret());
+    }
+
+    /**
+     * Parses a node list of the form {@code node-1@host:port,node-2@host:port}.
+     */
+    public static Map<String, InetSocketAddress> parseNodes(String spec) {
+        Map<String, InetSocketAddress> nodes = new LinkedHashMap<>();
+        for (String entry : spec.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int at = trimmed.indexOf('@');
+            int colon = trimmed.lastIndexOf(':');
+            if (at <= 0 || colon < at) {
+                throw new IllegalArgumentException("Invalid cluster node '" + trimmed + "', expected id@host:port");
+            }
+            nodes.put(trimmed.substring(0, at),
+                    InetSocketAddress.createUnresolved(trimmed.substring(at + 1, colon),
+                            Integer.parseInt(trimmed.substring(colon + 1))));
+        }
+        return nodes;
+    }
+
+    public Map<String, InetSocketAddress> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public String localNodeId() {
+        return localNodeId;
+    }
+
+    @Override
+    public Set<String> nodeIds() {
+        return nodes.keySet();
+    }
+
+    @Override
+    public synchronized void start(Handler handler) {
+        handlers.add(handler);
+        if (serverChannel != null) {
+            return;
+        }
+        InetSocketAddress address = nodes.get(localNodeId);
+        serverChannel = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        addCodec(ch.pipeline());
+                        ch.pipeline().addLast(new InboundHandler());
+                    }
+                })
+                .bind(address.getHostString(), address.getPort())
+                .syncUninterruptibly()
+                .channel();
+        if (secret == null) {
+            logger.warn("Cluster node {} has no secret: any listed node may connect", localNodeId);
+        }
+        logger.info("Cluster node {} listening on {}:{} ({} nodes)", localNodeId, address.getHostString(),
+                address.getPort(), nodes.size());
+    }
+
+    private static void addCodec(ChannelPipeline pipeline) {
+        pipeline.addLast(new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, 4, 0, 4));
+        pipeline.addLast(new LengthFieldPrepender(4));
+        pipeline.addLast(ClusterMessageCodec.INSTANCE);
+    }
+
+    @Override
+    public void send(String nodeId, ClusterMessage message) {
+        if (closed) {
+            logger.debug("Dropping {} for node {}: the bus is closed", message.getClass().getSimpleName(), nodeId);
+            return;
+        }
+        metrics.clusterMessageSent();
+        if (localNodeId.equals(nodeId)) {
+            localExecutor.execute(() -> dispatch(localNodeId, message));
+            return;
+        }
+        if (!nodes.containsKey(nodeId)) {
+            logger.warn("Dropping {} for unknown node {}", message.getClass().getSimpleName(), nodeId);
+            return;
+        }
+        Peer peer = peers.computeIfAbsent(nodeId, this::connect);
+        if (batchSends) {
+            peer.enqueue(message);
+        } else {
+            peer.channel.eventLoop().execute(() -> peer.write(message, true));
+        }
+    }
+
+    private Peer connect(String nodeId) {
+        InetSocketAddress address = nodes.get(nodeId);
+        ChannelFuture connect = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        addCodec(ch.pipeline());
+                    }
+                })
+                .connect(address.getHostString(), address.getPort());
+        Peer peer = new Peer(nodeId, connect.channel());
+        connect.addListener(future -> peer.connected(future.isSuccess(), future.cause()));
+        connect.channel().closeFuture().addListener(future -> peers.remove(nodeId, peer));
+        return peer;
+    }
+
+    private void dispatch(String fromNodeId, ClusterMessage message) {
+        metrics.clusterMessageReceived();
+        for (Handler handler : handlers) {
+            try {
+                handler.onMessage(fromNodeId, message);
+            } catch (Exception e) {
+                logger.error("Error handling {} from node {}", message.getClass().getSimpleName(), fromNodeId, e);
+            }
+        }
+    }
+
+    private ClusterMessage.Hello hello() {
+        long timestamp = System.currentTimeMillis();
+        String nonce = UUID.randomUUID().toString();
+        return new ClusterMessage.Hello(localNodeId, timestamp, nonce, sign(localNodeId, timestamp, nonce));
+    }
+
+    private String sign(String nodeId, long timestamp, String nonce) {
+        if (secret == null) {
+            return "";
+        }
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, HMAC_ALGORITHM));
+            byte[] signature = mac.doFinal((nodeId + "|" + timestamp + "|" + nonce).getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(signature);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign cluster Hello", e);
+        }
+    }
+
+    /**
+     * Returns why a Hello must be refused, or null if it comes from another node in the list,
+     * is signed with the cluster's secret, is recent, and has not been seen before.
+     */
+    private String rejectionOf(ClusterMessage.Hello hello) {
+        if (localNodeId.equals(hello.nodeId()) || !nodes.containsKey(hello.nodeId())) {
+            return "node " + hello.nodeId() + " is not in the cluster";
+        }
+        if (secret == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (Math.abs(now - hello.timestamp()) > HELLO_MAX_AGE_MS) {
+            return "Hello from node " + hello.nodeId() + " is too old";
+        }
+        byte[] expected = sign(hello.nodeId(), hello.timestamp(), hello.nonce()).getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(expected, hello.signature().getBytes(StandardCharsets.UTF_8))) {
+            return "Hello from node " + hello.nodeId() + " has a bad signature";
+        }
+        seenNonces.values().removeIf(seenAt -> now - seenAt > 2 * HELLO_MAX_AGE_MS);
+        if (seenNonces.putIfAbsent(hello.nonce(), now) != null) {
+            return "Hello from node " + hello.nodeId() + " was replayed";
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        for (Peer peer : peers.values()) {
+            peer.channel.close();
+        }
+        group.shutdownGracefully();
+    }
+
+    /**
+     * The outbound connection to one peer. Messages sent before the connection is established
+     * are queued; apart from the batching queue, all state is confined to the channel's event loop.
+     */
+    private final class Peer {
+        private final String nodeId;
+        private final Channel channel;
+        private final Queue<ClusterMessage> pending = new ArrayDeque<>();
+        private final Queue<ClusterMessage> outbound = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean drainScheduled = new AtomicBoolean();
+        private boolean connected;
+
+        private Peer(String nodeId, Channel channel) {
+            this.nodeId = nodeId;
+            this.channel = channel;
+        }
+
+        /**
+         * Queues a message, scheduling a drain unless one is already scheduled to pick it up.
+         */
+        private void enqueue(ClusterMessage message) {
+            outbound.add(message);
+            if (drainScheduled.compareAndSet(false, true)) {
+                channel.eventLoop().execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            // Cleared first, so a message queued while draining schedules another drain
+            drainScheduled.set(false);
+            int batch = 0;
+            ClusterMessage message;
+            while ((message = outbound.poll()) != null) {
+                write(message, false);
+                batch++;
+            }
+            if (batch > 0) {
+                channel.flush();
+                metrics.recordClusterBatch(batch);
+            }
+        }
+
+        private void write(ClusterMessage message, boolean flush) {
+            if (connected) {
+                if (flush) {
+                    channel.writeAndFlush(message, channel.voidPromise());
+                } else {
+                    channel.write(message, channel.voidPromise());
+                }
+            } else if (channel.isOpen()) {
+                pending.add(message);
+            } else {
+                logger.warn("Dropping {} for node {}: not connected", message.getClass().getSimpleName(), nodeId);
+            }
+        }
+
+        private void connected(boolean success, Throwable cause) {
+            if (!success) {
+                logger.warn("Could not connect to cluster node {}, dropping {} messages", nodeId, pending.size(), cause);
+                pending.clear();
+                peers.remove(nodeId, this);
+                return;
+            }
+            connected = true;
+            channel.write(hello(), channel.voidPromise());
+            ClusterMessage message;
+            while ((message = pending.poll()) != null) {
+                channel.write(message, channel.voidPromise());
+            }
+            channel.flush();
+        }
+    }
+
+    /**
+     * Handles the messages arriving on a connection a peer opened to this node.
+     */
+    private final class InboundHandler extends SimpleChannelInboundHandler<ClusterMessage> {
+        private String peerNodeId;
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ClusterMessage message) {
+            if (message instanceof ClusterMessage.Hello hello) {
+                String rejection = peerNodeId != null ? "second Hello on the connection" : rejectionOf(hello);
+                if (rejection != null) {
+                    logger.warn("Closing cluster connection from {}: {}", ctx.channel().remoteAddress(), rejection);
+                    ctx.close();
+                    return;
+                }
+                peerNodeId = hello.nodeId();
+                return;
+            }
+            if (peerNodeId == null) {
+                logger.warn("Closing cluster connection from {}: no Hello received", ctx.channel().remoteAddress());
+                ctx.close();
+                return;
+            }
+            dispatch(peerNodeId, message);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.warn("Closing cluster connection from node {}", peerNodeId, cause);
+            ctx.close();
+        }
+    }
+}
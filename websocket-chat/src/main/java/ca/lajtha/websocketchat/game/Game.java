@@ -22,5 +22,12 @@ public interface Game {
      * @param playerId the unique identifier of the player that disconnected
      */
     void handlePlayerDisconnected(String playerId);
+
+    /**
+     * Called when the game is about to stop or move to another node, so it can send what it is
+     * still holding back. It is also the last call a stopping game gets.
+     */
+    default void handleStopping() {
+    }
 }
 
@@ -0,0 +1,47 @@
+package ca.lajtha.websocketchat.game;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Hands out unique, positive game keys from any number of threads without a shared counter.
+ *
+ * The key space is split into stripes: stripe {@code s} of {@code n} issues
+ * {@code s + 1, s + 1 + n, s + 1 + 2n, ...}, so keys from different stripes can never collide.
+ * A thread always draws from the same stripe, picked from its id, and each stripe's counter sits
+ * on its own cache line, so concurrent creators do not contend. Keys are not issued in global
+ * order and may leave gaps, but stay dense enough to key an {@code int} map.
+ */
+public final class GameIdGenerator {
+    // Ints per cache line; only every PADDING-th slot of the array is used
+    private static final int PADDING = 16;
+
+    private final int stripes;
+    private final AtomicIntegerArray counters;
+
+    public GameIdGenerator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param concurrency the number of threads expected to create games at once; rounded up to a
+     *                    power of two
+     */
+    public GameIdGenerator(int concurrency) {
+        this.stripes = concurrency <= 1 ? 1 : Integer.highestOneBit(concurrency - 1) << 1;
+        this.counters = new AtomicIntegerArray(stripes * PADDING);
+    }
+
+    /**
+     * Returns a key no other call to this generator has returned.
+     *
+     * @throws IllegalStateException if the calling thread's stripe has run out of keys
+     */
+    public int nextKey() {
+        int stripe = (int) Thread.currentThread().threadId() & (stripes - 1);
+        int sequence = counters.getAndIncrement(stripe * PADDING);
+        if (sequence < 0 || sequence > (Integer.MAX_VALUE - stripe - 1) / stripes) {
+            throw new IllegalStateException("Game keys exhausted");
+        }
+        return sequence * stripes + stripe + 1;
+    }
+}
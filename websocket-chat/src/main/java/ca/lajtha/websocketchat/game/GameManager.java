@@ -1,159 +1,1049 @@
 package ca.lajtha.websocketchat.game;
 
+import ca.lajtha.websocketchat.cluster.ClusterBus;
+import ca.lajtha.websocketchat.cluster.ClusterMessage;
+import ca.lajtha.websocketchat.cluster.HashRing;
+import ca.lajtha.websocketchat.cluster.RemoteGame;
+import ca.lajtha.websocketchat.game.chat.BroadcastConfig;
 import ca.lajtha.websocketchat.game.chat.ChatGame;
 import ca.lajtha.websocketchat.game.chat.ChatGameModel;
+import ca.lajtha.websocketchat.ids.ConcurrentIntObjectMap;
+import ca.lajtha.websocketchat.ids.IdInterner;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
 import ca.lajtha.websocketchat.server.websocket.MessageSender;
+import io.netty.channel.EventLoopGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
  * Manages multiple games and routes messages to the appropriate game based on player assignments.
  * Implements both Game and PlayerMessageSender interfaces to act as a router between players and games.
  * Created via factory method in ServerModule to handle circular dependencies.
+ *
+ * Internally games and players are keyed by ints: a game's key is the number in its
+ * {@code game-N} id, and a player's key is interned by the shared {@link IdInterner}. String ids
+ * are converted at the public methods and passed on to the games themselves.
+ *
+ * Game keys come from a striped {@link GameIdGenerator}, so concurrent creates never share a
+ * counter, and each game is registered together with its listing info in a single sharded map,
+ * so a game and its info are added and removed as one.
+ *
+ * Once {@link #attachCluster attached to a cluster}, game ids name the node that created them
+ * ({@code game-N@node-1}) and a {@link HashRing} over the ids places each game on a node, its
+ * owner. Every player reaches a game through a {@link RemoteGame} that forwards to the owner,
+ * even when that is this node; on the owner, each player is a remote member whose messages are
+ * sent back to its home node. When the ring's nodes change, games whose owner changed migrate:
+ * the old owner drains the game's mailbox, however long that takes, sends its state and members
+ * to the new owner, then passes on what arrived meanwhile, and the new owner holds back messages
+ * for the game from anyone else until that handoff is complete. The old owner keeps the state it
+ * sent until the new owner acknowledges the handoff, and hosts the game again if it never does.
+ *
+ * Each game runs on a thread of its own unless {@link #runGamesOn given event loops}, in which
+ * case games are spread over the loops and run there, next to the connections.
  */
-public class GameManager implements Game, MessageSender {
+public class GameManager implements KeyedGame, MessageSender {
     private static final Logger logger = LoggerFactory.getLogger(GameManager.class);
-    
-    private final Map<String, SerializedGame> games;
-    private final Map<String, GameInfo> gameInfoMap;
-    private final Map<String, Game> playerToGame = new ConcurrentHashMap<>();
+    private static final String GAME_ID_PREFIX = "game-";
+    private static final long GAME_SHUTDOWN_TIMEOUT_MS = 5000;
+    // How long a node waits for games the ring moved to it, and forwards messages for games it moved away
+    private static final long MIGRATION_TIMEOUT_MS = 10_000;
+    // How long creating a game waits for the owner to host it
+    private static final long CREATE_GAME_TIMEOUT_MS = 5_000;
+    // Moving and stopping games wait on their mailboxes, so they run here rather than on the
+    // common pool, where a few slow games would hold up the delayed cluster tasks
+    private static final ExecutorService GAME_SHUTDOWNS = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread thread = new Thread(r, "GameShutdown");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final ConcurrentIntObjectMap<RegisteredGame> games;
+    private final GameIdGenerator gameIds = new GameIdGenerator();
+    private final ConcurrentIntObjectMap<Game> playerToGame = new ConcurrentIntObjectMap<>();
+    private final IdInterner playerIds;
     private final MessageSender messageSender;
-    private int gameIdCounter = 1;
-    
+    private final ServerMetrics metrics;
+    private final MailboxConfig mailboxConfig;
+    private final BroadcastConfig broadcastConfig;
+    private final Map<String, RemoteMember> remoteMembers = new ConcurrentHashMap<>();
+    // Cluster game ids of the games hosted here, to their local keys
+    private final Map<String, Integer> clusterGameKeys = new ConcurrentHashMap<>();
+    // Games moving to or from this node; also the lock for starting and finishing a migration
+    private final Map<String, Migration> migrations = new ConcurrentHashMap<>();
+    // Games recently moved away, to the node they moved to
+    private final Map<String, String> movedGames = new ConcurrentHashMap<>();
+    // Games moved away whose new owner has not acknowledged them yet
+    private final Map<String, Handoff> handoffs = new ConcurrentHashMap<>();
+    // Games created here for another owner, until it reports hosting them
+    private final Map<String, CompletableFuture<Void>> pendingCreates = new ConcurrentHashMap<>();
+    private volatile ClusterBus cluster;
+    private volatile HashRing ring;
+    private volatile long migrationWindowEndNanos;
+    private volatile EventLoopGroup gameEventLoops;
+
     public GameManager(MessageSender messageSender) {
-        this.games = new ConcurrentHashMap<>();
-        this.gameInfoMap = new ConcurrentHashMap<>();
+        this(messageSender, ServerMetrics.noop(), MailboxConfig.unbounded());
+    }
+
+    public GameManager(MessageSender messageSender, ServerMetrics metrics, MailboxConfig mailboxConfig) {
+        this(messageSender, metrics, mailboxConfig, new IdInterner());
+    }
+
+    /**
+     * @param playerIds the interner player keys come from; it must be the one the
+     *                  {@link KeyedGame} callers use
+     */
+    public GameManager(MessageSender messageSender, ServerMetrics metrics, MailboxConfig mailboxConfig, IdInterner playerIds) {
+        this(messageSender, metrics, mailboxConfig, playerIds, BroadcastConfig.immediate());
+    }
+
+    /**
+     * @param playerIds the interner player keys come from; it must be the one the
+     *                  {@link KeyedGame} callers use
+     * @param broadcastConfig when each game holds back joins, leaves and messages to send them together
+     */
+    public GameManager(MessageSender messageSender, ServerMetrics metrics, MailboxConfig mailboxConfig, IdInterner playerIds,
+                       BroadcastConfig broadcastConfig) {
+        this.games = new ConcurrentIntObjectMap<>();
+        this.playerIds = playerIds;
         this.messageSender = messageSender;
+        this.metrics = metrics;
+        this.mailboxConfig = mailboxConfig;
+        this.broadcastConfig = broadcastConfig;
+    }
+
+    /**
+     * Joins this manager to a cluster, placing games on every node the bus can reach.
+     *
+     * @param bus the bus connecting this node to the others
+     */
+    public void attachCluster(ClusterBus bus) {
+        attachCluster(bus, bus.nodeIds());
+    }
+
+    /**
+     * Joins this manager to a cluster and starts handling the messages other nodes send it.
+     * Must be called before any game is created, since game ids name the node creating them.
+     *
+     * @param bus the bus connecting this node to the others
+     * @param ringNodeIds the nodes games are placed on; every node must start with the same set
+     */
+    public void attachCluster(ClusterBus bus, Collection<String> ringNodeIds) {
+        this.ring = new HashRing(ringNodeIds);
+        this.migrationWindowEndNanos = System.nanoTime();
+        this.cluster = bus;
+        bus.start(this::handleClusterMessage);
+    }
+
+    /**
+     * Runs games hosted from now on on the given event loops, one loop per game, instead of on
+     * a thread of their own. Games already running keep their threads.
+     *
+     * @param eventLoops the loops to spread games over, or null to go back to a thread per game
+     */
+    public void runGamesOn(EventLoopGroup eventLoops) {
+        this.gameEventLoops = eventLoops;
+    }
+
+    /**
+     * Returns the nodes games are placed on, or an empty set if this node is not in a cluster.
+     */
+    public Set<String> getClusterNodes() {
+        HashRing current = ring;
+        return current == null ? Set.of() : current.getNodeIds();
+    }
+
+    /**
+     * Changes the nodes games are placed on, here and on every other node of the old and new
+     * sets, and moves the games this node hosts whose owner changed. To take a node out of
+     * service, call this without it and wait for its games to move before stopping it.
+     *
+     * @param nodeIds the new set of nodes
+     * @throws IllegalStateException if this node is not in a cluster
+     * @throws IllegalArgumentException if the set is empty or names a node the bus cannot reach
+     */
+    public void updateClusterNodes(Collection<String> nodeIds) {
+        ClusterBus bus = cluster;
+        if (bus == null) {
+            throw new IllegalStateException("This node is not part of a cluster");
+        }
+        if (nodeIds.isEmpty() || !bus.nodeIds().containsAll(nodeIds)) {
+            throw new IllegalArgumentException("Cluster nodes must be a non-empty subset of " + bus.nodeIds());
+        }
+        Set<String> notify = new LinkedHashSet<>(ring.getNodeIds());
+        notify.addAll(nodeIds);
+        notify.remove(bus.localNodeId());
+        List<String> members = List.copyOf(nodeIds);
+        applyRing(members);
+        for (String nodeId : notify) {
+            bus.send(nodeId, new ClusterMessage.Membership(members));
+        }
+    }
+
+    private void applyRing(Collection<String> nodeIds) {
+        HashRing next = new HashRing(nodeIds);
+        migrationWindowEndNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MIGRATION_TIMEOUT_MS);
+        ring = next;
+        logger.info("Cluster nodes are now {}", next.getNodeIds());
+        for (RegisteredGame registered : games.values()) {
+            moveIfPlacedElsewhere(registered.info().getGameId());
+        }
+    }
+
+    private void moveIfPlacedElsewhere(String gameId) {
+        String ownerNodeId = ownerOf(gameId);
+        if (!ownerNodeId.equals(cluster.localNodeId())) {
+            // Migrating waits for the game's mailbox to drain, which must not hold up the caller
+            GAME_SHUTDOWNS.execute(() -> migrateGame(gameId, ownerNodeId));
+        }
     }
 
     /**
-     * Creates a new game and returns its ID.
-     * 
+     * Creates a new game and returns its ID. In a cluster the game is created on the node the
+     * ring places it on, and this waits until that node reports hosting it.
+     *
      * @param playerId the ID of the player creating the game
      * @param gameParameters parameters for the game (currently unused, reserved for future use)
      * @return the unique game ID
+     * @throws IllegalStateException if the owner does not host the game in time
      */
     public String createGame(String playerId, Map<String, Object> gameParameters) {
-        String gameId = "game-" + gameIdCounter++;
-        ChatGameModel gameModel = new ChatGameModel();
-        ChatGame chatGame = new ChatGame(gameModel, messageSender);
-        
-        // Wrap the game with SerializedGame to ensure sequential processing
-        SerializedGame serializedGame = new SerializedGame(gameId, chatGame);
-        games.put(gameId, serializedGame);
-        
+        int gameKey = gameIds.nextKey();
+        String gameId = gameIdOf(gameKey);
+
         // Store game info for listing
-        String gameName = gameParameters != null && gameParameters.containsKey("name") 
-            ? (String) gameParameters.get("name") 
+        String gameName = gameParameters != null && gameParameters.containsKey("name")
+            ? (String) gameParameters.get("name")
             : "Game " + gameId;
-        gameInfoMap.put(gameId, new GameInfo(gameId, gameName, playerId, new Date()));
+        ClusterBus bus = cluster;
+        if (bus != null) {
+            String ownerNodeId = ownerOf(gameId);
+            if (!ownerNodeId.equals(bus.localNodeId())) {
+                createRemoteGame(bus, ownerNodeId, new ClusterMessage.CreateGame(gameId, gameName, playerId));
+                return gameId;
+            }
+        }
+        hostGame(gameKey, new GameInfo(gameId, gameName, playerId, new Date()), new ChatGameModel());
         return gameId;
     }
 
+    private void createRemoteGame(ClusterBus bus, String ownerNodeId, ClusterMessage.CreateGame create) {
+        CompletableFuture<Void> created = new CompletableFuture<>();
+        pendingCreates.put(create.gameId(), created);
+        try {
+            bus.send(ownerNodeId, create);
+            created.get(CREATE_GAME_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            throw new IllegalStateException("Node " + ownerNodeId + " did not create game " + create.gameId() + " in time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while creating game " + create.gameId(), e);
+        } finally {
+            pendingCreates.remove(create.gameId(), created);
+        }
+    }
+
+    private RegisteredGame hostGame(int gameKey, GameInfo info, ChatGameModel gameModel) {
+        String gameId = info.getGameId();
+        ChatGame chatGame = new ChatGame(gameModel, this, metrics, broadcastConfig, playerIds);
+
+        // Wrap the game with SerializedGame to ensure sequential processing
+        EventLoopGroup eventLoops = gameEventLoops;
+        SerializedGame serializedGame = new SerializedGame(gameId, chatGame, metrics, mailboxConfig,
+                eventLoops != null ? eventLoops.next() : null);
+        chatGame.scheduleWith(serializedGame);
+        RegisteredGame registered = new RegisteredGame(serializedGame, gameModel, info);
+        games.put(gameKey, registered);
+        if (cluster != null) {
+            clusterGameKeys.put(gameId, gameKey);
+        }
+        return registered;
+    }
+
     /**
      * Joins a player to a game.
      *
      * @param playerId the ID of the player joining
      * @param gameId the ID of the game to join
-     * @throws IllegalArgumentException if the game does not exist
+     * @throws IllegalArgumentException if the game does not exist. In a cluster this is only
+     *         known to the game's owner, which removes the player again if so
      */
     public void joinGame(String playerId, String gameId) {
-        Game game = games.get(gameId);
-        if (game == null) {
+        if (cluster != null) {
+            joinClusterGame(playerIds.intern(playerId), playerId, gameId);
+            return;
+        }
+        int gameKey = parseGameKey(gameId);
+        RegisteredGame registered = gameKey < 0 ? null : games.get(gameKey);
+        if (registered == null) {
             throw new IllegalArgumentException("Game with ID " + gameId + " does not exist");
         }
-        assignPlayerToGame(playerId, gameId);
+        assignPlayerToGame(playerIds.intern(playerId), playerId, gameId, gameKey, registered.game());
+    }
+
+    private String gameIdOf(int gameKey) {
+        ClusterBus bus = cluster;
+        return bus == null ? GAME_ID_PREFIX + gameKey : GAME_ID_PREFIX + gameKey + '@' + bus.localNodeId();
+    }
+
+    private static boolean isClusterGameId(String gameId) {
+        return gameId != null && gameId.startsWith(GAME_ID_PREFIX) && gameId.indexOf('@') > GAME_ID_PREFIX.length();
+    }
+
+    private String ownerOf(String gameId) {
+        return ring.ownerOf(gameId);
+    }
+
+    /**
+     * Returns the local key of a game hosted by this node, or -1 if it is not hosted here.
+     */
+    private int localGameKey(String gameId) {
+        if (cluster == null) {
+            return parseGameKey(gameId);
+        }
+        Integer gameKey = gameId == null ? null : clusterGameKeys.get(gameId);
+        return gameKey == null ? -1 : gameKey;
+    }
+
+    /**
+     * Returns the key in a {@code game-N} id, or -1 if the id is not of that form. Only the
+     * canonical form is accepted, so {@code game-01} or {@code game-+1} do not name game 1.
+     */
+    private static int parseGameKey(String gameId) {
+        if (gameId == null || !gameId.startsWith(GAME_ID_PREFIX) || gameId.length() == GAME_ID_PREFIX.length()) {
+            return -1;
+        }
+        int start = GAME_ID_PREFIX.length();
+        if (gameId.charAt(start) == '0' && gameId.length() > start + 1) {
+            return -1;
+        }
+        for (int i = start; i < gameId.length(); i++) {
+            char c = gameId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        try {
+            return Integer.parseInt(gameId, GAME_ID_PREFIX.length(), gameId.length(), 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     /**
-     * Lists all available games with their descriptions.
-     * 
+     * Lists all available games with their descriptions. In a cluster, only the games hosted
+     * by this node are listed.
+     *
      * @return list of game descriptions
      */
     public List<GameInfo> listGames() {
-        return new ArrayList<>(gameInfoMap.values());
+        List<RegisteredGame> registered = games.values();
+        List<GameInfo> infos = new ArrayList<>(registered.size());
+        for (RegisteredGame game : registered) {
+            infos.add(game.info());
+        }
+        return infos;
     }
 
     /**
-     * Stops a game and disconnects all players.
-     * 
+     * Returns mailbox statistics for every running game.
+     *
+     * @return one snapshot per game, in no particular order
+     */
+    public List<MailboxStats> getMailboxStats() {
+        List<RegisteredGame> registered = games.values();
+        List<MailboxStats> stats = new ArrayList<>(registered.size());
+        for (RegisteredGame game : registered) {
+            stats.add(game.game().getMailboxStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the games that are furthest behind, ordered by the age of their oldest pending task.
+     *
+     * @param limit maximum number of games to return
+     * @return the most lagging games, worst first
+     */
+    public List<MailboxStats> getLaggingGames(int limit) {
+        return getMailboxStats().stream()
+            .sorted(Comparator.comparingLong(MailboxStats::oldestTaskAgeMs)
+                .thenComparingInt(MailboxStats::pendingTasks)
+                .reversed())
+            .limit(Math.max(0, limit))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Stops a game and disconnects all players. Stopping a game hosted by another node asks its
+     * owner to stop it and returns without waiting.
+     *
      * @param gameId the ID of the game to stop
      * @throws IllegalArgumentException if the game does not exist
      */
     public void stopGame(String gameId) {
-        SerializedGame game = games.remove(gameId);
-        if (game == null) {
+        if (stopHostedGame(gameId)) {
+            return;
+        }
+        ClusterBus bus = cluster;
+        if (bus == null || !isClusterGameId(gameId)) {
             throw new IllegalArgumentException("Game with ID " + gameId + " does not exist");
         }
-        
-        // Disconnect all players from this game
-        List<String> playersToRemove = playerToGame.entrySet().stream()
-            .filter(entry -> entry.getValue() == game)
-            .map(Map.Entry::getKey)
-            .collect(Collectors.toList());
-        
-        for (String playerId : playersToRemove) {
-            removePlayerFromGame(playerId);
+        bus.send(ownerOf(gameId), new ClusterMessage.StopGame(gameId));
+    }
+
+    /**
+     * Stops every game hosted here for shutdown, letting each finish the tasks already in its
+     * mailbox. In a cluster, this node first takes itself out of the ring, so its games move to
+     * the remaining nodes with their state and members instead of stopping, and closes the cluster
+     * bus once they are gone.
+     *
+     * @param timeoutMs how long the handoff and the mailboxes may take in all; games still busy
+     *                  after it are stopped outright
+     * @return true if everything drained in time
+     */
+    public boolean drain(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        ClusterBus bus = cluster;
+        if (bus != null) {
+            Set<String> remainingNodes = new LinkedHashSet<>(ring.getNodeIds());
+            if (remainingNodes.remove(bus.localNodeId()) && !remainingNodes.isEmpty()) {
+                logger.info("Handing {} games over to {}", clusterGameKeys.size(), remainingNodes);
+                updateClusterNodes(remainingNodes);
+                while ((!clusterGameKeys.isEmpty() || !migrations.isEmpty() || !handoffs.isEmpty())
+                        && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+            }
+        }
+        List<RegisteredGame> remaining = games.values();
+        if (!remaining.isEmpty()) {
+            logger.info("Draining the mailboxes of {} games", remaining.size());
+        }
+        for (RegisteredGame registered : remaining) {
+            long remainingMs = Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            stopHostedGame(registered.info().getGameId(), remainingMs);
         }
+        if (bus != null) {
+            // After the last RemovedFromGame and MigrationComplete, which the bus still delivers
+            bus.close();
+        }
+        return System.nanoTime() <= deadline;
+    }
 
+    private boolean stopHostedGame(String gameId) {
+        return stopHostedGame(gameId, GAME_SHUTDOWN_TIMEOUT_MS);
+    }
+
+    /**
+     * Stops a game if this node hosts it.
+     *
+     * @param shutdownTimeoutMs how long the game may take to finish the tasks in its mailbox
+     * @return false if the game is not hosted here
+     */
+    private boolean stopHostedGame(String gameId, long shutdownTimeoutMs) {
+        int gameKey = localGameKey(gameId);
+        RegisteredGame registered = gameKey < 0 ? null : games.remove(gameKey);
+        if (registered == null) {
+            return false;
+        }
+        clusterGameKeys.remove(gameId, gameKey);
+        SerializedGame game = registered.game();
 
-            // Give up to 5 seconds for pending tasks to complete
-            boolean shutdown = game.shutdown(5000);
-            if (!shutdown) {
-                logger.warn("Warning: SerializedGame executor for {} did not shutdown gracefully, forcing shutdown", gameId);
-                game.shutdownNow();
+        // Disconnect all players from this game. The game is not told, so they are all still
+        // members when its stop hook sends what it has held back
+        for (int playerKey : playerToGame.keysOf(game)) {
+            playerToGame.remove(playerKey, game);
+            logger.info("Removing player {} from existing game", playerIds.idOf(playerKey));
+        }
+        Map<String, String> removedRemoteMembers = new HashMap<>();
+        if (!remoteMembers.isEmpty()) {
+            for (Map.Entry<String, RemoteMember> entry : remoteMembers.entrySet()) {
+                RemoteMember member = entry.getValue();
+                if (member.game() == game && remoteMembers.remove(entry.getKey(), member)) {
+                    removedRemoteMembers.put(entry.getKey(), member.homeNodeId());
+                }
             }
-        
-        // Remove the game
+        }
+        shutdownGame(gameId, game, shutdownTimeoutMs);
+        // After the stop hook's broadcasts, which reach remote members through their home nodes
+        removedRemoteMembers.forEach((playerId, homeNodeId) ->
+                cluster.send(homeNodeId, new ClusterMessage.RemovedFromGame(gameId, playerId)));
+        return true;
+    }
 
-        gameInfoMap.remove(gameId);
+    private static void shutdownGame(String gameId, SerializedGame game, long timeoutMs) {
+        boolean shutdown = game.shutdown(timeoutMs);
+        if (!shutdown && game.inEventLoop()) {
+            // Stopped from the game's own event loop, which finishes the mailbox once this returns
+            return;
+        }
+        if (!shutdown) {
+            logger.warn("Warning: SerializedGame executor for {} did not shutdown gracefully, forcing shutdown", gameId);
+            game.shutdownNow();
+        }
     }
 
-    private void assignPlayerToGame(String playerId, String gameId) {
+    private void assignPlayerToGame(int playerKey, String playerId, String gameId, int gameKey, SerializedGame game) {
         logger.info("Assigning player {} to game with ID {}", playerId, gameId);
-        removePlayerFromGame(playerId);
-        Game game = games.get(gameId);
-        if (game != null) {
-            playerToGame.put(playerId, game);
+        removePlayerFromGame(playerKey, playerId);
+        playerToGame.put(playerKey, game);
+        try {
             game.handlePlayerConnected(playerId);
+        } catch (RejectedExecutionException e) {
+            // Already shut down; handled below
+        }
+        RegisteredGame current = games.get(gameKey);
+        if (current == null || current.game() != game) {
+            // The game was stopped while the player joined, possibly after stopGame swept its players
+            playerToGame.remove(playerKey, game);
+            throw new IllegalArgumentException("Game with ID " + gameId + " does not exist");
         }
     }
 
-    private void removePlayerFromGame(String playerId) {
-        Game game = playerToGame.remove(playerId);
+    private void joinClusterGame(int playerKey, String playerId, String gameId) {
+        if (!isClusterGameId(gameId)) {
+            throw new IllegalArgumentException("Game with ID " + gameId + " does not exist");
+        }
+        logger.info("Assigning player {} to game with ID {}", playerId, gameId);
+        removePlayerFromGame(playerKey, playerId);
+        RemoteGame game = new RemoteGame(cluster, this::ownerOf, gameId);
+        playerToGame.put(playerKey, game);
+        game.handlePlayerConnected(playerId);
+    }
+
+    private void removePlayerFromGame(int playerKey, String playerId) {
+        Game game = playerToGame.remove(playerKey);
         if (game != null) {
             game.handlePlayerDisconnected(playerId);
             logger.info("Removing player {} from existing game", playerId);
         }
     }
-    
+
+    /**
+     * Routes a player message to the player's game.
+     *
+     * @throws MailboxFullException if the game's mailbox is full
+     */
     @Override
-    public void handlePlayerMessage(String playerId, String message) {
+    public void handlePlayerMessage(int playerKey, String playerId, String message) {
         logger.info("Received player message from {}: {}", playerId, message);
-        Game game = playerToGame.get(playerId);
+        Game game = playerToGame.get(playerKey);
         if (game != null) {
             game.handlePlayerMessage(playerId, message);
         }
     }
-    
+
     @Override
-    public void handlePlayerConnected(String playerId) {
-        if (playerToGame.containsKey(playerId)) {
-            Game game = playerToGame.get(playerId);
+    public void handlePlayerConnected(int playerKey, String playerId) {
+        Game game = playerToGame.get(playerKey);
+        if (game != null) {
             game.handlePlayerConnected(playerId);
         }
     }
-    
+
+    @Override
+    public void handlePlayerDisconnected(int playerKey, String playerId) {
+        removePlayerFromGame(playerKey, playerId);
+    }
+
+    @Override
+    public void handlePlayerMessage(String playerId, String message) {
+        int playerKey = playerIds.indexOf(playerId);
+        if (playerKey >= 0) {
+            handlePlayerMessage(playerKey, playerId, message);
+        }
+    }
+
+    @Override
+    public void handlePlayerConnected(String playerId) {
+        int playerKey = playerIds.indexOf(playerId);
+        if (playerKey >= 0) {
+            handlePlayerConnected(playerKey, playerId);
+        }
+    }
+
     @Override
     public void handlePlayerDisconnected(String playerId) {
-        removePlayerFromGame(playerId);
+        int playerKey = playerIds.indexOf(playerId);
+        if (playerKey >= 0) {
+            removePlayerFromGame(playerKey, playerId);
+        }
     }
+
+    /**
+     * Sends a message from a game to a player, over the cluster if the player is connected to
+     * another node.
+     */
     @Override
     public void sendMessage(String playerId, String message) {
-        messageSender.sendMessage(playerId, message);
+        sendMessage(-1, playerId, message);
+    }
+
+    @Override
+    public void sendMessage(int playerKey, String playerId, String message) {
+        RemoteMember member = remoteMembers.isEmpty() ? null : remoteMembers.get(playerId);
+        if (member != null) {
+            cluster.send(member.homeNodeId(), new ClusterMessage.Deliver(playerId, message));
+        } else if (playerKey >= 0) {
+            messageSender.sendMessage(playerKey, playerId, message);
+        } else {
+            messageSender.sendMessage(playerId, message);
+        }
+    }
+
+    private void handleClusterMessage(String fromNodeId, ClusterMessage message) {
+        switch (message) {
+            case ClusterMessage.CreateGame create -> hostCreatedGame(fromNodeId, create);
+            case ClusterMessage.GameCreated created -> {
+                CompletableFuture<Void> pending = pendingCreates.get(created.gameId());
+                if (pending != null) {
+                    pending.complete(null);
+                }
+            }
+            case ClusterMessage.JoinGame join -> handleGameOperation(fromNodeId, join.gameId(), join);
+            case ClusterMessage.LeaveGame leave -> handleGameOperation(fromNodeId, leave.gameId(), leave);
+            case ClusterMessage.PlayerMessage playerMessage ->
+                    handleGameOperation(fromNodeId, playerMessage.gameId(), playerMessage);
+            case ClusterMessage.StopGame stop -> handleGameOperation(fromNodeId, stop.gameId(), stop);
+            case ClusterMessage.Deliver deliver -> messageSender.sendMessage(deliver.playerId(), deliver.message());
+            case ClusterMessage.RemovedFromGame removed -> removeFromRemoteGame(removed.gameId(), removed.playerId());
+            case ClusterMessage.Membership membership -> applyRing(membership.nodeIds());
+            case ClusterMessage.MigrateGame migrate -> receiveMigratedGame(fromNodeId, migrate.gameId(), migrate.snapshot());
+            case ClusterMessage.MigrationComplete complete -> completeMigration(fromNodeId, complete.gameId());
+            case ClusterMessage.MigrationAck ack -> finishHandoff(fromNodeId, ack.gameId(), ack.restored());
+            case ClusterMessage.Hello hello -> {
+            }
+            case ClusterMessage.Presence presence -> {
+                // Handled by the presence directory
+            }
+        }
+    }
+
+    private void hostCreatedGame(String fromNodeId, ClusterMessage.CreateGame create) {
+        hostGame(gameIds.nextKey(), new GameInfo(create.gameId(), create.name(), create.creatorId(), new Date()),
+                new ChatGameModel());
+        cluster.send(fromNodeId, new ClusterMessage.GameCreated(create.gameId()));
+        // The creator may have placed it with a ring that has changed since
+        moveIfPlacedElsewhere(create.gameId());
+    }
+
+    /**
+     * Routes a join, leave, player message or stop sent to this node as a game's owner.
+     */
+    private void handleGameOperation(String fromNodeId, String gameId, ClusterMessage operation) {
+        if (!migrations.isEmpty() && holdForMigration(fromNodeId, gameId, operation)) {
+            return;
+        }
+        if (applyToHostedGame(gameId, operation)) {
+            return;
+        }
+        // Not hosted here, or the game stopped or started moving after it was looked up
+        if (!migrations.isEmpty() && holdForMigration(fromNodeId, gameId, operation)) {
+            return;
+        }
+        String movedTo = movedGames.get(gameId);
+        if (movedTo != null) {
+            cluster.send(movedTo, operation);
+        } else if (!ownerOf(gameId).equals(cluster.localNodeId()) || !awaitMigratedGame(fromNodeId, gameId, operation)) {
+            rejectOperation(gameId, operation);
+        }
+    }
+
+    /**
+     * Applies an operation to a game hosted here.
+     *
+     * @return false if the game is not hosted here or no longer accepts operations
+     */
+    private boolean applyToHostedGame(String gameId, ClusterMessage operation) {
+        int gameKey = localGameKey(gameId);
+        RegisteredGame registered = gameKey < 0 ? null : games.get(gameKey);
+        if (registered == null) {
+            return false;
+        }
+        try {
+            switch (operation) {
+                case ClusterMessage.JoinGame join -> addRemoteMember(join.homeNodeId(), gameId, gameKey, registered, join.playerId());
+                case ClusterMessage.LeaveGame leave -> removeRemoteMember(gameKey, leave.playerId());
+                case ClusterMessage.PlayerMessage playerMessage ->
+                        handleRemotePlayerMessage(gameKey, gameId, playerMessage.playerId(), playerMessage.message());
+                // Stopping waits for the game to drain, which must not hold up the bus
+                case ClusterMessage.StopGame stop -> GAME_SHUTDOWNS.execute(() -> stopHostedGame(gameId));
+                default -> throw new IllegalArgumentException("Not a game operation: " + operation);
+            }
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void rejectOperation(String gameId, ClusterMessage operation) {
+        if (operation instanceof ClusterMessage.JoinGame join) {
+            cluster.send(join.homeNodeId(), new ClusterMessage.RemovedFromGame(gameId, join.playerId()));
+        } else {
+            logger.debug("Dropping {} for game {}: not hosted here", operation.getClass().getSimpleName(), gameId);
+        }
+    }
+
+    private void addRemoteMember(String homeNodeId, String gameId, int gameKey, RegisteredGame registered, String playerId) {
+        SerializedGame game = registered.game();
+        RemoteMember member = new RemoteMember(homeNodeId, gameKey, game);
+        RemoteMember previous = remoteMembers.put(playerId, member);
+        try {
+            if (previous != null && previous.game() != game) {
+                previous.game().handlePlayerDisconnected(playerId);
+            }
+        } catch (RejectedExecutionException e) {
+            // The previous game has stopped
+        }
+        try {
+            game.handlePlayerConnected(playerId);
+        } catch (RejectedExecutionException e) {
+            remoteMembers.remove(playerId, member);
+            throw e;
+        }
+        // A migration takes the members once the mailbox has drained, so only a stop can have missed this one
+        if (games.get(gameKey) != registered && !migrations.containsKey(gameId) && remoteMembers.remove(playerId, member)) {
+            cluster.send(homeNodeId, new ClusterMessage.RemovedFromGame(gameId, playerId));
+        }
+    }
+
+    private void removeRemoteMember(int gameKey, String playerId) {
+        RemoteMember member = remoteMembers.get(playerId);
+        if (member != null && member.gameKey() == gameKey && remoteMembers.remove(playerId, member)) {
+            try {
+                member.game().handlePlayerDisconnected(playerId);
+            } catch (RejectedExecutionException e) {
+                // Moving away: leave the member for the migration, which passes this leave on
+                remoteMembers.putIfAbsent(playerId, member);
+                throw e;
+            }
+        }
+    }
+
+    private void handleRemotePlayerMessage(int gameKey, String gameId, String playerId, String message) {
+        RemoteMember member = remoteMembers.get(playerId);
+        if (member == null || member.gameKey() != gameKey) {
+            logger.debug("Dropping message from {} for game {}: not a member", playerId, gameId);
+            return;
+        }
+        try {
+            member.game().handlePlayerMessage(playerId, message);
+        } catch (MailboxFullException e) {
+            // The sender's socket is on another node, so reading cannot be paused from here
+            if (!e.isAccepted()) {
+                logger.debug("Dropping message from {} for game {}: mailbox full", playerId, gameId);
+            }
+        }
+    }
+
+    private void removeFromRemoteGame(String gameId, String playerId) {
+        int playerKey = playerIds.indexOf(playerId);
+        if (playerKey >= 0 && playerToGame.get(playerKey) instanceof RemoteGame game
+                && game.getGameId().equals(gameId) && playerToGame.remove(playerKey, game)) {
+            logger.info("Player {} was removed from game {} by its owner", playerId, gameId);
+        }
+    }
+
+    /**
+     * Holds back an operation for a game that is moving to or from this node.
+     *
+     * @return false if the operation can be applied now
+     */
+    private boolean holdForMigration(String fromNodeId, String gameId, ClusterMessage operation) {
+        synchronized (migrations) {
+            Migration migration = migrations.get(gameId);
+            if (migration == null || migration.accepts(fromNodeId)) {
+                return false;
+            }
+            migration.held.add(new HeldOperation(fromNodeId, operation));
+            return true;
+        }
+    }
+
+    /**
+     * Holds back an operation for a game the ring recently placed here but that has not arrived.
+     *
+     * @return false if the ring has not changed recently, so the game does not exist
+     */
+    private boolean awaitMigratedGame(String fromNodeId, String gameId, ClusterMessage operation) {
+        synchronized (migrations) {
+            if (System.nanoTime() - migrationWindowEndNanos > 0) {
+                return false;
+            }
+            Migration migration = migrations.get(gameId);
+            if (migration == null) {
+                migration = new Migration(false, null);
+                migrations.put(gameId, migration);
+                expireIncomingMigration(gameId, migration);
+            }
+            migration.held.add(new HeldOperation(fromNodeId, operation));
+            return true;
+        }
+    }
+
+    /**
+     * Moves a game hosted here to another node.
+     */
+    private void migrateGame(String gameId, String targetNodeId) {
+        Migration migration = new Migration(true, targetNodeId);
+        synchronized (migrations) {
+            if (migrations.putIfAbsent(gameId, migration) != null) {
+                // Still arriving; it is placed again once it has
+                return;
+            }
+        }
+        long start = System.nanoTime();
+        int gameKey = localGameKey(gameId);
+        RegisteredGame registered = gameKey < 0 ? null : games.remove(gameKey);
+        if (registered == null) {
+            // Stopped meanwhile
+            synchronized (migrations) {
+                migrations.remove(gameId);
+                migration.held.forEach(held -> rejectOperation(gameId, held.operation()));
+            }
+            return;
+        }
+        clusterGameKeys.remove(gameId, gameKey);
+        SerializedGame game = registered.game();
+        // Runs everything already in the mailbox. Operations arriving from now on are held
+        if (!game.shutdown(GAME_SHUTDOWN_TIMEOUT_MS)) {
+            abortMigration(gameId, game, migration, targetNodeId);
+            return;
+        }
+
+        Map<String, String> members = new HashMap<>();
+        for (Map.Entry<String, RemoteMember> entry : remoteMembers.entrySet()) {
+            RemoteMember member = entry.getValue();
+            if (member.game() == game && remoteMembers.remove(entry.getKey(), member)) {
+                members.put(entry.getKey(), member.homeNodeId());
+            }
+        }
+        GameInfo info = registered.info();
+        GameSnapshot snapshot = new GameSnapshot(info.getName(), info.getCreatorId(), info.getCreatedAt().getTime(),
+                registered.model().snapshot(), members);
+        Handoff handoff = new Handoff(targetNodeId, snapshot);
+        synchronized (migrations) {
+            handoffs.put(gameId, handoff);
+            cluster.send(targetNodeId, new ClusterMessage.MigrateGame(gameId, snapshot.toJson()));
+            for (HeldOperation held : migration.held) {
+                cluster.send(targetNodeId, held.operation());
+            }
+            cluster.send(targetNodeId, new ClusterMessage.MigrationComplete(gameId));
+            movedGames.put(gameId, targetNodeId);
+            migrations.remove(gameId);
+        }
+        CompletableFuture.delayedExecutor(MIGRATION_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .execute(() -> movedGames.remove(gameId, targetNodeId));
+        // Longer than the new owner waits for the rest of the handoff, after which it acknowledges what it has
+        CompletableFuture.delayedExecutor(2 * MIGRATION_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .execute(() -> reclaimGame(gameId, handoff, "it did not acknowledge the game"));
+        long pause = System.nanoTime() - start;
+        metrics.recordGameMigration(pause);
+        logger.info("Moved game {} with {} members to node {} in {} ms",
+                gameId, members.size(), targetNodeId, TimeUnit.NANOSECONDS.toMillis(pause));
+    }
+
+    /**
+     * Gives up moving a game whose mailbox did not drain in time. Its state cannot be taken
+     * while tasks still run, so the game is stopped here and its members and held operations
+     * turned away, as when the game is stopped.
+     */
+    private void abortMigration(String gameId, SerializedGame game, Migration migration, String targetNodeId) {
+        logger.error("Game {} did not drain within {} ms, stopping it instead of moving it to node {}",
+                gameId, GAME_SHUTDOWN_TIMEOUT_MS, targetNodeId);
+        game.shutdownNow();
+        for (int playerKey : playerToGame.keysOf(game)) {
+            playerToGame.remove(playerKey, game);
+        }
+        for (Map.Entry<String, RemoteMember> entry : remoteMembers.entrySet()) {
+            RemoteMember member = entry.getValue();
+            if (member.game() == game && remoteMembers.remove(entry.getKey(), member)) {
+                cluster.send(member.homeNodeId(), new ClusterMessage.RemovedFromGame(gameId, entry.getKey()));
+            }
+        }
+        synchronized (migrations) {
+            migrations.remove(gameId);
+            migration.held.forEach(held -> rejectOperation(gameId, held.operation()));
+        }
+    }
+
+    /**
+     * Stops waiting for the new owner of a game moved away, hosting the game again unless it
+     * was restored there.
+     */
+    private void finishHandoff(String fromNodeId, String gameId, boolean restored) {
+        Handoff handoff = handoffs.get(gameId);
+        if (handoff == null || !handoff.targetNodeId().equals(fromNodeId)) {
+            return;
+        }
+        if (restored) {
+            handoffs.remove(gameId, handoff);
+        } else {
+            reclaimGame(gameId, handoff, "it could not restore the game");
+        }
+    }
+
+    private void reclaimGame(String gameId, Handoff handoff, String reason) {
+        if (!handoffs.remove(gameId, handoff)) {
+            return;
+        }
+        synchronized (migrations) {
+            movedGames.remove(gameId, handoff.targetNodeId());
+            restoreGame(gameId, handoff.snapshot());
+        }
+        logger.error("Game {} did not move to node {}: {}. Hosting it here again", gameId, handoff.targetNodeId(), reason);
+    }
+
+    private void receiveMigratedGame(String fromNodeId, String gameId, String snapshotJson) {
+        GameSnapshot snapshot;
+        try {
+            snapshot = GameSnapshot.fromJson(snapshotJson);
+        } catch (IllegalArgumentException e) {
+            logger.error("Could not restore game {} from node {}, leaving it there", gameId, fromNodeId, e);
+            refuseMigratedGame(fromNodeId, gameId);
+            return;
+        }
+        synchronized (migrations) {
+            Migration migration = migrations.get(gameId);
+            if (migration != null && migration.outgoing) {
+                logger.warn("Ignoring game {} from node {}: it is moving away from this node", gameId, fromNodeId);
+                return;
+            }
+            if (migration == null) {
+                migration = new Migration(false, fromNodeId);
+                migrations.put(gameId, migration);
+                expireIncomingMigration(gameId, migration);
+            }
+            migration.peerNodeId = fromNodeId;
+            migration.restored = true;
+            movedGames.remove(gameId);
+            restoreGame(gameId, snapshot);
+        }
+        logger.info("Took over game {} with {} members from node {}", gameId, snapshot.members().size(), fromNodeId);
+    }
+
+    /**
+     * Tells the old owner to keep a game that could not be restored here, and sends it what
+     * arrives here for the game meanwhile, starting with the operations held for it.
+     */
+    private void refuseMigratedGame(String fromNodeId, String gameId) {
+        synchronized (migrations) {
+            cluster.send(fromNodeId, new ClusterMessage.MigrationAck(gameId, false));
+            Migration migration = migrations.get(gameId);
+            if (migration != null && !migration.outgoing) {
+                migrations.remove(gameId);
+                migration.held.forEach(held -> cluster.send(fromNodeId, held.operation()));
+            }
+            movedGames.put(gameId, fromNodeId);
+        }
+        CompletableFuture.delayedExecutor(MIGRATION_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .execute(() -> movedGames.remove(gameId, fromNodeId));
+    }
+
+    private void restoreGame(String gameId, GameSnapshot snapshot) {
+        int gameKey = gameIds.nextKey();
+        GameInfo info = new GameInfo(gameId, snapshot.name(), snapshot.creatorId(), new Date(snapshot.createdAt()));
+        RegisteredGame registered = hostGame(gameKey, info, ChatGameModel.restore(snapshot.chat()));
+        snapshot.members().forEach((playerId, homeNodeId) ->
+                remoteMembers.put(playerId, new RemoteMember(homeNodeId, gameKey, registered.game())));
+    }
+
+    private void completeMigration(String fromNodeId, String gameId) {
+        synchronized (migrations) {
+            Migration migration = migrations.get(gameId);
+            if (migration == null || migration.outgoing) {
+                return;
+            }
+            // Replayed while still registered, so nothing arriving meanwhile can overtake these
+            replayHeldOperations(gameId, migration);
+            migrations.remove(gameId);
+            cluster.send(fromNodeId, new ClusterMessage.MigrationAck(gameId, true));
+        }
+        // The ring may have changed again while the game was on its way
+        if (localGameKey(gameId) >= 0) {
+            moveIfPlacedElsewhere(gameId);
+        }
+    }
+
+    private void expireIncomingMigration(String gameId, Migration migration) {
+        CompletableFuture.delayedExecutor(MIGRATION_TIMEOUT_MS, TimeUnit.MILLISECONDS).execute(() -> {
+            synchronized (migrations) {
+                if (migrations.get(gameId) != migration) {
+                    return;
+                }
+                logger.warn("Game {} did not finish moving to this node within {} ms", gameId, MIGRATION_TIMEOUT_MS);
+                replayHeldOperations(gameId, migration);
+                migrations.remove(gameId);
+                if (migration.restored) {
+                    // Keeping what did arrive, so the old owner must not host the game again
+                    cluster.send(migration.peerNodeId, new ClusterMessage.MigrationAck(gameId, true));
+                }
+            }
+        });
+    }
+
+    private void replayHeldOperations(String gameId, Migration migration) {
+        for (HeldOperation held : migration.held) {
+            if (!applyToHostedGame(gameId, held.operation())) {
+                rejectOperation(gameId, held.operation());
+            }
+        }
+        migration.held.clear();
+    }
+
+    private record RegisteredGame(SerializedGame game, ChatGameModel model, GameInfo info) {
+    }
+
+    /**
+     * A player, connected to this node or another, in a game hosted by this one.
+     */
+    private record RemoteMember(String homeNodeId, int gameKey, SerializedGame game) {
+    }
+
+    private record HeldOperation(String fromNodeId, ClusterMessage operation) {
+    }
+
+    /**
+     * A game moved to another node, kept until that node acknowledges it.
+     */
+    private record Handoff(String targetNodeId, GameSnapshot snapshot) {
+    }
+
+    /**
+     * A game moving to or from this node, and the operations held back until it has.
+     * Guarded by the {@code migrations} map's monitor.
+     */
+    private static final class Migration {
+        private final boolean outgoing;
+        private final List<HeldOperation> held = new ArrayList<>();
+        // The node it moves to, or once known, the node it moves from
+        private String peerNodeId;
+        private boolean restored;
+
+        private Migration(boolean outgoing, String peerNodeId) {
+            this.outgoing = outgoing;
+            this.peerNodeId = peerNodeId;
+        }
+
+        /**
+         * Once the game has arrived, the old owner's operations are applied in the order it
+         * received them; everyone else's wait until it has passed all of them on.
+         */
+        private boolean accepts(String fromNodeId) {
+            return !outgoing && restored && fromNodeId.equals(peerNodeId);
+        }
     }
-}
\ No newline at end of file
+}
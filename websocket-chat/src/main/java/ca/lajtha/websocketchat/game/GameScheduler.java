@@ -0,0 +1,18 @@
+package ca.lajtha.websocketchat.game;
+
+/**
+ * Runs delayed work on a game's thread, in order with the game's other events, so a game can
+ * act on timers without any locking of its own.
+ */
+@FunctionalInterface
+public interface GameScheduler {
+
+    /**
+     * Runs a task on the game's thread once the delay has passed. The task is dropped if the
+     * game has stopped by then.
+     *
+     * @param task the task to run
+     * @param delayMs how long to wait first, in milliseconds
+     */
+    void schedule(Runnable task, long delayMs);
+}
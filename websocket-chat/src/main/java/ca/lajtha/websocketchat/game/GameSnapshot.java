@@ -0,0 +1,37 @@
+package ca.lajtha.websocketchat.game;
+
+import ca.lajtha.websocketchat.game.chat.ChatGameModel;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Map;
+
+/**
+ * Everything a node needs to take over a game from its previous owner.
+ *
+ * @param name the game's listed name
+ * @param creatorId the player who created the game
+ * @param createdAt when the game was created, in epoch milliseconds
+ * @param chat the chat's state
+ * @param members the home node of every player in the game, by player id
+ */
+record GameSnapshot(String name, String creatorId, long createdAt, ChatGameModel.Snapshot chat,
+                    Map<String, String> members) {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    String toJson() {
+        try {
+            return objectMapper.writeValueAsString(this);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Failed to serialize game snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    static GameSnapshot fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, GameSnapshot.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid game snapshot: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ca.lajtha.websocketchat.game;
+
+/**
+ * A {@link Game} that can be addressed by a player's interned int key as well as by the
+ * player's id, so routing layers can look players up without hashing Strings.
+ * Both are passed, the key for routing and the id for the game logic behind it.
+ */
+public interface KeyedGame extends Game {
+
+    void handlePlayerMessage(int playerKey, String playerId, String message);
+
+    void handlePlayerConnected(int playerKey, String playerId);
+
+    void handlePlayerDisconnected(int playerKey, String playerId);
+
+    /**
+     * Returns the game itself if it is keyed, otherwise a view that ignores the keys.
+     */
+    static KeyedGame of(Game game) {
+        if (game instanceof KeyedGame keyed) {
+            return keyed;
+        }
+        return new KeyedGame() {
+            @Override
+            public void handlePlayerMessage(int playerKey, String playerId, String message) {
+                game.handlePlayerMessage(playerId, message);
+            }
+
+            @Override
+            public void handlePlayerConnected(int playerKey, String playerId) {
+                game.handlePlayerConnected(playerId);
+            }
+
+            @Override
+            public void handlePlayerDisconnected(int playerKey, String playerId) {
+                game.handlePlayerDisconnected(playerId);
+            }
+
+            @Override
+            public void handlePlayerMessage(String playerId, String message) {
+                game.handlePlayerMessage(playerId, message);
+            }
+
+            @Override
+            public void handlePlayerConnected(String playerId) {
+                game.handlePlayerConnected(playerId);
+            }
+
+            @Override
+            public void handlePlayerDisconnected(String playerId) {
+                game.handlePlayerDisconnected(playerId);
+            }
+        };
+    }
+}
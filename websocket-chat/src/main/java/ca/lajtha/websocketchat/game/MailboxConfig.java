@@ -0,0 +1,28 @@
+package ca.lajtha.websocketchat.game;
+
+/**
+ * Sizing and overflow behaviour of a game's mailbox.
+ *
+ * @param capacity maximum number of pending player messages; 0 or less means unbounded
+ * @param overflowPolicy what to do with a player message once the mailbox is full
+ */
+public record MailboxConfig(int capacity, MailboxOverflowPolicy overflowPolicy) {
+
+    /**
+     * Returns a mailbox configuration without a capacity limit.
+     */
+    public static MailboxConfig unbounded() {
+        return new MailboxConfig(0, MailboxOverflowPolicy.REJECT);
+    }
+
+    public boolean isBounded() {
+        return capacity > 0;
+    }
+
+    /**
+     * The depth at which a paused sender is allowed to resume reading.
+     */
+    public int resumeThreshold() {
+        return capacity / 2;
+    }
+}
@@ -0,0 +1,48 @@
+package ca.lajtha.websocketchat.game;
+
+/**
+ * Thrown when a player message reaches a game whose mailbox is at capacity.
+ *
+ * The exception tells the caller which {@link MailboxOverflowPolicy} applies and whether the
+ * message was still accepted (as it is with {@link MailboxOverflowPolicy#PAUSE_READING}).
+ * Stack traces are not captured, since this is expected flow control under load.
+ */
+public class MailboxFullException extends RuntimeException {
+    private final String gameId;
+    private final MailboxOverflowPolicy policy;
+    private final boolean accepted;
+    private final transient SerializedGame game;
+
+    MailboxFullException(SerializedGame game, MailboxOverflowPolicy policy, boolean accepted) {
+        super("Mailbox of game " + game.getGameId() + " is full", null, false, false);
+        this.gameId = game.getGameId();
+        this.policy = policy;
+        this.accepted = accepted;
+        this.game = game;
+    }
+
+    public String getGameId() {
+        return gameId;
+    }
+
+    public MailboxOverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns whether the message was queued despite the mailbox being full.
+     */
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    /**
+     * Runs the callback once the game's mailbox has drained below its resume threshold.
+     * Runs it immediately if that is already the case.
+     *
+     * @param callback the action to run, typically re-enabling reads on the sender's channel
+     */
+    public void resumeWhenDrained(Runnable callback) {
+        game.whenDrained(callback);
+    }
+}
@@ -0,0 +1,81 @@
+package ca.lajtha.websocketchat.game;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import ca.lajtha.websocketchat.server.ServerConfig;
+import io.micronaut.context.annotation.Context;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically checks every game's mailbox and raises an alert when the oldest pending
+ * task has been waiting longer than the configured threshold.
+ *
+ * An alert is logged and counted once when a game crosses the threshold, and a recovery
+ * is logged when it drops back below, so a stuck room does not flood the log.
+ */
+@Context
+public class MailboxLagMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(MailboxLagMonitor.class);
+
+    private final GameManager gameManager;
+    private final ServerMetrics metrics;
+    private final long thresholdMs;
+    private final ScheduledExecutorService scheduler;
+    private final Set<String> laggingGames = new HashSet<>();
+
+    @Inject
+    public MailboxLagMonitor(GameManager gameManager, ServerConfig config, ServerMetrics metrics) {
+        this.gameManager = gameManager;
+        this.metrics = metrics;
+        this.thresholdMs = config.getMailboxLagAlertThresholdMs();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MailboxLagMonitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMs = Math.max(100, config.getMailboxLagCheckIntervalMs());
+        scheduler.scheduleWithFixedDelay(this::check, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs one check over all games. Called from the monitor thread only.
+     */
+    void check() {
+        try {
+            Set<String> stillLagging = new HashSet<>();
+            for (MailboxStats stats : gameManager.getMailboxStats()) {
+                if (stats.oldestTaskAgeMs() < thresholdMs) {
+                    continue;
+                }
+                stillLagging.add(stats.gameId());
+                if (!laggingGames.contains(stats.gameId())) {
+                    metrics.mailboxLagAlert();
+                    logger.warn("Game {} is lagging: oldest task waited {} ms (threshold {} ms), {} tasks pending",
+                            stats.gameId(), stats.oldestTaskAgeMs(), thresholdMs, stats.pendingTasks());
+                }
+            }
+            for (String gameId : laggingGames) {
+                if (!stillLagging.contains(gameId)) {
+                    logger.info("Game {} caught up with its mailbox", gameId);
+                }
+            }
+            laggingGames.clear();
+            laggingGames.addAll(stillLagging);
+        } catch (Exception e) {
+            logger.error("Error checking game mailbox lag", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,22 @@
+package ca.lajtha.websocketchat.game;
+
+/**
+ * What happens to a player message that arrives while a game's mailbox is full.
+ */
+public enum MailboxOverflowPolicy {
+    /**
+     * The message is discarded and the sender receives an error frame.
+     */
+    REJECT,
+
+    /**
+     * The message is silently discarded.
+     */
+    DROP,
+
+    /**
+     * The message is accepted, and the sender's connection stops reading until the
+     * mailbox drains, so the backlog stays in the kernel socket buffer instead of the heap.
+     */
+    PAUSE_READING
+}
@@ -0,0 +1,21 @@
+package ca.lajtha.websocketchat.game;
+
+/**
+ * Point-in-time statistics for a single game's mailbox.
+ *
+ * @param gameId the game identifier
+ * @param pendingTasks number of tasks queued or running
+ * @param oldestTaskAgeMs how long the oldest waiting task has been queued
+ * @param lastQueueWaitMs queue wait of the most recently started task
+ * @param maxQueueWaitMs longest queue wait observed since the game was created
+ * @param processedTasks number of tasks processed since the game was created
+ */
+public record MailboxStats(
+    String gameId,
+    int pendingTasks,
+    long oldestTaskAgeMs,
+    long lastQueueWaitMs,
+    long maxQueueWaitMs,
+    long processedTasks
+) {
+}
@@ -1,82 +1,471 @@
 package ca.lajtha.websocketchat.game;
 
+import ca.lajtha.websocketchat.metrics.MailboxMetrics;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.channel.EventLoop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Wraps a Game instance to ensure all operations are processed sequentially,
  * eliminating race conditions and parallel execution issues.
- * 
- * Each game gets its own single-threaded executor that processes all game
+ *
+ * Each game gets its own mailbox and single-threaded executor that processes all game
  * operations (handlePlayerMessage, handlePlayerConnected, handlePlayerDisconnected)
- * in a serialized manner.
+ * in a serialized manner. Every task is stamped when it is enqueued, so the game can
+ * report its queue depth, the age of its oldest pending task, and how long tasks
+ * waited and ran.
+ *
+ * The mailbox can be bounded. Once it holds {@link MailboxConfig#capacity()} tasks, player
+ * messages are refused with a {@link MailboxFullException} carrying the configured
+ * {@link MailboxOverflowPolicy}. Connection and disconnection events are always accepted so
+ * membership never gets out of sync.
+ *
+ * As a {@link GameScheduler} it runs delayed tasks through the same mailbox. The delays are
+ * timed on one thread shared by all games, which only hands each task to its game's mailbox,
+ * or by the game's event loop.
+ *
+ * Instead of a thread of its own, a game can be pinned to a Netty {@link EventLoop}. The mailbox
+ * is then drained on that loop, at once if the task was enqueued there, and the loop's order
+ * keeps the game single-threaded. A drain yields the loop to its I/O every
+ * {@value #EVENT_LOOP_TASK_BUDGET} tasks, and the game must never block, since every
+ * connection on the loop would wait with it.
  */
-public class SerializedGame implements Game {
+public class SerializedGame implements Game, GameScheduler {
     private static final Logger logger = LoggerFactory.getLogger(SerializedGame.class);
-    
+    private static final ScheduledExecutorService TIMERS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "GameTimers");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final int EVENT_LOOP_TASK_BUDGET = 64;
+
     private final Game delegate;
+    // Exactly one of these runs the game
     private final ExecutorService executor;
+    private final EventLoop eventLoop;
+    private volatile boolean stopped;
     private final String gameId;
-    
+    private final Queue<MailboxTask> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong processedTasks = new AtomicLong();
+    private final MailboxMetrics mailboxMetrics;
+    private final ServerMetrics metrics;
+    private final MailboxConfig mailboxConfig;
+    private final Queue<Runnable> drainListeners = new ConcurrentLinkedQueue<>();
+    private volatile long lastQueueWaitNanos;
+    private volatile long maxQueueWaitNanos;
+
     /**
      * Creates a new SerializedGame wrapper around the given game.
-     * 
+     *
      * @param gameId the unique identifier for this game (used for thread naming)
      * @param delegate the game instance to wrap
      */
     public SerializedGame(String gameId, Game delegate) {
+        this(gameId, delegate, ServerMetrics.noop());
+    }
+
+    /**
+     * Creates a new SerializedGame wrapper that reports its mailbox metrics.
+     *
+     * @param gameId the unique identifier for this game (used for thread naming and metric tags)
+     * @param delegate the game instance to wrap
+     * @param metrics the metrics the mailbox meters are registered with
+     */
+    public SerializedGame(String gameId, Game delegate, ServerMetrics metrics) {
+        this(gameId, delegate, metrics, MailboxConfig.unbounded());
+    }
+
+    /**
+     * Creates a new SerializedGame wrapper with a bounded mailbox.
+     *
+     * @param gameId the unique identifier for this game (used for thread naming and metric tags)
+     * @param delegate the game instance to wrap
+     * @param metrics the metrics the mailbox meters are registered with
+     * @param mailboxConfig the mailbox capacity and overflow policy
+     */
+    public SerializedGame(String gameId, Game delegate, ServerMetrics metrics, MailboxConfig mailboxConfig) {
+        this(gameId, delegate, metrics, mailboxConfig, null);
+    }
+
+    /**
+     * Creates a new SerializedGame wrapper with a bounded mailbox, run on an event loop.
+     *
+     * @param gameId the unique identifier for this game (used for thread naming and metric tags)
+     * @param delegate the game instance to wrap
+     * @param metrics the metrics the mailbox meters are registered with
+     * @param mailboxConfig the mailbox capacity and overflow policy
+     * @param eventLoop the event loop the game runs on, or null to give it a thread of its own
+     */
+    public SerializedGame(String gameId, Game delegate, ServerMetrics metrics, MailboxConfig mailboxConfig,
+                          EventLoop eventLoop) {
         this.gameId = gameId;
         this.delegate = delegate;
-        // Create a single-threaded executor for this game
-        this.executor = Executors.newSingleThreadExecutor(r -> {
+        this.metrics = metrics;
+        this.mailboxConfig = mailboxConfig;
+        this.mailboxMetrics = metrics.registerMailbox(gameId, this,
+                SerializedGame::getPendingTasks,
+                game -> game.getOldestTaskAgeNanos() / 1_000_000_000.0);
+        this.eventLoop = eventLoop;
+        // Create a single-threaded executor for this game, unless it shares an event loop
+        this.executor = eventLoop != null ? null : Executors.newSingleThreadExecutor(r -> {
             Thread thread = new Thread(r, "GameExecutor-" + gameId);
             thread.setDaemon(true);
             return thread;
         });
     }
-    
+
     /**
-     * Shuts down the executor and waits for pending tasks to complete.
+     * Shuts down the executor and waits for pending tasks to complete, the last of them the
+     * game's {@link Game#handleStopping() stop hook}.
      * Should be called when the game is being stopped/destroyed.
-     * 
-     * @param timeoutMs maximum time to wait for shutdown in milliseconds
+     *
+     * @param timeoutMs maximum time to wait for shutdown in milliseconds; {@code Long.MAX_VALUE}
+     *                  waits for as long as the mailbox takes
      * @return true if shutdown completed within the timeout, false otherwise
      */
     public boolean shutdown(long timeoutMs) {
+        mailboxMetrics.close();
+        if (eventLoop != null) {
+            return shutdownOnEventLoop(timeoutMs);
+        }
+        stopped = true;
+        try {
+            offer(this::runStopping);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Game {} had already shut down", gameId);
+        }
         executor.shutdown();
         try {
-            return executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+            boolean terminated = executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+            runDrainListeners();
+            return terminated;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             executor.shutdownNow();
             return false;
         }
     }
-    
+
+    /**
+     * Refuses new tasks and waits for a marker queued behind the pending ones to run. Once
+     * stopped, a drain no longer yields the loop, so on the game's own event loop queuing the
+     * marker runs the whole mailbox at once. If a drain further up the stack is already running
+     * it, the marker can only run once the caller returns, and false tells the caller the game
+     * has not drained yet; {@link #inEventLoop()} tells that case apart from a timeout.
+     */
+    private boolean shutdownOnEventLoop(long timeoutMs) {
+        stopped = true;
+        CountDownLatch finished = new CountDownLatch(1);
+        try {
+            offer(() -> {
+                runStopping();
+                finished.countDown();
+                // Only now is the mailbox empty, whichever drain ran the marker
+                runDrainListeners();
+            });
+        } catch (RejectedExecutionException e) {
+            // Nothing will run the marker, so waiting for it would never end
+            logger.warn("Event loop of game {} has shut down with {} tasks pending", gameId, pendingTasks.get());
+            runDrainListeners();
+            return false;
+        }
+        if (eventLoop.inEventLoop()) {
+            return finished.getCount() == 0;
+        }
+        try {
+            return finished.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     /**
      * Forcefully shuts down the executor, interrupting any running tasks.
-     * Should only be used if graceful shutdown fails.
+     * Should only be used if graceful shutdown fails. A game on an event loop is not interrupted;
+     * its pending tasks are discarded.
      */
     public void shutdownNow() {
-        executor.shutdownNow();
+        mailboxMetrics.close();
+        stopped = true;
+        // Keeps the pending count right for a drain that might still be running
+        while (mailbox.poll() != null) {
+            pendingTasks.decrementAndGet();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        runDrainListeners();
+    }
+
+    /**
+     * Returns true if called on the event loop this game runs on, where waiting for the game
+     * would keep it from running.
+     */
+    boolean inEventLoop() {
+        return eventLoop != null && eventLoop.inEventLoop();
+    }
+
+    private boolean isShutdown() {
+        return stopped || executor != null && executor.isShutdown();
+    }
+
+    /**
+     * The last task of a stopping game: anything the game still holds back goes out before it stops.
+     */
+    private void runStopping() {
+        try {
+            delegate.handleStopping();
+        } catch (Exception e) {
+            logger.error("Error stopping game {}", gameId, e);
+        }
+    }
+
+    public String getGameId() {
+        return gameId;
+    }
+
+    /**
+     * Returns the number of tasks queued or running in this game's mailbox.
+     */
+    public int getPendingTasks() {
+        return pendingTasks.get();
+    }
+
+    /**
+     * Returns how long the oldest task still waiting in the mailbox has been queued.
+     *
+     * @return the age in nanoseconds, or 0 if nothing is waiting
+     */
+    public long getOldestTaskAgeNanos() {
+        MailboxTask oldest = mailbox.peek();
+        return oldest == null ? 0 : Math.max(0, System.nanoTime() - oldest.enqueuedAt());
+    }
+
+    /**
+     * Takes a point-in-time snapshot of this game's mailbox statistics.
+     */
+    public MailboxStats getMailboxStats() {
+        return new MailboxStats(
+                gameId,
+                getPendingTasks(),
+                TimeUnit.NANOSECONDS.toMillis(getOldestTaskAgeNanos()),
+                TimeUnit.NANOSECONDS.toMillis(lastQueueWaitNanos),
+                TimeUnit.NANOSECONDS.toMillis(maxQueueWaitNanos),
+                processedTasks.get());
     }
-    
+
+    /**
+     * Registers a callback that runs once the mailbox has drained to its resume threshold,
+     * or immediately if it already has. Callbacks also run when the game shuts down.
+     *
+     * @param callback the action to run
+     */
+    void whenDrained(Runnable callback) {
+        drainListeners.offer(callback);
+        if (pendingTasks.get() <= mailboxConfig.resumeThreshold() || isShutdown()) {
+            runDrainListeners();
+        }
+    }
+
+    private void runDrainListeners() {
+        Runnable listener;
+        while ((listener = drainListeners.poll()) != null) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                logger.error("Error running mailbox drain listener for game {}", gameId, e);
+            }
+        }
+    }
+
+    private boolean isFull() {
+        return mailboxConfig.isBounded() && pendingTasks.get() >= mailboxConfig.capacity();
+    }
+
+    /**
+     * Takes a slot in a bounded mailbox for a task that is about to be enqueued, so concurrent
+     * senders cannot all pass the capacity check and overshoot it.
+     *
+     * @return false if the mailbox is full
+     */
+    private boolean tryReserve() {
+        if (!mailboxConfig.isBounded()) {
+            pendingTasks.incrementAndGet();
+            return true;
+        }
+        int pending;
+        do {
+            pending = pendingTasks.get();
+            if (pending >= mailboxConfig.capacity()) {
+                return false;
+            }
+        } while (!pendingTasks.compareAndSet(pending, pending + 1));
+        return true;
+    }
+
+    private void enqueue(Runnable task) {
+        pendingTasks.incrementAndGet();
+        enqueueReserved(task);
+    }
+
+    /**
+     * Enqueues a task whose slot is already counted in {@link #pendingTasks}, giving the slot
+     * back if the game refuses it.
+     */
+    private void enqueueReserved(Runnable task) {
+        if (isShutdown()) {
+            pendingTasks.decrementAndGet();
+            throw new RejectedExecutionException("Game " + gameId + " has been shut down");
+        }
+        offerReserved(task);
+    }
+
+    private void offer(Runnable task) {
+        pendingTasks.incrementAndGet();
+        offerReserved(task);
+    }
+
+    private void offerReserved(Runnable task) {
+        MailboxTask mailboxTask = new MailboxTask(task, System.nanoTime());
+        mailbox.offer(mailboxTask);
+        try {
+            scheduleDrain();
+        } catch (RejectedExecutionException e) {
+            if (mailbox.remove(mailboxTask)) {
+                pendingTasks.decrementAndGet();
+            }
+            throw e;
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            if (eventLoop != null && eventLoop.inEventLoop()) {
+                // Already on the game's thread: no hand-off needed
+                drain();
+                return;
+            }
+            try {
+                (eventLoop != null ? eventLoop : executor).execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Runs queued tasks until the mailbox is empty. Only one drain is scheduled at a time,
+     * which is what keeps the game single-threaded.
+     */
+    private void drain() {
+        // A stopping game finishes its mailbox in one go, so its stop never waits on the loop
+        int budget = eventLoop != null && !stopped ? EVENT_LOOP_TASK_BUDGET : Integer.MAX_VALUE;
+        boolean finished = false;
+        try {
+            do {
+                MailboxTask task;
+                while ((task = mailbox.poll()) != null) {
+                    runTask(task);
+                    if (--budget == 0 && !mailbox.isEmpty()) {
+                        // Lets the event loop serve its connections before carrying on; still draining
+                        finished = true;
+                        continueDrainLater();
+                        return;
+                    }
+                }
+                draining.set(false);
+            } while (!mailbox.isEmpty() && draining.compareAndSet(false, true));
+            finished = true;
+        } finally {
+            if (!finished) {
+                // A task threw an Error: what it left behind gets a drain of its own
+                draining.set(false);
+                rescheduleDrain();
+            }
+        }
+    }
+
+    private void rescheduleDrain() {
+        if (mailbox.isEmpty() || !draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            (eventLoop != null ? eventLoop : executor).execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+            logger.warn("Game {} has shut down with {} tasks pending", gameId, pendingTasks.get());
+        }
+    }
+
+    private void continueDrainLater() {
+        try {
+            eventLoop.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+            logger.warn("Event loop of game {} has shut down with {} tasks pending", gameId, pendingTasks.get());
+        }
+    }
+
+    private void runTask(MailboxTask task) {
+        long start = System.nanoTime();
+        long queueWait = start - task.enqueuedAt();
+        try {
+            task.runnable().run();
+        } finally {
+            pendingTasks.decrementAndGet();
+            processedTasks.incrementAndGet();
+            lastQueueWaitNanos = queueWait;
+            if (queueWait > maxQueueWaitNanos) {
+                maxQueueWaitNanos = queueWait;
+            }
+            mailboxMetrics.recordQueueWait(queueWait);
+            mailboxMetrics.recordProcessing(System.nanoTime() - start);
+        }
+        if (!drainListeners.isEmpty() && pendingTasks.get() <= mailboxConfig.resumeThreshold()) {
+            runDrainListeners();
+        }
+    }
+
     @Override
     public void handlePlayerMessage(String playerId, String message) {
-        executor.execute(() -> {
+        MailboxOverflowPolicy policy = mailboxConfig.overflowPolicy();
+        Runnable task = () -> {
             try {
                 delegate.handlePlayerMessage(playerId, message);
             } catch (Exception e) {
                 logger.error("Error processing player message in game {} for player {}", gameId, playerId, e);
             }
-        });
+        };
+        if (policy != MailboxOverflowPolicy.PAUSE_READING) {
+            if (!tryReserve()) {
+                metrics.mailboxOverflow(policy);
+                throw new MailboxFullException(this, policy, false);
+            }
+            enqueueReserved(task);
+            return;
+        }
+        enqueue(task);
+        if (isFull()) {
+            // The message is queued, but the sender has to stop reading until the game catches up
+            metrics.mailboxOverflow(policy);
+            throw new MailboxFullException(this, policy, true);
+        }
     }
-    
+
     @Override
     public void handlePlayerConnected(String playerId) {
-        executor.execute(() -> {
+        enqueue(() -> {
             try {
                 delegate.handlePlayerConnected(playerId);
             } catch (Exception e) {
@@ -84,10 +473,10 @@ public class SerializedGame implements Game {
             }
         });
     }
-    
+
     @Override
     public void handlePlayerDisconnected(String playerId) {
-        executor.execute(() -> {
+        enqueue(() -> {
             try {
                 delegate.handlePlayerDisconnected(playerId);
             } catch (Exception e) {
@@ -95,8 +484,30 @@ public class SerializedGame implements Game {
             }
         });
     }
-}
-
-
 
+    @Override
+    public void schedule(Runnable task, long delayMs) {
+        Runnable handOver = () -> {
+            try {
+                enqueue(() -> {
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        logger.error("Error running scheduled task in game {}", gameId, e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                logger.debug("Dropped scheduled task of stopped game {}", gameId);
+            }
+        };
+        try {
+            // A game on an event loop is timed by the loop itself, so the task needs no hand-off
+            (eventLoop != null ? eventLoop : TIMERS).schedule(handOver, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Dropped scheduled task of game {} whose event loop has shut down", gameId);
+        }
+    }
 
+    private record MailboxTask(Runnable runnable, long enqueuedAt) {
+    }
+}
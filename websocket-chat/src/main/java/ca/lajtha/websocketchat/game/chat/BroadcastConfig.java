@@ -0,0 +1,24 @@
+package ca.lajtha.websocketchat.game.chat;
+
+/**
+ * How a chat room trades latency for fewer frames when it broadcasts.
+ *
+ * @param presenceWindowMs how long joins and leaves are collected before they are broadcast
+ *                         together; 0 broadcasts each one as it happens
+ * @param batchRateThreshold the message rate, per second, above which chat messages are batched;
+ *                           0 never batches
+ * @param batchMaxDelayMs how long a batched message may wait for others to go out with it
+ */
+public record BroadcastConfig(long presenceWindowMs, int batchRateThreshold, long batchMaxDelayMs) {
+
+    /**
+     * Returns a configuration that broadcasts everything as it happens.
+     */
+    public static BroadcastConfig immediate() {
+        return new BroadcastConfig(0, 0, 0);
+    }
+
+    public boolean batchesMessages() {
+        return batchRateThreshold > 0 && batchMaxDelayMs > 0;
+    }
+}
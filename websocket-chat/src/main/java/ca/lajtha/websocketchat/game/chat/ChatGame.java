@@ -2,28 +2,110 @@ package ca.lajtha.websocketchat.game.chat;
 
 import ca.lajtha.websocketchat.game.chat.messages.*;
 import ca.lajtha.websocketchat.game.Game;
+import ca.lajtha.websocketchat.game.GameScheduler;
+import ca.lajtha.websocketchat.ids.IdInterner;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
 import ca.lajtha.websocketchat.server.websocket.MessageSender;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Plays a chat room: answers players' commands and broadcasts what happens in the room.
+ *
+ * With a presence window, joins and leaves are not broadcast one by one. They are collected for
+ * the window and then sent to everyone as a single {@link PresenceChangedNotification}, so a room
+ * of N players that all reconnect at once sees about N frames per window instead of N². Pending
+ * changes are sent ahead of any chat message, so a message never arrives before its sender's join.
+ *
+ * While a room's message rate is above the batching threshold, chat messages are not broadcast
+ * one by one either: each waits at most the batch delay for others, and they go out together as
+ * a {@link MessagesReceivedNotification}. Quiet rooms keep sending each message at once.
+ * Whatever is pending when the game stops or moves is sent in its last task.
+ *
+ * Given the server's {@link IdInterner}, the game keeps its recipients' interned keys in an
+ * array rebuilt only when someone joins or leaves, and broadcasts through
+ * {@link MessageSender#sendMessage(int, String, String)}, so a broadcast looks no one up by id.
+ */
 public class ChatGame implements Game, ChatMessageListener {
     private static final Logger logger = LoggerFactory.getLogger(ChatGame.class);
+    private static final long RATE_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // Keeps a batch frame a reasonable size however busy the room is
+    private static final int MAX_BATCH_SIZE = 256;
 
     private final ChatGameModel game;
     private final MessageSender messageSender;
+    private final ServerMetrics metrics;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BroadcastConfig broadcastConfig;
+    private final int busyMessagesPerWindow;
+    private final IdInterner playerIds;
+    // Who broadcasts go to, by id and interned key; rebuilt when membership has changed
+    private String[] recipientIds = new String[0];
+    private int[] recipientKeys = new int[0];
+    private boolean recipientsChanged = true;
+    private GameScheduler scheduler;
+    // Net joins (positive) and leaves (negative) by screen name since the last presence notification
+    private final Map<String, Integer> pendingPresence = new LinkedHashMap<>();
+    private boolean presenceWindowOpen;
+    // Chat messages waiting to go out together, and what the room's message rate was last measured at
+    private final List<VisibleMessage> pendingMessages = new ArrayList<>();
+    private boolean batchScheduled;
+    private long rateWindowStart = System.nanoTime();
+    private int messagesInRateWindow;
+    private boolean busy;
+    // Set once the game is stopping, after which nothing is held back
+    private boolean stopping;
 
     @Inject
     public ChatGame(ChatGameModel game, MessageSender messageSender) {
+        this(game, messageSender, ServerMetrics.noop());
+    }
+
+    public ChatGame(ChatGameModel game, MessageSender messageSender, ServerMetrics metrics) {
+        this(game, messageSender, metrics, BroadcastConfig.immediate());
+    }
+
+    /**
+     * @param broadcastConfig when joins, leaves and messages are held back to be sent together
+     */
+    public ChatGame(ChatGameModel game, MessageSender messageSender, ServerMetrics metrics, BroadcastConfig broadcastConfig) {
+        this(game, messageSender, metrics, broadcastConfig, null);
+    }
+
+    /**
+     * @param broadcastConfig when joins, leaves and messages are held back to be sent together
+     * @param playerIds the interner the message sender's player keys come from, or null to send by id
+     */
+    public ChatGame(ChatGameModel game, MessageSender messageSender, ServerMetrics metrics, BroadcastConfig broadcastConfig,
+                    IdInterner playerIds) {
         this.game = game;
         this.messageSender = messageSender;
+        this.metrics = metrics;
+        this.broadcastConfig = broadcastConfig;
+        this.playerIds = playerIds;
+        this.busyMessagesPerWindow = (int) Math.max(1,
+                Math.ceil(broadcastConfig.batchRateThreshold() * RATE_WINDOW_NANOS / 1e9));
         game.addListener(this);
     }
 
+    /**
+     * Sets what times the presence window and message batches. Until one is set, everything is
+     * broadcast as it happens.
+     *
+     * @param scheduler runs tasks on this game's thread
+     */
+    public void scheduleWith(GameScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
     /**
      * Deserializes a JSON message string into one of the game message commands.
      * Expected JSON formats:
@@ -61,6 +143,15 @@ public class ChatGame implements Game, ChatMessageListener {
 
     @Override
     public void handlePlayerMessage(String playerId, String message) {
+        long start = System.nanoTime();
+        try {
+            handleCommand(playerId, message);
+        } finally {
+            metrics.recordGameHandlerLatency(System.nanoTime() - start);
+        }
+    }
+
+    private void handleCommand(String playerId, String message) {
         ChatGameMessage command = deserializeMessage(message);
         
         ChatGameMessage response = switch (command) {
@@ -97,14 +188,27 @@ public class ChatGame implements Game, ChatMessageListener {
 
     @Override
     public void handlePlayerConnected(String playerId) {
+        recipientsChanged = true;
         game.addPlayer(playerId);
     }
 
     @Override
     public void handlePlayerDisconnected(String playerId) {
+        recipientsChanged = true;
         game.removePlayer(playerId);
     }
 
+    /**
+     * Broadcasts the pending joins, leaves and messages, and from now on everything as it happens,
+     * since the timers that would send them are dropped once the game has stopped.
+     */
+    @Override
+    public void handleStopping() {
+        stopping = true;
+        flushPresence();
+        flushMessages();
+    }
+
     /**
      * Broadcasts a notification message to all connected players.
      *
@@ -112,28 +216,144 @@ public class ChatGame implements Game, ChatMessageListener {
      */
     private void broadcastToAllPlayers(ChatGameMessage notification) {
         String serializedNotification = serializeMessage(notification);
+        if (playerIds == null) {
+            List<PlayerInfo> players = game.getPlayers();
+            metrics.recordBroadcastFanout(players.size());
+            for (PlayerInfo player : players) {
+                messageSender.sendMessage(player.playerId(), serializedNotification);
+            }
+            return;
+        }
+        if (recipientsChanged) {
+            refreshRecipients();
+        }
+        String[] ids = recipientIds;
+        int[] keys = recipientKeys;
+        metrics.recordBroadcastFanout(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            messageSender.sendMessage(keys[i], ids[i], serializedNotification);
+        }
+    }
+
+    private void refreshRecipients() {
         List<PlayerInfo> players = game.getPlayers();
-        
-        for (PlayerInfo player : players) {
-            messageSender.sendMessage(player.playerId(), serializedNotification);
+        String[] ids = new String[players.size()];
+        int[] keys = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = players.get(i).playerId();
+            keys[i] = playerIds.intern(ids[i]);
         }
+        recipientIds = ids;
+        recipientKeys = keys;
+        recipientsChanged = false;
     }
 
     @Override
     public void onPlayerJoinedChat(String screenName) {
+        if (coalescesPresence()) {
+            addPresenceChange(screenName, 1);
+            return;
+        }
         PlayerJoinedChatNotification notification = new PlayerJoinedChatNotification(screenName);
         broadcastToAllPlayers(notification);
     }
 
     @Override
     public void onPlayerLeftChat(String screenName) {
+        if (coalescesPresence()) {
+            addPresenceChange(screenName, -1);
+            return;
+        }
         PlayerLeftChatNotification notification = new PlayerLeftChatNotification(screenName);
         broadcastToAllPlayers(notification);
     }
 
+    private boolean coalescesPresence() {
+        return broadcastConfig.presenceWindowMs() > 0 && scheduler != null && !stopping;
+    }
+
+    private void addPresenceChange(String screenName, int change) {
+        pendingPresence.merge(screenName, change, (pending, added) -> pending + added == 0 ? null : pending + added);
+        if (!presenceWindowOpen) {
+            presenceWindowOpen = true;
+            scheduler.schedule(() -> {
+                presenceWindowOpen = false;
+                flushPresence();
+            }, broadcastConfig.presenceWindowMs());
+        }
+    }
+
+    /**
+     * Broadcasts the joins and leaves collected so far, if any.
+     */
+    private void flushPresence() {
+        if (pendingPresence.isEmpty()) {
+            return;
+        }
+        // Messages batched before these changes happened go first
+        flushMessages();
+        List<String> joined = new ArrayList<>();
+        List<String> left = new ArrayList<>();
+        pendingPresence.forEach((screenName, change) -> (change > 0 ? joined : left).add(screenName));
+        pendingPresence.clear();
+        broadcastToAllPlayers(new PresenceChangedNotification(joined, left));
+    }
+
     @Override
     public void onMessageReceived(VisibleMessage visibleMessage) {
+        flushPresence();
+        if (broadcastConfig.batchesMessages() && scheduler != null && !stopping && isBusy(System.nanoTime())) {
+            addToBatch(visibleMessage);
+            return;
+        }
+        // Sent after anything still batched from when the room was busy
+        flushMessages();
         MessageReceivedNotification notification = new MessageReceivedNotification(visibleMessage.screenName(), visibleMessage.message());
         broadcastToAllPlayers(notification);
     }
+
+    /**
+     * Counts a message towards the room's rate. The room is busy from the moment the current
+     * window reaches the threshold until a whole window passes below it.
+     */
+    private boolean isBusy(long now) {
+        long elapsed = now - rateWindowStart;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            // A room that was silent for longer than a window starts out quiet again
+            busy = elapsed < 2 * RATE_WINDOW_NANOS && messagesInRateWindow >= busyMessagesPerWindow;
+            rateWindowStart = now;
+            messagesInRateWindow = 0;
+        }
+        if (++messagesInRateWindow >= busyMessagesPerWindow) {
+            busy = true;
+        }
+        return busy;
+    }
+
+    private void addToBatch(VisibleMessage visibleMessage) {
+        pendingMessages.add(visibleMessage);
+        if (pendingMessages.size() >= MAX_BATCH_SIZE) {
+            flushMessages();
+            return;
+        }
+        if (!batchScheduled) {
+            batchScheduled = true;
+            scheduler.schedule(() -> {
+                batchScheduled = false;
+                flushMessages();
+            }, broadcastConfig.batchMaxDelayMs());
+        }
+    }
+
+    /**
+     * Broadcasts the batched messages, if any.
+     */
+    private void flushMessages() {
+        if (pendingMessages.isEmpty()) {
+            return;
+        }
+        metrics.recordBroadcastBatch(pendingMessages.size());
+        broadcastToAllPlayers(new MessagesReceivedNotification(List.copyOf(pendingMessages)));
+        pendingMessages.clear();
+    }
 }
@@ -16,6 +16,31 @@ public class ChatGameModel {
     final List<StoredMessage> messages = new ArrayList<>();
     private final List<ChatMessageListener> listeners = new CopyOnWriteArrayList<>();
 
+    /**
+     * The state of a chat, for moving it to another node.
+     */
+    public record Snapshot(List<String> players, Map<String, String> screenNames, List<StoredMessage> messages) {
+    }
+
+    /**
+     * Creates a model holding the state of a snapshot, without notifying anyone.
+     */
+    public static ChatGameModel restore(Snapshot snapshot) {
+        ChatGameModel model = new ChatGameModel();
+        model.players.addAll(snapshot.players());
+        model.playerScreenNames.putAll(snapshot.screenNames());
+        model.messages.addAll(snapshot.messages());
+        return model;
+    }
+
+    /**
+     * Copies the model's state. Like every other method, it must not run concurrently with
+     * changes to the model, so call it from the game's thread or once the game has stopped.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(List.copyOf(players), Map.copyOf(playerScreenNames), List.copyOf(messages));
+    }
+
     public void addListener(ChatMessageListener listener) {
         if (listener != null) {
             listeners.add(listener);
@@ -13,7 +13,9 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
     @JsonSubTypes.Type(value = GetPlayersResponse.class, name = "getPlayersResponse"),
     @JsonSubTypes.Type(value = PlayerJoinedChatNotification.class, name = "playerJoinedChatNotification"),
     @JsonSubTypes.Type(value = PlayerLeftChatNotification.class, name = "playerLeftChatNotification"),
-    @JsonSubTypes.Type(value = MessageReceivedNotification.class, name = "messageReceivedNotification")
+    @JsonSubTypes.Type(value = PresenceChangedNotification.class, name = "presenceChangedNotification"),
+    @JsonSubTypes.Type(value = MessageReceivedNotification.class, name = "messageReceivedNotification"),
+    @JsonSubTypes.Type(value = MessagesReceivedNotification.class, name = "messagesReceivedNotification")
 })
 public interface ChatGameMessage {
 }
@@ -0,0 +1,13 @@
+package ca.lajtha.websocketchat.game.chat.messages;
+
+import ca.lajtha.websocketchat.game.chat.VisibleMessage;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import java.util.List;
+
+/**
+ * Several chat messages, oldest first, sent as one frame while a room is busy.
+ */
+@JsonTypeName("messagesReceivedNotification")
+public record MessagesReceivedNotification(List<VisibleMessage> messages) implements ChatGameMessage {
+}
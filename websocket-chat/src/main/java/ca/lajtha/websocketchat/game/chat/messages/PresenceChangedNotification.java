@@ -0,0 +1,13 @@
+package ca.lajtha.websocketchat.game.chat.messages;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import java.util.List;
+
+/**
+ * The players who joined and left the chat over a short window, sent in place of one
+ * notification per join or leave. A player who joined and left within the window is in neither.
+ */
+@JsonTypeName("presenceChangedNotification")
+public record PresenceChangedNotification(List<String> joined, List<String> left) implements ChatGameMessage {
+}
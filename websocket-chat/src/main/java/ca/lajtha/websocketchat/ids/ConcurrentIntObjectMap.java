@@ -0,0 +1,127 @@
+package ca.lajtha.websocketchat.ids;
+
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A thread-safe map from int keys to objects, for routing tables keyed by interned ids.
+ *
+ * Entries are spread over a fixed number of shards by a hash of the key, so dense keys and
+ * keys that step by a power of two (as striped id generators produce) both fill the shards
+ * evenly, and growing the map rehashes one small shard at a time rather than the whole table,
+ * which keeps it usable at hundreds of thousands of entries. Each shard is one of Netty's
+ * open-addressing {@link IntObjectHashMap}s, so there is no boxing and no entry object per
+ * mapping, and it is guarded by its own monitor, which is uncontended on the common path where
+ * a key is only touched by the event loop of its connection.
+ *
+ * @param <V> the value type
+ */
+public final class ConcurrentIntObjectMap<V> {
+    private static final int SHARDS = 64;
+    private static final int SHARD_BITS = Integer.numberOfTrailingZeros(SHARDS);
+
+    private final IntObjectHashMap<V>[] shards;
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentIntObjectMap() {
+        shards = new IntObjectHashMap[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new IntObjectHashMap<>();
+        }
+    }
+
+    private IntObjectHashMap<V> shard(int key) {
+        // Fibonacci hashing: the top bits of the product depend on every bit of the key
+        return shards[(key * 0x9E3779B9) >>> (Integer.SIZE - SHARD_BITS)];
+    }
+
+    public V get(int key) {
+        IntObjectHashMap<V> shard = shard(key);
+        synchronized (shard) {
+            return shard.get(key);
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the previous value, or null if there was none
+     */
+    public V put(int key, V value) {
+        IntObjectHashMap<V> shard = shard(key);
+        synchronized (shard) {
+            return shard.put(key, value);
+        }
+    }
+
+    /**
+     * @return the removed value, or null if there was none
+     */
+    public V remove(int key) {
+        IntObjectHashMap<V> shard = shard(key);
+        synchronized (shard) {
+            return shard.remove(key);
+        }
+    }
+
+    /**
+     * Removes a key only while it is still mapped to the given value.
+     *
+     * @return true if the mapping was removed
+     */
+    public boolean remove(int key, V value) {
+        IntObjectHashMap<V> shard = shard(key);
+        synchronized (shard) {
+            if (shard.get(key) != value) {
+                return false;
+            }
+            shard.remove(key);
+            return true;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (IntObjectHashMap<V> shard : shards) {
+            synchronized (shard) {
+                size += shard.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns a snapshot of the values. Each shard is copied atomically, the map as a whole is not.
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<>();
+        for (IntObjectHashMap<V> shard : shards) {
+            synchronized (shard) {
+                values.addAll(shard.values());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the keys currently mapped to the given value, compared by identity.
+     */
+    public List<Integer> keysOf(V value) {
+        List<Integer> keys = new ArrayList<>();
+        for (IntObjectHashMap<V> shard : shards) {
+            synchronized (shard) {
+                for (IntObjectMap.PrimitiveEntry<V> entry : shard.entries()) {
+                    if (entry.value() == value) {
+                        keys.add(entry.key());
+                    }
+                }
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,79 @@
+package ca.lajtha.websocketchat.ids;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps external String identifiers to dense ints, assigned in first-seen order from 0.
+ *
+ * Ids are interned once, where they enter the server (a WebSocket connecting, a player joining
+ * a game over HTTP), and the int is what internal routing maps are keyed by. Looking an int back
+ * up is a plain array read. Interned ids are never released; the table grows with the number of
+ * distinct ids seen, which for players is bounded by the number of registered users.
+ */
+public final class IdInterner {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ConcurrentHashMap<String, Integer> indexes = new ConcurrentHashMap<>();
+    private volatile String[] ids = new String[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Returns the int of an id, assigning the next free one if the id has not been seen before.
+     *
+     * @param id the external identifier
+     * @return its dense int
+     */
+    public int intern(String id) {
+        Integer index = indexes.get(id);
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            index = indexes.get(id);
+            if (index != null) {
+                return index;
+            }
+            int next = size;
+            String[] current = ids;
+            if (next == current.length) {
+                current = Arrays.copyOf(current, next * 2);
+            }
+            current[next] = id;
+            // The volatile write publishes the slot before the index becomes visible
+            ids = current;
+            size = next + 1;
+            indexes.put(id, next);
+            return next;
+        }
+    }
+
+    /**
+     * Returns the int of an id that has already been interned.
+     *
+     * @param id the external identifier
+     * @return its dense int, or -1 if the id has never been interned
+     */
+    public int indexOf(String id) {
+        Integer index = indexes.get(id);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Returns the external identifier an int was assigned to.
+     *
+     * @param index a value returned by {@link #intern(String)}
+     * @return the identifier, or null if the int has not been assigned
+     */
+    public String idOf(int index) {
+        String[] current = ids;
+        return index >= 0 && index < current.length ? current[index] : null;
+    }
+
+    /**
+     * Returns the number of ids interned so far.
+     */
+    public int size() {
+        return indexes.size();
+    }
+}
@@ -0,0 +1,66 @@
+package ca.lajtha.websocketchat.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Meters for a single game's mailbox: depth, oldest pending task age,
+ * queue wait and processing time histograms. The gauges carry a {@code game} tag
+ * and are removed from the registry by {@link #close()} when the game stops. The
+ * histograms are shared by all games, so their series do not grow with the number of rooms.
+ */
+public class MailboxMetrics implements AutoCloseable {
+    private final MeterRegistry registry;
+    private final Timer queueWait;
+    private final Timer processing;
+    private final List<Meter> meters;
+
+    <T> MailboxMetrics(MeterRegistry registry, String gameId, T mailbox,
+                       ToDoubleFunction<T> depth, ToDoubleFunction<T> oldestTaskAgeSeconds) {
+        this.registry = registry;
+        Gauge depthGauge = Gauge.builder("game.mailbox.depth", mailbox, depth)
+                .description("Pending tasks in a game's serialized mailbox")
+                .tag("game", gameId)
+                .register(registry);
+        Gauge ageGauge = Gauge.builder("game.mailbox.oldest.age", mailbox, oldestTaskAgeSeconds)
+                .description("Age of the oldest task waiting in a game's mailbox")
+                .baseUnit("seconds")
+                .tag("game", gameId)
+                .register(registry);
+        this.queueWait = Timer.builder("game.mailbox.wait")
+                .description("Time a task spent queued before a game started processing it")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+        this.processing = Timer.builder("game.mailbox.processing")
+                .description("Time a game spent processing a single mailbox task")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+        this.meters = List.of(depthGauge, ageGauge);
+    }
+
+    public void recordQueueWait(long nanos) {
+        queueWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordProcessing(long nanos) {
+        processing.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() {
+        for (Meter meter : meters) {
+            registry.remove(meter);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package ca.lajtha.websocketchat.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import ca.lajtha.websocketchat.game.MailboxOverflowPolicy;
+import ca.lajtha.websocketchat.server.websocket.RateLimitAction;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Central place for the server's Micrometer meters.
+ *
+ * All meters are registered once at construction time and kept in fields, so the
+ * recording methods used on the frame path only touch pre-resolved meters and never
+ * allocate (no tag arrays, no registry lookups, no boxing).
+ */
+@Singleton
+public class ServerMetrics {
+    private final MeterRegistry registry;
+
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final Counter handshakeRejectsMissingToken;
+    private final Counter handshakeRejectsInvalidToken;
+    private final Counter framesIn;
+    private final Counter framesOut;
+    private final Counter bytesIn;
+    private final Counter bytesOut;
+    private final Timer gameHandlerLatency;
+    private final DistributionSummary broadcastFanout;
+    private final DistributionSummary broadcastBatch;
+    private final DistributionSummary eventLoopWriteBatch;
+    private final Timer argon2Hash;
+    private final Timer argon2Verify;
+    private final Timer jwtSign;
+    private final Timer jwtVerify;
+    private final Timer gameMigrations;
+    private final Counter mailboxLagAlerts;
+    private final Counter heartbeatPings;
+    private final Counter idleEvictions;
+    private final Counter clusterMessagesSent;
+    private final Counter clusterMessagesReceived;
+    private final DistributionSummary clusterBatchSize;
+    private final Counter presenceRelays;
+    private final Counter sessionResumes;
+    private final Counter resumeExpiries;
+    private final DistributionSummary resumeReplayed;
+    private final Map<MailboxOverflowPolicy, Counter> mailboxOverflows = new EnumMap<>(MailboxOverflowPolicy.class);
+    private final Map<RateLimitAction, Counter> rateLimitExceeded = new EnumMap<>(RateLimitAction.class);
+
+    @Inject
+    public ServerMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        Gauge.builder("websocket.connections.active", activeConnections, AtomicInteger::get)
+                .description("Currently open WebSocket server connections")
+                .register(registry);
+        this.handshakeRejectsMissingToken = Counter.builder("websocket.handshake.rejects")
+                .description("WebSocket upgrade requests rejected during authentication")
+                .tag("reason", "missing_token")
+                .register(registry);
+        this.handshakeRejectsInvalidToken = Counter.builder("websocket.handshake.rejects")
+                .description("WebSocket upgrade requests rejected during authentication")
+                .tag("reason", "invalid_token")
+                .register(registry);
+        this.framesIn = Counter.builder("websocket.frames")
+                .description("WebSocket text frames processed")
+                .tag("direction", "in")
+                .register(registry);
+        this.framesOut = Counter.builder("websocket.frames")
+                .description("WebSocket text frames processed")
+                .tag("direction", "out")
+                .register(registry);
+        this.bytesIn = Counter.builder("websocket.bytes")
+                .description("Bytes transferred on WebSocket server connections")
+                .baseUnit("bytes")
+                .tag("direction", "in")
+                .register(registry);
+        this.bytesOut = Counter.builder("websocket.bytes")
+                .description("Bytes transferred on WebSocket server connections")
+                .baseUnit("bytes")
+                .tag("direction", "out")
+                .register(registry);
+        this.gameHandlerLatency = Timer.builder("game.handler.latency")
+                .description("Time spent in ChatGame.handlePlayerMessage")
+                .register(registry);
+        this.broadcastFanout = DistributionSummary.builder("game.broadcast.fanout")
+                .description("Number of recipients per broadcast")
+                .baseUnit("recipients")
+                .register(registry);
+        this.broadcastBatch = DistributionSummary.builder("game.broadcast.batch")
+                .description("Chat messages sent together in one frame by a busy room")
+                .baseUnit("messages")
+                .register(registry);
+        this.eventLoopWriteBatch = DistributionSummary.builder("websocket.eventloop.write.batch")
+                .description("Frames written by one event loop task on behalf of game threads")
+                .baseUnit("frames")
+                .register(registry);
+        this.argon2Hash = Timer.builder("auth.argon2")
+                .description("Argon2 password hashing time")
+                .tag("operation", "hash")
+                .register(registry);
+        this.argon2Verify = Timer.builder("auth.argon2")
+                .description("Argon2 password hashing time")
+                .tag("operation", "verify")
+                .register(registry);
+        this.jwtSign = Timer.builder("auth.jwt")
+                .description("JWT signing and verification time")
+                .tag("operation", "sign")
+                .register(registry);
+        this.jwtVerify = Timer.builder("auth.jwt")
+                .description("JWT signing and verification time")
+                .tag("operation", "verify")
+                .register(registry);
+        this.gameMigrations = Timer.builder("cluster.game.migration")
+                .description("Time a game was paused while moving to another node")
+                .register(registry);
+        this.mailboxLagAlerts = Counter.builder("game.mailbox.lag.alerts")
+                .description("Times a game's oldest pending task exceeded the lag alert threshold")
+                .register(registry);
+        for (MailboxOverflowPolicy policy : MailboxOverflowPolicy.values()) {
+            mailboxOverflows.put(policy, Counter.builder("game.mailbox.overflow")
+                    .description("Player messages that hit a full game mailbox")
+                    .tag("policy", policy.name().toLowerCase())
+                    .register(registry));
+        }
+        this.heartbeatPings = Counter.builder("websocket.heartbeat.pings")
+                .description("Pings sent to connections that had gone quiet")
+                .register(registry);
+        this.idleEvictions = Counter.builder("websocket.idle.evictions")
+                .description("Connections closed after exceeding the reader idle timeout")
+                .register(registry);
+        this.clusterMessagesSent = Counter.builder("cluster.messages")
+                .description("Messages exchanged with other cluster nodes")
+                .tag("direction", "sent")
+                .register(registry);
+        this.clusterMessagesReceived = Counter.builder("cluster.messages")
+                .description("Messages exchanged with other cluster nodes")
+                .tag("direction", "received")
+                .register(registry);
+        this.clusterBatchSize = DistributionSummary.builder("cluster.send.batch")
+                .description("Messages written to a cluster peer per flush")
+                .baseUnit("messages")
+                .register(registry);
+        this.presenceRelays = Counter.builder("cluster.presence.relays")
+                .description("Messages relayed to users connected to other nodes")
+                .register(registry);
+        this.sessionResumes = Counter.builder("websocket.resumes")
+                .description("Disconnected sessions that were resumed or whose grace period ended")
+                .tag("outcome", "resumed")
+                .register(registry);
+        this.resumeExpiries = Counter.builder("websocket.resumes")
+                .description("Disconnected sessions that were resumed or whose grace period ended")
+                .tag("outcome", "expired")
+                .register(registry);
+        this.resumeReplayed = DistributionSummary.builder("websocket.resume.replayed")
+                .description("Missed messages replayed to a resumed session")
+                .baseUnit("messages")
+                .register(registry);
+        for (RateLimitAction action : RateLimitAction.values()) {
+            rateLimitExceeded.put(action, Counter.builder("websocket.ratelimit.exceeded")
+                    .description("Inbound frames refused by the per-user rate limiter")
+                    .tag("action", action.name().toLowerCase())
+                    .register(registry));
+        }
+    }
+
+    /**
+     * Creates metrics backed by an empty composite registry, so every meter is a no-op.
+     * Used by components that are constructed outside the application context (tests, tools).
+     *
+     * @return a ServerMetrics instance that records nothing
+     */
+    public static ServerMetrics noop() {
+        return new ServerMetrics(new CompositeMeterRegistry());
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public void connectionOpened() {
+        activeConnections.incrementAndGet();
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    public void handshakeRejectedMissingToken() {
+        handshakeRejectsMissingToken.increment();
+    }
+
+    public void handshakeRejectedInvalidToken() {
+        handshakeRejectsInvalidToken.increment();
+    }
+
+    public void frameReceived() {
+        framesIn.increment();
+    }
+
+    public void frameSent() {
+        framesOut.increment();
+    }
+
+    public void bytesReceived(long bytes) {
+        bytesIn.increment(bytes);
+    }
+
+    public void bytesSent(long bytes) {
+        bytesOut.increment(bytes);
+    }
+
+    public void recordGameHandlerLatency(long nanos) {
+        gameHandlerLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordBroadcastFanout(int recipients) {
+        broadcastFanout.record(recipients);
+    }
+
+    public void recordBroadcastBatch(int messages) {
+        broadcastBatch.record(messages);
+    }
+
+    public void recordEventLoopWriteBatch(int frames) {
+        eventLoopWriteBatch.record(frames);
+    }
+
+    public void recordArgon2Hash(long nanos) {
+        argon2Hash.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordArgon2Verify(long nanos) {
+        argon2Verify.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordJwtSign(long nanos) {
+        jwtSign.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordJwtVerify(long nanos) {
+        jwtVerify.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void heartbeatPingSent() {
+        heartbeatPings.increment();
+    }
+
+    public void idleConnectionEvicted() {
+        idleEvictions.increment();
+    }
+
+    public void rateLimitExceeded(RateLimitAction action) {
+        rateLimitExceeded.get(action).increment();
+    }
+
+    public void mailboxOverflow(MailboxOverflowPolicy policy) {
+        mailboxOverflows.get(policy).increment();
+    }
+
+    public void mailboxLagAlert() {
+        mailboxLagAlerts.increment();
+    }
+
+    public void recordGameMigration(long nanos) {
+        gameMigrations.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void clusterMessageSent() {
+        clusterMessagesSent.increment();
+    }
+
+    public void clusterMessageReceived() {
+        clusterMessagesReceived.increment();
+    }
+
+    public void recordClusterBatch(int messages) {
+        clusterBatchSize.record(messages);
+    }
+
+    public void presenceRelayed() {
+        presenceRelays.increment();
+    }
+
+    public void sessionResumed(int replayed) {
+        sessionResumes.increment();
+        resumeReplayed.record(replayed);
+    }
+
+    public void resumeExpired() {
+        resumeExpiries.increment();
+    }
+
+    /**
+     * Registers the per-game mailbox meters.
+     *
+     * @param gameId the game identifier, used as the {@code game} tag of the gauges
+     * @param mailbox the object the gauges read from
+     * @param depth extracts the number of pending tasks
+     * @param oldestTaskAgeSeconds extracts the age of the oldest pending task in seconds
+     * @return the meters, to be closed when the game stops
+     */
+    public <T> MailboxMetrics registerMailbox(String gameId, T mailbox,
+                                              ToDoubleFunction<T> depth, ToDoubleFunction<T> oldestTaskAgeSeconds) {
+        return new MailboxMetrics(registry, gameId, mailbox, depth, oldestTaskAgeSeconds);
+    }
+}
@@ -1,18 +1,70 @@
 package ca.lajtha.websocketchat.server;
 
 import ca.lajtha.websocketchat.PropertiesLoader;
+import ca.lajtha.websocketchat.game.MailboxOverflowPolicy;
+import ca.lajtha.websocketchat.server.websocket.RateLimitAction;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.Properties;
 
 @Singleton
 public class PropertiesServerConfig implements ServerConfig {
+    private static final Logger logger = LoggerFactory.getLogger(PropertiesServerConfig.class);
+
     private final int port;
     private final int httpPort;
     private final String websocketPath;
     private final int socketBacklog;
     private final boolean socketKeepalive;
     private final int httpMaxContentLength;
+    private final int mailboxLagAlertThresholdMs;
+    private final int mailboxLagCheckIntervalMs;
+    private final int gameMailboxCapacity;
+    private final MailboxOverflowPolicy gameMailboxOverflowPolicy;
+    private final int gamePresenceWindowMs;
+    private final int gameBatchRateThreshold;
+    private final int gameBatchMaxDelayMs;
+    private final boolean gameRunOnEventLoop;
+    private final boolean rateLimitEnabled;
+    private final int rateLimitBurst;
+    private final int rateLimitRefillPerSecond;
+    private final RateLimitAction rateLimitAction;
+    private final boolean heartbeatEnabled;
+    private final int heartbeatPingIntervalMs;
+    private final int heartbeatIdleTimeoutMs;
+    private final int heartbeatTickMs;
+    private final int staticAssetMaxAgeSeconds;
+    private final String staticAssetDirectory;
+    private final boolean sharedEventLoopGroup;
+    private final int bossThreads;
+    private final int workerThreads;
+    private final String workerCpuAffinity;
+    private final boolean tcpNoDelay;
+    private final int socketReceiveBufferSize;
+    private final int socketSendBufferSize;
+    private final int writeBufferLowWaterMark;
+    private final int writeBufferHighWaterMark;
+    private final boolean pooledAllocator;
+    private final boolean preferDirectBuffers;
+    private final boolean compressionEnabled;
+    private final int compressionLevel;
+    private final int compressionMinSize;
+    private final boolean compressionContextTakeover;
+    private final boolean clusterEnabled;
+    private final String clusterNodeId;
+    private final String clusterNodes;
+    private final String clusterRingNodes;
+    private final String clusterSecret;
+    private final boolean clusterBatchSends;
+    private final int clusterPresenceGossipIntervalMs;
+    private final int shutdownDrainTimeoutMs;
+    private final int shutdownReconnectJitterMs;
+    private final int resumeGracePeriodMs;
+    private final int resumeBufferSize;
+    private final boolean groupWritesByEventLoop;
 
     @Inject
     public PropertiesServerConfig(PropertiesLoader propertiesLoader) {
@@ -23,6 +75,84 @@ public class PropertiesServerConfig implements ServerConfig {
         this.socketBacklog = propertiesLoader.getIntProperty(props, "socket.backlog", 128);
         this.socketKeepalive = propertiesLoader.getBooleanProperty(props, "socket.keepalive", true);
         this.httpMaxContentLength = propertiesLoader.getIntProperty(props, "http.maxContentLength", 65536);
+        this.mailboxLagAlertThresholdMs = propertiesLoader.getIntProperty(props, "game.mailbox.lagAlertThresholdMs", 1000);
+        this.mailboxLagCheckIntervalMs = propertiesLoader.getIntProperty(props, "game.mailbox.lagCheckIntervalMs", 1000);
+        this.gameMailboxCapacity = propertiesLoader.getIntProperty(props, "game.mailbox.capacity", 1024);
+        this.gameMailboxOverflowPolicy = parseOverflowPolicy(
+                propertiesLoader.getProperty(props, "game.mailbox.overflowPolicy", MailboxOverflowPolicy.PAUSE_READING.name()));
+        this.gamePresenceWindowMs = Math.max(0, propertiesLoader.getIntProperty(props, "game.presence.windowMs", 250));
+        this.gameBatchRateThreshold = Math.max(0, propertiesLoader.getIntProperty(props, "game.batch.rateThreshold", 200));
+        this.gameBatchMaxDelayMs = Math.max(0, propertiesLoader.getIntProperty(props, "game.batch.maxDelayMs", 5));
+        this.gameRunOnEventLoop = propertiesLoader.getBooleanProperty(props, "game.runOnEventLoop", false);
+        this.rateLimitEnabled = propertiesLoader.getBooleanProperty(props, "ratelimit.enabled", true);
+        this.rateLimitBurst = propertiesLoader.getIntProperty(props, "ratelimit.burst", 20);
+        this.rateLimitRefillPerSecond = propertiesLoader.getIntProperty(props, "ratelimit.refillPerSecond", 10);
+        this.rateLimitAction = parseRateLimitAction(
+                propertiesLoader.getProperty(props, "ratelimit.action", RateLimitAction.REPLY.name()));
+        this.heartbeatEnabled = propertiesLoader.getBooleanProperty(props, "heartbeat.enabled", true);
+        this.heartbeatPingIntervalMs = propertiesLoader.getIntProperty(props, "heartbeat.pingIntervalMs", 30000);
+        this.heartbeatIdleTimeoutMs = propertiesLoader.getIntProperty(props, "heartbeat.idleTimeoutMs", 90000);
+        this.heartbeatTickMs = propertiesLoader.getIntProperty(props, "heartbeat.tickMs", 1000);
+        this.staticAssetMaxAgeSeconds = propertiesLoader.getIntProperty(props, "http.static.maxAgeSeconds", 3600);
+        this.staticAssetDirectory = propertiesLoader.getProperty(props, "http.static.directory", "");
+        this.sharedEventLoopGroup = propertiesLoader.getBooleanProperty(props, "websocket.sharedEventLoopGroup", false);
+        this.bossThreads = Math.max(1, propertiesLoader.getIntProperty(props, "websocket.bossThreads", 1));
+        this.workerThreads = Math.max(0, propertiesLoader.getIntProperty(props, "websocket.workerThreads", 0));
+        this.workerCpuAffinity = propertiesLoader.getProperty(props, "websocket.workerCpuAffinity", "");
+        this.tcpNoDelay = propertiesLoader.getBooleanProperty(props, "socket.tcpNoDelay", true);
+        this.socketReceiveBufferSize = propertiesLoader.getIntProperty(props, "socket.receiveBufferSize", 0);
+        this.socketSendBufferSize = propertiesLoader.getIntProperty(props, "socket.sendBufferSize", 0);
+        int lowWaterMark = propertiesLoader.getIntProperty(props, "socket.writeBufferLowWaterMark", 32 * 1024);
+        int highWaterMark = propertiesLoader.getIntProperty(props, "socket.writeBufferHighWaterMark", 64 * 1024);
+        if (highWaterMark < lowWaterMark) {
+            logger.warn("Warning: socket.writeBufferHighWaterMark {} is below the low water mark {}, using {}",
+                    highWaterMark, lowWaterMark, lowWaterMark);
+            highWaterMark = lowWaterMark;
+        }
+        this.writeBufferLowWaterMark = lowWaterMark;
+        this.writeBufferHighWaterMark = highWaterMark;
+        this.pooledAllocator = !"unpooled".equalsIgnoreCase(
+                propertiesLoader.getProperty(props, "socket.allocator", "pooled").trim());
+        this.preferDirectBuffers = propertiesLoader.getBooleanProperty(props, "socket.preferDirectBuffers", true);
+        this.compressionEnabled = propertiesLoader.getBooleanProperty(props, "websocket.compression.enabled", true);
+        this.compressionLevel = Math.min(9, Math.max(0,
+                propertiesLoader.getIntProperty(props, "websocket.compression.level", 6)));
+        this.compressionMinSize = propertiesLoader.getIntProperty(props, "websocket.compression.minSize", 256);
+        this.compressionContextTakeover = propertiesLoader.getBooleanProperty(props, "websocket.compression.contextTakeover", false);
+        this.clusterEnabled = propertiesLoader.getBooleanProperty(props, "cluster.enabled", false);
+        this.clusterNodeId = propertiesLoader.getProperty(props, "cluster.nodeId", "node-1");
+        this.clusterNodes = propertiesLoader.getProperty(props, "cluster.nodes", "");
+        this.clusterRingNodes = propertiesLoader.getProperty(props, "cluster.ringNodes", "");
+        this.clusterSecret = propertiesLoader.getProperty(props, "cluster.secret", "");
+        this.clusterBatchSends = propertiesLoader.getBooleanProperty(props, "cluster.batchSends", true);
+        this.clusterPresenceGossipIntervalMs = Math.max(1,
+                propertiesLoader.getIntProperty(props, "cluster.presence.gossipIntervalMs", 100));
+        this.shutdownDrainTimeoutMs = Math.max(0, propertiesLoader.getIntProperty(props, "shutdown.drainTimeoutMs", 30000));
+        this.shutdownReconnectJitterMs = Math.max(0,
+                propertiesLoader.getIntProperty(props, "shutdown.reconnectJitterMs", 10000));
+        this.resumeGracePeriodMs = Math.max(0, propertiesLoader.getIntProperty(props, "websocket.resume.gracePeriodMs", 15000));
+        this.resumeBufferSize = Math.max(1, propertiesLoader.getIntProperty(props, "websocket.resume.bufferSize", 256));
+        this.groupWritesByEventLoop = propertiesLoader.getBooleanProperty(props, "websocket.groupWritesByEventLoop", true);
+    }
+
+    private static RateLimitAction parseRateLimitAction(String value) {
+        try {
+            return RateLimitAction.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Warning: Invalid value for ratelimit.action: {}, using default: {}",
+                    value, RateLimitAction.REPLY);
+            return RateLimitAction.REPLY;
+        }
+    }
+
+    private static MailboxOverflowPolicy parseOverflowPolicy(String value) {
+        try {
+            return MailboxOverflowPolicy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Warning: Invalid value for game.mailbox.overflowPolicy: {}, using default: {}",
+                    value, MailboxOverflowPolicy.PAUSE_READING);
+            return MailboxOverflowPolicy.PAUSE_READING;
+        }
     }
 
     @Override
@@ -54,5 +184,230 @@ public class PropertiesServerConfig implements ServerConfig {
     public int getHttpMaxContentLength() {
         return httpMaxContentLength;
     }
+
+    @Override
+    public int getMailboxLagAlertThresholdMs() {
+        return mailboxLagAlertThresholdMs;
+    }
+
+    @Override
+    public int getMailboxLagCheckIntervalMs() {
+        return mailboxLagCheckIntervalMs;
+    }
+
+    @Override
+    public int getGameMailboxCapacity() {
+        return gameMailboxCapacity;
+    }
+
+    @Override
+    public MailboxOverflowPolicy getGameMailboxOverflowPolicy() {
+        return gameMailboxOverflowPolicy;
+    }
+
+    @Override
+    public int getGamePresenceWindowMs() {
+        return gamePresenceWindowMs;
+    }
+
+    @Override
+    public int getGameBatchRateThreshold() {
+        return gameBatchRateThreshold;
+    }
+
+    @Override
+    public int getGameBatchMaxDelayMs() {
+        return gameBatchMaxDelayMs;
+    }
+
+    @Override
+    public boolean isGameRunOnEventLoop() {
+        return gameRunOnEventLoop;
+    }
+
+    @Override
+    public boolean isRateLimitEnabled() {
+        return rateLimitEnabled;
+    }
+
+    @Override
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    @Override
+    public int getRateLimitRefillPerSecond() {
+        return rateLimitRefillPerSecond;
+    }
+
+    @Override
+    public RateLimitAction getRateLimitAction() {
+        return rateLimitAction;
+    }
+
+    @Override
+    public boolean isHeartbeatEnabled() {
+        return heartbeatEnabled;
+    }
+
+    @Override
+    public int getHeartbeatPingIntervalMs() {
+        return heartbeatPingIntervalMs;
+    }
+
+    @Override
+    public int getHeartbeatIdleTimeoutMs() {
+        return heartbeatIdleTimeoutMs;
+    }
+
+    @Override
+    public int getHeartbeatTickMs() {
+        return heartbeatTickMs;
+    }
+
+    @Override
+    public int getStaticAssetMaxAgeSeconds() {
+        return staticAssetMaxAgeSeconds;
+    }
+
+    @Override
+    public String getStaticAssetDirectory() {
+        return staticAssetDirectory;
+    }
+
+    @Override
+    public boolean isSharedEventLoopGroup() {
+        return sharedEventLoopGroup;
+    }
+
+    @Override
+    public int getBossThreads() {
+        return bossThreads;
+    }
+
+    @Override
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    @Override
+    public String getWorkerCpuAffinity() {
+        return workerCpuAffinity;
+    }
+
+    @Override
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    @Override
+    public int getSocketReceiveBufferSize() {
+        return socketReceiveBufferSize;
+    }
+
+    @Override
+    public int getSocketSendBufferSize() {
+        return socketSendBufferSize;
+    }
+
+    @Override
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    @Override
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    @Override
+    public boolean isPooledAllocator() {
+        return pooledAllocator;
+    }
+
+    @Override
+    public boolean isPreferDirectBuffers() {
+        return preferDirectBuffers;
+    }
+
+    @Override
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    @Override
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    @Override
+    public int getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    @Override
+    public boolean isCompressionContextTakeover() {
+        return compressionContextTakeover;
+    }
+
+    @Override
+    public boolean isClusterEnabled() {
+        return clusterEnabled;
+    }
+
+    @Override
+    public String getClusterNodeId() {
+        return clusterNodeId;
+    }
+
+    @Override
+    public String getClusterNodes() {
+        return clusterNodes;
+    }
+
+    @Override
+    public String getClusterRingNodes() {
+        return clusterRingNodes;
+    }
+
+    @Override
+    public String getClusterSecret() {
+        return clusterSecret;
+    }
+
+    @Override
+    public boolean isClusterBatchSends() {
+        return clusterBatchSends;
+    }
+
+    @Override
+    public int getClusterPresenceGossipIntervalMs() {
+        return clusterPresenceGossipIntervalMs;
+    }
+
+    @Override
+    public int getShutdownDrainTimeoutMs() {
+        return shutdownDrainTimeoutMs;
+    }
+
+    @Override
+    public int getShutdownReconnectJitterMs() {
+        return shutdownReconnectJitterMs;
+    }
+
+    @Override
+    public int getResumeGracePeriodMs() {
+        return resumeGracePeriodMs;
+    }
+
+    @Override
+    public int getResumeBufferSize() {
+        return resumeBufferSize;
+    }
+
+    @Override
+    public boolean isGroupWritesByEventLoop() {
+        return groupWritesByEventLoop;
+    }
 }
 
@@ -1,5 +1,8 @@
 package ca.lajtha.websocketchat.server;
 
+import ca.lajtha.websocketchat.game.MailboxOverflowPolicy;
+import ca.lajtha.websocketchat.server.websocket.RateLimitAction;
+
 public interface ServerConfig {
     int getPort();
     int getHttpPort();
@@ -7,4 +10,49 @@ public interface ServerConfig {
     int getSocketBacklog();
     boolean isSocketKeepalive();
     int getHttpMaxContentLength();
+    int getMailboxLagAlertThresholdMs();
+    int getMailboxLagCheckIntervalMs();
+    int getGameMailboxCapacity();
+    MailboxOverflowPolicy getGameMailboxOverflowPolicy();
+    int getGamePresenceWindowMs();
+    int getGameBatchRateThreshold();
+    int getGameBatchMaxDelayMs();
+    boolean isGameRunOnEventLoop();
+    boolean isRateLimitEnabled();
+    int getRateLimitBurst();
+    int getRateLimitRefillPerSecond();
+    RateLimitAction getRateLimitAction();
+    boolean isHeartbeatEnabled();
+    int getHeartbeatPingIntervalMs();
+    int getHeartbeatIdleTimeoutMs();
+    int getHeartbeatTickMs();
+    int getStaticAssetMaxAgeSeconds();
+    String getStaticAssetDirectory();
+    boolean isSharedEventLoopGroup();
+    int getBossThreads();
+    int getWorkerThreads();
+    String getWorkerCpuAffinity();
+    boolean isTcpNoDelay();
+    int getSocketReceiveBufferSize();
+    int getSocketSendBufferSize();
+    int getWriteBufferLowWaterMark();
+    int getWriteBufferHighWaterMark();
+    boolean isPooledAllocator();
+    boolean isPreferDirectBuffers();
+    boolean isCompressionEnabled();
+    int getCompressionLevel();
+    int getCompressionMinSize();
+    boolean isCompressionContextTakeover();
+    boolean isClusterEnabled();
+    String getClusterNodeId();
+    String getClusterNodes();
+    String getClusterRingNodes();
+    String getClusterSecret();
+    boolean isClusterBatchSends();
+    int getClusterPresenceGossipIntervalMs();
+    int getShutdownDrainTimeoutMs();
+    int getShutdownReconnectJitterMs();
+    int getResumeGracePeriodMs();
+    int getResumeBufferSize();
+    boolean isGroupWritesByEventLoop();
 }
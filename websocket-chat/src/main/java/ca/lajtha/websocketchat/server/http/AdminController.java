@@ -0,0 +1,72 @@
+package ca.lajtha.websocketchat.server.http;
+
+import ca.lajtha.websocketchat.game.GameManager;
+import ca.lajtha.websocketchat.game.MailboxStats;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.annotation.Body;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.Produces;
+import io.micronaut.http.annotation.Put;
+import io.micronaut.http.annotation.QueryValue;
+import jakarta.inject.Inject;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Operational endpoints for inspecting the running server.
+ */
+@Controller("/admin")
+public class AdminController {
+    private static final int DEFAULT_LAGGING_LIMIT = 10;
+
+    private final GameManager gameManager;
+
+    @Inject
+    public AdminController(GameManager gameManager) {
+        this.gameManager = gameManager;
+    }
+
+    /**
+     * Lists the games that are furthest behind on their mailbox, worst first.
+     * GET /admin/games/lagging?limit=10
+     */
+    @Get("/games/lagging")
+    @Produces(MediaType.APPLICATION_JSON)
+    public HttpResponse<List<MailboxStats>> laggingGames(@QueryValue(defaultValue = "10") int limit) {
+        int effectiveLimit = limit > 0 ? limit : DEFAULT_LAGGING_LIMIT;
+        return HttpResponse.ok(gameManager.getLaggingGames(effectiveLimit));
+    }
+
+    /**
+     * Lists the cluster nodes games are placed on.
+     * GET /admin/cluster/nodes
+     */
+    @Get("/cluster/nodes")
+    @Produces(MediaType.APPLICATION_JSON)
+    public HttpResponse<Set<String>> clusterNodes() {
+        return HttpResponse.ok(gameManager.getClusterNodes());
+    }
+
+    /**
+     * Changes the cluster nodes games are placed on; games whose owner changes move live.
+     * PUT /admin/cluster/nodes
+     * Body: ["node-1", "node-2", "node-3"]
+     */
+    @Put("/cluster/nodes")
+    @Produces(MediaType.APPLICATION_JSON)
+    public HttpResponse<?> updateClusterNodes(@Body List<String> nodeIds) {
+        try {
+            gameManager.updateClusterNodes(nodeIds);
+            return HttpResponse.ok(gameManager.getClusterNodes());
+        } catch (IllegalArgumentException e) {
+            return HttpResponse.badRequest(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return HttpResponse.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+}
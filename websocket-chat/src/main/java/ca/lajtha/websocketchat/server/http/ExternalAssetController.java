@@ -0,0 +1,136 @@
+package ca.lajtha.websocketchat.server.http;
+
+import ca.lajtha.websocketchat.server.ServerConfig;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.server.types.files.SystemFile;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Serves files from an external asset directory under /assets, when one is configured.
+ *
+ * Files are returned as {@link SystemFile}s, which the Netty server writes with a
+ * {@code FileRegion}, so on plain-text connections the kernel copies them to the socket
+ * with sendfile and the bytes never enter the heap. A client that accepts gzip is sent a
+ * precompressed {@code <name>.gz} sibling the same way when one exists. Otherwise the file
+ * is left to the server's response compression, which reads it in chunks.
+ *
+ * ETags are derived from the file's size and modification time, so they are computed
+ * without reading the file.
+ */
+@Controller("/assets")
+public class ExternalAssetController {
+    private static final Logger logger = LoggerFactory.getLogger(ExternalAssetController.class);
+    private static final String GZIP_SUFFIX = ".gz";
+
+    private final Path root;
+    private final String cacheControl;
+
+    @Inject
+    public ExternalAssetController(ServerConfig config) {
+        this.root = resolveRoot(config.getStaticAssetDirectory());
+        this.cacheControl = "public, max-age=" + config.getStaticAssetMaxAgeSeconds();
+    }
+
+    private static Path resolveRoot(String directory) {
+        if (directory == null || directory.isBlank()) {
+            return null;
+        }
+        try {
+            Path path = Paths.get(directory).toRealPath();
+            if (!Files.isDirectory(path)) {
+                logger.warn("Warning: http.static.directory {} is not a directory, external assets disabled", directory);
+                return null;
+            }
+            logger.info("Serving external assets from {}", path);
+            return path;
+        } catch (IOException e) {
+            logger.warn("Warning: http.static.directory {} is not accessible, external assets disabled", directory);
+            return null;
+        }
+    }
+
+    @Get("/{+path}")
+    public HttpResponse<?> asset(String path, HttpRequest<?> request) {
+        Path file = resolve(path);
+        if (file == null) {
+            return HttpResponse.notFound();
+        }
+        try {
+            HttpHeaders headers = request.getHeaders();
+            String acceptEncoding = headers.get(HttpHeaders.ACCEPT_ENCODING);
+            MediaType mediaType = MediaType.forFilename(file.getFileName().toString());
+
+            Path body = file;
+            String encoding = null;
+            if (acceptEncoding != null && StaticAssetCache.accepts(acceptEncoding, StaticAssetCache.GZIP)) {
+                Path gzipped = file.resolveSibling(file.getFileName() + GZIP_SUFFIX);
+                if (Files.isRegularFile(gzipped)) {
+                    body = gzipped;
+                    encoding = StaticAssetCache.GZIP;
+                }
+            }
+
+            String etag = etagOf(body, encoding);
+            if (StaticAssetCache.matches(headers.get(HttpHeaders.IF_NONE_MATCH), etag)) {
+                return HttpResponse.status(HttpStatus.NOT_MODIFIED)
+                        .header(HttpHeaders.ETAG, etag)
+                        .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+
+            File systemFile = body.toFile();
+            var response = HttpResponse.ok(new SystemFile(systemFile, mediaType))
+                    .header(HttpHeaders.ETAG, etag)
+                    .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (encoding != null) {
+                response.header(HttpHeaders.CONTENT_ENCODING, encoding);
+            }
+            return response;
+        } catch (IOException e) {
+            logger.error("Error serving external asset {}", path, e);
+            return HttpResponse.notFound();
+        }
+    }
+
+    /**
+     * Maps a request path onto a regular file inside the asset directory, refusing anything
+     * that escapes it, including through symbolic links.
+     */
+    private Path resolve(String path) {
+        if (root == null || path == null || path.isEmpty()) {
+            return null;
+        }
+        try {
+            Path file = root.resolve(path).normalize();
+            if (!file.startsWith(root) || !Files.isRegularFile(file)) {
+                return null;
+            }
+            Path real = file.toRealPath();
+            return real.startsWith(root) ? real : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String etagOf(Path file, String encoding) throws IOException {
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        String suffix = encoding != null ? "-" + encoding : "";
+        return "\"" + Long.toHexString(modified) + "-" + Long.toHexString(size) + suffix + "\"";
+    }
+}
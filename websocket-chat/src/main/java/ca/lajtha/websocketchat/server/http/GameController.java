@@ -6,6 +6,8 @@ import ca.lajtha.websocketchat.server.http.dto.*;
 import io.micronaut.http.HttpResponse;
 import io.micronaut.http.MediaType;
 import io.micronaut.http.annotation.*;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.ExecuteOn;
 import jakarta.inject.Inject;
 
 import java.util.List;
@@ -26,8 +28,10 @@ public class GameController {
      * Creates a new game.
      * POST /games
      * Body: {"playerId": "player1", "gameParameters": {"name": "My Game"}}
+     * In a cluster this waits for the game's owner to host it, so it runs off the event loop.
      */
     @Post
+    @ExecuteOn(TaskExecutors.BLOCKING)
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_JSON)
     public HttpResponse<?> createGame(@Body CreateGameRequest request) {
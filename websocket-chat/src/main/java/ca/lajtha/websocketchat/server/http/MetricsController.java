@@ -0,0 +1,29 @@
+package ca.lajtha.websocketchat.server.http;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.Produces;
+import jakarta.inject.Inject;
+
+/**
+ * Exposes all registered meters in the Prometheus text exposition format.
+ */
+@Controller("/metrics")
+public class MetricsController {
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final PrometheusMeterRegistry prometheusMeterRegistry;
+
+    @Inject
+    public MetricsController(PrometheusMeterRegistry prometheusMeterRegistry) {
+        this.prometheusMeterRegistry = prometheusMeterRegistry;
+    }
+
+    @Get
+    @Produces(PROMETHEUS_CONTENT_TYPE)
+    public HttpResponse<String> scrape() {
+        return HttpResponse.ok(prometheusMeterRegistry.scrape()).contentType(PROMETHEUS_CONTENT_TYPE);
+    }
+}
@@ -0,0 +1,41 @@
+package ca.lajtha.websocketchat.server.http;
+
+/**
+ * A static asset held in memory, with its precomputed compressed variants.
+ *
+ * The byte arrays are never modified after the asset is built. A compressed variant is
+ * null when compressing did not make the asset smaller. Each variant has its own strong
+ * ETag, since the bytes on the wire differ.
+ *
+ * @param path the classpath path the asset was loaded from, e.g. {@code css/index.css}
+ * @param contentType the Content-Type to serve the asset with
+ * @param identity the uncompressed bytes
+ * @param gzip the gzip-encoded bytes, or null
+ * @param deflate the deflate (zlib) encoded bytes, or null
+ * @param etag the strong ETag of the uncompressed bytes, including quotes
+ */
+public record StaticAsset(String path, String contentType, byte[] identity, byte[] gzip, byte[] deflate,
+                          String etag) {
+
+    /**
+     * Returns the bytes to send for the given content coding.
+     */
+    public byte[] body(String encoding) {
+        return switch (encoding) {
+            case StaticAssetCache.GZIP -> gzip;
+            case StaticAssetCache.DEFLATE -> deflate;
+            default -> identity;
+        };
+    }
+
+    /**
+     * Returns the ETag of the variant sent for the given content coding.
+     */
+    public String etag(String encoding) {
+        return switch (encoding) {
+            case StaticAssetCache.GZIP, StaticAssetCache.DEFLATE ->
+                    etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+            default -> etag;
+        };
+    }
+}
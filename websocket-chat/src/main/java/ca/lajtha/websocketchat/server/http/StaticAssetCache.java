@@ -0,0 +1,306 @@
+package ca.lajtha.websocketchat.server.http;
+
+import ca.lajtha.websocketchat.server.ServerConfig;
+import io.micronaut.context.annotation.Context;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpResponse;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the static assets bundled on the classpath from memory.
+ *
+ * Every HTML page and every file under {@code css/} and {@code js/} is read once at startup,
+ * compressed with gzip and deflate, and fingerprinted with a SHA-256 based strong ETag. A
+ * request is answered from the precomputed bytes: the best variant the client accepts is
+ * chosen, and a matching {@code If-None-Match} gets an empty 304. Paths that were not
+ * loaded at startup are never looked up on the classpath.
+ *
+ * HTML pages are sent with {@code Cache-Control: no-cache} so browsers revalidate them on
+ * every load; CSS and JavaScript may be cached for the configured max age.
+ */
+@Context
+public class StaticAssetCache {
+    private static final Logger logger = LoggerFactory.getLogger(StaticAssetCache.class);
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+    static final String IDENTITY = "identity";
+    private static final String[] PAGES = {"index.html", "test.html", "404.html"};
+    private static final String[] ASSET_DIRECTORIES = {"css", "js"};
+    private static final String HTML_CACHE_CONTROL = "no-cache";
+
+    private final Map<String, StaticAsset> assets;
+    private final String assetCacheControl;
+
+    @Inject
+    public StaticAssetCache(ServerConfig config) {
+        this(config.getStaticAssetMaxAgeSeconds());
+    }
+
+    public StaticAssetCache(int assetMaxAgeSeconds) {
+        this.assetCacheControl = "public, max-age=" + assetMaxAgeSeconds;
+        Map<String, StaticAsset> loaded = new HashMap<>();
+        ClassLoader classLoader = getClass().getClassLoader();
+        for (String page : PAGES) {
+            loadResource(classLoader, page, loaded);
+        }
+        for (String directory : ASSET_DIRECTORIES) {
+            loadDirectory(classLoader, directory, loaded);
+        }
+        this.assets = Collections.unmodifiableMap(loaded);
+        logger.info("Loaded {} static assets into memory", assets.size());
+    }
+
+    /**
+     * Returns the cached asset for a classpath path, or null if there is none.
+     */
+    public StaticAsset get(String path) {
+        return assets.get(path);
+    }
+
+    /**
+     * Builds the response for a cached asset.
+     *
+     * @param path the classpath path of the asset
+     * @param acceptEncoding the request's Accept-Encoding header, or null
+     * @param ifNoneMatch the request's If-None-Match header, or null
+     * @return a 200 or 304 response, or null if the asset is not cached
+     */
+    public MutableHttpResponse<byte[]> respond(String path, String acceptEncoding, String ifNoneMatch) {
+        StaticAsset asset = assets.get(path);
+        if (asset == null) {
+            return null;
+        }
+        String encoding = selectEncoding(asset, acceptEncoding);
+        String etag = asset.etag(encoding);
+        String cacheControl = isHtml(asset) ? HTML_CACHE_CONTROL : assetCacheControl;
+        if (matches(ifNoneMatch, etag)) {
+            return HttpResponse.<byte[]>status(HttpStatus.NOT_MODIFIED)
+                    .header(HttpHeaders.ETAG, etag)
+                    .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        return withBody(HttpResponse.ok(), asset, encoding)
+                .header(HttpHeaders.ETAG, etag)
+                .header(HttpHeaders.CACHE_CONTROL, cacheControl);
+    }
+
+    /**
+     * Builds a response with the given status and a cached asset as its body, without
+     * conditional handling. Used for error pages.
+     *
+     * @return the response, or null if the asset is not cached
+     */
+    public MutableHttpResponse<byte[]> respondWithStatus(HttpStatus status, String path, String acceptEncoding) {
+        StaticAsset asset = assets.get(path);
+        if (asset == null) {
+            return null;
+        }
+        return withBody(HttpResponse.status(status), asset, selectEncoding(asset, acceptEncoding))
+                .header(HttpHeaders.CACHE_CONTROL, "no-store");
+    }
+
+    private static MutableHttpResponse<byte[]> withBody(MutableHttpResponse<?> response, StaticAsset asset,
+                                                        String encoding) {
+        MutableHttpResponse<byte[]> typed = response.body(asset.body(encoding));
+        typed.contentType(asset.contentType());
+        typed.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (!IDENTITY.equals(encoding)) {
+            typed.header(HttpHeaders.CONTENT_ENCODING, encoding);
+        }
+        return typed;
+    }
+
+    /**
+     * Picks gzip, then deflate, then identity, skipping codings the client refuses with q=0
+     * and variants that were not worth compressing.
+     */
+    static String selectEncoding(StaticAsset asset, String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return IDENTITY;
+        }
+        if (asset.gzip() != null && accepts(acceptEncoding, GZIP)) {
+            return GZIP;
+        }
+        if (asset.deflate() != null && accepts(acceptEncoding, DEFLATE)) {
+            return DEFLATE;
+        }
+        return IDENTITY;
+    }
+
+    static boolean accepts(String acceptEncoding, String coding) {
+        boolean wildcard = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String name = params[0].trim();
+            boolean refused = false;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase(coding)) {
+                return !refused;
+            }
+            if (name.equals("*")) {
+                wildcard = !refused;
+            }
+        }
+        return wildcard;
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            // If-None-Match uses weak comparison
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isHtml(StaticAsset asset) {
+        return asset.contentType().startsWith(MediaType.TEXT_HTML);
+    }
+
+    private void loadResource(ClassLoader classLoader, String path, Map<String, StaticAsset> loaded) {
+        try (InputStream input = classLoader.getResourceAsStream(path)) {
+            if (input == null) {
+                logger.warn("Warning: {} not found in resources", path);
+                return;
+            }
+            loaded.put(path, build(path, input.readAllBytes()));
+        } catch (IOException e) {
+            logger.error("Error loading resource {}", path, e);
+        }
+    }
+
+    private void loadDirectory(ClassLoader classLoader, String directory, Map<String, StaticAsset> loaded) {
+        URL url = classLoader.getResource(directory);
+        if (url == null) {
+            logger.warn("Warning: {} directory not found in resources", directory);
+            return;
+        }
+        try {
+            URI uri = url.toURI();
+            if ("jar".equals(uri.getScheme())) {
+                try (FileSystem fileSystem = FileSystems.newFileSystem(uri, Map.of())) {
+                    loadFiles(fileSystem.getPath(directory), directory, loaded);
+                } catch (FileSystemAlreadyExistsException e) {
+                    // Opened by someone else, who also closes it
+                    loadFiles(FileSystems.getFileSystem(uri).getPath(directory), directory, loaded);
+                }
+            } else {
+                loadFiles(Paths.get(uri), directory, loaded);
+            }
+        } catch (IOException | URISyntaxException e) {
+            logger.error("Error loading resources from {}", directory, e);
+        }
+    }
+
+    private void loadFiles(Path directoryPath, String directory, Map<String, StaticAsset> loaded) throws IOException {
+        try (Stream<Path> files = Files.list(directoryPath)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)) {
+                    String path = directory + "/" + file.getFileName();
+                    loaded.put(path, build(path, Files.readAllBytes(file)));
+                }
+            }
+        }
+    }
+
+    static StaticAsset build(String path, byte[] identity) {
+        byte[] gzip = compress(identity, GZIP);
+        byte[] deflate = compress(identity, DEFLATE);
+        return new StaticAsset(path, contentTypeOf(path), identity,
+                gzip.length < identity.length ? gzip : null,
+                deflate.length < identity.length ? deflate : null,
+                etagOf(identity));
+    }
+
+    private static byte[] compress(byte[] data, String encoding) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length / 2 + 64);
+        // Variants are built once at startup, so the slowest, smallest level is worth it
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (OutputStream out = GZIP.equals(encoding)
+                ? new GZIPOutputStream(buffer) {
+                    {
+                        def.setLevel(Deflater.BEST_COMPRESSION);
+                    }
+                }
+                : new DeflaterOutputStream(buffer, deflater)) {
+            out.write(data);
+        } catch (IOException e) {
+            // In-memory streams do not fail
+            throw new IllegalStateException(e);
+        } finally {
+            deflater.end();
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String etagOf(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 27) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static String contentTypeOf(String path) {
+        if (path.endsWith(".html")) {
+            return MediaType.TEXT_HTML;
+        }
+        if (path.endsWith(".css")) {
+            return "text/css";
+        }
+        if (path.endsWith(".js")) {
+            return "application/javascript";
+        }
+        return MediaType.APPLICATION_OCTET_STREAM;
+    }
+}
@@ -1,56 +1,42 @@
 package ca.lajtha.websocketchat.server.http;
 
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpRequest;
 import io.micronaut.http.HttpResponse;
+import io.micronaut.http.MutableHttpResponse;
 import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Get;
 import io.micronaut.http.annotation.Produces;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.util.stream.Collectors;
+import jakarta.inject.Inject;
 
+/**
+ * Serves the bundled CSS and JavaScript from the {@link StaticAssetCache}.
+ */
 @Controller
 public class StaticResourceController {
-    private static final Logger logger = LoggerFactory.getLogger(StaticResourceController.class);
+    private final StaticAssetCache assetCache;
+
+    @Inject
+    public StaticResourceController(StaticAssetCache assetCache) {
+        this.assetCache = assetCache;
+    }
     
     @Get("/css/{filename}")
     @Produces("text/css")
-    public HttpResponse<String> css(String filename) {
-        String content = loadResourceFromPath("css/" + filename);
-        if (content == null) {
-            return HttpResponse.notFound();
-        }
-        return HttpResponse.ok(content).contentType("text/css");
+    public HttpResponse<byte[]> css(String filename, HttpRequest<?> request) {
+        return serve("css/" + filename, request);
     }
     
     @Get("/js/{filename}")
     @Produces("application/javascript")
-    public HttpResponse<String> js(String filename) {
-        String content = loadResourceFromPath("js/" + filename);
-        if (content == null) {
-            return HttpResponse.notFound();
-        }
-        return HttpResponse.ok(content).contentType("application/javascript");
+    public HttpResponse<byte[]> js(String filename, HttpRequest<?> request) {
+        return serve("js/" + filename, request);
     }
     
-    private String loadResourceFromPath(String path) {
-        try (InputStream input = getClass().getClassLoader().getResourceAsStream(path)) {
-            if (input == null) {
-                return null;
-            }
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(input, StandardCharsets.UTF_8))) {
-                return reader.lines().collect(Collectors.joining("\n"));
-            }
-        } catch (IOException e) {
-            logger.error("Error loading resource {}", path, e);
-            return null;
-        }
+    private HttpResponse<byte[]> serve(String path, HttpRequest<?> request) {
+        HttpHeaders headers = request.getHeaders();
+        MutableHttpResponse<byte[]> response = assetCache.respond(path,
+                headers.get(HttpHeaders.ACCEPT_ENCODING), headers.get(HttpHeaders.IF_NONE_MATCH));
+        return response != null ? response : HttpResponse.notFound();
     }
 }
-
@@ -1,19 +1,18 @@
 package ca.lajtha.websocketchat.server.http;
 
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpRequest;
 import io.micronaut.http.HttpResponse;
 import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpResponse;
 import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Get;
 import io.micronaut.http.annotation.Produces;
+import jakarta.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.util.stream.Collectors;
 
 /**
  * Serves the WebSocket chat test client UI under the /test path.
@@ -21,29 +20,26 @@ import java.util.stream.Collectors;
 @Controller("/test")
 public class TestClientController {
     private static final Logger logger = LoggerFactory.getLogger(TestClientController.class);
+    private static final byte[] FALLBACK_HTML =
+            "<html><body><h1>Test Client</h1><p>test.html not found in resources.</p></body></html>".getBytes(StandardCharsets.UTF_8);
 
-    @Get
-    @Produces(MediaType.TEXT_HTML)
-    public HttpResponse<String> testClient() {
-        String content = loadHtmlFromResources("test.html");
-        return HttpResponse.ok(content).contentType(MediaType.TEXT_HTML);
+    private final StaticAssetCache assetCache;
+
+    @Inject
+    public TestClientController(StaticAssetCache assetCache) {
+        this.assetCache = assetCache;
     }
 
-    private String loadHtmlFromResources(String filename) {
-        try (InputStream input = getClass().getClassLoader().getResourceAsStream(filename)) {
-            if (input == null) {
-                logger.warn("Warning: {} not found in resources for test client", filename);
-                return "<html><body><h1>Test Client</h1><p>test.html not found in resources.</p></body></html>";
-            }
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(input, StandardCharsets.UTF_8))) {
-                return reader.lines().collect(Collectors.joining("\n"));
-            }
-        } catch (IOException e) {
-            logger.error("Error loading {} for test client", filename, e);
-            return "<html><body><h1>Test Client</h1><p>Error loading HTML file.</p></body></html>";
+    @Get
+    @Produces(MediaType.TEXT_HTML)
+    public HttpResponse<byte[]> testClient(HttpRequest<?> request) {
+        HttpHeaders headers = request.getHeaders();
+        MutableHttpResponse<byte[]> response = assetCache.respond("test.html",
+                headers.get(HttpHeaders.ACCEPT_ENCODING), headers.get(HttpHeaders.IF_NONE_MATCH));
+        if (response == null) {
+            logger.warn("Warning: test.html not found in resources for test client");
+            return HttpResponse.ok(FALLBACK_HTML).contentType(MediaType.TEXT_HTML);
         }
+        return response;
     }
 }
-
-
@@ -0,0 +1,49 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Sits at the head of every child pipeline and records connection and byte counts.
+ * Shared between all channels; it keeps no per-channel state.
+ */
+@ChannelHandler.Sharable
+public class ConnectionMetricsHandler extends ChannelDuplexHandler {
+    private final ServerMetrics metrics;
+
+    public ConnectionMetricsHandler(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        metrics.connectionOpened();
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        metrics.connectionClosed();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ByteBuf buf) {
+            metrics.bytesReceived(buf.readableBytes());
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ByteBuf buf) {
+            metrics.bytesSent(buf.readableBytes());
+        }
+        super.write(ctx, msg, promise);
+    }
+}
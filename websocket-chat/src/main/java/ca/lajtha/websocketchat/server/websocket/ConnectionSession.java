@@ -0,0 +1,55 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Everything the server keeps about one authenticated WebSocket connection.
+ *
+ * A session is created once, when the handshake completes, and is the only per-connection
+ * state besides the channel itself: it replaces the random socketId String and the separate
+ * handshake and userId attributes. {@link WebSocketFrameHandler} holds it in a field, so
+ * reading a frame costs a single field read, and {@link WebsocketManagerImpl} maps users to
+ * sessions, so a send needs neither a pipeline context nor an attribute lookup.
+ *
+ * @param id a process-wide sequence number identifying the connection in logs
+ * @param playerKey the user's interned int, which internal routing maps are keyed by
+ * @param userId the authenticated user
+ * @param channel the connection's channel
+ * @param sharedDeflate the shared permessage-deflate settings the connection negotiated, or
+ *                      null if broadcasts are sent to it uncompressed
+ */
+public record ConnectionSession(long id, int playerKey, String userId, Channel channel, PerMessageDeflate sharedDeflate) {
+    private static final AttributeKey<ConnectionSession> SESSION_KEY = AttributeKey.valueOf("session");
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    /**
+     * Creates the session of a connection whose handshake has completed and attaches it to the
+     * channel. Any permessage-deflate extension has been negotiated by then, so whether the
+     * connection accepts shared compressed frames is settled once, here.
+     *
+     * @param channel the connection's channel
+     * @param userId the user authenticated during the handshake
+     * @param playerKey the user's interned int
+     * @return the attached session
+     */
+    public static ConnectionSession open(Channel channel, String userId, int playerKey) {
+        ConnectionSession session = new ConnectionSession(NEXT_ID.incrementAndGet(), playerKey, userId, channel,
+                channel.attr(SharedDeflateEncoder.SHARED_DEFLATE_KEY).get());
+        channel.attr(SESSION_KEY).set(session);
+        return session;
+    }
+
+    /**
+     * Returns the session attached to a channel, or null if its handshake has not completed.
+     */
+    public static ConnectionSession of(Channel channel) {
+        return channel.attr(SESSION_KEY).get();
+    }
+
+    public boolean isActive() {
+        return channel.isActive();
+    }
+}
@@ -0,0 +1,93 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes frames from game threads to the channels of one event loop, many per task.
+ *
+ * A write from outside a channel's event loop is normally a task of its own, and waking the
+ * loop for it costs more than the write. Here frames are queued for the loop instead, and the
+ * first one queued schedules a single task that writes everything queued by the time it runs,
+ * then flushes each channel once. A broadcast to a room whose members share a few event loops
+ * thus costs a few tasks rather than one per member. Each channel's frames keep their order,
+ * since all of them go through the queue of the channel's loop. Frames for channels that have
+ * closed, or whose loop has shut down, are released instead of written.
+ */
+final class EventLoopWriter {
+    private final EventLoop eventLoop;
+    private final ServerMetrics metrics;
+    private final Queue<PendingWrite> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    // Used on the event loop only
+    private final List<Channel> written = new ArrayList<>();
+
+    EventLoopWriter(EventLoop eventLoop, ServerMetrics metrics) {
+        this.eventLoop = eventLoop;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queues a frame for a channel of this writer's event loop, scheduling a drain unless one is
+     * already scheduled to pick it up.
+     */
+    void write(Channel channel, WebSocketFrame frame) {
+        outbound.add(new PendingWrite(channel, frame));
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                eventLoop.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // The loop has shut down with its channels, so nothing queued can be written
+                drainScheduled.set(false);
+                releaseQueued();
+            }
+        }
+    }
+
+    private void releaseQueued() {
+        PendingWrite pending;
+        while ((pending = outbound.poll()) != null) {
+            pending.frame().release();
+        }
+    }
+
+    private void drain() {
+        // Cleared first, so a frame queued while draining schedules another drain
+        drainScheduled.set(false);
+        int batch = 0;
+        PendingWrite pending;
+        while ((pending = outbound.poll()) != null) {
+            Channel channel = pending.channel();
+            if (!channel.isActive()) {
+                pending.frame().release();
+                continue;
+            }
+            channel.write(pending.frame());
+            if (written.isEmpty() || written.get(written.size() - 1) != channel) {
+                written.add(channel);
+            }
+            batch++;
+        }
+        if (batch == 0) {
+            return;
+        }
+        // A channel written more than once apart is flushed again, which is a cheap no-op
+        for (Channel channel : written) {
+            channel.flush();
+        }
+        written.clear();
+        metrics.recordEventLoopWriteBatch(batch);
+    }
+
+    private record PendingWrite(Channel channel, WebSocketFrame frame) {
+    }
+}
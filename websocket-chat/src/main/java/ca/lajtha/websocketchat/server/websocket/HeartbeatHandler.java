@@ -0,0 +1,52 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Reports a connection's inbound activity to the {@link HeartbeatWheel}.
+ *
+ * The connection joins the wheel once the WebSocket handshake completes and leaves it when
+ * the channel goes inactive. Every inbound frame counts as activity; pong frames answering
+ * the wheel's pings are consumed here so they never reach the game handlers.
+ */
+public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
+    private final HeartbeatWheel wheel;
+    private HeartbeatWheel.Entry entry;
+
+    public HeartbeatHandler(HeartbeatWheel wheel) {
+        this.wheel = wheel;
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete && entry == null) {
+            entry = wheel.register(ctx.channel());
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (entry != null) {
+            entry.touch();
+        }
+        if (msg instanceof PongWebSocketFrame) {
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (entry != null) {
+            wheel.unregister(entry);
+            entry = null;
+        }
+        super.channelInactive(ctx);
+    }
+}
@@ -0,0 +1,183 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Drives server-side pings and reader-idle eviction for every WebSocket connection.
+ *
+ * Connections are spread over the slots of a wheel that turns once per ping interval. A
+ * single {@link HashedWheelTimer} timeout, re-armed on every tick, sweeps the slot under the
+ * cursor, so the number of scheduled tasks stays at one regardless of how many channels are
+ * open. Reads only update a volatile timestamp on the connection's entry.
+ *
+ * On each visit a connection that has been silent for longer than the idle timeout is
+ * closed, and one that has been silent for a full ping interval is sent a ping.
+ */
+public class HeartbeatWheel {
+    private static final Logger logger = LoggerFactory.getLogger(HeartbeatWheel.class);
+
+    private final Set<Entry>[] slots;
+    private final long tickNanos;
+    private final long pingIntervalNanos;
+    private final long idleTimeoutNanos;
+    private final ServerMetrics metrics;
+    private final LongSupplier clock;
+    private final HashedWheelTimer timer;
+    private volatile int cursor;
+    private volatile boolean running;
+    private volatile Timeout tick;
+
+    /**
+     * Creates a heartbeat wheel. Call {@link #start()} to begin sweeping.
+     *
+     * @param pingIntervalMs how long a connection may be silent before it is pinged
+     * @param idleTimeoutMs how long a connection may be silent before it is closed
+     * @param tickMs how often a slot is swept; smaller ticks spread the pings more evenly
+     * @param metrics the metrics pings and evictions are counted in
+     */
+    public HeartbeatWheel(long pingIntervalMs, long idleTimeoutMs, long tickMs, ServerMetrics metrics) {
+        this(pingIntervalMs, idleTimeoutMs, tickMs, metrics, System::nanoTime);
+    }
+
+    @SuppressWarnings("unchecked")
+    HeartbeatWheel(long pingIntervalMs, long idleTimeoutMs, long tickMs, ServerMetrics metrics, LongSupplier clock) {
+        if (pingIntervalMs <= 0 || idleTimeoutMs <= 0 || tickMs <= 0) {
+            throw new IllegalArgumentException("Heartbeat intervals must be positive");
+        }
+        int slotCount = (int) Math.max(1, (pingIntervalMs + tickMs - 1) / tickMs);
+        this.slots = new Set[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = ConcurrentHashMap.newKeySet();
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.pingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pingIntervalMs);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.metrics = metrics;
+        this.clock = clock;
+        this.timer = new HashedWheelTimer(new DefaultThreadFactory("HeartbeatWheel", true),
+                tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void start() {
+        running = true;
+        rearm();
+    }
+
+    public void stop() {
+        running = false;
+        Timeout current = tick;
+        if (current != null) {
+            current.cancel();
+        }
+        timer.stop();
+    }
+
+    /**
+     * Adds a connection to the wheel. It is first visited one full turn from now.
+     *
+     * @param channel the connection, after its WebSocket handshake completed
+     * @return the entry the connection reports its reads to
+     */
+    public Entry register(Channel channel) {
+        int slot = Math.floorMod(cursor - 1, slots.length);
+        Entry entry = new Entry(channel, slot, clock.getAsLong());
+        slots[slot].add(entry);
+        return entry;
+    }
+
+    public void unregister(Entry entry) {
+        slots[entry.slot].remove(entry);
+    }
+
+    int size() {
+        int size = 0;
+        for (Set<Entry> slot : slots) {
+            size += slot.size();
+        }
+        return size;
+    }
+
+    private void onTick() {
+        try {
+            int current = cursor;
+            sweep(slots[current]);
+            cursor = (current + 1) % slots.length;
+        } catch (Exception e) {
+            logger.error("Error sweeping heartbeat wheel", e);
+        } finally {
+            if (running) {
+                rearm();
+            }
+        }
+    }
+
+    private void rearm() {
+        try {
+            tick = timer.newTimeout(t -> onTick(), tickNanos, TimeUnit.NANOSECONDS);
+        } catch (IllegalStateException e) {
+            // Timer was stopped while this tick ran
+        }
+    }
+
+    /**
+     * Visits every connection in one slot. Package-private so tests can drive the wheel.
+     */
+    void sweep(Set<Entry> slot) {
+        long now = clock.getAsLong();
+        for (Entry entry : slot) {
+            Channel channel = entry.channel;
+            if (!channel.isActive()) {
+                slot.remove(entry);
+                continue;
+            }
+            long silentFor = now - entry.lastReadNanos;
+            if (silentFor >= idleTimeoutNanos) {
+                slot.remove(entry);
+                metrics.idleConnectionEvicted();
+                logger.info("Closing idle connection {}: no reads for {} ms",
+                        channel.remoteAddress(), TimeUnit.NANOSECONDS.toMillis(silentFor));
+                channel.close();
+            } else if (silentFor >= pingIntervalNanos) {
+                metrics.heartbeatPingSent();
+                channel.writeAndFlush(new PingWebSocketFrame(), channel.voidPromise());
+            }
+        }
+    }
+
+    void sweepAll() {
+        for (Set<Entry> slot : slots) {
+            sweep(slot);
+        }
+    }
+
+    /**
+     * A connection's position on the wheel and the time it was last heard from.
+     */
+    public final class Entry {
+        private final Channel channel;
+        private final int slot;
+        private volatile long lastReadNanos;
+
+        private Entry(Channel channel, int slot, long now) {
+            this.channel = channel;
+            this.slot = slot;
+            this.lastReadNanos = now;
+        }
+
+        public void touch() {
+            lastReadNanos = clock.getAsLong();
+        }
+    }
+}
@@ -2,4 +2,16 @@ package ca.lajtha.websocketchat.server.websocket;
 
 public interface MessageSender {
         void sendMessage(String socketId, String message);
+
+        /**
+         * Sends a message to a player whose interned key the caller already holds, so it can be
+         * routed without looking the id up again. By default the key is ignored.
+         *
+         * @param playerKey the player's int from the server's shared interner, or -1 if unknown
+         * @param playerId the player's id
+         * @param message the message to send
+         */
+        default void sendMessage(int playerKey, String playerId, String message) {
+                sendMessage(playerId, message);
+        }
 }
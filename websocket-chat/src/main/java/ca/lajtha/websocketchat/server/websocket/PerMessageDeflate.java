@@ -0,0 +1,197 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import ca.lajtha.websocketchat.server.ServerConfig;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionDecoder;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionEncoder;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandshaker;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * permessage-deflate (RFC 7692) settings shared by the WebSocket pipeline and the broadcast path.
+ *
+ * With context takeover enabled, Netty's own extension is used: each connection keeps its
+ * deflate window between messages, which gives the best ratio but costs a compressor per
+ * connection and makes every frame unique to its connection.
+ *
+ * With context takeover disabled, the server always announces {@code server_no_context_takeover}
+ * and compresses with {@link SharedDeflateEncoder}. Every message is then compressed from an
+ * empty window with the same level and window size, so the compressed bytes of a message are
+ * the same for every such peer. {@link #compress} produces them once, and the broadcast path
+ * sends the result to all of those peers. No per-connection deflate state is kept; compressors
+ * are cached per thread.
+ *
+ * Messages shorter than the minimum size are never compressed.
+ */
+public class PerMessageDeflate {
+    private static final int MAX_WINDOW_BITS = 15;
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    // Trailer that a sync flush appends and RFC 7692 requires senders to strip
+    private static final int SYNC_FLUSH_TRAILER_LENGTH = 4;
+
+    private final int compressionLevel;
+    private final int minSize;
+    private final boolean contextTakeover;
+    private final FastThreadLocal<Deflater> deflaters = new FastThreadLocal<>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(compressionLevel, true);
+        }
+
+        @Override
+        protected void onRemoval(Deflater deflater) {
+            deflater.end();
+        }
+    };
+
+    /**
+     * @param compressionLevel the zlib level, 0-9
+     * @param minSize the smallest payload, in bytes, that is compressed
+     * @param contextTakeover whether the server keeps its compression context between messages
+     */
+    public PerMessageDeflate(int compressionLevel, int minSize, boolean contextTakeover) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9");
+        }
+        this.compressionLevel = compressionLevel;
+        this.minSize = Math.max(0, minSize);
+        this.contextTakeover = contextTakeover;
+    }
+
+    /**
+     * Creates the settings from the server configuration.
+     *
+     * @return the settings, or null if compression is disabled
+     */
+    public static PerMessageDeflate fromConfig(ServerConfig config) {
+        if (!config.isCompressionEnabled()) {
+            return null;
+        }
+        return new PerMessageDeflate(config.getCompressionLevel(), config.getCompressionMinSize(),
+                config.isCompressionContextTakeover());
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Whether compressed frames can be built once and shared between connections.
+     */
+    public boolean isShareable() {
+        return !contextTakeover;
+    }
+
+    /**
+     * Creates the handler that negotiates the extension during the upgrade. It removes itself
+     * from the pipeline once the upgrade response is written.
+     */
+    public WebSocketServerExtensionHandler newExtensionHandler() {
+        WebSocketExtensionFilter skipSmall = frame -> frame.content().readableBytes() < minSize;
+        WebSocketExtensionFilterProvider filters = new WebSocketExtensionFilterProvider() {
+            @Override
+            public WebSocketExtensionFilter encoderFilter() {
+                return skipSmall;
+            }
+
+            @Override
+            public WebSocketExtensionFilter decoderFilter() {
+                return WebSocketExtensionFilter.NEVER_SKIP;
+            }
+        };
+        // The server window cannot be reduced: shared frames are always built with a full window
+        PerMessageDeflateServerExtensionHandshaker netty = new PerMessageDeflateServerExtensionHandshaker(
+                compressionLevel, false, MAX_WINDOW_BITS, true, false, filters);
+        WebSocketServerExtensionHandshaker handshaker = contextTakeover ? netty : data -> {
+            WebSocketServerExtension negotiated = netty.handshakeExtension(data);
+            return negotiated == null ? null : new NoContextTakeoverExtension(negotiated);
+        };
+        return new WebSocketServerExtensionHandler(handshaker);
+    }
+
+    /**
+     * Compresses a whole message as the payload of a permessage-deflate frame with no context
+     * takeover. The result is the same for every peer that negotiated through this instance
+     * with context takeover disabled.
+     *
+     * @param alloc allocator for the result
+     * @param content the uncompressed payload; its reader index is not moved
+     * @return a new buffer with the compressed payload
+     */
+    public ByteBuf compress(ByteBufAllocator alloc, ByteBuf content) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(content.nioBuffer());
+        ByteBuf out = alloc.buffer(content.readableBytes() / 2 + 64);
+        try {
+            while (true) {
+                out.ensureWritable(Math.max(64, content.readableBytes() / 4));
+                int writable = out.writableBytes();
+                ByteBuffer target = out.nioBuffer(out.writerIndex(), writable);
+                int written = deflater.deflate(target, Deflater.SYNC_FLUSH);
+                out.writerIndex(out.writerIndex() + written);
+                // A sync flush that filled the whole space may have more output pending
+                if (written < writable) {
+                    break;
+                }
+            }
+            out.writerIndex(out.writerIndex() - SYNC_FLUSH_TRAILER_LENGTH);
+            return out;
+        } catch (RuntimeException e) {
+            out.release();
+            throw e;
+        }
+    }
+
+    boolean shouldCompress(WebSocketFrame frame) {
+        return frame.content().readableBytes() >= minSize;
+    }
+
+    /**
+     * Wraps Netty's negotiated extension to announce {@code server_no_context_takeover} and
+     * compress with {@link SharedDeflateEncoder}; decompression of client frames is unchanged.
+     */
+    private final class NoContextTakeoverExtension implements WebSocketServerExtension {
+        private final WebSocketServerExtension negotiated;
+
+        private NoContextTakeoverExtension(WebSocketServerExtension negotiated) {
+            this.negotiated = negotiated;
+        }
+
+        @Override
+        public int rsv() {
+            return negotiated.rsv();
+        }
+
+        @Override
+        public WebSocketExtensionEncoder newExtensionEncoder() {
+            return new SharedDeflateEncoder(PerMessageDeflate.this);
+        }
+
+        @Override
+        public WebSocketExtensionDecoder newExtensionDecoder() {
+            return negotiated.newExtensionDecoder();
+        }
+
+        @Override
+        public WebSocketExtensionData newReponseData() {
+            WebSocketExtensionData data = negotiated.newReponseData();
+            Map<String, String> parameters = new HashMap<>(data.parameters());
+            parameters.put(SERVER_NO_CONTEXT_TAKEOVER, null);
+            return new WebSocketExtensionData(data.name(), parameters);
+        }
+    }
+}
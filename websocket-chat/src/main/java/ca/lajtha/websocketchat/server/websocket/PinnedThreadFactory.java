@@ -0,0 +1,115 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory for event loops that pins each new thread to one CPU from a configured
+ * list, handing CPUs out round-robin.
+ *
+ * Pinning keeps an event loop's channels, buffers and pool caches on one core. It only
+ * pays off when the listed cores are kept free of other busy threads, for example with
+ * {@code isolcpus} or by pinning the rest of the JVM elsewhere.
+ *
+ * Each thread pins itself once, when it starts, by running {@code taskset} on its own Linux
+ * thread id, so no native library is needed. Where that is not possible (another OS, no
+ * {@code taskset}, or a cgroup cpuset that excludes the CPU) the thread runs unpinned and a
+ * warning is logged; restricting the whole process with {@code taskset} or a cpuset still works.
+ */
+public class PinnedThreadFactory extends DefaultThreadFactory {
+    private static final Logger logger = LoggerFactory.getLogger(PinnedThreadFactory.class);
+    private static final Path THREAD_SELF = Path.of("/proc/thread-self");
+    private static final long TASKSET_TIMEOUT_SECONDS = 5;
+
+    private final int[] cpus;
+    private final AtomicInteger nextCpu = new AtomicInteger();
+
+    /**
+     * @param poolName prefix for the thread names
+     * @param cpus the CPUs to pin to, e.g. from {@link #parseCpuList(String)}
+     */
+    public PinnedThreadFactory(String poolName, int[] cpus) {
+        super(poolName);
+        if (cpus.length == 0) {
+            throw new IllegalArgumentException("At least one CPU is required");
+        }
+        this.cpus = cpus.clone();
+    }
+
+    @Override
+    protected Thread newThread(Runnable r, String name) {
+        int cpu = cpus[Math.floorMod(nextCpu.getAndIncrement(), cpus.length)];
+        return super.newThread(() -> {
+            try {
+                pinCurrentThread(cpu);
+                logger.debug("Pinned {} to CPU {}", Thread.currentThread().getName(), cpu);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Could not pin {} to CPU {}: {}", Thread.currentThread().getName(), cpu, e.getMessage());
+            } catch (InterruptedException e) {
+                // Only the wait for taskset was interrupted; the event loop must not start out interrupted
+                Thread.interrupted();
+                logger.warn("Interrupted while pinning {} to CPU {}", Thread.currentThread().getName(), cpu);
+            }
+            r.run();
+        }, name);
+    }
+
+    private static void pinCurrentThread(int cpu) throws IOException, InterruptedException {
+        // Links to <pid>/task/<tid>
+        String threadId = Files.readSymbolicLink(THREAD_SELF).getFileName().toString();
+        Process taskset = new ProcessBuilder("taskset", "--pid", "--cpu-list", Integer.toString(cpu), threadId)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        if (!taskset.waitFor(TASKSET_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            taskset.destroyForcibly();
+            throw new IOException("taskset did not finish within " + TASKSET_TIMEOUT_SECONDS + " s");
+        }
+        if (taskset.exitValue() != 0) {
+            throw new IOException("taskset exited with status " + taskset.exitValue());
+        }
+    }
+
+    /**
+     * Parses a CPU list such as {@code "2-5,8"}.
+     *
+     * @return the CPUs in the order given, or an empty array for a blank list
+     * @throws IllegalArgumentException if the list is malformed
+     */
+    public static int[] parseCpuList(String cpuList) {
+        if (cpuList == null || cpuList.isBlank()) {
+            return new int[0];
+        }
+        List<Integer> cpus = new ArrayList<>();
+        for (String part : cpuList.split(",")) {
+            String range = part.trim();
+            int dash = range.indexOf('-');
+            try {
+                if (dash < 0) {
+                    cpus.add(Integer.parseInt(range));
+                } else {
+                    int from = Integer.parseInt(range.substring(0, dash).trim());
+                    int to = Integer.parseInt(range.substring(dash + 1).trim());
+                    if (to < from) {
+                        throw new IllegalArgumentException("Invalid CPU range: " + range);
+                    }
+                    for (int cpu = from; cpu <= to; cpu++) {
+                        cpus.add(cpu);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid CPU list: " + cpuList, e);
+            }
+        }
+        return cpus.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,16 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+/**
+ * What the server does with a frame from a client that exceeded its rate limit.
+ */
+public enum RateLimitAction {
+    /**
+     * Drop the frame and tell the client it is sending too fast.
+     */
+    REPLY,
+
+    /**
+     * Drop the frame and close the connection with a policy violation status.
+     */
+    DISCONNECT
+}
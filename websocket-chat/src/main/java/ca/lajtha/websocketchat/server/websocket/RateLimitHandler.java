@@ -0,0 +1,98 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketCloseStatus;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Throttles inbound data frames per user before they reach {@link WebSocketFrameHandler}.
+ *
+ * One instance is created per channel. The user's bucket is looked up once, on the first
+ * data frame after the handshake, and cached in a field, so the per-frame cost is a single
+ * CAS on the bucket. Control frames are never throttled.
+ *
+ * A fragmented message costs one token, taken by its first frame. Its continuation frames
+ * follow that frame: passed on if it was, dropped if it was throttled, so a message is never
+ * cut off halfway.
+ */
+public class RateLimitHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitHandler.class);
+    private static final String RATE_LIMITED_RESPONSE = "{\"type\":\"error\",\"error\":\"Rate limit exceeded, message was not delivered\"}";
+
+    private final RateLimiter rateLimiter;
+    private final RateLimitAction action;
+    private final ServerMetrics metrics;
+    private RateLimiter.Bucket bucket;
+    private boolean droppingFragments;
+
+    public RateLimitHandler(RateLimiter rateLimiter, RateLimitAction action, ServerMetrics metrics) {
+        this.rateLimiter = rateLimiter;
+        this.action = action;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame
+                || msg instanceof ContinuationWebSocketFrame)) {
+            super.channelRead(ctx, msg);
+            return;
+        }
+        if (msg instanceof ContinuationWebSocketFrame continuation) {
+            if (droppingFragments) {
+                droppingFragments = !continuation.isFinalFragment();
+                continuation.release();
+            } else {
+                super.channelRead(ctx, msg);
+            }
+            return;
+        }
+
+        RateLimiter.Bucket userBucket = bucket;
+        if (userBucket == null) {
+            ConnectionSession session = ConnectionSession.of(ctx.channel());
+            if (session == null) {
+                // Not authenticated; WebSocketFrameHandler rejects the frame
+                super.channelRead(ctx, msg);
+                return;
+            }
+            userBucket = rateLimiter.acquire(session.userId());
+            bucket = userBucket;
+        }
+
+        if (userBucket.tryAcquire()) {
+            super.channelRead(ctx, msg);
+            return;
+        }
+
+        droppingFragments = !((WebSocketFrame) msg).isFinalFragment();
+        ReferenceCountUtil.release(msg);
+        metrics.rateLimitExceeded(action);
+        if (action == RateLimitAction.DISCONNECT) {
+            logger.info("Closing connection of {}: rate limit exceeded", ConnectionSession.of(ctx.channel()).userId());
+            ctx.writeAndFlush(new CloseWebSocketFrame(WebSocketCloseStatus.POLICY_VIOLATION, "Rate limit exceeded"))
+                    .addListener(ChannelFutureListener.CLOSE);
+        } else {
+            ctx.writeAndFlush(new TextWebSocketFrame(RATE_LIMITED_RESPONSE));
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (bucket != null) {
+            rateLimiter.release(bucket);
+            bucket = null;
+        }
+        super.channelInactive(ctx);
+    }
+}
@@ -0,0 +1,106 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-user token buckets for inbound WebSocket frames.
+ *
+ * Buckets are implemented with the generic cell rate algorithm: each bucket is a single
+ * {@link AtomicLong} holding the theoretical arrival time of the next frame, so acquiring a
+ * token is one volatile read and one CAS, without locks or allocation. A user with several
+ * connections shares one bucket; it is released when the last connection closes.
+ */
+public class RateLimiter {
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final LongSupplier clock;
+
+    /**
+     * Creates a rate limiter.
+     *
+     * @param burst number of frames a user may send back to back
+     * @param refillPerSecond sustained number of frames per second a user may send
+     */
+    public RateLimiter(int burst, double refillPerSecond) {
+        this(burst, refillPerSecond, System::nanoTime);
+    }
+
+    RateLimiter(int burst, double refillPerSecond, LongSupplier clock) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("Rate limit burst must be at least 1");
+        }
+        if (refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate limit refill rate must be positive");
+        }
+        this.emissionIntervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / refillPerSecond));
+        this.burstToleranceNanos = emissionIntervalNanos * burst;
+        this.clock = clock;
+    }
+
+    /**
+     * Attaches a connection of the given user and returns the user's bucket.
+     *
+     * @param userId the authenticated user
+     * @return the bucket shared by all of the user's connections
+     */
+    public Bucket acquire(String userId) {
+        return buckets.compute(userId, (id, existing) -> {
+            Bucket bucket = existing != null ? existing : new Bucket(id);
+            bucket.connections.incrementAndGet();
+            return bucket;
+        });
+    }
+
+    /**
+     * Detaches a connection from its bucket, dropping the bucket once no connection uses it.
+     *
+     * @param bucket the bucket returned by {@link #acquire(String)}
+     */
+    public void release(Bucket bucket) {
+        buckets.computeIfPresent(bucket.userId, (id, existing) ->
+                existing.connections.decrementAndGet() <= 0 ? null : existing);
+    }
+
+    int trackedUsers() {
+        return buckets.size();
+    }
+
+    /**
+     * Token bucket of a single user.
+     */
+    public final class Bucket {
+        private final String userId;
+        private final AtomicLong theoreticalArrivalTime = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicInteger connections = new AtomicInteger();
+
+        private Bucket(String userId) {
+            this.userId = userId;
+        }
+
+        /**
+         * Takes one token if available.
+         *
+         * @return true if the frame is within the rate limit
+         */
+        public boolean tryAcquire() {
+            long now = clock.getAsLong();
+            while (true) {
+                long tat = theoreticalArrivalTime.get();
+                long start = tat == Long.MIN_VALUE || tat - now < 0 ? now : tat;
+                long next = start + emissionIntervalNanos;
+                if (next - now > burstToleranceNanos) {
+                    return false;
+                }
+                if (theoreticalArrivalTime.compareAndSet(tat, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * The resumable side of a player's connection: the game messages most recently sent to it,
+ * numbered, and the token a reconnecting client presents to pick up where it left off.
+ *
+ * Every game message sent to the player gets the next sequence number, starting at 1, whether
+ * a connection is attached or the player is between connections; only the last
+ * {@code capacity} are kept. Sequence numbers are not written into the frames, which are shared
+ * between the recipients of a broadcast: the client counts the game messages it receives, which
+ * are all text frames except the server's own {@code error}, {@code sessionStarted} and
+ * {@code sessionResumed} notices.
+ *
+ * All fields are guarded by the buffer's monitor, which is also held while a message is
+ * numbered and written, so the order of the buffer and of the connection always agree.
+ */
+final class ReplayBuffer {
+    private static final SecureRandom TOKENS = new SecureRandom();
+
+    final String token;
+    private final String[] messages;
+    private long nextSequence = 1;
+    // The connection messages are written to, or null while the player is reconnecting
+    ConnectionSession session;
+    // Ends the player's grace period once it has disconnected
+    ScheduledFuture<?> expiry;
+    // Counts disconnects, so an expiry that lost a race with a resume can tell it is stale
+    long detachments;
+
+    ReplayBuffer(int capacity, ConnectionSession session) {
+        this.token = newToken();
+        this.messages = new String[Math.max(1, capacity)];
+        this.session = session;
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        TOKENS.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Numbers and keeps a message, dropping the oldest one if the buffer is full.
+     */
+    void record(String message) {
+        messages[(int) (nextSequence % messages.length)] = message;
+        nextSequence++;
+    }
+
+    /**
+     * Returns whether every message after the given one is still held.
+     *
+     * @param lastSequence the number of the last message the client received
+     */
+    boolean canReplayAfter(long lastSequence) {
+        long missed = nextSequence - 1 - lastSequence;
+        return missed >= 0 && missed <= Math.min(messages.length, nextSequence - 1);
+    }
+
+    /**
+     * Returns the messages after the given one, oldest first. Check {@link #canReplayAfter} first.
+     */
+    List<String> messagesAfter(long lastSequence) {
+        String[] missed = new String[(int) (nextSequence - 1 - lastSequence)];
+        for (int i = 0; i < missed.length; i++) {
+            missed[i] = messages[(int) ((lastSequence + 1 + i) % messages.length)];
+        }
+        return List.of(missed);
+    }
+}
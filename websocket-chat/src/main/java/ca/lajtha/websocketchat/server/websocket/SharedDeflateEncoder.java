@@ -0,0 +1,58 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionEncoder;
+import io.netty.util.AttributeKey;
+
+import java.util.List;
+
+/**
+ * permessage-deflate encoder for connections that negotiated no server context takeover.
+ *
+ * Frames that already carry RSV1 were compressed once for many recipients by
+ * {@link PerMessageDeflate#compress} and pass through untouched. Other whole text and
+ * binary messages at or above the minimum size are compressed here. Fragmented messages
+ * are sent uncompressed.
+ */
+public class SharedDeflateEncoder extends WebSocketExtensionEncoder {
+    /**
+     * Set on channels whose peers accept shared precompressed frames.
+     */
+    public static final AttributeKey<PerMessageDeflate> SHARED_DEFLATE_KEY = AttributeKey.valueOf("sharedDeflate");
+
+    private final PerMessageDeflate deflate;
+
+    SharedDeflateEncoder(PerMessageDeflate deflate) {
+        this.deflate = deflate;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        ctx.channel().attr(SHARED_DEFLATE_KEY).set(deflate);
+    }
+
+    @Override
+    public boolean acceptOutboundMessage(Object msg) throws Exception {
+        if (!(msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame)) {
+            return false;
+        }
+        WebSocketFrame frame = (WebSocketFrame) msg;
+        return frame.isFinalFragment()
+                && (frame.rsv() & WebSocketExtension.RSV1) == 0
+                && deflate.shouldCompress(frame);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, WebSocketFrame frame, List<Object> out) {
+        int rsv = frame.rsv() | WebSocketExtension.RSV1;
+        ByteBuf compressed = deflate.compress(ctx.alloc(), frame.content());
+        out.add(frame instanceof TextWebSocketFrame
+                ? new TextWebSocketFrame(true, rsv, compressed)
+                : new BinaryWebSocketFrame(true, rsv, compressed));
+    }
+}
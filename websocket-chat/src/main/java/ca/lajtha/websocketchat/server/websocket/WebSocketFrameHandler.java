@@ -1,26 +1,43 @@
 package ca.lajtha.websocketchat.server.websocket;
 
+import ca.lajtha.websocketchat.game.MailboxFullException;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.websocketx.*;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.util.AttributeKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.UUID;
-
+/**
+ * Forwards the text frames of an authenticated connection to the game.
+ *
+ * The connection's {@link ConnectionSession} is created when the handshake completes and kept
+ * in a field, so the frame path reads no channel attributes.
+ */
 public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketFrameHandler.class);
-    private static final AttributeKey<String> SOCKET_ID_KEY = AttributeKey.valueOf("socketId");
-    private static final AttributeKey<Boolean> HANDSHAKE_COMPLETE_KEY = AttributeKey.valueOf("handshakeComplete");
     // Use the same USER_ID_KEY as WebSocketHandshakeHandler
     private static final AttributeKey<String> USER_ID_KEY = WebSocketHandshakeHandler.getUserIdKey();
+    // Name WebSocketServerProtocolHandshakeHandler gives the handler it replaces itself with
+    private static final String FORBIDDEN_RESPONDER = "WS403Responder";
+    private static final String MAILBOX_FULL_RESPONSE = "{\"type\":\"error\",\"error\":\"Game is busy, message was not delivered\"}";
 
     private final WebsocketManager websocketManager;
+    private final ServerMetrics metrics;
+    private ConnectionSession session;
 
     public WebSocketFrameHandler(WebsocketManager websocketManager) {
+        this(websocketManager, ServerMetrics.noop());
+    }
+
+    public WebSocketFrameHandler(WebsocketManager websocketManager, ServerMetrics metrics) {
         this.websocketManager = websocketManager;
+        this.metrics = metrics;
     }
 
     @Override
@@ -31,8 +48,9 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
         if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
             logger.debug("WebSocket handshake completion event received");
             
-            // Verify that the connection was authenticated during handshake
-            String userId = ctx.channel().attr(USER_ID_KEY).get();
+            // Verify that the connection was authenticated during handshake. The userId moves
+            // into the session, so the attribute is not kept for the life of the connection
+            String userId = ctx.channel().attr(USER_ID_KEY).getAndRemove();
             
             if (userId == null || userId.isEmpty()) {
                 logger.warn("WebSocket connection rejected: No authenticated userId found. Connection from: {}", ctx.channel().remoteAddress());
@@ -40,72 +58,97 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
                 return;
             }
             
-            // Generate a unique socketId for this connection
-            String socketId = UUID.randomUUID().toString();
-            ctx.channel().attr(SOCKET_ID_KEY).set(socketId);
-            ctx.channel().attr(HANDSHAKE_COMPLETE_KEY).set(true);
+            trimPipeline(ctx);
             
-            logger.info("Client connected: {} (socketId: {}, userId: {})", ctx.channel().remoteAddress(), socketId, userId);
-            websocketManager.playerConnected(userId, ctx);
+            session = websocketManager.playerConnected(ctx.channel(), userId);
+            logger.info("Client connected: {} (session: {}, userId: {})", ctx.channel().remoteAddress(), session.id(), userId);
         } else {
             logger.debug("Received non-handshake event: {}", evt.getClass().getName());
         }
         super.userEventTriggered(ctx, evt);
     }
 
+    /**
+     * Removes the handlers that were only needed for the upgrade request, so every inbound frame
+     * passes through fewer handlers for the rest of the connection. The handshaker has already
+     * removed the HTTP codec and aggregator; what is left is our authentication handler and
+     * Netty's 403 responder for HTTP requests on an upgraded channel, which can no longer
+     * arrive once the codec is gone.
+     */
+    private static void trimPipeline(ChannelHandlerContext ctx) {
+        ChannelPipeline pipeline = ctx.pipeline();
+        if (pipeline.get(WebSocketHandshakeHandler.class) != null) {
+            pipeline.remove(WebSocketHandshakeHandler.class);
+        }
+        if (pipeline.get(FORBIDDEN_RESPONDER) != null) {
+            pipeline.remove(FORBIDDEN_RESPONDER);
+        }
+        if (pipeline.get(HttpObjectAggregator.class) != null) {
+            pipeline.remove(HttpObjectAggregator.class);
+        }
+    }
+
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) {
-        // Verify handshake completed
-        Boolean handshakeComplete = ctx.channel().attr(HANDSHAKE_COMPLETE_KEY).get();
-        if (handshakeComplete == null || !handshakeComplete) {
-            logger.warn("Warning: Received frame before handshake completed. Closing connection.");
-            ctx.close();
-            return;
-        }
-        
-        // Verify authentication before processing any frames
-        String userId = ctx.channel().attr(USER_ID_KEY).get();
-        if (userId == null || userId.isEmpty()) {
-            logger.warn("Warning: Received frame from unauthenticated connection. Closing connection.");
+        // A session only exists once the handshake completed for an authenticated user
+        ConnectionSession session = this.session;
+        if (session == null) {
+            logger.warn("Warning: Received frame before an authenticated handshake completed. Closing connection.");
             ctx.close();
             return;
         }
+        String userId = session.userId();
         
         if (frame instanceof TextWebSocketFrame) {
             // Handle text frames
             TextWebSocketFrame textFrame = (TextWebSocketFrame) frame;
             String request = textFrame.text();
             
-            // Get the socketId from channel attributes
-            String socketId = ctx.channel().attr(SOCKET_ID_KEY).get();
-            if (socketId == null) {
-                logger.warn("Warning: Received message from channel without socketId");
-                return;
-            }
-            
-            logger.debug("Received from socket {} (userId: {}): {}", socketId, userId, request);
+            logger.debug("Received from session {} (userId: {}): {}", session.id(), userId, request);
+            metrics.frameReceived();
             
             // Forward message to game
-            websocketManager.handlePlayerMessage(userId, request);
+            try {
+                websocketManager.handlePlayerMessage(session, request);
+            } catch (MailboxFullException e) {
+                handleMailboxFull(ctx, userId, e);
+            }
         } else {
             String message = "Unsupported frame type: " + frame.getClass().getName();
             throw new UnsupportedOperationException(message);
         }
     }
 
+    /**
+     * Applies the game's overflow policy to a sender whose message hit a full mailbox.
+     */
+    private void handleMailboxFull(ChannelHandlerContext ctx, String userId, MailboxFullException e) {
+        switch (e.getPolicy()) {
+            case REJECT -> {
+                logger.debug("Rejected message from {}: mailbox of game {} is full", userId, e.getGameId());
+                ctx.writeAndFlush(new TextWebSocketFrame(MAILBOX_FULL_RESPONSE));
+            }
+            case DROP -> logger.debug("Dropped message from {}: mailbox of game {} is full", userId, e.getGameId());
+            case PAUSE_READING -> {
+                Channel channel = ctx.channel();
+                if (channel.config().isAutoRead()) {
+                    logger.debug("Pausing reads from {} until game {} drains its mailbox", userId, e.getGameId());
+                    channel.config().setAutoRead(false);
+                    e.resumeWhenDrained(() -> channel.config().setAutoRead(true));
+                }
+            }
+        }
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
-        // Get the socketId from channel attributes
-        String socketId = ctx.channel().attr(SOCKET_ID_KEY).get();
-        String userId = ctx.channel().attr(USER_ID_KEY).get();
-        Boolean handshakeComplete = ctx.channel().attr(HANDSHAKE_COMPLETE_KEY).get();
+        ConnectionSession session = this.session;
         
-        if (socketId != null) {
-            logger.info("Client disconnected: {} (socketId: {}, userId: {})", ctx.channel().remoteAddress(), socketId, userId);
-            websocketManager.playerDisconnected(userId);
+        if (session != null) {
+            logger.info("Client disconnected: {} (session: {}, userId: {})", ctx.channel().remoteAddress(), session.id(), session.userId());
+            websocketManager.playerDisconnected(session);
         } else {
-            logger.debug("Client disconnected before handshake completed: {} (userId: {}, handshakeComplete: {})", 
-                    ctx.channel().remoteAddress(), userId, handshakeComplete);
+            logger.debug("Client disconnected before handshake completed: {}", ctx.channel().remoteAddress());
         }
     }
 
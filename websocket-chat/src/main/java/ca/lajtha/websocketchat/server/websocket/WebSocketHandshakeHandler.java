@@ -1,6 +1,8 @@
 package ca.lajtha.websocketchat.server.websocket;
 
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
 import ca.lajtha.websocketchat.user.TokenManager;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
@@ -19,16 +21,35 @@ import java.util.regex.Pattern;
 /**
  * Handles WebSocket handshake authentication by reading the authToken cookie
  * from the HTTP upgrade request and validating it before the WebSocket connection is established.
+ *
+ * A client resuming a dropped session also passes {@code resume=<token>&lastSeq=<n>} in the
+ * query string; these are stored in a channel attribute for the connection to be reattached.
  */
 public class WebSocketHandshakeHandler extends ChannelInboundHandlerAdapter {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketHandshakeHandler.class);
     private static final AttributeKey<String> USER_ID_KEY = AttributeKey.valueOf("userId");
+    private static final AttributeKey<ResumeRequest> RESUME_KEY = AttributeKey.valueOf("resume");
     private static final Pattern COOKIE_PATTERN = Pattern.compile("authToken=([^;\\s]+)");
     
     private final TokenManager tokenManager;
+    private final ServerMetrics metrics;
+
+    /**
+     * The session a reconnecting client asked to resume.
+     *
+     * @param token the resume token the server handed out when the session started
+     * @param lastSequence the number of the last game message the client received
+     */
+    public record ResumeRequest(String token, long lastSequence) {
+    }
     
     public WebSocketHandshakeHandler(TokenManager tokenManager) {
+        this(tokenManager, ServerMetrics.noop());
+    }
+    
+    public WebSocketHandshakeHandler(TokenManager tokenManager, ServerMetrics metrics) {
         this.tokenManager = tokenManager;
+        this.metrics = metrics;
     }
     
     @Override
@@ -67,7 +88,8 @@ public class WebSocketHandshakeHandler extends ChannelInboundHandlerAdapter {
                 if (token == null || token.isEmpty()) {
                     // No token found, reject the handshake
                     logger.warn("WebSocket handshake rejected: No authToken found in cookie or query parameter");
-                    ctx.writeAndFlush(createUnauthorizedResponse(request));
+                    metrics.handshakeRejectedMissingToken();
+                    reject(ctx, request);
                     return;
                 }
                 
@@ -77,18 +99,21 @@ public class WebSocketHandshakeHandler extends ChannelInboundHandlerAdapter {
                 if (userId == null) {
                     // Invalid token, reject the handshake
                     logger.warn("WebSocket handshake rejected: Invalid or expired token");
-                    ctx.writeAndFlush(createUnauthorizedResponse(request));
+                    metrics.handshakeRejectedInvalidToken();
+                    reject(ctx, request);
                     return;
                 }
                 
                 // Store userId in channel attributes for later use
                 ctx.channel().attr(USER_ID_KEY).set(userId);
+                ResumeRequest resume = extractResumeRequest(request.uri());
+                if (resume != null) {
+                    ctx.channel().attr(RESUME_KEY).set(resume);
+                }
                 logger.info("WebSocket handshake authenticated for userId: {}", userId);
                 logger.debug("Passing request to WebSocketServerProtocolHandler for handshake completion...");
-                
-                // Retain the request reference before passing to WebSocketServerProtocolHandler
-                // This is important when using HttpObjectAggregator
-                request.retain();
+                // Ownership of the request passes on as-is: WebSocketServerProtocolHandler
+                // releases it once the handshake is done
             }
         }
         
@@ -96,6 +121,16 @@ public class WebSocketHandshakeHandler extends ChannelInboundHandlerAdapter {
         super.channelRead(ctx, msg);
     }
     
+    /**
+     * Answers an unauthenticated upgrade with 401 and closes the connection. The request is
+     * not passed on, so it is released here.
+     */
+    private void reject(ChannelHandlerContext ctx, FullHttpRequest request) {
+        FullHttpResponse response = createUnauthorizedResponse(request);
+        request.release();
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+    
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         logger.error("Exception in WebSocketHandshakeHandler", cause);
@@ -122,6 +157,28 @@ public class WebSocketHandshakeHandler extends ChannelInboundHandlerAdapter {
      * Extracts the authToken value from the query string (e.g., ?token=...).
      */
     private String extractTokenFromQuery(String uri) {
+        return extractQueryParameter(uri, "token");
+    }
+    
+    /**
+     * Extracts the resume token and last received sequence number from the query string, or
+     * returns null if either is missing or malformed.
+     */
+    private ResumeRequest extractResumeRequest(String uri) {
+        String token = extractQueryParameter(uri, "resume");
+        String lastSequence = extractQueryParameter(uri, "lastSeq");
+        if (token == null || token.isEmpty() || lastSequence == null) {
+            return null;
+        }
+        try {
+            return new ResumeRequest(token, Long.parseLong(lastSequence));
+        } catch (NumberFormatException e) {
+            logger.debug("Ignoring resume request with malformed lastSeq: {}", lastSequence);
+            return null;
+        }
+    }
+    
+    private static String extractQueryParameter(String uri, String name) {
         if (uri == null || uri.isEmpty()) {
             return null;
         }
@@ -133,10 +190,11 @@ public class WebSocketHandshakeHandler extends ChannelInboundHandlerAdapter {
         
         String query = uri.substring(queryIndex + 1);
         String[] params = query.split("&");
+        String prefix = name + "=";
         
         for (String param : params) {
-            if (param.startsWith("token=")) {
-                return param.substring(6); // "token=".length()
+            if (param.startsWith(prefix)) {
+                return param.substring(prefix.length());
             }
         }
         
@@ -162,5 +220,12 @@ public class WebSocketHandshakeHandler extends ChannelInboundHandlerAdapter {
     public static AttributeKey<String> getUserIdKey() {
         return USER_ID_KEY;
     }
+    
+    /**
+     * Gets the attribute key a resume request is stored under until the session opens.
+     */
+    public static AttributeKey<ResumeRequest> getResumeKey() {
+        return RESUME_KEY;
+    }
 }
 
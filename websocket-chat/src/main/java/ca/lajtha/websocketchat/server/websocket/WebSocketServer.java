@@ -1,59 +1,224 @@
 package ca.lajtha.websocketchat.server.websocket;
 
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
 import ca.lajtha.websocketchat.server.ServerConfig;
 import ca.lajtha.websocketchat.user.TokenManager;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.netty.channel.EventLoopGroupRegistry;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.*;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.kqueue.KQueueEventLoopGroup;
+import io.netty.channel.kqueue.KQueueServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketCloseStatus;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.internal.PlatformDependent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
 @Singleton
 public class WebSocketServer {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketServer.class);
+    /**
+     * Prefix of the close reason sent when the server drains; the rest is how many milliseconds
+     * the client should wait before reconnecting.
+     */
+    public static final String RECONNECT_HINT_PREFIX = "reconnectAfterMs=";
+    private static final String IO_URING_GROUP = "io.netty.incubator.channel.uring.IOUringEventLoopGroup";
+    private static final String IO_URING_SERVER_CHANNEL = "io.netty.incubator.channel.uring.IOUringServerSocketChannel";
+
     private final ServerConfig config;
     private final WebsocketManager websocketManager;
     private final TokenManager tokenManager;
+    private final ServerMetrics metrics;
+    private final EventLoopGroupRegistry eventLoopGroupRegistry;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch drained = new CountDownLatch(1);
+    private final ChannelGroup connections = new DefaultChannelGroup("websocket-connections", GlobalEventExecutor.INSTANCE);
+    private volatile Channel serverChannel;
+    private volatile EventLoopGroup workerGroup;
+    private volatile Throwable startFailure;
+    private volatile boolean draining;
 
-    @Inject
     public WebSocketServer(ServerConfig config, WebsocketManager websocketManager, TokenManager tokenManager) {
+        this(config, websocketManager, tokenManager, ServerMetrics.noop());
+    }
+
+    public WebSocketServer(ServerConfig config, WebsocketManager websocketManager, TokenManager tokenManager,
+                           ServerMetrics metrics) {
+        this(config, websocketManager, tokenManager, metrics, null);
+    }
+
+    /**
+     * @param eventLoopGroupRegistry Micronaut's event loop groups, used instead of dedicated
+     *                               groups when {@link ServerConfig#isSharedEventLoopGroup()} is set;
+     *                               may be null
+     */
+    @Inject
+    public WebSocketServer(ServerConfig config, WebsocketManager websocketManager, TokenManager tokenManager,
+                           ServerMetrics metrics, @Nullable EventLoopGroupRegistry eventLoopGroupRegistry) {
         this.config = config;
         this.websocketManager = websocketManager;
         this.tokenManager = tokenManager;
+        this.metrics = metrics;
+        this.eventLoopGroupRegistry = eventLoopGroupRegistry;
     }
 
-    public void start() throws InterruptedException {
-        EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+    /**
+     * Waits until the server socket is bound and accepting connections.
+     *
+     * @return true if the server started within the timeout
+     * @throws IllegalStateException if the server failed to start, for example because the port
+     *         could not be bound
+     */
+    public boolean awaitStarted(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!started.await(timeout, unit)) {
+            return false;
+        }
+        if (startFailure != null) {
+            throw new IllegalStateException("WebSocket server failed to start", startFailure);
+        }
+        return true;
+    }
 
+    /**
+     * Returns the event loops connections are served on, or null before the server has started.
+     */
+    public EventLoopGroup getWorkerGroup() {
+        return workerGroup;
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones, each with a Service Restart close
+     * frame whose reason tells the client how long to wait before reconnecting. Waits are drawn
+     * at random up to the jitter, so the clients of a node going down do not all come back in
+     * the same instant. The event loops keep running until {@link #releaseEventLoops()}, since
+     * games pinned to them may still be draining after the connections have closed.
+     *
+     * @param reconnectJitterMs the longest wait a client is told to make; 0 to reconnect at once
+     * @param timeoutMs how long to wait for connections to close before closing them outright
+     * @return the number of connections that were open
+     */
+    public int drain(long reconnectJitterMs, long timeoutMs) {
+        draining = true;
         try {
+            Channel server = serverChannel;
+            if (server != null) {
+                server.close().awaitUninterruptibly();
+            }
+            int open = connections.size();
+            logger.info("Draining {} WebSocket connections, reconnect hints up to {} ms", open, reconnectJitterMs);
+            for (Channel channel : connections) {
+                if (ConnectionSession.of(channel) == null) {
+                    // Still handshaking, there is no WebSocket to send a close frame on
+                    channel.close();
+                    continue;
+                }
+                long reconnectAfterMs = reconnectJitterMs > 0 ? ThreadLocalRandom.current().nextLong(reconnectJitterMs + 1) : 0;
+                channel.writeAndFlush(new CloseWebSocketFrame(WebSocketCloseStatus.SERVICE_RESTART,
+                                RECONNECT_HINT_PREFIX + reconnectAfterMs))
+                        .addListener(ChannelFutureListener.CLOSE);
+            }
+            if (!connections.newCloseFuture().awaitUninterruptibly(timeoutMs)) {
+                logger.warn("{} connections did not close within {} ms, closing them", connections.size(), timeoutMs);
+                connections.close().awaitUninterruptibly(timeoutMs);
+            }
+            return open;
+        } catch (RuntimeException e) {
+            releaseEventLoops();
+            throw e;
+        }
+    }
+
+    /**
+     * Lets a drained server shut down its event loops. Called once the games have drained too.
+     */
+    public void releaseEventLoops() {
+        drained.countDown();
+    }
+
+    public void start() throws InterruptedException {
+        // Either share the HTTP server's event loops, so threads are sized once for both servers,
+        // or run on dedicated groups owned by this server
+        boolean sharedGroup = config.isSharedEventLoopGroup() && eventLoopGroupRegistry != null;
+        EventLoopGroup workerGroup = null;
+        EventLoopGroup bossGroup = null;
+        HeartbeatWheel heartbeatWheel = null;
+        try {
+            workerGroup = sharedGroup
+                    ? eventLoopGroupRegistry.getDefaultEventLoopGroup()
+                    : new NioEventLoopGroup(config.getWorkerThreads(), workerThreadFactory());
+            bossGroup = sharedGroup ? workerGroup : new NioEventLoopGroup(config.getBossThreads());
+            this.workerGroup = workerGroup;
+            if (sharedGroup) {
+                logger.info("WebSocket server is sharing the HTTP server's event loop group");
+            }
+            ConnectionMetricsHandler connectionMetricsHandler = new ConnectionMetricsHandler(metrics);
+            RateLimiter rateLimiter = config.isRateLimitEnabled()
+                    ? new RateLimiter(config.getRateLimitBurst(), config.getRateLimitRefillPerSecond())
+                    : null;
+            PerMessageDeflate perMessageDeflate = PerMessageDeflate.fromConfig(config);
+            HeartbeatWheel heartbeats = config.isHeartbeatEnabled()
+                    ? new HeartbeatWheel(config.getHeartbeatPingIntervalMs(), config.getHeartbeatIdleTimeoutMs(),
+                            config.getHeartbeatTickMs(), metrics)
+                    : null;
+            heartbeatWheel = heartbeats;
+            if (heartbeats != null) {
+                heartbeats.start();
+            }
+
             ServerBootstrap bootstrap = new ServerBootstrap();
             bootstrap.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(serverChannelClass(workerGroup))
                     .handler(new LoggingHandler(LogLevel.INFO))
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel ch) {
                             logger.debug("New channel initialized from: {}", ch.remoteAddress());
+                            connections.add(ch);
                             ChannelPipeline pipeline = ch.pipeline();
                             
+                            // Connection and byte counters (sees raw bytes before any decoding)
+                            pipeline.addLast(connectionMetricsHandler);
+                            
                             // HTTP codec for handling HTTP upgrade requests
                             pipeline.addLast(new HttpServerCodec());
                             
-                            // Aggregates HTTP chunks into full requests
+                            // Aggregates HTTP chunks into full requests; the handshaker removes both
+                            // HTTP handlers once the connection is upgraded
                             pipeline.addLast(new HttpObjectAggregator(config.getHttpMaxContentLength()));
                             
                             // Handles WebSocket handshake authentication (must be before WebSocketServerProtocolHandler)
-                            pipeline.addLast(new WebSocketHandshakeHandler(tokenManager));
+                            pipeline.addLast(new WebSocketHandshakeHandler(tokenManager, metrics));
+                            
+                            // Negotiates permessage-deflate during the upgrade and installs the codec
+                            if (perMessageDeflate != null) {
+                                pipeline.addLast(perMessageDeflate.newExtensionHandler());
+                            }
                             
                             // Handles WebSocket handshake and frames
                             // Using checkStartsWith=true to match paths that start with /websocket (e.g., /websocket?token=...)
@@ -63,26 +228,130 @@ public class WebSocketServer {
                                     true, // allowExtensions - support permessage-deflate
                                     65536, // maxFrameSize
                                     false, // allowMaskMismatch
-                                    true // checkStartsWith - allows /websocket?token=... to match /websocket path
+                                    true, // checkStartsWith - allows /websocket?token=... to match /websocket path
+                                    heartbeats == null // dropPongFrames - HeartbeatHandler consumes them
                             ));
                             
+                            // Records reads and joins the heartbeat wheel once the handshake completes
+                            if (heartbeats != null) {
+                                pipeline.addLast(new HeartbeatHandler(heartbeats));
+                            }
+                            
+                            // Per-user token bucket, applied to data frames before they reach the game
+                            if (rateLimiter != null) {
+                                pipeline.addLast(new RateLimitHandler(rateLimiter, config.getRateLimitAction(), metrics));
+                            }
+                            
                             // Custom handler for WebSocket messages
-                            WebSocketFrameHandler webSocketFrameHandler = new WebSocketFrameHandler(websocketManager);
+                            WebSocketFrameHandler webSocketFrameHandler = new WebSocketFrameHandler(websocketManager, metrics);
                             pipeline.addLast(webSocketFrameHandler);
                         }
                     })
                     .option(ChannelOption.SO_BACKLOG, config.getSocketBacklog())
-                    .childOption(ChannelOption.SO_KEEPALIVE, config.isSocketKeepalive());
+                    .childOption(ChannelOption.SO_KEEPALIVE, config.isSocketKeepalive())
+                    .childOption(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
+                    .childOption(ChannelOption.ALLOCATOR, allocator())
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
+                            config.getWriteBufferLowWaterMark(), config.getWriteBufferHighWaterMark()));
+            // 0 leaves the kernel's default (and its autotuning) in place
+            if (config.getSocketReceiveBufferSize() > 0) {
+                bootstrap.childOption(ChannelOption.SO_RCVBUF, config.getSocketReceiveBufferSize());
+            }
+            if (config.getSocketSendBufferSize() > 0) {
+                bootstrap.childOption(ChannelOption.SO_SNDBUF, config.getSocketSendBufferSize());
+            }
 
             ChannelFuture future = bootstrap.bind(config.getPort()).sync();
+            serverChannel = future.channel();
             logger.info("WebSocket server started on port {}", config.getPort());
             logger.info("Connect to: ws://localhost:{}{}", config.getPort(), config.getWebsocketPath());
+            started.countDown();
 
             future.channel().closeFuture().sync();
+            if (draining) {
+                // The server channel closes first; the connections and games still need the event loops
+                drained.await();
+            }
+        } catch (Throwable e) {
+            if (started.getCount() > 0) {
+                // Failed before accepting connections, for example on a bad CPU list or an
+                // unbindable port: releases awaitStarted at once instead of letting it time out
+                startFailure = e;
+                started.countDown();
+            }
+            throw e;
         } finally {
-            workerGroup.shutdownGracefully();
-            bossGroup.shutdownGracefully();
+            if (heartbeatWheel != null) {
+                heartbeatWheel.stop();
+            }
+            if (!sharedGroup) {
+                if (workerGroup != null) {
+                    workerGroup.shutdownGracefully();
+                }
+                if (bossGroup != null) {
+                    bossGroup.shutdownGracefully();
+                }
+            }
+        }
+    }
+
+    /**
+     * Names worker threads and, when a CPU list is configured, pins each one to a core.
+     */
+    private ThreadFactory workerThreadFactory() {
+        int[] cpus = PinnedThreadFactory.parseCpuList(config.getWorkerCpuAffinity());
+        if (cpus.length == 0) {
+            return new DefaultThreadFactory("websocket-worker");
+        }
+        logger.info("Pinning WebSocket worker threads to CPUs {}", config.getWorkerCpuAffinity());
+        return new PinnedThreadFactory("websocket-worker", cpus);
+    }
+
+    /**
+     * Returns Netty's shared pooled allocator, so the WebSocket server does not add a second set
+     * of pool arenas next to the one the HTTP server and the rest of Netty use. Its direct buffer
+     * preference is process-wide ({@code -Dio.netty.noPreferDirect}); only the unpooled allocator
+     * honours {@link ServerConfig#isPreferDirectBuffers()} on its own.
+     */
+    private ByteBufAllocator allocator() {
+        boolean preferDirect = config.isPreferDirectBuffers();
+        if (!config.isPooledAllocator()) {
+            return new UnpooledByteBufAllocator(preferDirect);
+        }
+        if (preferDirect != PlatformDependent.directBufferPreferred()) {
+            logger.warn("Warning: socket.preferDirectBuffers={} is ignored by the shared pooled allocator; "
+                    + "set -Dio.netty.noPreferDirect={} instead", preferDirect, !preferDirect);
+        }
+        return PooledByteBufAllocator.DEFAULT;
+    }
+
+    /**
+     * Picks the server channel matching the transport of the group. Micronaut's group uses epoll,
+     * kqueue or io_uring when native transport is enabled; io_uring is matched by name, since its
+     * incubator module is only on the classpath when Micronaut was configured to use it.
+     *
+     * @throws IllegalArgumentException if the group's transport is not one of these, rather than
+     *         failing later at bind with a mismatched channel
+     */
+    static Class<? extends ServerSocketChannel> serverChannelClass(EventLoopGroup group) {
+        if (group instanceof NioEventLoopGroup) {
+            return NioServerSocketChannel.class;
+        }
+        if (group instanceof EpollEventLoopGroup) {
+            return EpollServerSocketChannel.class;
+        }
+        if (group instanceof KQueueEventLoopGroup) {
+            return KQueueServerSocketChannel.class;
+        }
+        if (group.getClass().getName().equals(IO_URING_GROUP)) {
+            try {
+                return Class.forName(IO_URING_SERVER_CHANNEL, true, group.getClass().getClassLoader())
+                        .asSubclass(ServerSocketChannel.class);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("io_uring server channel is not on the classpath", e);
+            }
         }
+        throw new IllegalArgumentException("Unsupported event loop group " + group.getClass().getName());
     }
 }
 
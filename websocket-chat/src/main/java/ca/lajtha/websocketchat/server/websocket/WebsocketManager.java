@@ -1,11 +1,16 @@
 package ca.lajtha.websocketchat.server.websocket;
 
-import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.Channel;
 
 public interface WebsocketManager {
-    void playerConnected(String userId, ChannelHandlerContext ctx);
+    /**
+     * Registers an authenticated connection and opens its session.
+     *
+     * @return the session, attached to the channel
+     */
+    ConnectionSession playerConnected(Channel channel, String userId);
 
-    void playerDisconnected(String userId);
+    void playerDisconnected(ConnectionSession session);
 
-    void handlePlayerMessage(String userId, String request);
+    void handlePlayerMessage(ConnectionSession session, String request);
 }
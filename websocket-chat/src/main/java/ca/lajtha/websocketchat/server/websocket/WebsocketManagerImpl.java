@@ -1,26 +1,110 @@
 package ca.lajtha.websocketchat.server.websocket;
 
+import ca.lajtha.websocketchat.cluster.PresenceDirectory;
 import ca.lajtha.websocketchat.game.Game;
-import io.netty.channel.ChannelHandlerContext;
+import ca.lajtha.websocketchat.game.KeyedGame;
+import ca.lajtha.websocketchat.ids.ConcurrentIntObjectMap;
+import ca.lajtha.websocketchat.ids.IdInterner;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashSet;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of WebsocketManager that sends messages to WebSocket connections.
+ *
+ * A broadcast reaches this class as the same message String sent to each recipient in turn.
+ * The last message sent from each thread is kept in encoded form, so a broadcast is encoded
+ * to UTF-8 once, and compressed once for all recipients that accept shared permessage-deflate
+ * frames with the same settings; each recipient gets a duplicate of the shared buffers.
+ *
+ * Connections are keyed by the player's interned int. Inbound messages carry it in their
+ * session; outbound messages address players by id, which is resolved once per send.
+ *
+ * In a cluster, a message for a player with no connection here is relayed through the
+ * {@link PresenceDirectory} to the node the player is connected to, if any.
+ *
+ * With a resume grace period, each player's game messages are numbered and the latest kept in
+ * a {@link ReplayBuffer}, and a new session starts with a {@code sessionStarted} notice carrying
+ * a resume token. A player whose connection drops stays in its game for the grace period, with
+ * messages still recorded; reconnecting with the token and the number of the last message
+ * received reattaches the session and replays only what was missed, so neither the player nor
+ * the room sees a leave and a rejoin.
+ *
+ * Frames sent from a game's thread can be grouped by the event loop of each recipient's channel
+ * and written by one {@link EventLoopWriter} task per loop, instead of one task per recipient.
  */
 public class WebsocketManagerImpl implements WebsocketManager, MessageSender {
     private static final Logger logger = LoggerFactory.getLogger(WebsocketManagerImpl.class);
-    private final Map<String, ChannelHandlerContext> socketChannels;
-    private Game game;
+    private final ConcurrentIntObjectMap<ConnectionSession> sessions;
+    private final IdInterner playerIds;
+    private final ServerMetrics metrics;
+    private final ThreadLocal<EncodedMessage> lastMessage = new ThreadLocal<>();
+    private final ConcurrentIntObjectMap<ReplayBuffer> replayBuffers = new ConcurrentIntObjectMap<>();
+    private final long resumeGracePeriodMs;
+    private final int replayBufferSize;
+    private final boolean groupWritesByEventLoop;
+    private final Map<EventLoop, EventLoopWriter> writers = new ConcurrentHashMap<>();
+    private KeyedGame game;
+    private volatile PresenceDirectory presence;
 
     public WebsocketManagerImpl() {
-        this.socketChannels = new ConcurrentHashMap<>();
+        this(ServerMetrics.noop());
+    }
+
+    public WebsocketManagerImpl(ServerMetrics metrics) {
+        this(metrics, new IdInterner());
+    }
+
+    /**
+     * @param playerIds the interner player keys are assigned from; the game manager must share it
+     */
+    public WebsocketManagerImpl(ServerMetrics metrics, IdInterner playerIds) {
+        this(metrics, playerIds, 0, 0);
+    }
+
+    /**
+     * @param playerIds the interner player keys are assigned from; the game manager must share it
+     * @param resumeGracePeriodMs how long a disconnected player keeps its place and can resume;
+     *                            0 removes players from their game as soon as they disconnect
+     * @param replayBufferSize how many of each player's latest game messages are kept for replay
+     */
+    public WebsocketManagerImpl(ServerMetrics metrics, IdInterner playerIds, long resumeGracePeriodMs,
+                                int replayBufferSize) {
+        this(metrics, playerIds, resumeGracePeriodMs, replayBufferSize, false);
+    }
+
+    /**
+     * @param playerIds the interner player keys are assigned from; the game manager must share it
+     * @param resumeGracePeriodMs how long a disconnected player keeps its place and can resume;
+     *                            0 removes players from their game as soon as they disconnect
+     * @param replayBufferSize how many of each player's latest game messages are kept for replay
+     * @param groupWritesByEventLoop whether frames sent from outside an event loop are queued per
+     *                               loop and written in batches by an {@link EventLoopWriter}
+     */
+    public WebsocketManagerImpl(ServerMetrics metrics, IdInterner playerIds, long resumeGracePeriodMs,
+                                int replayBufferSize, boolean groupWritesByEventLoop) {
+        this.sessions = new ConcurrentIntObjectMap<>();
+        this.playerIds = playerIds;
+        this.metrics = metrics;
+        this.resumeGracePeriodMs = resumeGracePeriodMs;
+        this.replayBufferSize = replayBufferSize;
+        this.groupWritesByEventLoop = groupWritesByEventLoop;
     }
 
     /**
@@ -29,58 +113,329 @@ public class WebsocketManagerImpl implements WebsocketManager, MessageSender {
      * @param game the game instance to set
      */
     public void setGame(Game game) {
-        this.game = game;
+        this.game = game != null ? KeyedGame.of(game) : null;
+    }
+
+    /**
+     * Sets the directory that connects and disconnects are reported to and that messages for
+     * players connected to other nodes are relayed through.
+     */
+    public void setPresence(PresenceDirectory presence) {
+        this.presence = presence;
     }
 
     
     /**
-     * Registers a socket's channel.
+     * Registers a player's connection, replacing any earlier connection of the same player.
+     * This is where a user's id is interned. A connection that presents a valid resume request
+     * takes over the player's session and the game is not told anything.
      *
-     * @param userId the unique identifier of the socket
-     * @param ctx the channel handler context for the socket's connection
+     * @param channel the channel of the player's connection
+     * @param userId the authenticated user
+     * @return the session of the connection
      */
     @Override
-    public void playerConnected(String userId, ChannelHandlerContext ctx) {
-        socketChannels.put(userId, ctx);
-        logger.info("Client connected: {} (userId: {})", ctx.channel().remoteAddress(), userId);
+    public ConnectionSession playerConnected(Channel channel, String userId) {
+        ConnectionSession session = ConnectionSession.open(channel, userId, playerIds.intern(userId));
+        WebSocketHandshakeHandler.ResumeRequest resume = channel.attr(WebSocketHandshakeHandler.getResumeKey()).getAndRemove();
+        sessions.put(session.playerKey(), session);
+        if (resumeGracePeriodMs > 0) {
+            if (resume != null && resumeSession(session, resume)) {
+                return session;
+            }
+            startResumableSession(session);
+        }
+        logger.info("Client connected: {} (userId: {})", channel.remoteAddress(), userId);
+        if (presence != null) {
+            presence.localUserConnected(userId);
+        }
         if (game != null) {
-            game.handlePlayerConnected(userId);
+            game.handlePlayerConnected(session.playerKey(), userId);
         }
+        return session;
     }
 
     /**
-     * Unregisters a socket's channel.
+     * Unregisters a player's connection. If the player has already reconnected, the newer
+     * connection stays registered and the game is not told the player left.
      *
-     * @param userId the unique identifier of the socket
+     * @param session the session of the connection that closed
      */
     @Override
-    public void playerDisconnected(String userId) {
-        socketChannels.remove(userId);
-        logger.info("Client disconnected: {} (userId: {})", userId, userId);
-         if (game != null) {
-            game.handlePlayerDisconnected(userId);
+    public void playerDisconnected(ConnectionSession session) {
+        String userId = session.userId();
+        if (!sessions.remove(session.playerKey(), session)) {
+            logger.debug("Superseded connection closed (session: {}, userId: {})", session.id(), userId);
+            return;
+        }
+        logger.info("Client disconnected: {} (userId: {})", session.channel().remoteAddress(), userId);
+        if (resumeGracePeriodMs > 0 && holdForResume(session)) {
+            return;
         }
+        leave(session.playerKey(), userId);
+    }
+
+    private void leave(int playerKey, String userId) {
+        if (presence != null) {
+            presence.localUserDisconnected(userId);
+        }
+        if (game != null) {
+            game.handlePlayerDisconnected(playerKey, userId);
+        }
+    }
+
+    /**
+     * Reattaches a player's session to a new connection and replays the messages it missed.
+     *
+     * @return false if the token does not match or the buffer no longer holds every missed message
+     */
+    private boolean resumeSession(ConnectionSession session, WebSocketHandshakeHandler.ResumeRequest resume) {
+        ReplayBuffer buffer = replayBuffers.get(session.playerKey());
+        if (buffer == null) {
+            return false;
+        }
+        int replayed;
+        synchronized (buffer) {
+            if (replayBuffers.get(session.playerKey()) != buffer || !buffer.token.equals(resume.token())
+                    || !buffer.canReplayAfter(resume.lastSequence())) {
+                return false;
+            }
+            if (buffer.expiry != null) {
+                buffer.expiry.cancel(false);
+                buffer.expiry = null;
+            }
+            buffer.session = session;
+            List<String> missed = buffer.messagesAfter(resume.lastSequence());
+            Channel channel = session.channel();
+            channel.write(new TextWebSocketFrame("{\"type\":\"sessionResumed\",\"replayed\":" + missed.size() + "}"));
+            for (String message : missed) {
+                channel.write(frameFor(session, message));
+            }
+            channel.flush();
+            replayed = missed.size();
+        }
+        metrics.sessionResumed(replayed);
+        logger.info("Client resumed: {} (userId: {}, replayed {} messages)", session.channel().remoteAddress(),
+                session.userId(), replayed);
+        return true;
+    }
+
+    /**
+     * Starts numbering a player's messages afresh and hands the client its resume token. If the
+     * player's previous connection was still within its grace period, the game is told it left
+     * now, as it would have been without resumption.
+     */
+    private void startResumableSession(ConnectionSession session) {
+        ReplayBuffer buffer = new ReplayBuffer(replayBufferSize, session);
+        ReplayBuffer previous;
+        synchronized (buffer) {
+            previous = replayBuffers.put(session.playerKey(), buffer);
+            session.channel().writeAndFlush(new TextWebSocketFrame("{\"type\":\"sessionStarted\",\"resumeToken\":\""
+                    + buffer.token + "\",\"resumeGracePeriodMs\":" + resumeGracePeriodMs + "}"));
+        }
+        if (previous == null) {
+            return;
+        }
+        boolean inGracePeriod;
+        synchronized (previous) {
+            inGracePeriod = previous.session == null;
+            if (previous.expiry != null) {
+                previous.expiry.cancel(false);
+                previous.expiry = null;
+            }
+            previous.session = null;
+        }
+        if (inGracePeriod && game != null) {
+            game.handlePlayerDisconnected(session.playerKey(), session.userId());
+        }
+    }
+
+    /**
+     * Keeps a disconnected player in its game for the grace period, recording its messages.
+     *
+     * @return false if the player has no resumable session on this connection
+     */
+    private boolean holdForResume(ConnectionSession session) {
+        int playerKey = session.playerKey();
+        ReplayBuffer buffer = replayBuffers.get(playerKey);
+        if (buffer == null) {
+            return false;
+        }
+        synchronized (buffer) {
+            if (buffer.session != session) {
+                return false;
+            }
+            buffer.session = null;
+            long detachment = ++buffer.detachments;
+            try {
+                // The connection's event loop outlives the connection, so it can time the grace period
+                buffer.expiry = session.channel().eventLoop().schedule(
+                        () -> expire(playerKey, session.userId(), buffer, detachment), resumeGracePeriodMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The loop is shutting down, so nothing would end the grace period: leave at once
+                replayBuffers.remove(playerKey, buffer);
+                return false;
+            }
+        }
+        logger.debug("Holding {}'s place for {} ms", session.userId(), resumeGracePeriodMs);
+        return true;
+    }
+
+    private void expire(int playerKey, String userId, ReplayBuffer buffer, long detachment) {
+        synchronized (buffer) {
+            if (buffer.session != null || buffer.detachments != detachment || !replayBuffers.remove(playerKey, buffer)) {
+                return;
+            }
+            buffer.expiry = null;
+        }
+        logger.info("Resume grace period of {} ended", userId);
+        metrics.resumeExpired();
+        leave(playerKey, userId);
     }
 
     @Override
-    public void handlePlayerMessage(String userId, String message) {
-        logger.debug("Websocket manager received message from {}: {}", userId, message);
+    public void handlePlayerMessage(ConnectionSession session, String message) {
+        logger.debug("Websocket manager received message from {}: {}", session.userId(), message);
          if (game != null) {
-            game.handlePlayerMessage(userId, message);
+            game.handlePlayerMessage(session.playerKey(), session.userId(), message);
         }
     }
 
     /**
-     * Sends a message to a specific socket.
+     * Sends a message to a specific socket, relaying it to another node if the player is
+     * connected there.
      * 
      * @param userId the unique identifier of the socket
      * @param message the message to send
      */
     @Override
     public void sendMessage(String userId, String message) {
-        ChannelHandlerContext ctx = socketChannels.get(userId);
-        if (ctx != null && ctx.channel().isActive()) {
-            ctx.channel().writeAndFlush(new TextWebSocketFrame(message));
+        if (!sendLocalMessage(userId, message) && presence != null) {
+            presence.relay(userId, message);
+        }
+    }
+
+    /**
+     * Sends a message to a player only if it is connected to this node.
+     *
+     * @return true if the player has an active connection here
+     */
+    public boolean sendLocalMessage(String userId, String message) {
+        return sendLocalMessage(playerIds.indexOf(userId), message);
+    }
+
+    /**
+     * Sends a message to a player by interned key, relaying it to another node if the player is
+     * connected there. Games broadcast through this, so a recipient costs one map read.
+     */
+    @Override
+    public void sendMessage(int playerKey, String userId, String message) {
+        if (!sendLocalMessage(playerKey, message) && presence != null) {
+            presence.relay(userId, message);
+        }
+    }
+
+    private boolean sendLocalMessage(int playerKey, String message) {
+        if (resumeGracePeriodMs > 0) {
+            return sendResumable(playerKey, message);
+        }
+        ConnectionSession session = playerKey >= 0 ? sessions.get(playerKey) : null;
+        if (session == null || !session.isActive()) {
+            return false;
+        }
+        write(session, message);
+        return true;
+    }
+
+    /**
+     * Numbers and records a message, and writes it if the player is connected right now.
+     *
+     * @return true if the player has a session here, connected or within its grace period
+     */
+    private boolean sendResumable(int playerKey, String message) {
+        ReplayBuffer buffer = playerKey >= 0 ? replayBuffers.get(playerKey) : null;
+        if (buffer == null) {
+            return false;
+        }
+        synchronized (buffer) {
+            buffer.record(message);
+            ConnectionSession session = buffer.session;
+            if (session != null && session.isActive()) {
+                write(session, message);
+            }
+        }
+        return true;
+    }
+
+    private void write(ConnectionSession session, String message) {
+        Channel channel = session.channel();
+        EventLoop eventLoop = channel.eventLoop();
+        if (groupWritesByEventLoop && !eventLoop.inEventLoop()) {
+            writers.computeIfAbsent(eventLoop, loop -> new EventLoopWriter(loop, metrics))
+                    .write(channel, frameFor(session, message));
+        } else {
+            channel.writeAndFlush(frameFor(session, message));
+        }
+        metrics.frameSent();
+    }
+
+    private WebSocketFrame frameFor(ConnectionSession session, String message) {
+        EncodedMessage encoded = encode(message);
+        PerMessageDeflate deflate = session.sharedDeflate();
+        if (deflate != null && encoded.payload.readableBytes() >= deflate.getMinSize()) {
+            // Marked with RSV1 so the channel's encoder passes it through as already compressed
+            return new TextWebSocketFrame(true, WebSocketExtension.RSV1, encoded.compressed(deflate).retainedDuplicate());
+        }
+        return new TextWebSocketFrame(encoded.payload.retainedDuplicate());
+    }
+
+    private EncodedMessage encode(String message) {
+        EncodedMessage encoded = lastMessage.get();
+        if (encoded != null && encoded.message == message) {
+            return encoded;
+        }
+        if (encoded != null) {
+            encoded.release();
+        }
+        encoded = new EncodedMessage(message);
+        lastMessage.set(encoded);
+        return encoded;
+    }
+
+    /**
+     * A message encoded once and shared, read-only, by the frames of all its recipients.
+     * Heap buffers are used so the shared copy never holds pooled or direct memory.
+     */
+    private static final class EncodedMessage {
+        private static final ByteBufAllocator HEAP = new UnpooledByteBufAllocator(false);
+
+        private final String message;
+        private final ByteBuf payload;
+        // The compressed payload is only shared between peers compressing with the same settings
+        private PerMessageDeflate compressedWith;
+        private ByteBuf compressed;
+
+        private EncodedMessage(String message) {
+            this.message = message;
+            this.payload = Unpooled.copiedBuffer(message, StandardCharsets.UTF_8);
+        }
+
+        private ByteBuf compressed(PerMessageDeflate deflate) {
+            if (compressedWith != deflate) {
+                if (compressed != null) {
+                    compressed.release();
+                }
+                compressed = deflate.compress(HEAP, payload);
+                compressedWith = deflate;
+            }
+            return compressed;
+        }
+
+        private void release() {
+            payload.release();
+            if (compressed != null) {
+                compressed.release();
+            }
         }
     }
 }
@@ -1,6 +1,7 @@
 package ca.lajtha.websocketchat.user;
 
 import ca.lajtha.websocketchat.PropertiesLoader;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
@@ -21,6 +22,7 @@ public class TokenManager {
     private static final Logger logger = LoggerFactory.getLogger(TokenManager.class);
     private final Algorithm jwtAlgorithm;
     private final PropertiesLoader propertiesLoader;
+    private final ServerMetrics metrics;
     
     // JWT configuration
     private static final String USER_ID_CLAIM = "userId";
@@ -31,9 +33,20 @@ public class TokenManager {
      * 
      * @param propertiesLoader the PropertiesLoader for loading JWT configuration
      */
-    @Inject
     public TokenManager(PropertiesLoader propertiesLoader) {
+        this(propertiesLoader, ServerMetrics.noop());
+    }
+    
+    /**
+     * Creates a new TokenManager that records JWT verification times.
+     * 
+     * @param propertiesLoader the PropertiesLoader for loading JWT configuration
+     * @param metrics the metrics to record verification times in
+     */
+    @Inject
+    public TokenManager(PropertiesLoader propertiesLoader, ServerMetrics metrics) {
         this.propertiesLoader = propertiesLoader;
+        this.metrics = metrics;
         String jwtSecret = loadJwtSecret();
         this.jwtAlgorithm = Algorithm.HMAC256(jwtSecret);
     }
@@ -64,6 +77,7 @@ public class TokenManager {
             return null;
         }
         
+        long start = System.nanoTime();
         try {
             DecodedJWT decodedJWT = JWT.require(jwtAlgorithm)
                     .build()
@@ -73,6 +87,8 @@ public class TokenManager {
         } catch (JWTVerificationException e) {
             // Token is invalid, expired, or malformed
             return null;
+        } finally {
+            metrics.recordJwtVerify(System.nanoTime() - start);
         }
     }
     
@@ -1,6 +1,7 @@
 package ca.lajtha.websocketchat.user;
 
 import ca.lajtha.websocketchat.PropertiesLoader;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
@@ -26,6 +27,7 @@ public class UserManager {
     private final Argon2 argon2;
     private final Algorithm jwtAlgorithm;
     private final PropertiesLoader propertiesLoader;
+    private final ServerMetrics metrics;
     
     // Argon2id parameters - can be adjusted based on performance requirements
     private static final int ITERATIONS = 2;
@@ -43,10 +45,22 @@ public class UserManager {
      * @param database the UserDatabase implementation to use for data storage
      * @param propertiesLoader the PropertiesLoader for loading configuration
      */
-    @Inject
     public UserManager(UserDatabase database, PropertiesLoader propertiesLoader) {
+        this(database, propertiesLoader, ServerMetrics.noop());
+    }
+    
+    /**
+     * Creates a new UserManager that records Argon2 and JWT timings.
+     * 
+     * @param database the UserDatabase implementation to use for data storage
+     * @param propertiesLoader the PropertiesLoader for loading configuration
+     * @param metrics the metrics to record hashing and signing times in
+     */
+    @Inject
+    public UserManager(UserDatabase database, PropertiesLoader propertiesLoader, ServerMetrics metrics) {
         this.database = database;
         this.propertiesLoader = propertiesLoader;
+        this.metrics = metrics;
         this.argon2 = Argon2Factory.create(Argon2Factory.Argon2Types.ARGON2id);
         String jwtSecret = loadJwtSecret();
         this.jwtAlgorithm = Algorithm.HMAC256(jwtSecret);
@@ -173,6 +187,7 @@ public class UserManager {
             return false;
         }
         
+        long start = System.nanoTime();
         try {
             DecodedJWT decodedJWT = JWT.require(jwtAlgorithm)
                     .build()
@@ -183,6 +198,8 @@ public class UserManager {
         } catch (JWTVerificationException e) {
             // Token is invalid, expired, or malformed
             return false;
+        } finally {
+            metrics.recordJwtVerify(System.nanoTime() - start);
         }
     }
     
@@ -213,7 +230,12 @@ public class UserManager {
      * @return the hashed password string
      */
     private String hashPassword(String password) {
-        return argon2.hash(ITERATIONS, MEMORY, PARALLELISM, password.toCharArray());
+        long start = System.nanoTime();
+        try {
+            return argon2.hash(ITERATIONS, MEMORY, PARALLELISM, password.toCharArray());
+        } finally {
+            metrics.recordArgon2Hash(System.nanoTime() - start);
+        }
     }
     
     /**
@@ -224,11 +246,14 @@ public class UserManager {
      * @return true if the password matches the hash, false otherwise
      */
     private boolean verifyPassword(String password, String hash) {
+        long start = System.nanoTime();
         try {
             return argon2.verify(hash, password.toCharArray());
         } catch (Exception e) {
             // If verification fails for any reason (invalid hash format, etc.), return false
             return false;
+        } finally {
+            metrics.recordArgon2Verify(System.nanoTime() - start);
         }
     }
     
@@ -242,11 +267,16 @@ public class UserManager {
         Date now = new Date();
         Date expiration = new Date(now.getTime() + JWT_EXPIRATION_MS);
         
-        return JWT.create()
-                .withClaim(USER_ID_CLAIM, userId)
-                .withIssuedAt(now)
-                .withExpiresAt(expiration)
-                .sign(jwtAlgorithm);
+        long start = System.nanoTime();
+        try {
+            return JWT.create()
+                    .withClaim(USER_ID_CLAIM, userId)
+                    .withIssuedAt(now)
+                    .withExpiresAt(expiration)
+                    .sign(jwtAlgorithm);
+        } finally {
+            metrics.recordJwtSign(System.nanoTime() - start);
+        }
     }
 }
 
@@ -3,6 +3,32 @@ let websocket = null;
 let websocketReconnectAttempts = 0;
 const MAX_RECONNECT_ATTEMPTS = 5;
 const RECONNECT_DELAY = 3000; // 3 seconds
+// A draining server closes with Service Restart and says how long to wait in the close reason,
+// spreading its clients' reconnects out. A little jitter of our own keeps equal hints apart.
+const SERVICE_RESTART_CLOSE_CODE = 1012;
+const RECONNECT_HINT_PREFIX = 'reconnectAfterMs=';
+const RECONNECT_HINT_JITTER_MS = 250;
+
+// Session resumption: the server numbers the game messages it sends us and hands out a token.
+// Reconnecting within its grace period with the token and the count we received replays what we missed.
+// Every text frame counts except the server's own notices below.
+const UNCOUNTED_MESSAGE_TYPES = ['sessionStarted', 'sessionResumed', 'error'];
+let resumeToken = null;
+let resumeGracePeriodMs = 0;
+let receivedMessageCount = 0;
+let disconnectedAt = 0;
+let resuming = false;
+
+// How long to wait before reconnecting after the given close event
+function reconnectDelay(event) {
+    if (event.code === SERVICE_RESTART_CLOSE_CODE && event.reason && event.reason.startsWith(RECONNECT_HINT_PREFIX)) {
+        const hintMs = parseInt(event.reason.substring(RECONNECT_HINT_PREFIX.length), 10);
+        if (Number.isFinite(hintMs) && hintMs >= 0) {
+            return hintMs + Math.floor(Math.random() * RECONNECT_HINT_JITTER_MS);
+        }
+    }
+    return RECONNECT_DELAY;
+}
 
 // DOM elements - get them when needed to ensure they exist
 function getPlayerView() {
@@ -31,8 +57,12 @@ async function getWebSocketUrl() {
     
     console.log('Getting WebSocket URL...', { protocol, host, port });
 
-    const url = `${protocol}//${host}:${port}/websocket`;
-    console.log('Using auth cookie for token:', url);
+    let url = `${protocol}//${host}:${port}/websocket`;
+    resuming = resumeToken !== null && Date.now() - disconnectedAt < resumeGracePeriodMs;
+    if (resuming) {
+        url += `?resume=${encodeURIComponent(resumeToken)}&lastSeq=${receivedMessageCount}`;
+    }
+    console.log('Using auth cookie for token:', url.replace(/resume=[^&]+/, 'resume=***'));
     return url;
 }
 
@@ -91,9 +121,9 @@ async function connectWebSocket() {
             websocketReconnectAttempts = 0;
             resolve();
             
-            // Request initial messages when connected
+            // Request initial messages when connected; a resumed session replays what we missed instead
             const displayViewEl = getDisplayView();
-            if (displayViewEl && displayViewEl.style.display !== 'none') {
+            if (!resuming && displayViewEl && displayViewEl.style.display !== 'none') {
                 requestMessages();
             }
         };
@@ -113,6 +143,7 @@ async function connectWebSocket() {
 
         websocket.onclose = function(event) {
             console.log('WebSocket closed:', event.code, event.reason);
+            disconnectedAt = Date.now();
             
             // Attempt to reconnect if we're still in a view that needs WebSocket
             const playerViewEl = getPlayerView();
@@ -121,12 +152,13 @@ async function connectWebSocket() {
                 (displayViewEl && displayViewEl.style.display !== 'none')) {
                 if (websocketReconnectAttempts < MAX_RECONNECT_ATTEMPTS) {
                     websocketReconnectAttempts++;
-                    console.log(`Attempting to reconnect (${websocketReconnectAttempts}/${MAX_RECONNECT_ATTEMPTS})...`);
+                    const delay = reconnectDelay(event);
+                    console.log(`Attempting to reconnect in ${delay} ms (${websocketReconnectAttempts}/${MAX_RECONNECT_ATTEMPTS})...`);
                     setTimeout(() => {
                         connectWebSocket().catch(err => {
                             console.error('Reconnection failed:', err);
                         });
-                    }, RECONNECT_DELAY);
+                    }, delay);
                 } else {
                     console.error('Max reconnection attempts reached');
                 }
@@ -137,6 +169,9 @@ async function connectWebSocket() {
 
 // Disconnect WebSocket
 function disconnectWebSocket() {
+    // Leaving on purpose: the next connection starts a new session
+    resumeToken = null;
+    receivedMessageCount = 0;
     if (websocket) {
         websocket.close();
         websocket = null;
@@ -175,8 +210,35 @@ async function sendWebSocketMessage(message) {
 function handleWebSocketMessage(data) {
     try {
         const message = JSON.parse(data);
+        if (!UNCOUNTED_MESSAGE_TYPES.includes(message.type)) {
+            receivedMessageCount++;
+        }
         
         switch (message.type) {
+            case 'sessionStarted': {
+                const resumeFailed = resuming;
+                resumeToken = message.resumeToken;
+                resumeGracePeriodMs = message.resumeGracePeriodMs;
+                receivedMessageCount = 0;
+                resuming = false;
+                // The old session could not be resumed, so fetch the history again
+                const displayViewEl = getDisplayView();
+                if (resumeFailed && displayViewEl && displayViewEl.style.display !== 'none') {
+                    requestMessages();
+                }
+                break;
+            }
+                
+            case 'sessionResumed':
+                console.log('Session resumed, replaying', message.replayed, 'messages');
+                resuming = false;
+                break;
+                
+            case 'error':
+                console.warn('Server error:', message.error);
+                break;
+                
+
             case 'getMessagesResponse':
                 if (message.messages && Array.isArray(message.messages)) {
                     displayMessages(message.messages);
@@ -187,6 +249,10 @@ function handleWebSocketMessage(data) {
                 addMessageToDisplay(message.screenName, message.message);
                 break;
                 
+            case 'messagesReceivedNotification':
+                message.messages.forEach(m => addMessageToDisplay(m.screenName, m.message));
+                break;
+                
             case 'playerJoinedChatNotification':
                 console.log('Player joined:', message.screenName);
                 break;
@@ -195,6 +261,10 @@ function handleWebSocketMessage(data) {
                 console.log('Player left:', message.screenName);
                 break;
                 
+            case 'presenceChangedNotification':
+                console.log('Players joined:', message.joined, 'left:', message.left);
+                break;
+                
             default:
                 console.log('Unknown message type:', message.type);
         }
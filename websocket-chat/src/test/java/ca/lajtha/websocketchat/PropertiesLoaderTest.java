@@ -0,0 +1,36 @@
+package ca.lajtha.websocketchat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PropertiesLoaderTest {
+
+    @Test
+    void loadProperties_readsOnceAndKeepsCallerChangesLocal() {
+        PropertiesLoader loader = new PropertiesLoader();
+
+        Properties first = loader.loadProperties();
+        assertNotNull(first.getProperty("server.port"));
+        first.setProperty("server.port", "1");
+
+        Properties second = loader.loadProperties();
+        assertNotEquals("1", second.getProperty("server.port"), "Changes to one copy must not leak into the snapshot");
+        assertTrue(loader.getConfigFiles().stream().anyMatch(file -> file.endsWith("server.properties")));
+    }
+
+    @Test
+    void reload_notifiesListenersWithFreshProperties() {
+        PropertiesLoader loader = new PropertiesLoader();
+        AtomicReference<Properties> received = new AtomicReference<>();
+        loader.addReloadListener(received::set);
+
+        loader.reload();
+
+        assertNotNull(received.get());
+        assertEquals(loader.loadProperties().getProperty("server.port"), received.get().getProperty("server.port"));
+    }
+}
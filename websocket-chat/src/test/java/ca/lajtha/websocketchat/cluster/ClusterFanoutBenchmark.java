@@ -0,0 +1,201 @@
+package ca.lajtha.websocketchat.cluster;
+
+import ca.lajtha.websocketchat.game.GameManager;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures cross-node fan-out latency: how long a chat message takes from being sent on one node,
+ * through the node owning the game, to being handed to players connected to other nodes.
+ *
+ * The driver process creates the game and starts one follower JVM per other node, each joining
+ * {@code --players} players to the game. The driver then sends {@code --messages} chat messages
+ * stamped with the wall clock, and every follower reports the latency percentiles of the
+ * copies its players received. All processes run on this host, so they share the clock.
+ *
+ * Usage: {@code ClusterFanoutBenchmark [--nodes 3] [--players 100] [--messages 2000] [--rate 500]}
+ *
+ * Followers are driven over stdin/stdout: they print {@code READY}, answer {@code JOIN <gameId>}
+ * with {@code JOINED}, and answer {@code DONE} with a {@code STATS} line.
+ */
+final class ClusterFanoutBenchmark {
+    private static final Pattern TIMESTAMP = Pattern.compile("t=(\\d+)");
+
+    private ClusterFanoutBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--follower")) {
+            runFollower(option(args, "--node", null), option(args, "--cluster", null),
+                    Integer.parseInt(option(args, "--players", "100")));
+            return;
+        }
+        int nodes = Integer.parseInt(option(args, "--nodes", "3"));
+        int players = Integer.parseInt(option(args, "--players", "100"));
+        int messages = Integer.parseInt(option(args, "--messages", "2000"));
+        int rate = Integer.parseInt(option(args, "--rate", "500"));
+        runDriver(nodes, players, messages, rate);
+    }
+
+    private static void runDriver(int nodes, int players, int messages, int rate) throws Exception {
+        StringBuilder cluster = new StringBuilder();
+        for (int i = 0; i < nodes; i++) {
+            cluster.append(i == 0 ? "" : ",").append("node-").append(i).append("@127.0.0.1:").append(freePort());
+        }
+        String javaBin = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> followers = new ArrayList<>();
+        List<BufferedReader> outputs = new ArrayList<>();
+        List<PrintWriter> inputs = new ArrayList<>();
+        for (int i = 1; i < nodes; i++) {
+            Process process = new ProcessBuilder(javaBin, "-cp", System.getProperty("java.class.path"),
+                    ClusterFanoutBenchmark.class.getName(), "--follower", "--node", "node-" + i,
+                    "--cluster", cluster.toString(), "--players", String.valueOf(players))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            followers.add(process);
+            outputs.add(new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)));
+            inputs.add(new PrintWriter(process.getOutputStream(), true, StandardCharsets.UTF_8));
+        }
+
+        try (TcpClusterBus bus = new TcpClusterBus("node-0", TcpClusterBus.parseNodes(cluster.toString()), ServerMetrics.noop())) {
+            GameManager owner = new GameManager((playerId, message) -> { });
+            owner.attachCluster(bus);
+            expectAll(outputs, "READY");
+
+            String gameId = owner.createGame("driver", null);
+            owner.joinGame("driver", gameId);
+            inputs.forEach(in -> in.println("JOIN " + gameId));
+            expectAll(outputs, "JOINED");
+            // Followers report joins once sent; give the owner time to apply them
+            Thread.sleep(500);
+
+            System.out.printf("Fan-out from node-0 to %d players on each of %d nodes, %d messages at %d/s%n",
+                    players, nodes - 1, messages, rate);
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+            long next = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                while (System.nanoTime() < next) {
+                    Thread.onSpinWait();
+                }
+                next += intervalNanos;
+                owner.handlePlayerMessage("driver",
+                        "{\"type\":\"sendMessage\",\"message\":\"t=" + nowMicros() + "\"}");
+            }
+            // Let the last broadcasts arrive
+            Thread.sleep(2000);
+
+            inputs.forEach(in -> in.println("DONE"));
+            for (int i = 0; i < outputs.size(); i++) {
+                System.out.printf("node-%d: %s%n", i + 1, expect(outputs.get(i), "STATS"));
+            }
+        } finally {
+            for (Process process : followers) {
+                process.destroy();
+            }
+        }
+    }
+
+    private static void runFollower(String nodeId, String cluster, int players) throws Exception {
+        long[][] latencies = {new long[1024]};
+        int[] count = {0};
+        try (TcpClusterBus bus = new TcpClusterBus(nodeId, TcpClusterBus.parseNodes(cluster), ServerMetrics.noop())) {
+            GameManager home = new GameManager((playerId, message) -> {
+                Matcher matcher = TIMESTAMP.matcher(message);
+                if (!matcher.find()) {
+                    return;
+                }
+                long latency = nowMicros() - Long.parseLong(matcher.group(1));
+                synchronized (latencies) {
+                    if (count[0] == latencies[0].length) {
+                        latencies[0] = Arrays.copyOf(latencies[0], count[0] * 2);
+                    }
+                    latencies[0][count[0]++] = latency;
+                }
+            });
+            home.attachCluster(bus);
+            System.out.println("READY");
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("JOIN ")) {
+                    String gameId = line.substring("JOIN ".length());
+                    for (int i = 0; i < players; i++) {
+                        home.joinGame(nodeId + "-player-" + i, gameId);
+                    }
+                    System.out.println("JOINED");
+                } else if (line.equals("DONE")) {
+                    synchronized (latencies) {
+                        long[] sorted = Arrays.copyOf(latencies[0], count[0]);
+                        Arrays.sort(sorted);
+                        System.out.printf("STATS received=%d p50=%dus p99=%dus p99.9=%dus max=%dus%n", sorted.length,
+                                percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                                sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void expectAll(List<BufferedReader> outputs, String expected) throws IOException {
+        for (BufferedReader output : outputs) {
+            expect(output, expected);
+        }
+    }
+
+    /**
+     * Reads a follower's output up to the line starting with the expected word, skipping the
+     * log lines the follower may write to stdout in between.
+     */
+    private static String expect(BufferedReader output, String expected) throws IOException {
+        String line;
+        while ((line = output.readLine()) != null) {
+            if (line.startsWith(expected)) {
+                return line;
+            }
+        }
+        throw new IllegalStateException("Follower exited before sending " + expected);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static long nowMicros() {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,317 @@
+package ca.lajtha.websocketchat.cluster;
+
+import ca.lajtha.websocketchat.game.GameManager;
+import ca.lajtha.websocketchat.game.MailboxConfig;
+import ca.lajtha.websocketchat.game.MailboxOverflowPolicy;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterGameManagerTest {
+
+    private final Map<String, BlockingQueue<String>> received = new ConcurrentHashMap<>();
+    private final List<ClusterBus> buses = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        buses.forEach(ClusterBus::close);
+    }
+
+    @Test
+    void remotePlayer_overLoopbackBus_joinsAndChatsInOwnersGame() throws Exception {
+        LoopbackClusterBus.Network network = new LoopbackClusterBus.Network();
+        assertRemotePlayerChats(network.join("node-a"), network.join("node-b"));
+    }
+
+    @Test
+    void remotePlayer_overTcpBus_joinsAndChatsInOwnersGame() throws Exception {
+        Map<String, InetSocketAddress> nodes = new LinkedHashMap<>();
+        nodes.put("node-a", new InetSocketAddress("127.0.0.1", freePort()));
+        nodes.put("node-b", new InetSocketAddress("127.0.0.1", freePort()));
+        assertRemotePlayerChats(new TcpClusterBus("node-a", nodes, ServerMetrics.noop()),
+                new TcpClusterBus("node-b", nodes, ServerMetrics.noop()));
+    }
+
+    @Test
+    void stopGame_fromEitherNode_stopsGameOnOwner() throws Exception {
+        LoopbackClusterBus.Network network = new LoopbackClusterBus.Network();
+        GameManager nodeA = node(network.join("node-a"));
+        GameManager nodeB = node(network.join("node-b"));
+        String gameId = nodeA.createGame("alice", null);
+        nodeA.joinGame("alice", gameId);
+        nodeB.joinGame("bob", gameId);
+        awaitMessage("alice", "playerJoinedChatNotification");
+
+        // Whichever node the game was placed on, stopping it from either node reaches it
+        nodeB.stopGame(gameId);
+
+        awaitCondition(() -> nodeA.listGames().isEmpty() && nodeB.listGames().isEmpty());
+    }
+
+    @Test
+    void createGame_placedOnAnotherNode_returnsOnceTheOwnerHostsIt() {
+        LoopbackClusterBus.Network network = new LoopbackClusterBus.Network();
+        GameManager nodeA = node(network.join("node-a"));
+        GameManager nodeB = node(network.join("node-b"));
+
+        for (int i = 0; i < 20; i++) {
+            String gameId = nodeA.createGame("alice", null);
+            assertTrue(Stream.concat(nodeA.listGames().stream(), nodeB.listGames().stream())
+                            .anyMatch(game -> game.getGameId().equals(gameId)),
+                    "Game " + gameId + " should be hosted as soon as it is created");
+        }
+    }
+
+    @Test
+    void joinGame_withoutNodeInId_throwsException() {
+        LoopbackClusterBus.Network network = new LoopbackClusterBus.Network();
+        GameManager nodeA = node(network.join("node-a"));
+
+        assertThrows(IllegalArgumentException.class, () -> nodeA.joinGame("bob", "game-1"));
+    }
+
+    @Test
+    void updateClusterNodes_addingNode_movesGameWithItsHistory() throws Exception {
+        LoopbackClusterBus.Network network = new LoopbackClusterBus.Network();
+        LoopbackClusterBus busA = network.join("node-a");
+        LoopbackClusterBus busB = network.join("node-b");
+        LoopbackClusterBus busC = network.join("node-c");
+        List<String> initialNodes = List.of("node-a", "node-b");
+        GameManager nodeA = node(busA, initialNodes);
+        GameManager nodeB = node(busB, initialNodes);
+        GameManager nodeC = node(busC, initialNodes);
+        String gameId = createGameMovingTo(nodeA, "node-a", "node-c");
+
+        nodeA.joinGame("alice", gameId);
+        nodeB.joinGame("bob", gameId);
+        awaitMessage("alice", "playerJoinedChatNotification");
+        nodeB.handlePlayerMessage("bob", sendMessage("before the move"));
+        awaitMessage("alice", "messageReceivedNotification");
+
+        nodeC.updateClusterNodes(List.of("node-a", "node-b", "node-c"));
+        awaitCondition(() -> nodeC.listGames().stream().anyMatch(game -> game.getGameId().equals(gameId)));
+        assertTrue(nodeA.listGames().stream().noneMatch(game -> game.getGameId().equals(gameId)),
+                "The old owner should no longer host the game");
+
+        nodeB.handlePlayerMessage("bob", sendMessage("after the move"));
+        assertTrue(awaitMessage("alice", "messageReceivedNotification").contains("after the move"));
+        nodeA.handlePlayerMessage("alice", "{\"type\":\"getMessages\"}");
+        String history = awaitMessage("alice", "getMessagesResponse");
+        assertTrue(history.contains("before the move") && history.contains("after the move"),
+                "The chat history should have moved with the game: " + history);
+    }
+
+    @Test
+    void updateClusterNodes_duringTraffic_losesAndReordersNothing() throws Exception {
+        LoopbackClusterBus.Network network = new LoopbackClusterBus.Network();
+        LoopbackClusterBus busA = network.join("node-a");
+        LoopbackClusterBus busB = network.join("node-b");
+        LoopbackClusterBus busC = network.join("node-c");
+        List<String> initialNodes = List.of("node-a", "node-b");
+        GameManager nodeA = node(busA, initialNodes);
+        GameManager nodeB = node(busB, initialNodes);
+        GameManager nodeC = node(busC, initialNodes);
+        String gameId = createGameMovingTo(nodeA, "node-a", "node-c");
+        nodeA.joinGame("alice", gameId);
+        nodeB.joinGame("bob", gameId);
+        awaitMessage("alice", "playerJoinedChatNotification");
+        received.get("alice").clear();
+
+        int messages = 500;
+        for (int i = 0; i < messages; i++) {
+            if (i == messages / 2) {
+                nodeC.updateClusterNodes(List.of("node-a", "node-b", "node-c"));
+            }
+            nodeB.handlePlayerMessage("bob", sendMessage("m" + i));
+        }
+
+        for (int i = 0; i < messages; i++) {
+            String message = awaitMessage("alice", "messageReceivedNotification");
+            assertTrue(message.contains("\"m" + i + "\""), "Expected m" + i + " but got " + message);
+        }
+    }
+
+    @Test
+    void updateClusterNodes_withFullMailbox_movesEveryQueuedMessage() throws Exception {
+        LoopbackClusterBus.Network network = new LoopbackClusterBus.Network();
+        LoopbackClusterBus busA = network.join("node-a");
+        LoopbackClusterBus busB = network.join("node-b");
+        LoopbackClusterBus busC = network.join("node-c");
+        List<String> initialNodes = List.of("node-a", "node-b");
+        int capacity = 50;
+        GameManager nodeA = node(busA, initialNodes, new MailboxConfig(capacity, MailboxOverflowPolicy.REJECT));
+        node(busB, initialNodes);
+        GameManager nodeC = node(busC, initialNodes);
+        EventLoopGroup gameLoop = new DefaultEventLoopGroup(1);
+        try {
+            nodeA.runGamesOn(gameLoop);
+            String gameId = createGameMovingTo(nodeA, "node-a", "node-c");
+            nodeA.joinGame("alice", gameId);
+            awaitMessage("alice", "playerJoinedChatNotification");
+
+            // Stall the game's loop until its mailbox is full and the move has been waiting on it
+            CountDownLatch release = new CountDownLatch(1);
+            gameLoop.next().execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            for (int i = 0; i < capacity + 10; i++) {
+                nodeA.handlePlayerMessage("alice", sendMessage("m" + i));
+            }
+            awaitCondition(() -> nodeA.getMailboxStats().stream()
+                    .anyMatch(stats -> stats.gameId().equals(gameId) && stats.pendingTasks() == capacity));
+            nodeC.updateClusterNodes(List.of("node-a", "node-b", "node-c"));
+            // Stalled for a while, but within the time a moving game gets to drain
+            Thread.sleep(1_000);
+            release.countDown();
+
+            awaitCondition(() -> nodeC.listGames().stream().anyMatch(game -> game.getGameId().equals(gameId)));
+            nodeA.handlePlayerMessage("alice", "{\"type\":\"getMessages\"}");
+            String history = awaitMessage("alice", "getMessagesResponse");
+            for (int i = 0; i < capacity; i++) {
+                assertTrue(history.contains("\"m" + i + "\""), "m" + i + " should have moved with the game: " + history);
+            }
+            assertFalse(history.contains("\"m" + capacity + "\""), "Messages the full mailbox refused should be gone");
+        } finally {
+            gameLoop.shutdownGracefully();
+        }
+    }
+
+    @Test
+    void updateClusterNodes_withGameStuckPastTheShutdownTimeout_stopsItInsteadOfMoving() throws Exception {
+        LoopbackClusterBus.Network network = new LoopbackClusterBus.Network();
+        LoopbackClusterBus busA = network.join("node-a");
+        LoopbackClusterBus busB = network.join("node-b");
+        LoopbackClusterBus busC = network.join("node-c");
+        List<String> initialNodes = List.of("node-a", "node-b");
+        GameManager nodeA = node(busA, initialNodes);
+        node(busB, initialNodes);
+        GameManager nodeC = node(busC, initialNodes);
+        EventLoopGroup gameLoop = new DefaultEventLoopGroup(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            nodeA.runGamesOn(gameLoop);
+            String gameId = createGameMovingTo(nodeA, "node-a", "node-c");
+            nodeA.joinGame("alice", gameId);
+            awaitMessage("alice", "playerJoinedChatNotification");
+
+            gameLoop.next().execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            nodeA.handlePlayerMessage("alice", sendMessage("stuck"));
+            nodeC.updateClusterNodes(List.of("node-a", "node-b", "node-c"));
+            // Longer than a moving game gets to drain
+            Thread.sleep(6_000);
+
+            assertTrue(nodeA.listGames().isEmpty(), "The stuck game should be stopped");
+            assertTrue(nodeC.listGames().isEmpty(), "The stuck game should not have moved");
+        } finally {
+            release.countDown();
+            gameLoop.shutdownGracefully();
+        }
+    }
+
+    private void assertRemotePlayerChats(ClusterBus ownerBus, ClusterBus homeBus) throws Exception {
+        GameManager owner = node(ownerBus);
+        GameManager home = node(homeBus);
+        String gameId = owner.createGame("alice", null);
+        assertTrue(gameId.endsWith("@node-a"), "Game ids should name the creating node");
+
+        owner.joinGame("alice", gameId);
+        home.joinGame("bob", gameId);
+        awaitMessage("bob", "playerJoinedChatNotification");
+
+        home.handlePlayerMessage("bob", "{\"type\":\"sendMessage\",\"message\":\"hello from node-b\"}");
+
+        assertTrue(awaitMessage("alice", "messageReceivedNotification").contains("hello from node-b"));
+        assertTrue(awaitMessage("bob", "messageReceivedNotification").contains("hello from node-b"));
+    }
+
+    private GameManager node(ClusterBus bus) {
+        return node(bus, bus.nodeIds());
+    }
+
+    private GameManager node(ClusterBus bus, Collection<String> ringNodes) {
+        return node(bus, ringNodes, MailboxConfig.unbounded());
+    }
+
+    private GameManager node(ClusterBus bus, Collection<String> ringNodes, MailboxConfig mailboxConfig) {
+        buses.add(bus);
+        GameManager gameManager = new GameManager((playerId, message) ->
+                received.computeIfAbsent(playerId, id -> new LinkedBlockingQueue<>()).add(message),
+                ServerMetrics.noop(), mailboxConfig);
+        gameManager.attachCluster(bus, ringNodes);
+        return gameManager;
+    }
+
+    /**
+     * Creates games until one is placed on {@code from} now and on {@code to} once node-c joins.
+     */
+    private static String createGameMovingTo(GameManager creator, String from, String to) {
+        HashRing before = new HashRing(List.of("node-a", "node-b"));
+        HashRing after = new HashRing(List.of("node-a", "node-b", "node-c"));
+        while (true) {
+            String gameId = creator.createGame("creator", null);
+            if (before.ownerOf(gameId).equals(from) && after.ownerOf(gameId).equals(to)) {
+                return gameId;
+            }
+        }
+    }
+
+    private static String sendMessage(String text) {
+        return "{\"type\":\"sendMessage\",\"message\":\"" + text + "\"}";
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), "Condition not met within 10 seconds");
+    }
+
+    private String awaitMessage(String playerId, String type) throws InterruptedException {
+        BlockingQueue<String> queue = received.computeIfAbsent(playerId, id -> new LinkedBlockingQueue<>());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            String message = queue.poll(100, TimeUnit.MILLISECONDS);
+            if (message != null && message.contains("\"" + type + "\"")) {
+                return message;
+            }
+        }
+        return fail("Player " + playerId + " did not receive a " + type);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
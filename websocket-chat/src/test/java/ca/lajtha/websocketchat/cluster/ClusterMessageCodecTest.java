@@ -0,0 +1,72 @@
+package ca.lajtha.websocketchat.cluster;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterMessageCodecTest {
+
+    @Test
+    void everyMessageType_survivesARoundTrip() {
+        List<ClusterMessage> messages = List.of(
+                new ClusterMessage.Hello("node-a", 1_700_000_000_000L, "nonce", "c2lnbmF0dXJl"),
+                new ClusterMessage.CreateGame("node-a-1", "Lobby", "alice"),
+                new ClusterMessage.JoinGame("node-a-1", "bob", "node-b"),
+                new ClusterMessage.LeaveGame("node-a-1", "bob"),
+                new ClusterMessage.PlayerMessage("node-a-1", "bob", "{\"type\":\"sendMessage\",\"message\":\"héllo ✓\"}"),
+                new ClusterMessage.Deliver("alice", "{}"),
+                new ClusterMessage.StopGame("node-a-1"),
+                new ClusterMessage.RemovedFromGame("node-a-1", "bob"),
+                new ClusterMessage.Membership(List.of("node-a", "node-b")),
+                new ClusterMessage.MigrateGame("node-a-1", "{\"messages\":[]}"),
+                new ClusterMessage.MigrationComplete("node-a-1"),
+                new ClusterMessage.MigrationAck("node-a-1", true),
+                new ClusterMessage.GameCreated("node-a-1"),
+                new ClusterMessage.PresenceDelta(42, 7, true, List.of("alice", "bob"), List.of()),
+                new ClusterMessage.PresenceRequest(),
+                new ClusterMessage.Relay("alice", ""));
+        EmbeddedChannel channel = new EmbeddedChannel(ClusterMessageCodec.INSTANCE);
+
+        for (ClusterMessage message : messages) {
+            assertTrue(channel.writeOutbound(message));
+            ByteBuf encoded = channel.readOutbound();
+            assertTrue(channel.writeInbound(encoded));
+            assertEquals(message, channel.readInbound());
+        }
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void decode_withStringLongerThanTheFrame_failsAsCorrupt() {
+        EmbeddedChannel channel = new EmbeddedChannel(ClusterMessageCodec.INSTANCE);
+        ByteBuf frame = Unpooled.buffer().writeByte(6).writeInt(1_000_000).writeByte('x');
+
+        DecoderException e = assertThrows(DecoderException.class, () -> channel.writeInbound(frame));
+
+        assertTrue(e.getMessage().contains("Invalid string length"), e.getMessage());
+        assertEquals(0, frame.refCnt(), "The frame should be released");
+    }
+
+    @Test
+    void decode_withNegativeStringLength_failsAsCorrupt() {
+        EmbeddedChannel channel = new EmbeddedChannel(ClusterMessageCodec.INSTANCE);
+        ByteBuf frame = Unpooled.buffer().writeByte(6).writeInt(-1);
+
+        assertThrows(DecoderException.class, () -> channel.writeInbound(frame));
+    }
+
+    @Test
+    void decode_withListLongerThanTheFrame_failsAsCorrupt() {
+        EmbeddedChannel channel = new EmbeddedChannel(ClusterMessageCodec.INSTANCE);
+        ByteBuf frame = Unpooled.buffer().writeByte(12).writeLong(1).writeLong(1).writeBoolean(false)
+                .writeInt(Integer.MAX_VALUE);
+
+        assertThrows(DecoderException.class, () -> channel.writeInbound(frame));
+    }
+}
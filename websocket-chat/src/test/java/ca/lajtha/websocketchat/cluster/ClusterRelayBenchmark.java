@@ -0,0 +1,106 @@
+package ca.lajtha.websocketchat.cluster;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many messages per second one node can relay to users connected to another,
+ * through the {@link PresenceDirectory} over local TCP, with per-node send batching on and off.
+ *
+ * Each round connects {@code --users} users to node-b, waits for node-a to learn of them, then
+ * relays {@code --messages} messages from {@code --threads} threads on node-a and times how
+ * long node-b takes to receive them all.
+ *
+ * Usage: {@code ClusterRelayBenchmark [--users 1000] [--messages 1000000] [--threads 4]}
+ */
+final class ClusterRelayBenchmark {
+
+    private ClusterRelayBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = Integer.parseInt(option(args, "--users", "1000"));
+        int messages = Integer.parseInt(option(args, "--messages", "1000000"));
+        int threads = Integer.parseInt(option(args, "--threads", "4"));
+
+        System.out.printf("Relaying %d messages to %d users on another node from %d threads%n", messages, users, threads);
+        for (boolean batchSends : new boolean[]{false, true, false, true}) {
+            double rate = run(users, messages, threads, batchSends);
+            System.out.printf("batchSends=%-5s %,12.0f messages/s%n", batchSends, rate);
+        }
+    }
+
+    private static double run(int users, int messages, int threads, boolean batchSends) throws Exception {
+        Map<String, InetSocketAddress> nodes = new LinkedHashMap<>();
+        nodes.put("node-a", new InetSocketAddress("127.0.0.1", freePort()));
+        nodes.put("node-b", new InetSocketAddress("127.0.0.1", freePort()));
+        CountDownLatch received = new CountDownLatch(messages);
+
+        try (TcpClusterBus busA = new TcpClusterBus("node-a", nodes, ServerMetrics.noop(), batchSends);
+             TcpClusterBus busB = new TcpClusterBus("node-b", nodes, ServerMetrics.noop(), batchSends);
+             PresenceDirectory nodeA = new PresenceDirectory(busA, (userId, message) -> { }, ServerMetrics.noop(), 10);
+             PresenceDirectory nodeB = new PresenceDirectory(busB, (userId, message) -> received.countDown(),
+                     ServerMetrics.noop(), 10)) {
+            nodeA.start();
+            nodeB.start();
+            for (int i = 0; i < users; i++) {
+                nodeB.localUserConnected("user-" + i);
+            }
+            String lastUser = "user-" + (users - 1);
+            while (nodeA.nodeOf(lastUser) == null) {
+                Thread.sleep(10);
+            }
+
+            String message = "{\"type\":\"messageReceivedNotification\",\"message\":\"" + "x".repeat(100) + "\"}";
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            long start = System.nanoTime();
+            try {
+                List<Future<?>> senders = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int thread = t;
+                    senders.add(executor.submit(() -> {
+                        for (int i = thread; i < messages; i += threads) {
+                            nodeA.relay("user-" + (i % users), message);
+                        }
+                    }));
+                }
+                for (Future<?> sender : senders) {
+                    sender.get();
+                }
+                if (!received.await(60, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException(received.getCount() + " messages were not received");
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            return messages / ((System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,57 @@
+package ca.lajtha.websocketchat.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+
+    private static final int KEYS = 30_000;
+
+    @Test
+    void ownerOf_sameNodesInAnyOrder_placesKeysAlike() {
+        HashRing ring = new HashRing(List.of("node-a", "node-b", "node-c"));
+        HashRing reordered = new HashRing(List.of("node-c", "node-a", "node-b"));
+
+        for (int i = 0; i < KEYS; i++) {
+            String key = "game-" + i + "@node-a";
+            assertEquals(ring.ownerOf(key), reordered.ownerOf(key));
+        }
+    }
+
+    @Test
+    void ownerOf_spreadsKeysEvenly() {
+        HashRing ring = new HashRing(List.of("node-a", "node-b", "node-c", "node-d"));
+        Map<String, Integer> counts = new HashMap<>();
+
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.ownerOf("game-" + i + "@node-a"), 1, Integer::sum);
+        }
+
+        int fairShare = KEYS / 4;
+        counts.forEach((node, count) -> assertTrue(Math.abs(count - fairShare) < fairShare / 4,
+                node + " got " + count + " keys, expected about " + fairShare));
+    }
+
+    @Test
+    void ownerOf_afterAddingNode_onlyMovesKeysToIt() {
+        HashRing before = new HashRing(List.of("node-a", "node-b", "node-c"));
+        HashRing after = new HashRing(List.of("node-a", "node-b", "node-c", "node-d"));
+        int moved = 0;
+
+        for (int i = 0; i < KEYS; i++) {
+            String key = "game-" + i + "@node-b";
+            String owner = after.ownerOf(key);
+            if (!owner.equals(before.ownerOf(key))) {
+                assertEquals("node-d", owner, "Keys should only move to the new node");
+                moved++;
+            }
+        }
+
+        assertTrue(moved > KEYS / 8 && moved < KEYS * 3 / 8, "About a quarter of the keys should move, moved " + moved);
+    }
+}
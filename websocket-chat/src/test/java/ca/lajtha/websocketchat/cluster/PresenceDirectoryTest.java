@@ -0,0 +1,82 @@
+package ca.lajtha.websocketchat.cluster;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PresenceDirectoryTest {
+
+    private final LoopbackClusterBus.Network network = new LoopbackClusterBus.Network();
+    private final BlockingQueue<String> delivered = new LinkedBlockingQueue<>();
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (AutoCloseable closeable : closeables) {
+            closeable.close();
+        }
+    }
+
+    @Test
+    void relay_toUserOnOtherNode_deliversThere() throws Exception {
+        PresenceDirectory nodeA = node("node-a");
+        PresenceDirectory nodeB = node("node-b");
+
+        nodeB.localUserConnected("bob");
+        awaitCondition(() -> "node-b".equals(nodeA.nodeOf("bob")));
+
+        assertTrue(nodeA.relay("bob", "hello"));
+        assertEquals("node-b:bob:hello", delivered.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void relay_afterUserDisconnected_isNotSent() throws Exception {
+        PresenceDirectory nodeA = node("node-a");
+        PresenceDirectory nodeB = node("node-b");
+        nodeB.localUserConnected("bob");
+        awaitCondition(() -> nodeA.nodeOf("bob") != null);
+
+        nodeB.localUserDisconnected("bob");
+        awaitCondition(() -> nodeA.nodeOf("bob") == null);
+
+        assertFalse(nodeA.relay("bob", "hello"));
+    }
+
+    @Test
+    void start_afterOtherNodes_learnsTheirUsersFromSnapshot() throws Exception {
+        PresenceDirectory nodeA = node("node-a");
+        nodeA.localUserConnected("alice");
+        nodeA.flush();
+
+        PresenceDirectory nodeB = node("node-b");
+
+        awaitCondition(() -> "node-a".equals(nodeB.nodeOf("alice")));
+    }
+
+    private PresenceDirectory node(String nodeId) {
+        LoopbackClusterBus bus = network.join(nodeId);
+        PresenceDirectory presence = new PresenceDirectory(bus,
+                (userId, message) -> delivered.add(nodeId + ":" + userId + ":" + message), ServerMetrics.noop(), 10);
+        closeables.add(presence);
+        closeables.add(bus);
+        presence.start();
+        return presence;
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), "Condition not met within 10 seconds");
+    }
+}
@@ -0,0 +1,218 @@
+package ca.lajtha.websocketchat.cluster;
+
+import ca.lajtha.websocketchat.game.GameManager;
+import ca.lajtha.websocketchat.game.MailboxConfig;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures how long a busy room pauses while it moves between nodes.
+ *
+ * The driver JVM (node-0) hosts a room; a follower JVM (node-1) joins {@code --players} players
+ * to it. The driver sends {@code --rate} numbered chat messages per second for
+ * {@code --seconds}, and halfway through takes itself out of the ring, so the room migrates to
+ * node-1 while messages keep arriving. The follower reports the longest gap between consecutive
+ * messages its players received, which is the pause clients saw, along with delivery latency,
+ * and any lost or reordered messages. The driver reports its own measure of the pause, from the
+ * moment the room stopped taking messages until the handoff was sent.
+ *
+ * Usage: {@code RoomMigrationBenchmark [--players 200] [--rate 1000] [--seconds 10]}
+ */
+final class RoomMigrationBenchmark {
+    private static final Pattern STAMP = Pattern.compile("n=(\\d+) t=(\\d+)");
+
+    private RoomMigrationBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--follower")) {
+            runFollower(option(args, "--cluster", null), Integer.parseInt(option(args, "--players", "200")),
+                    Integer.parseInt(option(args, "--messages", "0")));
+            return;
+        }
+        int players = Integer.parseInt(option(args, "--players", "200"));
+        int rate = Integer.parseInt(option(args, "--rate", "1000"));
+        int seconds = Integer.parseInt(option(args, "--seconds", "10"));
+        runDriver(players, rate, seconds);
+    }
+
+    private static void runDriver(int players, int rate, int seconds) throws Exception {
+        String cluster = "node-0@127.0.0.1:" + freePort() + ",node-1@127.0.0.1:" + freePort();
+        int messages = rate * seconds;
+        String javaBin = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process follower = new ProcessBuilder(javaBin, "-cp", System.getProperty("java.class.path"),
+                RoomMigrationBenchmark.class.getName(), "--follower", "--cluster", cluster,
+                "--players", String.valueOf(players), "--messages", String.valueOf(messages))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        BufferedReader output = new BufferedReader(new InputStreamReader(follower.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter input = new PrintWriter(follower.getOutputStream(), true, StandardCharsets.UTF_8);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ServerMetrics metrics = new ServerMetrics(registry);
+        try (TcpClusterBus bus = new TcpClusterBus("node-0", TcpClusterBus.parseNodes(cluster), metrics)) {
+            GameManager driver = new GameManager((playerId, message) -> { }, metrics, MailboxConfig.unbounded());
+            driver.attachCluster(bus, List.of("node-0"));
+            expect(output, "READY");
+
+            String gameId = driver.createGame("driver", null);
+            driver.joinGame("driver", gameId);
+            input.println("JOIN " + gameId);
+            expect(output, "JOINED");
+            // The follower reports its joins once sent; give the room time to apply them
+            Thread.sleep(500);
+
+            System.out.printf("Room %s with %d remote players, %d messages/s for %ds, moving to node-1 halfway%n",
+                    gameId, players, rate, seconds);
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+            long next = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                if (i == messages / 2) {
+                    driver.updateClusterNodes(List.of("node-1"));
+                }
+                while (System.nanoTime() < next) {
+                    Thread.onSpinWait();
+                }
+                next += intervalNanos;
+                driver.handlePlayerMessage("driver",
+                        "{\"type\":\"sendMessage\",\"message\":\"n=" + i + " t=" + nowMicros() + "\"}");
+            }
+            // Let the last broadcasts arrive
+            Thread.sleep(2000);
+
+            input.println("DONE");
+            System.out.println("node-1: " + expect(output, "STATS"));
+            Timer migration = registry.find("cluster.game.migration").timer();
+            if (migration != null && migration.count() > 0) {
+                System.out.printf("node-0: migrations=%d pause=%.1fms%n",
+                        migration.count(), migration.max(TimeUnit.MICROSECONDS) / 1000.0);
+            }
+        } finally {
+            follower.destroy();
+        }
+    }
+
+    private static void runFollower(String cluster, int players, int messages) throws Exception {
+        long[] arrivals = new long[messages];
+        long[] latencies = new long[messages];
+        int[] counts = new int[3]; // received, out of order, highest sequence seen + 1
+        try (TcpClusterBus bus = new TcpClusterBus("node-1", TcpClusterBus.parseNodes(cluster), ServerMetrics.noop())) {
+            GameManager home = new GameManager((playerId, message) -> {
+                // One player's copy is enough to see when each message arrived
+                if (!playerId.equals("node-1-player-0")) {
+                    return;
+                }
+                Matcher matcher = STAMP.matcher(message);
+                if (!matcher.find()) {
+                    return;
+                }
+                int sequence = Integer.parseInt(matcher.group(1));
+                long now = nowMicros();
+                synchronized (counts) {
+                    if (sequence >= messages || arrivals[sequence] != 0) {
+                        return;
+                    }
+                    arrivals[sequence] = now;
+                    latencies[sequence] = now - Long.parseLong(matcher.group(2));
+                    counts[0]++;
+                    if (sequence < counts[2]) {
+                        counts[1]++;
+                    }
+                    counts[2] = Math.max(counts[2], sequence + 1);
+                }
+            });
+            home.attachCluster(bus, List.of("node-0"));
+            System.out.println("READY");
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("JOIN ")) {
+                    String gameId = line.substring("JOIN ".length());
+                    for (int i = 0; i < players; i++) {
+                        home.joinGame("node-1-player-" + i, gameId);
+                    }
+                    System.out.println("JOINED");
+                } else if (line.equals("DONE")) {
+                    synchronized (counts) {
+                        long maxGap = 0;
+                        long previous = 0;
+                        long[] received = new long[counts[0]];
+                        int index = 0;
+                        for (int i = 0; i < messages; i++) {
+                            if (arrivals[i] == 0) {
+                                continue;
+                            }
+                            if (previous != 0) {
+                                maxGap = Math.max(maxGap, arrivals[i] - previous);
+                            }
+                            previous = arrivals[i];
+                            received[index++] = latencies[i];
+                        }
+                        Arrays.sort(received);
+                        System.out.printf("STATS received=%d/%d reordered=%d maxGap=%.1fms p50=%dus p99=%dus max=%dus%n",
+                                counts[0], messages, counts[1], maxGap / 1000.0, percentile(received, 0.50),
+                                percentile(received, 0.99), received.length == 0 ? 0 : received[received.length - 1]);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the follower's output up to the line starting with the expected word, skipping the
+     * log lines it may write to stdout in between.
+     */
+    private static String expect(BufferedReader output, String expected) throws IOException {
+        String line;
+        while ((line = output.readLine()) != null) {
+            if (line.startsWith(expected)) {
+                return line;
+            }
+        }
+        throw new IllegalStateException("Follower exited before sending " + expected);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static long nowMicros() {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+}
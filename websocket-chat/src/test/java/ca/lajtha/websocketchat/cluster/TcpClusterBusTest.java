@@ -0,0 +1,112 @@
+package ca.lajtha.websocketchat.cluster;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TcpClusterBusTest {
+
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private final List<ClusterBus> buses = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        buses.forEach(ClusterBus::close);
+    }
+
+    @Test
+    void send_toLocalNode_deliversMessagesInOrder() throws Exception {
+        TcpClusterBus bus = bus("node-a", nodes("node-a"), null);
+        bus.start(this::record);
+
+        for (int i = 0; i < 10_000; i++) {
+            bus.send("node-a", new ClusterMessage.StopGame("game-" + i));
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals("node-a:game-" + i, received.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void send_withSharedSecret_isAccepted() throws Exception {
+        Map<String, InetSocketAddress> nodes = nodes("node-a", "node-b");
+        bus("node-b", nodes, "secret").start(this::record);
+
+        bus("node-a", nodes, "secret").send("node-b", new ClusterMessage.StopGame("game-1"));
+
+        assertEquals("node-a:game-1", received.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void send_withWrongSecret_isRejected() throws Exception {
+        Map<String, InetSocketAddress> nodes = nodes("node-a", "node-b", "node-c");
+        bus("node-b", nodes, "secret").start(this::record);
+
+        bus("node-c", nodes, "guessed").send("node-b", new ClusterMessage.StopGame("game-1"));
+        bus("node-a", nodes, "secret").send("node-b", new ClusterMessage.StopGame("game-2"));
+
+        assertEquals("node-a:game-2", received.poll(5, TimeUnit.SECONDS));
+        assertNull(received.poll(500, TimeUnit.MILLISECONDS), "A node with the wrong secret should be refused");
+    }
+
+    @Test
+    void send_fromNodeOutsideTheCluster_isRejected() throws Exception {
+        Map<String, InetSocketAddress> nodes = nodes("node-a", "node-b");
+        Map<String, InetSocketAddress> outsider = new LinkedHashMap<>(nodes);
+        outsider.put("node-x", new InetSocketAddress("127.0.0.1", freePort()));
+        bus("node-b", nodes, "secret").start(this::record);
+
+        bus("node-x", outsider, "secret").send("node-b", new ClusterMessage.StopGame("game-1"));
+        bus("node-a", nodes, "secret").send("node-b", new ClusterMessage.StopGame("game-2"));
+
+        assertEquals("node-a:game-2", received.poll(5, TimeUnit.SECONDS));
+        assertNull(received.poll(500, TimeUnit.MILLISECONDS), "A node missing from the node list should be refused");
+    }
+
+    @Test
+    void send_afterClose_isDropped() throws Exception {
+        TcpClusterBus bus = bus("node-a", nodes("node-a", "node-b"), null);
+        bus.close();
+
+        assertDoesNotThrow(() -> bus.send("node-a", new ClusterMessage.StopGame("game-1")));
+        assertDoesNotThrow(() -> bus.send("node-b", new ClusterMessage.StopGame("game-1")));
+    }
+
+    private void record(String fromNodeId, ClusterMessage message) {
+        received.add(fromNodeId + ":" + ((ClusterMessage.StopGame) message).gameId());
+    }
+
+    private TcpClusterBus bus(String nodeId, Map<String, InetSocketAddress> nodes, String secret) {
+        TcpClusterBus bus = new TcpClusterBus(nodeId, nodes, ServerMetrics.noop(), true, secret);
+        buses.add(bus);
+        return bus;
+    }
+
+    private static Map<String, InetSocketAddress> nodes(String... nodeIds) throws IOException {
+        Map<String, InetSocketAddress> nodes = new LinkedHashMap<>();
+        for (String nodeId : nodeIds) {
+            nodes.put(nodeId, new InetSocketAddress("127.0.0.1", freePort()));
+        }
+        return nodes;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ca.lajtha.websocketchat.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many games per second {@link GameManager} can create and stop from concurrent
+ * callers, as HTTP request threads do.
+ *
+ * <pre>
+ * ./gradlew gameCreationBenchmark --args="--threads 16 --games 200000"
+ * </pre>
+ *
+ * Each round creates {@code --games} games spread over {@code --threads} threads, then stops
+ * them all the same way. The first {@code --warmup} rounds (default 2) are not reported.
+ */
+final class GameCreationBenchmark {
+
+    private GameCreationBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int games = 100_000;
+        int warmup = 2;
+        int rounds = 5;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+                case "--threads" -> threads = value;
+                case "--games" -> games = value;
+                case "--warmup" -> warmup = value;
+                case "--rounds" -> rounds = value;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        GameManager gameManager = new GameManager((playerId, message) -> { });
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < warmup + rounds; round++) {
+                int perThread = games / threads;
+                List<List<String>> created = new ArrayList<>(threads);
+                for (int i = 0; i < threads; i++) {
+                    created.add(new ArrayList<>(perThread));
+                }
+                long createNanos = run(executor, threads, thread -> {
+                    List<String> ids = created.get(thread);
+                    for (int i = 0; i < perThread; i++) {
+                        ids.add(gameManager.createGame("benchmark", null));
+                    }
+                });
+                long stopNanos = run(executor, threads, thread -> {
+                    for (String gameId : created.get(thread)) {
+                        gameManager.stopGame(gameId);
+                    }
+                });
+                if (round >= warmup) {
+                    int total = perThread * threads;
+                    System.out.printf("round %d: %,d threads, %,.0f creates/s, %,.0f stops/s%n",
+                            round - warmup + 1, threads,
+                            total / (createNanos / 1e9), total / (stopNanos / 1e9));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static long run(ExecutorService executor, int threads, ThreadTask task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            int thread = i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                task.run(thread);
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.MINUTES);
+        }
+        return System.nanoTime() - begin;
+    }
+
+    @FunctionalInterface
+    private interface ThreadTask {
+        void run(int thread) throws Exception;
+    }
+}
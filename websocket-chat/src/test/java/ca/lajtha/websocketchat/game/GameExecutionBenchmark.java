@@ -0,0 +1,197 @@
+package ca.lajtha.websocketchat.game;
+
+import ca.lajtha.websocketchat.game.chat.BroadcastConfig;
+import ca.lajtha.websocketchat.ids.IdInterner;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import ca.lajtha.websocketchat.server.websocket.ConnectionSession;
+import ca.lajtha.websocketchat.server.websocket.WebsocketManagerImpl;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures end-to-end chat latency in a small room with each game on a thread of its own and
+ * with games run on the connections' event loops: from a player writing a message to every
+ * player in the room reading the broadcast.
+ *
+ * <pre>
+ * ./gradlew gameExecutionBenchmark --args="--players 8 --messages 20000 --rate 2000"
+ * </pre>
+ *
+ * Players are in-JVM local channels served on {@code --loops} event loops (default 4), so the
+ * numbers show the thread hand-offs alone, without network I/O. Messages are sent by the players
+ * in turn at {@code --rate} per second; the first {@code --warmup} (default 2000) are not counted.
+ */
+final class GameExecutionBenchmark {
+    private static final Pattern TIMESTAMP = Pattern.compile("t=(\\d+)");
+
+    private GameExecutionBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int players = 8;
+        int loops = 4;
+        int messages = 20_000;
+        int warmup = 2000;
+        int rate = 2000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+                case "--players" -> players = value;
+                case "--loops" -> loops = value;
+                case "--messages" -> messages = value;
+                case "--warmup" -> warmup = value;
+                case "--rate" -> rate = value;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        System.out.printf("Room of %d players on %d event loops, %,d messages at %,d/s%n", players, loops, messages, rate);
+        for (boolean onEventLoop : new boolean[] {false, true}) {
+            run(players, loops, messages, warmup, rate, onEventLoop);
+        }
+    }
+
+    private static void run(int players, int loops, int messages, int warmup, int rate, boolean onEventLoop)
+            throws Exception {
+        EventLoopGroup serverLoops = new DefaultEventLoopGroup(loops);
+        EventLoopGroup clientLoops = new DefaultEventLoopGroup(loops);
+        IdInterner playerIds = new IdInterner();
+        WebsocketManagerImpl websocketManager = new WebsocketManagerImpl(ServerMetrics.noop(), playerIds, 0, 0, true);
+        GameManager gameManager = new GameManager(websocketManager, ServerMetrics.noop(), MailboxConfig.unbounded(),
+                playerIds, BroadcastConfig.immediate());
+        websocketManager.setGame(gameManager);
+        if (onEventLoop) {
+            gameManager.runGamesOn(serverLoops);
+        }
+        String gameId = gameManager.createGame("benchmark", null);
+
+        long[] latencies = new long[messages * players];
+        AtomicInteger received = new AtomicInteger();
+        AtomicInteger nextPlayer = new AtomicInteger();
+        LocalAddress address = new LocalAddress("game-execution-" + onEventLoop);
+        try {
+            Channel server = new ServerBootstrap()
+                    .group(serverLoops)
+                    .channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInitializer<LocalChannel>() {
+                        @Override
+                        protected void initChannel(LocalChannel channel) {
+                            channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                                private ConnectionSession session;
+
+                                @Override
+                                public void channelActive(ChannelHandlerContext ctx) {
+                                    String playerId = "player-" + nextPlayer.getAndIncrement();
+                                    session = websocketManager.playerConnected(ctx.channel(), playerId);
+                                    gameManager.joinGame(playerId, gameId);
+                                }
+
+                                @Override
+                                public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                    // As WebSocketFrameHandler does, on the connection's event loop
+                                    try {
+                                        websocketManager.handlePlayerMessage(session, ((TextWebSocketFrame) msg).text());
+                                    } finally {
+                                        ReferenceCountUtil.release(msg);
+                                    }
+                                }
+                            });
+                        }
+                    })
+                    .bind(address).sync().channel();
+            Bootstrap client = new Bootstrap()
+                    .group(clientLoops)
+                    .channel(LocalChannel.class)
+                    .handler(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            long now = System.nanoTime();
+                            try {
+                                Matcher matcher = TIMESTAMP.matcher(((TextWebSocketFrame) msg).text());
+                                if (matcher.find()) {
+                                    int index = received.getAndIncrement();
+                                    if (index < latencies.length) {
+                                        latencies[index] = now - Long.parseLong(matcher.group(1));
+                                    }
+                                }
+                            } finally {
+                                ReferenceCountUtil.release(msg);
+                            }
+                        }
+                    });
+            List<Channel> clients = new ArrayList<>(players);
+            for (int i = 0; i < players; i++) {
+                clients.add(client.connect(address).sync().channel());
+            }
+            while (gameManager.getMailboxStats().get(0).processedTasks() < players) {
+                Thread.sleep(10);
+            }
+
+            send(clients, warmup, rate);
+            awaitReceived(received, (long) warmup * players);
+            received.set(0);
+            send(clients, messages, rate);
+            awaitReceived(received, (long) messages * players);
+
+            long[] sorted = Arrays.copyOf(latencies, Math.min(received.get(), latencies.length));
+            Arrays.sort(sorted);
+            System.out.printf("%-18s p50=%,7dus p99=%,7dus p99.9=%,7dus max=%,7dus%n",
+                    onEventLoop ? "game on event loop:" : "game on own thread:",
+                    micros(sorted, 0.50), micros(sorted, 0.99), micros(sorted, 0.999), micros(sorted, 1.0));
+            for (Channel channel : clients) {
+                channel.close();
+            }
+            server.close().sync();
+            gameManager.stopGame(gameId);
+        } finally {
+            clientLoops.shutdownGracefully().sync();
+            serverLoops.shutdownGracefully().sync();
+        }
+    }
+
+    private static void send(List<Channel> clients, int messages, int rate) {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+        long next = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            while (System.nanoTime() < next) {
+                Thread.onSpinWait();
+            }
+            next += intervalNanos;
+            clients.get(i % clients.size()).writeAndFlush(new TextWebSocketFrame(
+                    "{\"type\":\"sendMessage\",\"message\":\"t=" + System.nanoTime() + "\"}"));
+        }
+    }
+
+    private static void awaitReceived(AtomicInteger received, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (received.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static long micros(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = Math.min(sorted.length - 1, Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1));
+        return TimeUnit.NANOSECONDS.toMicros(sorted[index]);
+    }
+}
@@ -0,0 +1,213 @@
+package ca.lajtha.websocketchat.game;
+
+import ca.lajtha.websocketchat.game.chat.BroadcastConfig;
+import ca.lajtha.websocketchat.ids.IdInterner;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import ca.lajtha.websocketchat.server.websocket.MessageSender;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameManagerTest {
+
+    private static final int THREADS = 8;
+
+    private final GameManager gameManager = new GameManager((playerId, message) -> { });
+
+    @Test
+    void nextKey_neverRepeatsAcrossThreads() throws Exception {
+        GameIdGenerator generator = new GameIdGenerator(THREADS);
+        Set<Integer> keys = ConcurrentHashMap.newKeySet();
+
+        runConcurrently(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                assertTrue(keys.add(generator.nextKey()), "Every key should be unique");
+            }
+        });
+
+        assertEquals(THREADS * 10_000, keys.size());
+        assertTrue(keys.stream().allMatch(key -> key > 0), "Keys should be positive");
+    }
+
+    @Test
+    void createAndStopGame_concurrently_keepsRegistryConsistent() throws Exception {
+        Set<String> gameIds = ConcurrentHashMap.newKeySet();
+
+        runConcurrently(() -> {
+            for (int i = 0; i < 500; i++) {
+                assertTrue(gameIds.add(gameManager.createGame("creator", null)), "Game ids should be unique");
+            }
+        });
+        assertEquals(THREADS * 500, gameManager.listGames().size());
+
+        List<String> toStop = new ArrayList<>(gameIds);
+        AtomicInteger next = new AtomicInteger();
+        runConcurrently(() -> {
+            int index;
+            while ((index = next.getAndIncrement()) < toStop.size()) {
+                gameManager.stopGame(toStop.get(index));
+            }
+        });
+
+        assertTrue(gameManager.listGames().isEmpty(), "All games should be gone after stopping them");
+        assertThrows(IllegalArgumentException.class, () -> gameManager.joinGame("player", toStop.get(0)));
+    }
+
+    @Test
+    void joinGame_racingStopGame_neverLeavesPlayerInStoppedGame() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            String gameId = gameManager.createGame("creator", null);
+            String playerId = "player-" + round;
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                Future<?> join = executor.submit(() -> {
+                    start.await();
+                    try {
+                        gameManager.joinGame(playerId, gameId);
+                    } catch (IllegalArgumentException e) {
+                        // Lost the race against stopGame
+                    }
+                    return null;
+                });
+                Future<?> stop = executor.submit(() -> {
+                    start.await();
+                    gameManager.stopGame(gameId);
+                    return null;
+                });
+                start.countDown();
+                join.get(10, TimeUnit.SECONDS);
+                stop.get(10, TimeUnit.SECONDS);
+            } finally {
+                executor.shutdownNow();
+            }
+
+            // A player left mapped to the stopped game would have its message rejected
+            assertDoesNotThrow(() -> gameManager.handlePlayerMessage(playerId, "{\"type\":\"getPlayers\"}"));
+        }
+    }
+
+    @Test
+    void drain_finishesQueuedMessagesThenStopsGames() throws Exception {
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        GameManager draining = new GameManager((playerId, message) -> sent.add(message));
+        String gameId = draining.createGame("creator", null);
+        draining.joinGame("player", gameId);
+        for (int i = 0; i < 100; i++) {
+            draining.handlePlayerMessage("player", "{\"type\":\"getPlayers\"}");
+        }
+
+        assertTrue(draining.drain(10_000), "The game should drain within the timeout");
+
+        assertTrue(draining.listGames().isEmpty(), "Drained games should be stopped");
+        assertEquals(100, sent.stream().filter(message -> message.contains("getPlayersResponse")).count());
+    }
+
+    @Test
+    void joinGame_withNonCanonicalGameId_isRejected() {
+        String gameId = gameManager.createGame("creator", null);
+        String number = gameId.substring("game-".length());
+
+        for (String alias : List.of("game-0" + number, "game-+" + number, "game- " + number, "game-" + number + " ")) {
+            assertThrows(IllegalArgumentException.class, () -> gameManager.joinGame("player", alias),
+                alias + " should not name " + gameId);
+        }
+        assertDoesNotThrow(() -> gameManager.joinGame("player", gameId));
+    }
+
+    @Test
+    void broadcasts_areSentByInternedPlayerKey() throws Exception {
+        IdInterner playerIds = new IdInterner();
+        List<String> keyedSends = Collections.synchronizedList(new ArrayList<>());
+        MessageSender sender = new MessageSender() {
+            @Override
+            public void sendMessage(String playerId, String message) {
+                fail("Broadcasts should carry the player's key");
+            }
+
+            @Override
+            public void sendMessage(int playerKey, String playerId, String message) {
+                keyedSends.add(playerKey + ":" + playerId);
+            }
+        };
+        GameManager keyed = new GameManager(sender, ServerMetrics.noop(), MailboxConfig.unbounded(), playerIds);
+        String gameId = keyed.createGame("creator", null);
+        keyed.joinGame("alice", gameId);
+        keyed.joinGame("bob", gameId);
+        keyed.handlePlayerMessage("alice", "{\"type\":\"sendMessage\",\"message\":\"hi\"}");
+
+        assertTrue(keyed.drain(10_000));
+        assertTrue(keyedSends.contains(playerIds.indexOf("alice") + ":alice"));
+        assertTrue(keyedSends.contains(playerIds.indexOf("bob") + ":bob"));
+    }
+
+    @Test
+    void stopGame_withBroadcastsHeldBack_sendsThemBeforeStopping() {
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        // Joins wait a minute to be announced, and every message is batched for a minute
+        BroadcastConfig slow = new BroadcastConfig(60_000, 1, 60_000);
+        GameManager batching = new GameManager((playerId, message) -> sent.add(playerId + ":" + message),
+                ServerMetrics.noop(), MailboxConfig.unbounded(), new IdInterner(), slow);
+        String gameId = batching.createGame("creator", null);
+        batching.joinGame("alice", gameId);
+        batching.joinGame("bob", gameId);
+        // Sending the message announces alice and bob, then waits in a batch
+        batching.handlePlayerMessage("alice", "{\"type\":\"sendMessage\",\"message\":\"last words\"}");
+        // Announced with the next presence notification
+        batching.joinGame("carol", gameId);
+
+        batching.stopGame(gameId);
+
+        for (String player : List.of("alice", "bob")) {
+            List<String> received = sent.stream().filter(message -> message.startsWith(player + ":")).toList();
+            int batch = indexOf(received, "messagesReceivedNotification");
+            assertTrue(batch >= 0 && received.get(batch).contains("last words"),
+                    player + " should get the batched message: " + received);
+            assertTrue(received.subList(batch, received.size()).stream()
+                    .anyMatch(message -> message.contains("presenceChangedNotification") && message.contains("carol")),
+                    player + " should hear that carol joined: " + received);
+        }
+    }
+
+    private static int indexOf(List<String> messages, String type) {
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i).contains(type)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void runConcurrently(Runnable task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
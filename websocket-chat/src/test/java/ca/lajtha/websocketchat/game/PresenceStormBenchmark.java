@@ -0,0 +1,94 @@
+package ca.lajtha.websocketchat.game;
+
+import ca.lajtha.websocketchat.game.chat.BroadcastConfig;
+import ca.lajtha.websocketchat.ids.IdInterner;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the frames one room generates while all of its players reconnect, as after a deploy,
+ * with join and leave notifications sent one by one and coalesced over a presence window.
+ *
+ * <pre>
+ * ./gradlew presenceStormBenchmark --args="--players 10000 --windows 0,250"
+ * </pre>
+ *
+ * For each window the room is filled with {@code --players} players, then every player leaves
+ * and joins again, in random order spread over {@code --spreadMs} (default 2000). Frames are
+ * counted from the first leave until the game has sent everything it had pending.
+ */
+final class PresenceStormBenchmark {
+
+    private PresenceStormBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int players = 10_000;
+        long spreadMs = 2000;
+        String windows = "0,250";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--players" -> players = Integer.parseInt(args[i + 1]);
+                case "--spreadMs" -> spreadMs = Long.parseLong(args[i + 1]);
+                case "--windows" -> windows = args[i + 1];
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        System.out.printf("%,d players reconnecting over %d ms%n", players, spreadMs);
+        for (String window : windows.split(",")) {
+            run(players, spreadMs, Long.parseLong(window.trim()));
+        }
+    }
+
+    private static void run(int players, long spreadMs, long windowMs) throws InterruptedException {
+        AtomicLong frames = new AtomicLong();
+        GameManager gameManager = new GameManager((playerId, message) -> frames.incrementAndGet(),
+                ServerMetrics.noop(), MailboxConfig.unbounded(), new IdInterner(), new BroadcastConfig(windowMs, 0, 0));
+        String gameId = gameManager.createGame("benchmark", null);
+        List<String> playerIds = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            String playerId = "player-" + i;
+            playerIds.add(playerId);
+            gameManager.joinGame(playerId, gameId);
+        }
+        awaitSettled(gameManager, windowMs);
+
+        Collections.shuffle(playerIds, new Random(42));
+        frames.set(0);
+        long start = System.nanoTime();
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(spreadMs) / Math.max(1, players);
+        long next = start;
+        for (String playerId : playerIds) {
+            while (System.nanoTime() < next) {
+                Thread.onSpinWait();
+            }
+            next += intervalNanos;
+            gameManager.handlePlayerDisconnected(playerId);
+            gameManager.joinGame(playerId, gameId);
+        }
+        awaitSettled(gameManager, windowMs);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        System.out.printf("window %4d ms: %,15d frames, %,9.1f per player, settled after %,d ms%n",
+                windowMs, frames.get(), frames.get() / (double) players, elapsedMs);
+        gameManager.stopGame(gameId);
+    }
+
+    /**
+     * Waits for the game's mailbox to empty and for the last presence window to close.
+     */
+    private static void awaitSettled(GameManager gameManager, long windowMs) throws InterruptedException {
+        do {
+            while (gameManager.getMailboxStats().stream().anyMatch(stats -> stats.pendingTasks() > 0)) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(windowMs + 50);
+        } while (gameManager.getMailboxStats().stream().anyMatch(stats -> stats.pendingTasks() > 0));
+    }
+}
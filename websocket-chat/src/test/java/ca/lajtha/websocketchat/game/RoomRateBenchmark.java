@@ -0,0 +1,121 @@
+package ca.lajtha.websocketchat.game;
+
+import ca.lajtha.websocketchat.game.chat.BroadcastConfig;
+import ca.lajtha.websocketchat.ids.IdInterner;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures how one chat room copes as its message rate rises, with every message broadcast as
+ * its own frame and with adaptive batching: delivered messages per second, frames per second,
+ * and the p99 latency from a message being handed to the game to it being handed to the
+ * transport for its recipients.
+ *
+ * <pre>
+ * ./gradlew roomRateBenchmark --args="--players 50 --rates 1000,5000,20000,50000 --maxDelays 0,5"
+ * </pre>
+ *
+ * Each rate is held for {@code --seconds} (default 3). A max delay of 0 turns batching off;
+ * otherwise batching starts above {@code --threshold} messages per second (default 200).
+ */
+final class RoomRateBenchmark {
+    private static final Pattern TIMESTAMP = Pattern.compile("t=(\\d+)");
+
+    private RoomRateBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int players = 50;
+        int seconds = 3;
+        int threshold = 200;
+        String rates = "500,1000,2000,5000,10000,20000,50000";
+        String maxDelays = "0,5";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--players" -> players = Integer.parseInt(args[i + 1]);
+                case "--seconds" -> seconds = Integer.parseInt(args[i + 1]);
+                case "--threshold" -> threshold = Integer.parseInt(args[i + 1]);
+                case "--rates" -> rates = args[i + 1];
+                case "--maxDelays" -> maxDelays = args[i + 1];
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        System.out.printf("One room of %d players, %d s per rate%n", players, seconds);
+        for (String maxDelay : maxDelays.split(",")) {
+            long maxDelayMs = Long.parseLong(maxDelay.trim());
+            System.out.println(maxDelayMs == 0 ? "batching off" : "batching above " + threshold + "/s, max delay " + maxDelayMs + " ms");
+            for (String rate : rates.split(",")) {
+                run(players, seconds, Integer.parseInt(rate.trim()), new BroadcastConfig(0, threshold, maxDelayMs));
+            }
+        }
+    }
+
+    private static void run(int players, int seconds, int rate, BroadcastConfig config) throws InterruptedException {
+        AtomicLong frames = new AtomicLong();
+        long[][] latencies = {new long[1024]};
+        int[] count = {0};
+        // Every recipient gets the same frames, so latency is sampled from one of them
+        GameManager gameManager = new GameManager((playerId, message) -> {
+            frames.incrementAndGet();
+            if (!playerId.equals("player-0")) {
+                return;
+            }
+            long now = System.nanoTime();
+            Matcher matcher = TIMESTAMP.matcher(message);
+            while (matcher.find()) {
+                if (count[0] == latencies[0].length) {
+                    latencies[0] = Arrays.copyOf(latencies[0], count[0] * 2);
+                }
+                latencies[0][count[0]++] = now - Long.parseLong(matcher.group(1));
+            }
+        }, ServerMetrics.noop(), MailboxConfig.unbounded(), new IdInterner(), config);
+        String gameId = gameManager.createGame("benchmark", null);
+        for (int i = 0; i < players; i++) {
+            gameManager.joinGame("player-" + i, gameId);
+        }
+        awaitIdle(gameManager);
+        frames.set(0);
+
+        int messages = rate * seconds;
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long next = start;
+        for (int i = 0; i < messages; i++) {
+            while (System.nanoTime() < next) {
+                Thread.onSpinWait();
+            }
+            next += intervalNanos;
+            gameManager.handlePlayerMessage("player-" + (i % players),
+                    "{\"type\":\"sendMessage\",\"message\":\"t=" + System.nanoTime() + "\"}");
+        }
+        awaitIdle(gameManager);
+        Thread.sleep(config.batchMaxDelayMs() + 50);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        // Frames are handed over on the game's thread, which has stopped by now
+        gameManager.stopGame(gameId);
+        long[] sorted = Arrays.copyOf(latencies[0], count[0]);
+        Arrays.sort(sorted);
+        System.out.printf("  %,7d msg/s: delivered %,12.0f msg/s in %,10.0f frames/s, p50=%,8dus p99=%,8dus%n",
+                rate, (double) count[0] * players / elapsedSeconds, frames.get() / elapsedSeconds,
+                percentileMicros(sorted, 0.50), percentileMicros(sorted, 0.99));
+    }
+
+    private static void awaitIdle(GameManager gameManager) throws InterruptedException {
+        while (gameManager.getMailboxStats().stream().anyMatch(stats -> stats.pendingTasks() > 0)) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static long percentileMicros(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)]);
+    }
+}
@@ -0,0 +1,271 @@
+package ca.lajtha.websocketchat.game;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SerializedGameTest {
+
+    private RecordingGame delegate;
+    private SerializedGame serializedGame;
+
+    @BeforeEach
+    void setUp() {
+        delegate = new RecordingGame();
+        serializedGame = new SerializedGame("game-test", delegate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        serializedGame.shutdownNow();
+    }
+
+    @Test
+    void handlePlayerMessage_processesTasksInOrder() {
+        for (int i = 0; i < 100; i++) {
+            serializedGame.handlePlayerMessage("player1", "message-" + i);
+        }
+
+        assertTrue(serializedGame.shutdown(5000), "Game should drain its mailbox before shutdown completes");
+        assertEquals(100, delegate.messages.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("message-" + i, delegate.messages.get(i));
+        }
+    }
+
+    @Test
+    void getMailboxStats_reportsPendingTasksAndOldestAge() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        delegate.blockOn = release;
+
+        serializedGame.handlePlayerMessage("player1", "blocking");
+        serializedGame.handlePlayerMessage("player1", "queued-1");
+        serializedGame.handlePlayerMessage("player1", "queued-2");
+        Thread.sleep(20);
+
+        MailboxStats stats = serializedGame.getMailboxStats();
+        assertEquals("game-test", stats.gameId());
+        assertEquals(3, stats.pendingTasks());
+        assertTrue(stats.oldestTaskAgeMs() >= 10, "Oldest queued task should have aged while the game was blocked");
+
+        release.countDown();
+        assertTrue(serializedGame.shutdown(5000));
+
+        MailboxStats drained = serializedGame.getMailboxStats();
+        assertEquals(0, drained.pendingTasks());
+        assertEquals(0, drained.oldestTaskAgeMs());
+        assertEquals(3, drained.processedTasks());
+    }
+
+    @Test
+    void handlePlayerMessage_withRejectPolicy_throwsWhenMailboxIsFull() {
+        CountDownLatch release = new CountDownLatch(1);
+        delegate.blockOn = release;
+        SerializedGame bounded = new SerializedGame("game-bounded", delegate, ServerMetrics.noop(),
+            new MailboxConfig(2, MailboxOverflowPolicy.REJECT));
+        try {
+            bounded.handlePlayerMessage("player1", "blocking");
+            bounded.handlePlayerMessage("player1", "queued");
+
+            MailboxFullException exception = assertThrows(MailboxFullException.class,
+                () -> bounded.handlePlayerMessage("player1", "overflow"));
+            assertEquals(MailboxOverflowPolicy.REJECT, exception.getPolicy());
+            assertFalse(exception.isAccepted());
+
+            release.countDown();
+            assertTrue(bounded.shutdown(5000));
+            assertEquals(List.of("blocking", "queued"), delegate.messages);
+        } finally {
+            bounded.shutdownNow();
+        }
+    }
+
+    @Test
+    void handlePlayerMessage_withRejectPolicy_neverOvershootsCapacityUnderConcurrentSenders() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        delegate.blockOn = release;
+        SerializedGame bounded = new SerializedGame("game-bounded", delegate, ServerMetrics.noop(),
+            new MailboxConfig(10, MailboxOverflowPolicy.REJECT));
+        ExecutorService senders = Executors.newFixedThreadPool(8);
+        try {
+            bounded.handlePlayerMessage("player1", "blocking");
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger accepted = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(senders.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 100; i++) {
+                        try {
+                            bounded.handlePlayerMessage("player1", "message");
+                            accepted.incrementAndGet();
+                        } catch (MailboxFullException e) {
+                            // Expected once the mailbox is full
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+
+            assertEquals(9, accepted.get(), "Only the free slots should be taken");
+            assertEquals(10, bounded.getPendingTasks());
+
+            release.countDown();
+            assertTrue(bounded.shutdown(5000));
+            assertEquals(10, delegate.messages.size());
+        } finally {
+            senders.shutdownNow();
+            bounded.shutdownNow();
+        }
+    }
+
+    @Test
+    void handlePlayerMessage_withPauseReadingPolicy_acceptsAndResumesWhenDrained() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        delegate.blockOn = release;
+        SerializedGame bounded = new SerializedGame("game-bounded", delegate, ServerMetrics.noop(),
+            new MailboxConfig(2, MailboxOverflowPolicy.PAUSE_READING));
+        try {
+            bounded.handlePlayerMessage("player1", "blocking");
+
+            MailboxFullException exception = assertThrows(MailboxFullException.class,
+                () -> bounded.handlePlayerMessage("player1", "fills-mailbox"));
+            assertEquals(MailboxOverflowPolicy.PAUSE_READING, exception.getPolicy());
+            assertTrue(exception.isAccepted());
+
+            CountDownLatch resumed = new CountDownLatch(1);
+            exception.resumeWhenDrained(resumed::countDown);
+            assertEquals(1, resumed.getCount(), "Sender should stay paused while the game is blocked");
+
+            release.countDown();
+            assertTrue(resumed.await(5, TimeUnit.SECONDS), "Sender should resume once the mailbox drains");
+            assertTrue(bounded.shutdown(5000));
+            assertEquals(List.of("blocking", "fills-mailbox"), delegate.messages);
+        } finally {
+            bounded.shutdownNow();
+        }
+    }
+
+    @Test
+    void handlePlayerMessage_onEventLoop_processesTasksInOrderOnTheLoop() throws Exception {
+        EventLoop eventLoop = new DefaultEventLoop();
+        SerializedGame onLoop = new SerializedGame("game-loop", delegate, ServerMetrics.noop(),
+            MailboxConfig.unbounded(), eventLoop);
+        try {
+            // More than one drain's worth, so the game yields the loop in between
+            for (int i = 0; i < 300; i++) {
+                onLoop.handlePlayerMessage("player1", "message-" + i);
+            }
+            // Enqueued on the loop itself, so run without a hand-off
+            eventLoop.submit(() -> onLoop.handlePlayerMessage("player1", "from-loop")).get(5, TimeUnit.SECONDS);
+
+            assertTrue(onLoop.shutdown(5000), "Game should drain its mailbox before shutdown completes");
+            assertEquals(301, delegate.messages.size());
+            for (int i = 0; i < 300; i++) {
+                assertEquals("message-" + i, delegate.messages.get(i));
+            }
+            assertEquals("from-loop", delegate.messages.get(300));
+            assertEquals(1, delegate.threads.size());
+            assertTrue(eventLoop.submit(() -> delegate.threads.contains(Thread.currentThread())).get(5, TimeUnit.SECONDS),
+                "Game should run on its event loop");
+        } finally {
+            onLoop.shutdownNow();
+            eventLoop.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void shutdown_onItsOwnEventLoopMidDrain_reportsNotDrainedAndLeavesTheMailboxToFinish() throws Exception {
+        EventLoop eventLoop = new DefaultEventLoop();
+        SerializedGame onLoop = new SerializedGame("game-loop", delegate, ServerMetrics.noop(),
+            MailboxConfig.unbounded(), eventLoop);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            eventLoop.execute(() -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            for (int i = 0; i < 300; i++) {
+                onLoop.handlePlayerMessage("player1", "message-" + i);
+            }
+            // Queued behind the first drain, which yields the loop with most of the mailbox left
+            Future<Boolean> shutdown = eventLoop.submit(() -> onLoop.shutdown(5000));
+            release.countDown();
+
+            assertFalse(shutdown.get(5, TimeUnit.SECONDS), "The mailbox has not drained when shutdown returns");
+            eventLoop.submit(() -> { }).get(5, TimeUnit.SECONDS);
+            assertEquals(300, delegate.messages.size());
+            assertEquals(0, onLoop.getPendingTasks());
+        } finally {
+            onLoop.shutdownNow();
+            eventLoop.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void handlePlayerMessage_afterATaskThrowsAnError_isStillProcessed() {
+        delegate.failOn = "fatal";
+        serializedGame.handlePlayerMessage("player1", "fatal");
+        serializedGame.handlePlayerMessage("player1", "after");
+
+        assertTrue(serializedGame.shutdown(5000), "Game should keep draining after the error");
+        assertEquals(List.of("after"), delegate.messages);
+    }
+
+    private static class RecordingGame implements Game {
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+        private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        private volatile CountDownLatch blockOn;
+        private volatile String failOn;
+
+        @Override
+        public void handlePlayerMessage(String playerId, String message) {
+            CountDownLatch latch = blockOn;
+            if (latch != null) {
+                blockOn = null;
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (message.equals(failOn)) {
+                throw new AssertionError("Failed on " + message);
+            }
+            threads.add(Thread.currentThread());
+            messages.add(message);
+        }
+
+        @Override
+        public void handlePlayerConnected(String playerId) {
+        }
+
+        @Override
+        public void handlePlayerDisconnected(String playerId) {
+        }
+    }
+}
@@ -2,6 +2,7 @@ package ca.lajtha.websocketchat.game.chat;
 
 import ca.lajtha.websocketchat.game.chat.messages.PlayerInfo;
 import ca.lajtha.websocketchat.game.chat.messages.SendMessageCommand;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
 import ca.lajtha.websocketchat.server.websocket.MessageSender;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,6 +12,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -478,5 +480,79 @@ class ChatGameControllerTest {
             assertTrue(notification.contains("Hello"));
         }
     }
+
+    @Test
+    void onPlayerJoinedChat_withPresenceWindow_broadcastsChangesOncePerWindow() {
+        // Arrange
+        List<Runnable> scheduled = new ArrayList<>();
+        ChatGame coalescing = new ChatGame(game, messageSender, ServerMetrics.noop(), new BroadcastConfig(100, 0, 0));
+        coalescing.scheduleWith((task, delayMs) -> scheduled.add(task));
+        List<PlayerInfo> allPlayers = List.of(new PlayerInfo("player1", "name 1"), new PlayerInfo("player2", "name 2"));
+        when(game.getPlayers()).thenReturn(allPlayers);
+
+        // Act
+        coalescing.onPlayerJoinedChat("name 1");
+        coalescing.onPlayerJoinedChat("name 2");
+        coalescing.onPlayerJoinedChat("name 3");
+        coalescing.onPlayerLeftChat("name 3");
+        coalescing.onPlayerLeftChat("name 4");
+
+        // Assert - nothing is sent until the window ends
+        verify(messageSender, never()).sendMessage(anyString(), anyString());
+        assertEquals(1, scheduled.size());
+        scheduled.get(0).run();
+
+        ArgumentCaptor<String> notificationCaptor = ArgumentCaptor.forClass(String.class);
+        verify(messageSender, times(2)).sendMessage(anyString(), notificationCaptor.capture());
+        for (String notification : notificationCaptor.getAllValues()) {
+            assertEquals("{\"type\":\"presenceChangedNotification\",\"joined\":[\"name 1\",\"name 2\"],\"left\":[\"name 4\"]}",
+                    notification);
+        }
+    }
+
+    @Test
+    void onMessageReceived_withPresenceWindow_sendsPendingChangesFirst() {
+        // Arrange
+        ChatGame coalescing = new ChatGame(game, messageSender, ServerMetrics.noop(), new BroadcastConfig(100, 0, 0));
+        coalescing.scheduleWith((task, delayMs) -> { });
+        when(game.getPlayers()).thenReturn(List.of(new PlayerInfo("player1", "name 1")));
+        coalescing.onPlayerJoinedChat("name 1");
+
+        // Act
+        coalescing.onMessageReceived(new VisibleMessage("name 1", "Hello"));
+
+        // Assert
+        ArgumentCaptor<String> notificationCaptor = ArgumentCaptor.forClass(String.class);
+        verify(messageSender, times(2)).sendMessage(eq("player1"), notificationCaptor.capture());
+        assertTrue(notificationCaptor.getAllValues().get(0).contains("\"type\":\"presenceChangedNotification\""));
+        assertTrue(notificationCaptor.getAllValues().get(1).contains("\"type\":\"messageReceivedNotification\""));
+    }
+
+    @Test
+    void onMessageReceived_aboveBatchRate_sendsMessagesTogether() {
+        // Arrange - 30 messages per second is 3 per 100 ms measuring window
+        List<Runnable> scheduled = new ArrayList<>();
+        ChatGame batching = new ChatGame(game, messageSender, ServerMetrics.noop(), new BroadcastConfig(0, 30, 5));
+        batching.scheduleWith((task, delayMs) -> scheduled.add(task));
+        when(game.getPlayers()).thenReturn(List.of(new PlayerInfo("player1", "name 1")));
+
+        // Act
+        batching.onMessageReceived(new VisibleMessage("name 1", "one"));
+        batching.onMessageReceived(new VisibleMessage("name 1", "two"));
+        batching.onMessageReceived(new VisibleMessage("name 1", "three"));
+        batching.onMessageReceived(new VisibleMessage("name 1", "four"));
+        assertEquals(1, scheduled.size());
+        scheduled.get(0).run();
+
+        // Assert
+        ArgumentCaptor<String> notificationCaptor = ArgumentCaptor.forClass(String.class);
+        verify(messageSender, times(3)).sendMessage(eq("player1"), notificationCaptor.capture());
+        List<String> notifications = notificationCaptor.getAllValues();
+        assertTrue(notifications.get(0).contains("\"message\":\"one\""));
+        assertTrue(notifications.get(1).contains("\"message\":\"two\""));
+        assertEquals("{\"type\":\"messagesReceivedNotification\",\"messages\":["
+                + "{\"screenName\":\"name 1\",\"message\":\"three\"},{\"screenName\":\"name 1\",\"message\":\"four\"}]}",
+                notifications.get(2));
+    }
 }
 
@@ -0,0 +1,96 @@
+package ca.lajtha.websocketchat.ids;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentIntObjectMapTest {
+
+    private final ConcurrentIntObjectMap<String> map = new ConcurrentIntObjectMap<>();
+
+    @Test
+    void putGetAndRemove_behaveLikeAMap() {
+        assertNull(map.put(1, "a"));
+        assertEquals("a", map.put(1, "b"), "Replacing a value should return the previous one");
+        assertNull(map.put(-7, "negative"));
+
+        assertEquals("b", map.get(1));
+        assertEquals("negative", map.get(-7));
+        assertTrue(map.containsKey(1));
+        assertFalse(map.containsKey(2));
+        assertEquals(2, map.size());
+
+        assertEquals("b", map.remove(1));
+        assertNull(map.remove(1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void removeWithValue_onlyRemovesTheSameInstance() {
+        String value = new String("session");
+        map.put(3, value);
+
+        assertFalse(map.remove(3, new String("session")), "Values are compared by identity");
+        assertTrue(map.containsKey(3));
+        assertTrue(map.remove(3, value));
+        assertFalse(map.containsKey(3));
+    }
+
+    @Test
+    void valuesAndKeysOf_coverEveryShard() {
+        String shared = "game";
+        for (int key = 0; key < 1000; key++) {
+            map.put(key, key % 10 == 0 ? shared : "other-" + key);
+        }
+
+        assertEquals(1000, map.values().size());
+        List<Integer> keys = map.keysOf(shared);
+        assertEquals(100, keys.size());
+        assertTrue(keys.stream().allMatch(key -> key % 10 == 0));
+    }
+
+    @Test
+    void concurrentWriters_withStripedKeys_loseNoEntries() throws Exception {
+        int threads = 8;
+        int perThread = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int stripe = t;
+                futures.add(executor.submit(() -> {
+                    // Keys step by the thread count, as a striped id generator hands them out
+                    for (int i = 0; i < perThread; i++) {
+                        int key = i * threads + stripe;
+                        map.put(key, "v" + key);
+                        if (i % 2 == 1) {
+                            assertEquals("v" + key, map.remove(key));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads * perThread / 2, map.size());
+        Set<String> values = new HashSet<>(map.values());
+        for (int key = 0; key < threads * perThread; key++) {
+            boolean kept = (key / threads) % 2 == 0;
+            assertEquals(kept ? "v" + key : null, map.get(key));
+            assertEquals(kept, values.contains("v" + key));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ca.lajtha.websocketchat.ids;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdInternerTest {
+
+    private final IdInterner interner = new IdInterner();
+
+    @Test
+    void intern_assignsDenseIntsInFirstSeenOrder() {
+        assertEquals(0, interner.intern("user-a"));
+        assertEquals(1, interner.intern("user-b"));
+        assertEquals(0, interner.intern("user-a"), "Interning an id again should return its existing int");
+        assertEquals(2, interner.size());
+    }
+
+    @Test
+    void idOf_resolvesIntsBeyondTheInitialCapacity() {
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, interner.intern("user-" + i));
+        }
+
+        assertEquals("user-0", interner.idOf(0));
+        assertEquals("user-999", interner.idOf(999));
+        assertEquals(999, interner.indexOf("user-999"));
+    }
+
+    @Test
+    void unknownIds_andInts_resolveToNothing() {
+        interner.intern("user-a");
+
+        assertEquals(-1, interner.indexOf("user-b"));
+        assertNull(interner.idOf(5));
+        assertNull(interner.idOf(-1));
+    }
+}
@@ -0,0 +1,106 @@
+package ca.lajtha.websocketchat.server.http;
+
+import ca.lajtha.websocketchat.server.ServerConfig;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.server.types.files.SystemFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExternalAssetControllerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private ServerConfig config;
+
+    private Path root;
+    private ExternalAssetController controller;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        root = Files.createDirectory(tempDir.resolve("assets"));
+        Files.writeString(tempDir.resolve("secret.txt"), "outside the asset directory");
+        Files.writeString(root.resolve("app.js"), "console.log('hello');");
+        when(config.getStaticAssetDirectory()).thenReturn(root.toString());
+        when(config.getStaticAssetMaxAgeSeconds()).thenReturn(3600);
+        controller = new ExternalAssetController(config);
+    }
+
+    @Test
+    void asset_refusesPathsThatTraverseOutOfTheRoot() {
+        assertEquals(HttpStatus.NOT_FOUND, get("../secret.txt", null, null).getStatus());
+        assertEquals(HttpStatus.NOT_FOUND, get("js/../../secret.txt", null, null).getStatus());
+        assertEquals(HttpStatus.NOT_FOUND, get(tempDir.resolve("secret.txt").toString(), null, null).getStatus());
+        assertEquals(HttpStatus.OK, get("js/../app.js", null, null).getStatus());
+    }
+
+    @Test
+    void asset_refusesSymlinksThatEscapeTheRoot() throws IOException {
+        Path fileLink = root.resolve("linked.txt");
+        Path directoryLink = root.resolve("linked-dir");
+        try {
+            Files.createSymbolicLink(fileLink, tempDir.resolve("secret.txt"));
+            Files.createSymbolicLink(directoryLink, tempDir);
+        } catch (UnsupportedOperationException | IOException e) {
+            assumeTrue(false, "Symbolic links are not supported here");
+        }
+
+        assertEquals(HttpStatus.NOT_FOUND, get("linked.txt", null, null).getStatus());
+        assertEquals(HttpStatus.NOT_FOUND, get("linked-dir/secret.txt", null, null).getStatus());
+    }
+
+    @Test
+    void asset_servesPrecompressedSiblingOnlyToClientsAcceptingGzip() throws IOException {
+        Files.write(root.resolve("app.js.gz"), new byte[] {0x1f, (byte) 0x8b});
+
+        HttpResponse<?> gzipped = get("app.js", "deflate, gzip", null);
+        assertEquals(HttpStatus.OK, gzipped.getStatus());
+        assertEquals("gzip", gzipped.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(root.resolve("app.js.gz").toRealPath().toFile(), ((SystemFile) gzipped.body()).getFile());
+
+        HttpResponse<?> identity = get("app.js", "deflate", null);
+        assertNull(identity.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(root.resolve("app.js").toRealPath().toFile(), ((SystemFile) identity.body()).getFile());
+        assertNotEquals(gzipped.getHeaders().get(HttpHeaders.ETAG), identity.getHeaders().get(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void asset_returnsNotModifiedWhenETagMatches() {
+        String etag = get("app.js", null, null).getHeaders().get(HttpHeaders.ETAG);
+
+        HttpResponse<?> response = get("app.js", null, "\"other\", " + etag);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatus());
+        assertNull(response.body());
+        assertEquals(etag, response.getHeaders().get(HttpHeaders.ETAG));
+        assertEquals("public, max-age=3600", response.getHeaders().get(HttpHeaders.CACHE_CONTROL));
+    }
+
+    private HttpResponse<?> get(String path, String acceptEncoding, String ifNoneMatch) {
+        var request = HttpRequest.GET("/assets/" + path);
+        if (acceptEncoding != null) {
+            request.header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return controller.asset(path, request);
+    }
+}
@@ -0,0 +1,58 @@
+package ca.lajtha.websocketchat.server.http;
+
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MutableHttpResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StaticAssetCacheTest {
+
+    private final StaticAssetCache cache = new StaticAssetCache(3600);
+
+    @Test
+    void respond_servesGzipVariantWithETagAndCacheControl() throws IOException {
+        MutableHttpResponse<byte[]> response = cache.respond("css/index.css", "gzip, deflate, br", null);
+
+        assertNotNull(response);
+        assertEquals(HttpStatus.OK, response.getStatus());
+        assertEquals("gzip", response.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("public, max-age=3600", response.getHeaders().get(HttpHeaders.CACHE_CONTROL));
+        assertNotNull(response.getHeaders().get(HttpHeaders.ETAG));
+
+        byte[] body = response.body();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertArrayEquals(cache.get("css/index.css").identity(), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void respond_returnsNotModifiedWhenETagMatches() {
+        String etag = cache.respond("index.html", null, null).getHeaders().get(HttpHeaders.ETAG);
+
+        MutableHttpResponse<byte[]> response = cache.respond("index.html", null, "\"other\", " + etag);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatus());
+        assertNull(response.body());
+        assertEquals("no-cache", response.getHeaders().get(HttpHeaders.CACHE_CONTROL));
+    }
+
+    @Test
+    void selectEncoding_honoursRefusedCodingsAndSkipsIncompressibleAssets() {
+        StaticAsset compressible = StaticAssetCache.build("js/app.js",
+                "console.log('hello');\n".repeat(50).getBytes(StandardCharsets.UTF_8));
+        StaticAsset tiny = StaticAssetCache.build("js/tiny.js", "x".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("deflate", StaticAssetCache.selectEncoding(compressible, "gzip;q=0, deflate"));
+        assertEquals("gzip", StaticAssetCache.selectEncoding(compressible, "*"));
+        assertEquals("identity", StaticAssetCache.selectEncoding(compressible, "br"));
+        assertEquals("identity", StaticAssetCache.selectEncoding(tiny, "gzip"));
+        assertNull(cache.respond("css/missing.css", "gzip", null));
+    }
+}
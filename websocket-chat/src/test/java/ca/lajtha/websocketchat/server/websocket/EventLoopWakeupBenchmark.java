@@ -0,0 +1,183 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import ca.lajtha.websocketchat.ids.IdInterner;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures what a broadcast from a game thread costs the event loops, with each frame written as
+ * its own task and with frames grouped per event loop: tasks submitted to the loops and context
+ * switches of the whole process, per broadcast.
+ *
+ * <pre>
+ * ./gradlew eventLoopWakeupBenchmark --args="--players 1000 --loops 8 --broadcasts 2000"
+ * </pre>
+ *
+ * Players are in-JVM local channels spread round-robin over {@code --loops} event loops, so the
+ * numbers show the scheduling cost alone, without network I/O. Broadcasts are sent one after
+ * another, each once the previous one has reached every player. Context switches are read from
+ * {@code /proc/self/task/}, so they are only reported on Linux.
+ */
+final class EventLoopWakeupBenchmark {
+
+    private EventLoopWakeupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int players = 1000;
+        int loops = 8;
+        int broadcasts = 2000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+                case "--players" -> players = value;
+                case "--loops" -> loops = value;
+                case "--broadcasts" -> broadcasts = value;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        System.out.printf("%,d players on %d event loops, %,d broadcasts%n", players, loops, broadcasts);
+        for (boolean grouped : new boolean[] {false, true}) {
+            run(players, loops, broadcasts, grouped);
+        }
+    }
+
+    private static void run(int players, int loops, int broadcasts, boolean grouped) throws Exception {
+        LongAdder submittedTasks = new LongAdder();
+        EventLoopGroup serverLoops = new DefaultEventLoopGroup(loops) {
+            @Override
+            protected EventLoop newChild(Executor executor, Object... args) {
+                return new DefaultEventLoop(this, executor) {
+                    @Override
+                    public void execute(Runnable task) {
+                        submittedTasks.increment();
+                        super.execute(task);
+                    }
+                };
+            }
+        };
+        EventLoopGroup clientLoops = new DefaultEventLoopGroup(loops);
+        AtomicLong received = new AtomicLong();
+        AtomicInteger nextPlayer = new AtomicInteger();
+        WebsocketManagerImpl websocketManager =
+                new WebsocketManagerImpl(ServerMetrics.noop(), new IdInterner(), 0, 0, grouped);
+        LocalAddress address = new LocalAddress("event-loop-wakeups-" + grouped);
+        try {
+            Channel server = new ServerBootstrap()
+                    .group(serverLoops)
+                    .channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInitializer<LocalChannel>() {
+                        @Override
+                        protected void initChannel(LocalChannel channel) {
+                            channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                                @Override
+                                public void channelActive(ChannelHandlerContext ctx) {
+                                    websocketManager.playerConnected(ctx.channel(), "player-" + nextPlayer.getAndIncrement());
+                                }
+                            });
+                        }
+                    })
+                    .bind(address).sync().channel();
+            Bootstrap client = new Bootstrap()
+                    .group(clientLoops)
+                    .channel(LocalChannel.class)
+                    .handler(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            received.incrementAndGet();
+                            ReferenceCountUtil.release(msg);
+                        }
+                    });
+            List<Channel> clients = new ArrayList<>(players);
+            for (int i = 0; i < players; i++) {
+                clients.add(client.connect(address).sync().channel());
+            }
+            while (nextPlayer.get() < players) {
+                Thread.sleep(10);
+            }
+
+            String message = "{\"type\":\"messageReceivedNotification\",\"screenName\":\"benchmark\",\"message\":\"hello\"}";
+            long tasksBefore = submittedTasks.sum();
+            long switchesBefore = contextSwitches();
+            long start = System.nanoTime();
+            for (int b = 0; b < broadcasts; b++) {
+                // A distinct instance per broadcast, as a game serializes each notification anew
+                String broadcast = new String(message);
+                for (int p = 0; p < players; p++) {
+                    websocketManager.sendMessage("player-" + p, broadcast);
+                }
+                long expected = (long) (b + 1) * players;
+                while (received.get() < expected) {
+                    Thread.onSpinWait();
+                }
+            }
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            long tasks = submittedTasks.sum() - tasksBefore;
+            long switches = contextSwitches() - switchesBefore;
+
+            System.out.printf("%-16s %,9.1f tasks/broadcast, %s context switches/broadcast, %,8.0f broadcasts/s%n",
+                    grouped ? "grouped by loop:" : "one per frame:", tasks / (double) broadcasts,
+                    switches < 0 ? "n/a" : String.format("%,9.1f", switches / (double) broadcasts),
+                    broadcasts / elapsedSeconds);
+            for (Channel channel : clients) {
+                channel.close();
+            }
+            server.close().sync();
+        } finally {
+            clientLoops.shutdownGracefully().sync();
+            serverLoops.shutdownGracefully().sync();
+        }
+    }
+
+    /**
+     * Sums the voluntary and involuntary context switches of every thread in this process, or
+     * returns -1 where {@code /proc} is not available.
+     */
+    private static long contextSwitches() {
+        Path tasks = Path.of("/proc/self/task");
+        if (!Files.isDirectory(tasks)) {
+            return -1;
+        }
+        long total = 0;
+        try (DirectoryStream<Path> threads = Files.newDirectoryStream(tasks)) {
+            for (Path thread : threads) {
+                try {
+                    for (String line : Files.readAllLines(thread.resolve("status"))) {
+                        if (line.startsWith("voluntary_ctxt_switches:") || line.startsWith("nonvoluntary_ctxt_switches:")) {
+                            total += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                        }
+                    }
+                } catch (IOException e) {
+                    // The thread exited while being read
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,104 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLoopWriterTest {
+
+    @Test
+    void write_toSeveralChannels_keepsEachChannelsOrder() {
+        EmbeddedChannel alice = new EmbeddedChannel();
+        EmbeddedChannel bob = new EmbeddedChannel();
+        EventLoopWriter writer = new EventLoopWriter(alice.eventLoop(), ServerMetrics.noop());
+
+        for (int i = 0; i < 5; i++) {
+            writer.write(alice, new TextWebSocketFrame("alice-" + i));
+            writer.write(bob, new TextWebSocketFrame("bob-" + i));
+        }
+        assertNull(alice.readOutbound(), "Nothing should be written before the loop runs");
+        alice.runPendingTasks();
+
+        assertEquals(List.of("alice-0", "alice-1", "alice-2", "alice-3", "alice-4"), readTexts(alice));
+        assertEquals(List.of("bob-0", "bob-1", "bob-2", "bob-3", "bob-4"), readTexts(bob));
+    }
+
+    @Test
+    void write_toClosedChannel_releasesTheFrame() {
+        EmbeddedChannel alice = new EmbeddedChannel();
+        EmbeddedChannel bob = new EmbeddedChannel();
+        EventLoopWriter writer = new EventLoopWriter(alice.eventLoop(), ServerMetrics.noop());
+        TextWebSocketFrame toBob = new TextWebSocketFrame("bob-0");
+
+        writer.write(bob, toBob);
+        writer.write(alice, new TextWebSocketFrame("alice-0"));
+        bob.close();
+        alice.runPendingTasks();
+
+        assertEquals(0, toBob.refCnt(), "A frame for a closed channel should be released");
+        assertEquals(List.of("alice-0"), readTexts(alice));
+    }
+
+    @Test
+    void write_whileDraining_isWrittenByTheNextDrain() {
+        List<EventLoopWriter> writers = new ArrayList<>();
+        // Queues another frame as the first one is written, as a game thread racing the drain would
+        EmbeddedChannel alice = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                if (((TextWebSocketFrame) msg).text().equals("alice-0")) {
+                    writers.get(0).write(ctx.channel(), new TextWebSocketFrame("alice-1"));
+                }
+                ctx.write(msg, promise);
+            }
+        });
+        EventLoopWriter writer = new EventLoopWriter(alice.eventLoop(), ServerMetrics.noop());
+        writers.add(writer);
+
+        writer.write(alice, new TextWebSocketFrame("alice-0"));
+        alice.runPendingTasks();
+        writer.write(alice, new TextWebSocketFrame("alice-2"));
+        alice.runPendingTasks();
+
+        assertEquals(List.of("alice-0", "alice-1", "alice-2"), readTexts(alice));
+    }
+
+    @Test
+    void write_whenEventLoopHasShutDown_releasesFramesAndKeepsScheduling() throws Exception {
+        EventLoop loop = new DefaultEventLoop();
+        loop.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).await(5, TimeUnit.SECONDS);
+        EventLoopWriter writer = new EventLoopWriter(loop, ServerMetrics.noop());
+        EmbeddedChannel alice = new EmbeddedChannel();
+        TextWebSocketFrame first = new TextWebSocketFrame("alice-0");
+        TextWebSocketFrame second = new TextWebSocketFrame("alice-1");
+
+        assertDoesNotThrow(() -> writer.write(alice, first));
+        // A drain left marked as scheduled would queue this one forever
+        assertDoesNotThrow(() -> writer.write(alice, second));
+
+        assertEquals(0, first.refCnt(), "A frame the loop refused should be released");
+        assertEquals(0, second.refCnt(), "A frame the loop refused should be released");
+    }
+
+    private static List<String> readTexts(EmbeddedChannel channel) {
+        List<String> texts = new ArrayList<>();
+        TextWebSocketFrame frame;
+        while ((frame = channel.readOutbound()) != null) {
+            texts.add(frame.text());
+            frame.release();
+        }
+        return texts;
+    }
+}
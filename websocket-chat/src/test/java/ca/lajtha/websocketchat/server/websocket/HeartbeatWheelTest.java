@@ -0,0 +1,60 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeartbeatWheelTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+    private final HeartbeatWheel wheel = new HeartbeatWheel(1000, 3000, 100, ServerMetrics.noop(), now::get);
+
+    @AfterEach
+    void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    void sweep_pingsQuietConnectionsAndClosesIdleOnes() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        HeartbeatWheel.Entry entry = wheel.register(channel);
+
+        wheel.sweepAll();
+        assertNull(channel.readOutbound(), "A connection that was just heard from should not be pinged");
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1500));
+        wheel.sweepAll();
+        PingWebSocketFrame ping = channel.readOutbound();
+        assertNotNull(ping);
+        ping.release();
+
+        entry.touch();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(2000));
+        wheel.sweepAll();
+        assertTrue(channel.isActive(), "Reads should reset the idle clock");
+        ((PingWebSocketFrame) channel.readOutbound()).release();
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        wheel.sweepAll();
+        assertFalse(channel.isActive(), "Connection silent past the idle timeout should be closed");
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void unregister_removesConnectionFromWheel() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        HeartbeatWheel.Entry entry = wheel.register(channel);
+        assertEquals(1, wheel.size());
+
+        wheel.unregister(entry);
+        assertEquals(0, wheel.size());
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,292 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import ca.lajtha.websocketchat.PropertiesLoader;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures how much server heap an idle WebSocket connection costs.
+ *
+ * Opens authenticated connections to a running server and leaves them idle. Given the server's
+ * pid, it takes a live-object histogram with {@code jcmd <pid> GC.class_histogram}, which runs
+ * a full GC first, before and after connecting; the difference divided by the number of
+ * connections is the per-connection footprint, broken down by the classes that grew most.
+ *
+ * <pre>
+ * ./gradlew connectionFootprint --args="--pid 12345 --connections 1000000 --bind 127.0.0.1,127.0.0.2,..."
+ * </pre>
+ *
+ * Options: {@code --host}, {@code --port}, {@code --path} locate the server (defaults
+ * 127.0.0.1, 8080, /websocket); {@code --connections} (10000); {@code --concurrency}, the
+ * number of handshakes in flight (500); {@code --bind}, local addresses to spread connections
+ * over; {@code --pid}, the server process to measure; {@code --hold}, keep the connections
+ * open until Enter is pressed.
+ *
+ * One local address allows one connection per ephemeral port, so a million connections on
+ * one box need about twenty bind addresses (all of 127.0.0.0/8 is loopback on Linux), a wide
+ * net.ipv4.ip_local_port_range, and open file limits above a million for both processes.
+ * Tokens are signed with jwt.secret from the same configuration the server reads.
+ */
+final class IdleConnectionHarness {
+    private static final Pattern HISTOGRAM_ROW = Pattern.compile("^\\s*\\d+:\\s+(\\d+)\\s+(\\d+)\\s+(\\S+)");
+    private static final String DEFAULT_JWT_SECRET = "your-secret-key-change-in-production";
+    private static final int TOP_CLASSES = 15;
+
+    private IdleConnectionHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String host = options.getOrDefault("host", "127.0.0.1");
+        int port = Integer.parseInt(options.getOrDefault("port", "8080"));
+        String path = options.getOrDefault("path", "/websocket");
+        int connections = Integer.parseInt(options.getOrDefault("connections", "10000"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "500"));
+        List<String> bindAddresses = parseList(options.getOrDefault("bind", ""));
+        String pid = options.get("pid");
+
+        Algorithm algorithm = jwtAlgorithm();
+        Map<String, long[]> before = pid != null ? histogram(pid) : null;
+
+        EventLoopGroup group = new NioEventLoopGroup();
+        List<Channel> established = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger failed = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(concurrency);
+        try {
+            InetSocketAddress remote = new InetSocketAddress(host, port);
+            long start = System.nanoTime();
+            for (int i = 0; i < connections; i++) {
+                inFlight.acquire();
+                URI uri = URI.create("ws://" + host + ":" + port + path + "?token=" + token(algorithm, "footprint-" + i));
+                Bootstrap bootstrap = new Bootstrap()
+                        .group(group)
+                        .channel(NioSocketChannel.class)
+                        .handler(new ChannelInitializer<SocketChannel>() {
+                            @Override
+                            protected void initChannel(SocketChannel ch) {
+                                ch.pipeline().addLast(
+                                        new HttpClientCodec(),
+                                        new HttpObjectAggregator(8192),
+                                        new WebSocketClientProtocolHandler(WebSocketClientHandshakerFactory.newHandshaker(
+                                                uri, WebSocketVersion.V13, null, false, EmptyHttpHeaders.INSTANCE)),
+                                        new HandshakeListener(inFlight, established, failed));
+                            }
+                        });
+                ChannelFuture connect = bindAddresses.isEmpty()
+                        ? bootstrap.connect(remote)
+                        : bootstrap.connect(remote, new InetSocketAddress(bindAddresses.get(i % bindAddresses.size()), 0));
+                connect.addListener(future -> {
+                    if (!future.isSuccess()) {
+                        failed.incrementAndGet();
+                        inFlight.release();
+                    }
+                });
+                if ((i + 1) % Math.max(1, connections / 10) == 0) {
+                    System.out.printf("Started %,d connections (%,d established, %,d failed)%n",
+                            i + 1, established.size(), failed.get());
+                }
+            }
+            inFlight.acquire(concurrency);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            int count = established.size();
+            System.out.printf("%,d connections established, %,d failed, in %,d ms%n", count, failed.get(), elapsedMs);
+
+            if (before == null) {
+                System.out.println("Pass --pid <server pid> to measure the server's heap per connection");
+            } else if (count > 0) {
+                report(before, histogram(pid), count);
+            }
+
+            if (options.containsKey("hold")) {
+                System.out.println("Holding connections open, press Enter to close them");
+                new BufferedReader(new InputStreamReader(System.in)).readLine();
+            }
+        } finally {
+            synchronized (established) {
+                established.forEach(Channel::close);
+            }
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+    }
+
+    private static void report(Map<String, long[]> before, Map<String, long[]> after, int count) {
+        long grown = totalBytes(after) - totalBytes(before);
+        long perConnection = grown / count;
+        System.out.printf("Server live heap grew by %,d bytes: %,d bytes per connection%n", grown, perConnection);
+        System.out.printf("Projected live heap for 1,000,000 idle connections: %,d MB%n",
+                perConnection * 1_000_000 / (1024 * 1024));
+
+        List<Map.Entry<String, long[]>> deltas = new ArrayList<>();
+        after.forEach((className, counts) -> {
+            long[] previous = before.getOrDefault(className, new long[2]);
+            long[] delta = {counts[0] - previous[0], counts[1] - previous[1]};
+            if (delta[1] > 0) {
+                deltas.add(Map.entry(className, delta));
+            }
+        });
+        deltas.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        System.out.printf("%n%-70s %14s %14s%n", "class", "instances/conn", "bytes/conn");
+        for (Map.Entry<String, long[]> entry : deltas.subList(0, Math.min(TOP_CLASSES, deltas.size()))) {
+            System.out.printf("%-70s %14.2f %14.1f%n", entry.getKey(),
+                    (double) entry.getValue()[0] / count, (double) entry.getValue()[1] / count);
+        }
+    }
+
+    /**
+     * Runs {@code jcmd <pid> GC.class_histogram} and returns instance and byte counts by class.
+     */
+    private static Map<String, long[]> histogram(String pid) throws Exception {
+        Process process = new ProcessBuilder("jcmd", pid, "GC.class_histogram")
+                .redirectErrorStream(true)
+                .start();
+        Map<String, long[]> counts = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = HISTOGRAM_ROW.matcher(line);
+                if (matcher.find()) {
+                    counts.merge(matcher.group(3),
+                            new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))},
+                            (a, b) -> new long[]{a[0] + b[0], a[1] + b[1]});
+                }
+            }
+        }
+        if (process.waitFor() != 0 || counts.isEmpty()) {
+            throw new IllegalStateException("jcmd could not take a class histogram of process " + pid);
+        }
+        return counts;
+    }
+
+    private static long totalBytes(Map<String, long[]> histogram) {
+        return histogram.values().stream().mapToLong(counts -> counts[1]).sum();
+    }
+
+    private static Algorithm jwtAlgorithm() {
+        PropertiesLoader propertiesLoader = new PropertiesLoader();
+        Properties props = propertiesLoader.loadProperties();
+        return Algorithm.HMAC256(propertiesLoader.getProperty(props, "jwt.secret", DEFAULT_JWT_SECRET));
+    }
+
+    private static String token(Algorithm algorithm, String userId) {
+        Date now = new Date();
+        return JWT.create()
+                .withClaim("userId", userId)
+                .withIssuedAt(now)
+                .withExpiresAt(new Date(now.getTime() + TimeUnit.DAYS.toMillis(1)))
+                .sign(algorithm);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+            options.put(name, hasValue ? args[++i] : "true");
+        }
+        return options;
+    }
+
+    private static List<String> parseList(String value) {
+        List<String> values = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.isBlank()) {
+                values.add(part.trim());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Records whether a connection's handshake succeeded and discards anything the server sends.
+     */
+    private static final class HandshakeListener extends ChannelInboundHandlerAdapter {
+        private final Semaphore inFlight;
+        private final List<Channel> established;
+        private final AtomicInteger failed;
+        private boolean done;
+
+        private HandshakeListener(Semaphore inFlight, List<Channel> established, AtomicInteger failed) {
+            this.inFlight = inFlight;
+            this.established = established;
+            this.failed = failed;
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+                established.add(ctx.channel());
+                finish(false);
+            } else if (evt == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_TIMEOUT) {
+                finish(true);
+                ctx.close();
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            finish(true);
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            finish(true);
+            ctx.close();
+        }
+
+        private void finish(boolean failure) {
+            if (!done) {
+                done = true;
+                if (failure) {
+                    failed.incrementAndGet();
+                }
+                inFlight.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerMessageDeflateTest {
+
+    private static final String MESSAGE = "{\"type\":\"messageReceived\",\"screenName\":\"alice\",\"message\":\"hello\"}".repeat(20);
+
+    private final PerMessageDeflate deflate = new PerMessageDeflate(6, 64, false);
+
+    @Test
+    void compress_producesIdenticalPayloadThatInflatesToTheMessage() throws DataFormatException {
+        ByteBuf content = Unpooled.copiedBuffer(MESSAGE, StandardCharsets.UTF_8);
+        ByteBuf first = deflate.compress(ByteBufAllocator.DEFAULT, content);
+        ByteBuf second = deflate.compress(ByteBufAllocator.DEFAULT, content);
+        try {
+            assertEquals(first, second, "Without context takeover every message compresses the same way");
+            assertTrue(first.readableBytes() < content.readableBytes());
+            assertEquals(MESSAGE, inflate(ByteBufUtil.getBytes(first)));
+            assertEquals(0, content.readerIndex(), "Compressing must not consume the shared payload");
+        } finally {
+            content.release();
+            first.release();
+            second.release();
+        }
+    }
+
+    @Test
+    void encoder_compressesLargeFramesAndPassesPrecompressedAndSmallFramesThrough() throws DataFormatException {
+        EmbeddedChannel channel = new EmbeddedChannel(new SharedDeflateEncoder(deflate));
+        assertSame(deflate, channel.attr(SharedDeflateEncoder.SHARED_DEFLATE_KEY).get());
+
+        channel.writeOutbound(new TextWebSocketFrame(MESSAGE));
+        TextWebSocketFrame compressed = channel.readOutbound();
+        assertEquals(WebSocketExtension.RSV1, compressed.rsv() & WebSocketExtension.RSV1);
+        assertEquals(MESSAGE, inflate(ByteBufUtil.getBytes(compressed.content())));
+        compressed.release();
+
+        channel.writeOutbound(new TextWebSocketFrame("short"));
+        TextWebSocketFrame small = channel.readOutbound();
+        assertEquals(0, small.rsv());
+        assertEquals("short", small.text());
+        small.release();
+
+        TextWebSocketFrame precompressed = new TextWebSocketFrame(true, WebSocketExtension.RSV1,
+                Unpooled.wrappedBuffer(new byte[]{1, 2, 3}));
+        channel.writeOutbound(precompressed);
+        assertSame(precompressed, channel.readOutbound());
+        precompressed.release();
+        assertFalse(channel.finish());
+    }
+
+    private static String inflate(byte[] payload) throws DataFormatException {
+        Inflater inflater = new Inflater(true);
+        try {
+            byte[] withTrailer = new byte[payload.length + 4];
+            System.arraycopy(payload, 0, withTrailer, 0, payload.length);
+            withTrailer[payload.length + 2] = (byte) 0xff;
+            withTrailer[payload.length + 3] = (byte) 0xff;
+            inflater.setInput(withTrailer);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = inflater.inflate(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PinnedThreadFactoryTest {
+
+    @Test
+    void parseCpuList_expandsRangesInTheOrderGiven() {
+        assertArrayEquals(new int[] {2, 3, 4, 5, 8}, PinnedThreadFactory.parseCpuList("2-5,8"));
+        assertArrayEquals(new int[] {7, 0, 1}, PinnedThreadFactory.parseCpuList(" 7 , 0 - 1 "));
+        assertArrayEquals(new int[] {3}, PinnedThreadFactory.parseCpuList("3-3"));
+    }
+
+    @Test
+    void parseCpuList_returnsNoCpusForABlankList() {
+        assertEquals(0, PinnedThreadFactory.parseCpuList(null).length);
+        assertEquals(0, PinnedThreadFactory.parseCpuList("  ").length);
+    }
+
+    @Test
+    void parseCpuList_rejectsMalformedLists() {
+        assertThrows(IllegalArgumentException.class, () -> PinnedThreadFactory.parseCpuList("5-2"));
+        assertThrows(IllegalArgumentException.class, () -> PinnedThreadFactory.parseCpuList("1,,2"));
+        assertThrows(IllegalArgumentException.class, () -> PinnedThreadFactory.parseCpuList("a-b"));
+        assertThrows(IllegalArgumentException.class, () -> PinnedThreadFactory.parseCpuList("-1"));
+    }
+}
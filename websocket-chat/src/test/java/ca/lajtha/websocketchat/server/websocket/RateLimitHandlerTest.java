@@ -0,0 +1,58 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitHandlerTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+
+    @Test
+    void channelRead_countsFragmentedMessageOnceAndDropsFragmentsOfThrottledMessage() {
+        RateLimiter rateLimiter = new RateLimiter(1, 1, now::get);
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new RateLimitHandler(rateLimiter, RateLimitAction.REPLY, ServerMetrics.noop()));
+        ConnectionSession.open(channel, "alice", 1);
+
+        // The only token pays for all three fragments of the first message
+        channel.writeInbound(new TextWebSocketFrame(false, 0, "a"));
+        channel.writeInbound(new ContinuationWebSocketFrame(false, 0, "b"));
+        channel.writeInbound(new ContinuationWebSocketFrame(true, 0, "c"));
+        assertEquals("a", readText(channel));
+        assertEquals("b", readText(channel));
+        assertEquals("c", readText(channel));
+
+        // No token left: the second message is dropped whole, not cut off after its first frame
+        TextWebSocketFrame throttled = new TextWebSocketFrame(false, 0, "d");
+        ContinuationWebSocketFrame fragment = new ContinuationWebSocketFrame(true, 0, "e");
+        channel.writeInbound(throttled);
+        channel.writeInbound(fragment);
+        assertNull(channel.readInbound());
+        assertEquals(0, throttled.refCnt());
+        assertEquals(0, fragment.refCnt());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        channel.writeInbound(new TextWebSocketFrame("f"));
+        assertEquals("f", readText(channel));
+        channel.finishAndReleaseAll();
+    }
+
+    private static String readText(EmbeddedChannel channel) {
+        WebSocketFrame frame = channel.readInbound();
+        try {
+            return frame.content().toString(StandardCharsets.UTF_8);
+        } finally {
+            frame.release();
+        }
+    }
+}
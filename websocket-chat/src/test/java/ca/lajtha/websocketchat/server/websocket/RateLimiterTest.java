@@ -0,0 +1,45 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+    private final RateLimiter rateLimiter = new RateLimiter(3, 10, now::get);
+
+    @Test
+    void tryAcquire_allowsBurstThenRefillsAtConfiguredRate() {
+        RateLimiter.Bucket bucket = rateLimiter.acquire("user1");
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire(), "Fourth frame in the same instant should exceed the burst");
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(bucket.tryAcquire(), "One token should refill after one emission interval");
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void acquire_sharesBucketAcrossConnectionsUntilLastIsReleased() {
+        RateLimiter.Bucket first = rateLimiter.acquire("user1");
+        RateLimiter.Bucket second = rateLimiter.acquire("user1");
+        assertSame(first, second);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(first.tryAcquire());
+        }
+        assertFalse(second.tryAcquire(), "Connections of one user should draw from the same bucket");
+
+        rateLimiter.release(first);
+        assertEquals(1, rateLimiter.trackedUsers());
+        rateLimiter.release(second);
+        assertEquals(0, rateLimiter.trackedUsers());
+    }
+}
@@ -0,0 +1,309 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import ca.lajtha.websocketchat.PropertiesLoader;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the reconnect storm a draining server causes, with and without jittered hints.
+ *
+ * Opens authenticated connections to one server, stops it, and reconnects every client to a
+ * second server when its connection is closed: after the delay in the close frame's reconnect
+ * hint with {@code --hints respect}, or at once with {@code --hints ignore}, as clients that
+ * predate the hints would. Reports the peak number of handshakes the second server received in
+ * any 100 ms window, handshake latency, and how long it took for every client to be back.
+ *
+ * <pre>
+ * ./gradlew reconnectStorm --args="--port 8080 --reconnect-port 8081 --pid 12345 --connections 10000"
+ * </pre>
+ *
+ * Options: {@code --host}, {@code --port}, {@code --path} locate the server to drain (defaults
+ * 127.0.0.1, 8080, /websocket); {@code --reconnect-port} the server clients move to (8081);
+ * {@code --connections} (5000); {@code --concurrency}, handshakes in flight while connecting
+ * (500); {@code --pid}, the server process to stop with SIGTERM, otherwise stop it by hand;
+ * {@code --hints} (respect). The drained server's {@code shutdown.reconnectJitterMs} sets the
+ * spread of the hints. Tokens are signed with jwt.secret from the configuration the servers read.
+ */
+final class ReconnectStormHarness {
+    private static final String DEFAULT_JWT_SECRET = "your-secret-key-change-in-production";
+    private static final long WINDOW_MS = 100;
+
+    private ReconnectStormHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String host = options.getOrDefault("host", "127.0.0.1");
+        int port = Integer.parseInt(options.getOrDefault("port", "8080"));
+        int reconnectPort = Integer.parseInt(options.getOrDefault("reconnect-port", "8081"));
+        String path = options.getOrDefault("path", "/websocket");
+        int connections = Integer.parseInt(options.getOrDefault("connections", "5000"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "500"));
+        boolean respectHints = !"ignore".equals(options.getOrDefault("hints", "respect"));
+        String pid = options.get("pid");
+
+        Algorithm algorithm = jwtAlgorithm();
+        EventLoopGroup group = new NioEventLoopGroup();
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch reconnected = new CountDownLatch(connections);
+        AtomicInteger failed = new AtomicInteger();
+        // Nanotime of every reconnect handshake completion, and each handshake's latency in micros
+        ConcurrentLinkedQueue<long[]> handshakes = new ConcurrentLinkedQueue<>();
+        long[] firstClose = {Long.MAX_VALUE};
+        try {
+            for (int i = 0; i < connections; i++) {
+                inFlight.acquire();
+                String token = token(algorithm, "storm-" + i);
+                Client client = new Client(group, host, reconnectPort, path, token, respectHints, handshakes,
+                        reconnected, failed, firstClose);
+                client.connect(port, inFlight);
+            }
+            inFlight.acquire(concurrency);
+            System.out.printf("%,d connections open (%,d failed); hints are %s%n",
+                    connections - failed.get(), failed.get(), respectHints ? "respected" : "ignored");
+
+            if (pid != null) {
+                System.out.println("Stopping server " + pid);
+                ProcessHandle.of(Long.parseLong(pid)).ifPresent(ProcessHandle::destroy);
+            } else {
+                System.out.println("Stop the server on port " + port + " now");
+            }
+            if (!reconnected.await(5, TimeUnit.MINUTES)) {
+                System.out.printf("%,d clients had not reconnected after 5 minutes%n", reconnected.getCount());
+            }
+            report(handshakes, firstClose[0], failed.get());
+        } finally {
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+    }
+
+    private static void report(ConcurrentLinkedQueue<long[]> handshakes, long firstClose, int failed) {
+        long[][] all = handshakes.toArray(new long[0][]);
+        if (all.length == 0) {
+            System.out.println("No client reconnected");
+            return;
+        }
+        Arrays.sort(all, (a, b) -> Long.compare(a[0], b[0]));
+        int peak = 0;
+        int start = 0;
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(WINDOW_MS);
+        for (int end = 0; end < all.length; end++) {
+            while (all[end][0] - all[start][0] >= windowNanos) {
+                start++;
+            }
+            peak = Math.max(peak, end - start + 1);
+        }
+        long[] latencies = Arrays.stream(all).mapToLong(handshake -> handshake[1]).sorted().toArray();
+        System.out.printf("%,d reconnected (%,d failed) within %,d ms of the first close%n", all.length, failed,
+                TimeUnit.NANOSECONDS.toMillis(all[all.length - 1][0] - firstClose));
+        System.out.printf("Peak: %,d handshakes in %d ms (%,d/s)%n", peak, WINDOW_MS, peak * 1000 / WINDOW_MS);
+        System.out.printf("Handshake latency: p50=%dus p99=%dus max=%dus%n", percentile(latencies, 0.50),
+                percentile(latencies, 0.99), latencies[latencies.length - 1]);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static Algorithm jwtAlgorithm() {
+        PropertiesLoader propertiesLoader = new PropertiesLoader();
+        Properties props = propertiesLoader.loadProperties();
+        return Algorithm.HMAC256(propertiesLoader.getProperty(props, "jwt.secret", DEFAULT_JWT_SECRET));
+    }
+
+    private static String token(Algorithm algorithm, String userId) {
+        Date now = new Date();
+        return JWT.create()
+                .withClaim("userId", userId)
+                .withIssuedAt(now)
+                .withExpiresAt(new Date(now.getTime() + TimeUnit.DAYS.toMillis(1)))
+                .sign(algorithm);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+            options.put(name, hasValue ? args[++i] : "true");
+        }
+        return options;
+    }
+
+    /**
+     * One simulated user: connected to the first server, then, once closed, to the second.
+     */
+    private static final class Client {
+        private final EventLoopGroup group;
+        private final String host;
+        private final int reconnectPort;
+        private final String path;
+        private final String token;
+        private final boolean respectHints;
+        private final ConcurrentLinkedQueue<long[]> handshakes;
+        private final CountDownLatch reconnected;
+        private final AtomicInteger failed;
+        private final long[] firstClose;
+
+        private Client(EventLoopGroup group, String host, int reconnectPort, String path, String token,
+                       boolean respectHints, ConcurrentLinkedQueue<long[]> handshakes, CountDownLatch reconnected,
+                       AtomicInteger failed, long[] firstClose) {
+            this.group = group;
+            this.host = host;
+            this.reconnectPort = reconnectPort;
+            this.path = path;
+            this.token = token;
+            this.respectHints = respectHints;
+            this.handshakes = handshakes;
+            this.reconnected = reconnected;
+            this.failed = failed;
+            this.firstClose = firstClose;
+        }
+
+        /**
+         * Connects to the first server, releasing a permit once the handshake is over.
+         */
+        private void connect(int port, Semaphore inFlight) {
+            open(port, new ClientHandler() {
+                @Override
+                void handshakeComplete() {
+                    inFlight.release();
+                }
+
+                @Override
+                void closed(long reconnectAfterMs, boolean handshaken) {
+                    if (!handshaken) {
+                        failed.incrementAndGet();
+                        reconnected.countDown();
+                        inFlight.release();
+                        return;
+                    }
+                    synchronized (firstClose) {
+                        firstClose[0] = Math.min(firstClose[0], System.nanoTime());
+                    }
+                    long delayMs = respectHints ? reconnectAfterMs : 0;
+                    group.schedule(Client.this::reconnect, delayMs, TimeUnit.MILLISECONDS);
+                }
+            });
+        }
+
+        private void reconnect() {
+            long start = System.nanoTime();
+            open(reconnectPort, new ClientHandler() {
+                @Override
+                void handshakeComplete() {
+                    long now = System.nanoTime();
+                    handshakes.add(new long[]{now, TimeUnit.NANOSECONDS.toMicros(now - start)});
+                    reconnected.countDown();
+                }
+
+                @Override
+                void closed(long reconnectAfterMs, boolean handshaken) {
+                    if (!handshaken) {
+                        failed.incrementAndGet();
+                        reconnected.countDown();
+                    }
+                }
+            });
+        }
+
+        private void open(int port, ClientHandler handler) {
+            URI uri = URI.create("ws://" + host + ":" + port + path + "?token=" + token);
+            new Bootstrap()
+                    .group(group)
+                    .channel(NioSocketChannel.class)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(
+                                    new HttpClientCodec(),
+                                    new HttpObjectAggregator(8192),
+                                    // Close frames are passed on, so the handler can read the hint
+                                    new WebSocketClientProtocolHandler(WebSocketClientHandshakerFactory.newHandshaker(
+                                            uri, WebSocketVersion.V13, null, false, EmptyHttpHeaders.INSTANCE), false),
+                                    handler);
+                        }
+                    })
+                    .connect(host, port)
+                    .addListener(future -> {
+                        if (!future.isSuccess()) {
+                            handler.closed(0, false);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Tracks one connection's handshake and reads the reconnect hint from its close frame.
+     */
+    private abstract static class ClientHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
+        private boolean handshaken;
+        private long reconnectAfterMs;
+
+        abstract void handshakeComplete();
+
+        abstract void closed(long reconnectAfterMs, boolean handshaken);
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+                handshaken = true;
+                handshakeComplete();
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) {
+            if (frame instanceof CloseWebSocketFrame close) {
+                String reason = close.reasonText();
+                if (reason != null && reason.startsWith(WebSocketServer.RECONNECT_HINT_PREFIX)) {
+                    reconnectAfterMs = Long.parseLong(reason.substring(WebSocketServer.RECONNECT_HINT_PREFIX.length()));
+                }
+                ctx.close();
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            closed(reconnectAfterMs, handshaken);
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+}
@@ -19,7 +19,6 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class WebSocketFrameHandlerTest {
 
-    private static final AttributeKey<String> SOCKET_ID_KEY = AttributeKey.valueOf("socketId");
     private static final AttributeKey<String> USER_ID_KEY = WebSocketHandshakeHandler.getUserIdKey();
 
     @Mock
@@ -83,7 +82,7 @@ class WebSocketFrameHandlerTest {
 
 
     @Test
-    void channelActive_generatesUniqueSocketIds() {
+    void handshakeComplete_opensSessionsWithUniqueIds() {
         // Arrange - create separate game mocks for each manager
         Game game1 = mock(Game.class);
         Game game2 = mock(Game.class);
@@ -111,12 +110,14 @@ class WebSocketFrameHandlerTest {
         verify(game1, times(1)).handlePlayerConnected("test-user-1");
         verify(game2, times(1)).handlePlayerConnected("test-user-2");
         
-        // Assert - verify socket IDs are unique
-        String socketId1 = channel1.attr(SOCKET_ID_KEY).get();
-        String socketId2 = channel2.attr(SOCKET_ID_KEY).get();
-        assertNotNull(socketId1, "SocketId1 should be set");
-        assertNotNull(socketId2, "SocketId2 should be set");
-        assertNotEquals(socketId1, socketId2, "Socket IDs should be unique");
+        // Assert - verify sessions are attached with unique ids and the userId moved into them
+        ConnectionSession session1 = ConnectionSession.of(channel1);
+        ConnectionSession session2 = ConnectionSession.of(channel2);
+        assertNotNull(session1, "Session1 should be set");
+        assertNotNull(session2, "Session2 should be set");
+        assertNotEquals(session1.id(), session2.id(), "Session IDs should be unique");
+        assertEquals("test-user-1", session1.userId());
+        assertNull(channel1.attr(USER_ID_KEY).get(), "userId attribute should not outlive the handshake");
         
         // Cleanup
         channel1.finish();
@@ -124,7 +125,7 @@ class WebSocketFrameHandlerTest {
     }
 
     @Test
-    void channelRead0_withTextFrameAndSocketId_forwardsMessage() {
+    void channelRead0_withTextFrameAndSession_forwardsMessage() {
         // Arrange
         String testMessage = "Hello, server!";
         TextWebSocketFrame textFrame = new TextWebSocketFrame(testMessage);
@@ -132,9 +133,8 @@ class WebSocketFrameHandlerTest {
         // Read the welcome message to clear it
         channel.readOutbound();
         
-        // Get the socketId that was set during channelActive
-        String socketId = channel.attr(SOCKET_ID_KEY).get();
-        assertNotNull(socketId, "SocketId should be set during channelActive");
+        // Get the session that was opened when the handshake completed
+        assertNotNull(ConnectionSession.of(channel), "Session should be set when the handshake completes");
         
         // Reset mock to ignore the call from setUp
         reset(game);
@@ -148,37 +148,54 @@ class WebSocketFrameHandlerTest {
     }
 
     @Test
-    void channelRead0_withTextFrameAndNullSocketId_doesNotForwardMessage() {
-        // Arrange
-        String testMessage = "Hello, server!";
-        TextWebSocketFrame textFrame = new TextWebSocketFrame(testMessage);
-        
-        // Read the welcome message to clear it
-        channel.readOutbound();
-        
-        // Manually remove socketId
-        channel.attr(SOCKET_ID_KEY).set(null);
+    void channelRead0_beforeHandshakeComplete_doesNotForwardMessage() {
+        // Arrange - a channel whose handshake never completed has no session
+        EmbeddedChannel pending = new EmbeddedChannel();
+        pending.attr(USER_ID_KEY).set("test-user-id");
+        pending.pipeline().addLast(new WebSocketFrameHandler(websocketManager));
         
         // Reset mock to ignore the call from setUp
         reset(game);
 
         
         // Act
-        channel.writeInbound(textFrame);
+        pending.writeInbound(new TextWebSocketFrame("Hello, server!"));
         
-        // Assert - verify that handlePlayerMessage was NOT called when socketId is null
+        // Assert - verify that the message was NOT forwarded and the connection was closed
         verify(game, never()).handlePlayerMessage(anyString(), anyString());
+        assertFalse(pending.isOpen(), "Channel should be closed when a frame arrives before the handshake");
+    }
+
+    @Test
+    void channelInactive_ofSupersededSession_keepsNewerConnection() {
+        // Arrange - the same user connects again before the first connection closes
+        EmbeddedChannel reconnected = new EmbeddedChannel();
+        reconnected.attr(USER_ID_KEY).set("test-user-id");
+        reconnected.pipeline().addLast(new WebSocketFrameHandler(websocketManager));
+        reconnected.pipeline().fireUserEventTriggered(new WebSocketServerProtocolHandler.HandshakeComplete(null, null, null));
+        reset(game);
+
+        // Act - the old connection closes
+        channel.close();
+        websocketManager.sendMessage("test-user-id", "still here");
+
+        // Assert - the player stays connected and messages reach the new connection
+        verify(game, never()).handlePlayerDisconnected(anyString());
+        TextWebSocketFrame delivered = reconnected.readOutbound();
+        assertNotNull(delivered, "Message should be sent to the newer connection");
+        assertEquals("still here", delivered.text());
+        delivered.release();
+        reconnected.finish();
     }
 
     @Test
-    void channelInactive_withSocketId_notifiesListener() {
+    void channelInactive_withSession_notifiesListener() {
         // Arrange
         // Read the welcome message to clear it
         channel.readOutbound();
         
-        // Get the socketId that was set during channelActive
-        String socketId = channel.attr(SOCKET_ID_KEY).get();
-        assertNotNull(socketId, "SocketId should be set");
+        // Get the session that was opened when the handshake completed
+        assertNotNull(ConnectionSession.of(channel), "Session should be set");
         
         // Reset mock to ignore the call from setUp
         reset(game);
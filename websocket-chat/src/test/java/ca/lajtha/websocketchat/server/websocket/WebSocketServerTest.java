@@ -2,12 +2,20 @@ package ca.lajtha.websocketchat.server.websocket;
 
 import ca.lajtha.websocketchat.server.ServerConfig;
 import ca.lajtha.websocketchat.user.TokenManager;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.net.BindException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -54,5 +62,61 @@ class WebSocketServerTest {
             assertNotNull(testServer);
         });
     }
-}
 
+    @Test
+    void awaitStarted_throwsAtOnceWhenThePortCannotBeBound() throws Exception {
+        try (ServerSocket occupied = new ServerSocket(0)) {
+            when(config.getPort()).thenReturn(occupied.getLocalPort());
+            Thread startThread = new Thread(() -> {
+                try {
+                    server.start();
+                } catch (Exception e) {
+                    // Reported through awaitStarted
+                }
+            });
+            startThread.start();
+
+            long start = System.nanoTime();
+            IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> server.awaitStarted(30, TimeUnit.SECONDS));
+            assertInstanceOf(BindException.class, exception.getCause());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10),
+                "A bind failure should not wait for the startup timeout");
+            startThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    @Test
+    void awaitStarted_throwsAtOnceWhenSetupFailsBeforeBinding() throws Exception {
+        when(config.getWorkerCpuAffinity()).thenReturn("not-a-cpu");
+        Thread startThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (Exception e) {
+                // Reported through awaitStarted
+            }
+        });
+        startThread.start();
+
+        long start = System.nanoTime();
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+            () -> server.awaitStarted(30, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, exception.getCause());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10),
+            "A setup failure should not wait for the startup timeout");
+        startThread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    @Test
+    void serverChannelClass_matchesTheGroupsTransportAndRejectsUnknownGroups() {
+        EventLoopGroup nio = new NioEventLoopGroup(1);
+        EventLoopGroup local = new DefaultEventLoopGroup(1);
+        try {
+            assertEquals(NioServerSocketChannel.class, WebSocketServer.serverChannelClass(nio));
+            assertThrows(IllegalArgumentException.class, () -> WebSocketServer.serverChannelClass(local));
+        } finally {
+            nio.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+            local.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ca.lajtha.websocketchat.server.websocket;
+
+import ca.lajtha.websocketchat.game.Game;
+import ca.lajtha.websocketchat.ids.IdInterner;
+import ca.lajtha.websocketchat.metrics.ServerMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WebsocketManagerImplTest {
+
+    private static final Pattern RESUME_TOKEN = Pattern.compile("\"resumeToken\":\"([^\"]+)\"");
+    private static final long GRACE_PERIOD_MS = 15000;
+
+    @Mock
+    private Game game;
+
+    private WebsocketManagerImpl websocketManager;
+
+    @BeforeEach
+    void setUp() {
+        websocketManager = new WebsocketManagerImpl(ServerMetrics.noop(), new IdInterner(), GRACE_PERIOD_MS, 16);
+        websocketManager.setGame(game);
+    }
+
+    @Test
+    void playerConnected_withResumeToken_replaysOnlyMissedMessages() {
+        EmbeddedChannel first = new EmbeddedChannel();
+        ConnectionSession firstSession = websocketManager.playerConnected(first, "alice");
+        String token = resumeToken(readAll(first).get(0));
+        websocketManager.sendMessage("alice", "m1");
+        websocketManager.sendMessage("alice", "m2");
+        websocketManager.sendMessage("alice", "m3");
+        readAll(first);
+        first.close();
+        websocketManager.playerDisconnected(firstSession);
+
+        // Sent while the player is reconnecting
+        websocketManager.sendMessage("alice", "m4");
+        websocketManager.sendMessage("alice", "m5");
+
+        // The client saw m1 and m2 before the connection dropped
+        EmbeddedChannel second = new EmbeddedChannel();
+        second.attr(WebSocketHandshakeHandler.getResumeKey()).set(new WebSocketHandshakeHandler.ResumeRequest(token, 2));
+        websocketManager.playerConnected(second, "alice");
+
+        assertEquals(List.of("{\"type\":\"sessionResumed\",\"replayed\":3}", "m3", "m4", "m5"), readAll(second));
+        verify(game, times(1)).handlePlayerConnected("alice");
+        verify(game, never()).handlePlayerDisconnected("alice");
+    }
+
+    @Test
+    void playerDisconnected_afterGracePeriod_leavesGame() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        ConnectionSession session = websocketManager.playerConnected(channel, "alice");
+        String token = resumeToken(readAll(channel).get(0));
+        websocketManager.playerDisconnected(session);
+
+        verify(game, never()).handlePlayerDisconnected("alice");
+        channel.advanceTimeBy(GRACE_PERIOD_MS, TimeUnit.MILLISECONDS);
+        channel.runScheduledPendingTasks();
+        verify(game).handlePlayerDisconnected("alice");
+
+        // The expired token starts a new session instead
+        EmbeddedChannel reconnected = new EmbeddedChannel();
+        reconnected.attr(WebSocketHandshakeHandler.getResumeKey()).set(new WebSocketHandshakeHandler.ResumeRequest(token, 0));
+        websocketManager.playerConnected(reconnected, "alice");
+        assertNotEquals(token, resumeToken(readAll(reconnected).get(0)));
+        verify(game, times(2)).handlePlayerConnected("alice");
+    }
+
+    @Test
+    void playerDisconnected_whenEventLoopHasShutDown_leavesGameAtOnce() {
+        EventLoop eventLoop = new DefaultEventLoop();
+        Channel channel = new LocalChannel();
+        eventLoop.register(channel).syncUninterruptibly();
+        ConnectionSession session = websocketManager.playerConnected(channel, "alice");
+        eventLoop.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+
+        assertDoesNotThrow(() -> websocketManager.playerDisconnected(session));
+        verify(game).handlePlayerDisconnected("alice");
+    }
+
+    @Test
+    void sendMessage_toPeersWithDifferentDeflateSettings_compressesForEach() {
+        PerMessageDeflate stored = new PerMessageDeflate(0, 0, false);
+        PerMessageDeflate best = new PerMessageDeflate(9, 0, false);
+        EmbeddedChannel alice = new EmbeddedChannel();
+        alice.attr(SharedDeflateEncoder.SHARED_DEFLATE_KEY).set(stored);
+        EmbeddedChannel bob = new EmbeddedChannel();
+        bob.attr(SharedDeflateEncoder.SHARED_DEFLATE_KEY).set(best);
+        websocketManager.playerConnected(alice, "alice");
+        websocketManager.playerConnected(bob, "bob");
+        readAll(alice);
+        readAll(bob);
+        String broadcast = "{\"type\":\"messagesReceivedNotification\"}".repeat(20);
+
+        websocketManager.sendMessage("alice", broadcast);
+        websocketManager.sendMessage("bob", broadcast);
+
+        assertEquals(compressed(stored, broadcast), readPayload(alice));
+        assertEquals(compressed(best, broadcast), readPayload(bob));
+    }
+
+    private static ByteBuf compressed(PerMessageDeflate deflate, String message) {
+        ByteBuf payload = Unpooled.copiedBuffer(message, StandardCharsets.UTF_8);
+        try {
+            return deflate.compress(UnpooledByteBufAllocator.DEFAULT, payload);
+        } finally {
+            payload.release();
+        }
+    }
+
+    private static ByteBuf readPayload(EmbeddedChannel channel) {
+        TextWebSocketFrame frame = channel.readOutbound();
+        assertNotNull(frame);
+        try {
+            return Unpooled.copiedBuffer(frame.content());
+        } finally {
+            frame.release();
+        }
+    }
+
+    private static List<String> readAll(EmbeddedChannel channel) {
+        List<String> messages = new ArrayList<>();
+        TextWebSocketFrame frame;
+        while ((frame = channel.readOutbound()) != null) {
+            messages.add(frame.text());
+            frame.release();
+        }
+        return messages;
+    }
+
+    private static String resumeToken(String notice) {
+        Matcher matcher = RESUME_TOKEN.matcher(notice);
+        assertTrue(matcher.find(), "Expected a sessionStarted notice but got " + notice);
+        return matcher.group(1);
+    }
+}